@@ -5,8 +5,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import uk.ac.bath.masmusic.common.Note;
 import uk.ac.bath.masmusic.common.Onset;
+import uk.ac.bath.masmusic.common.PitchClassSet;
 import uk.ac.bath.masmusic.common.Scale;
 
 /**
@@ -41,6 +41,11 @@ public class ScaleInducer {
         if (onsets.size() < 20) {
             return null;
         }
+        // Accumulate durations by pitch class once for every scale
+        long[] pitchClassDurations = new long[PitchClassSet.SIZE];
+        for (Onset onset : onsets) {
+            pitchClassDurations[PitchClassSet.pitchClass(onset.getPitch())] += onset.getDuration();
+        }
         Set<Scale> allScales = Scale.getAllScales();
         Scale bestScale = null;
         double bestScore = Double.NEGATIVE_INFINITY;
@@ -51,10 +56,10 @@ public class ScaleInducer {
             }
             double[] pitchWeights = PITCH_WEIGHTS.get(scaleType);
             double scaleScore = .0;
-            Note fundamental = scale.getFundamental();
-            for (Onset onset : onsets) {
-                int scalePitchClass = fundamental.ascendingDistanceTo(Note.fromValue(onset.getPitch()));
-                scaleScore += pitchWeights[scalePitchClass] * onset.getDuration();
+            int fundamental = scale.getFundamental().value();
+            for (int pitchClass = 0; pitchClass < PitchClassSet.SIZE; pitchClass++) {
+                int scalePitchClass = PitchClassSet.pitchClass(pitchClass - fundamental);
+                scaleScore += pitchWeights[scalePitchClass] * pitchClassDurations[pitchClass];
             }
             if (scaleScore > bestScore) {
                 bestScore = scaleScore;
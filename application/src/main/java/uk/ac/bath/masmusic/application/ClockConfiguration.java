@@ -0,0 +1,60 @@
+package uk.ac.bath.masmusic.application;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import uk.ac.bath.masmusic.common.Clock;
+import uk.ac.bath.masmusic.common.SystemClock;
+import uk.ac.bath.masmusic.common.VirtualClock;
+
+/**
+ * Clock-related application configuration.
+ *
+ * The clock mode can be one of:
+ * <ul>
+ * <li>{@code system}: the system time is used.</li>
+ * <li>{@code virtual}: a {@link VirtualClock} is advanced automatically at the
+ * configured rate by a {@link VirtualClockDriver}.</li>
+ * <li>{@code manual}: a {@link VirtualClock} is used, but it is only advanced
+ * explicitly (for example, by a session replay).</li>
+ * </ul>
+ *
+ * @author Javier Dehesa
+ */
+@Configuration
+public class ClockConfiguration {
+
+    /** System clock mode. */
+    public static final String MODE_SYSTEM = "system";
+
+    /** Virtual clock mode. */
+    public static final String MODE_VIRTUAL = "virtual";
+
+    /** Manual clock mode. */
+    public static final String MODE_MANUAL = "manual";
+
+    /** Clock mode. */
+    @Value("${masmusic.clock.mode:" + MODE_SYSTEM + "}")
+    private String mode;
+
+    /** Virtual clock rate with respect to real time. */
+    @Value("${masmusic.clock.rate:1}")
+    private double rate;
+
+    /**
+     * @return Application clock
+     */
+    @Bean
+    public Clock clock() {
+        switch (mode.toLowerCase()) {
+        case MODE_SYSTEM:
+            return SystemClock.INSTANCE;
+        case MODE_VIRTUAL:
+        case MODE_MANUAL:
+            return new VirtualClock(System.currentTimeMillis(), rate);
+        default:
+            throw new IllegalArgumentException("Unknown clock mode '" + mode + "'");
+        }
+    }
+}
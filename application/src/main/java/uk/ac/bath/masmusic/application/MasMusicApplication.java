@@ -6,14 +6,29 @@ import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.FilterType;
+
+import uk.ac.bath.masmusic.events.EventsConfiguration;
+import uk.ac.bath.masmusic.session.SessionConfiguration;
+import uk.ac.bath.masmusic.session.SessionManager;
 
 /**
  * MasMusic application entry point.
  *
+ * Event processing and multi-agent system components are not part of the
+ * application context, since an isolated set of them is created for each
+ * session by the {@link SessionManager} (see {@link SessionConfiguration}),
+ * together with the event multicaster delivering their events (see
+ * {@link EventsConfiguration}).
+ *
  * @author Javier Dehesa
  */
 @SpringBootApplication
-@ComponentScan("uk.ac.bath.masmusic")
+@ComponentScan(basePackages = "uk.ac.bath.masmusic", excludeFilters = {
+        @ComponentScan.Filter(type = FilterType.REGEX, pattern = {
+                "uk\\.ac\\.bath\\.masmusic\\.cep\\..*", "uk\\.ac\\.bath\\.masmusic\\.mas\\..*" }),
+        @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE, classes = {
+                SessionConfiguration.class, EventsConfiguration.class }) })
 public class MasMusicApplication implements CommandLineRunner {
 
     /** Logger */
@@ -0,0 +1,103 @@
+package uk.ac.bath.masmusic.application;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import uk.ac.bath.masmusic.common.Clock;
+import uk.ac.bath.masmusic.common.VirtualClock;
+
+/**
+ * Advances the application {@link VirtualClock} at its nominal rate.
+ *
+ * The driver only runs when the clock mode is
+ * {@value ClockConfiguration#MODE_VIRTUAL}. The virtual time is computed from
+ * the real time elapsed since the driver started, so it does not drift
+ * regardless of the tick length.
+ *
+ * @author Javier Dehesa
+ */
+@Component
+public class VirtualClockDriver implements Runnable {
+
+    /** Logger */
+    private static Logger LOG = LoggerFactory.getLogger(VirtualClockDriver.class);
+
+    /** Clock mode. */
+    @Value("${masmusic.clock.mode:" + ClockConfiguration.MODE_SYSTEM + "}")
+    private String mode;
+
+    /** Real time between clock advances (ms). */
+    @Value("${masmusic.clock.tick:5}")
+    private int tick;
+
+    /** Application clock. */
+    @Autowired
+    private Clock clock;
+
+    /** Whether the driver is running. */
+    private final AtomicBoolean started;
+
+    /** Whether the driver must finish. */
+    private final AtomicBoolean finish;
+
+    /**
+     * Constructor.
+     */
+    public VirtualClockDriver() {
+        started = new AtomicBoolean(false);
+        finish = new AtomicBoolean(false);
+    }
+
+    /**
+     * Start the driver, if the clock mode requires it.
+     */
+    @PostConstruct
+    public void start() {
+        if (!ClockConfiguration.MODE_VIRTUAL.equalsIgnoreCase(mode) || !(clock instanceof VirtualClock)) {
+            return;
+        }
+        if (!started.getAndSet(true)) {
+            LOG.info("Running on virtual time at {}x real time", clock.getRate());
+            finish.set(false);
+            Thread thread = new Thread(this, "virtual-clock");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stop the driver.
+     */
+    @PreDestroy
+    public void stop() {
+        finish.set(true);
+    }
+
+    @Override
+    public void run() {
+        VirtualClock virtualClock = (VirtualClock) clock;
+        long virtualStart = virtualClock.currentTimeMillis();
+        long realStart = System.nanoTime();
+        double rate = virtualClock.getRate();
+        while (!finish.get()) {
+            try {
+                Thread.sleep(tick);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            double elapsed = (System.nanoTime() - realStart) / (double) TimeUnit.MILLISECONDS.toNanos(1);
+            virtualClock.advanceTo(virtualStart + Math.round(elapsed * rate));
+        }
+        started.set(false);
+    }
+}
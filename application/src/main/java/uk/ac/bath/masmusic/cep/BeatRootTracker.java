@@ -13,6 +13,7 @@ import org.springframework.stereotype.Component;
 
 import uk.ac.bath.masmusic.analysis.beatroot.BeatRoot;
 import uk.ac.bath.masmusic.common.Beat;
+import uk.ac.bath.masmusic.common.Clock;
 import uk.ac.bath.masmusic.common.Onset;
 import uk.ac.bath.masmusic.common.Rhythm;
 import uk.ac.bath.masmusic.events.RhythmUpdatedEvent;
@@ -38,6 +39,10 @@ public class BeatRootTracker extends EsperStatementSubscriber {
     @Autowired
     private ApplicationEventPublisher publisher;
 
+    /** Application clock. */
+    @Autowired
+    private Clock clock;
+
     /** BeatRoot beat tracker. */
     private final BeatRoot beatRoot;
 
@@ -56,6 +61,13 @@ public class BeatRootTracker extends EsperStatementSubscriber {
         rhythm = new AtomicReference<>(null);
     }
 
+    /**
+     * @return The last known rhythm, or null if no rhythm has been detected
+     */
+    public Rhythm getCurrentRhythm() {
+        return rhythm.get();
+    }
+
     /**
      * Handle a rhythm update event.
      *
@@ -90,7 +102,8 @@ public class BeatRootTracker extends EsperStatementSubscriber {
      * @param countOld
      *            Number of elements in the previous delivery
      */
-    public void updateStart(int countNew, int countOld) {
+    @Override
+    protected void snapshotStart(int countNew, int countOld) {
         onsets.clear();
         onsets.ensureCapacity(countNew);
     }
@@ -108,7 +121,8 @@ public class BeatRootTracker extends EsperStatementSubscriber {
     /**
      * Finish event delivery.
      */
-    public void updateEnd() {
+    @Override
+    protected void snapshotEnd() {
         Rhythm currentRhythm = rhythm.get();
         if (currentRhythm != null) { // Wait until some rhythm has been detected
             int currentTempo = currentRhythm.getBeat().getTempo();
@@ -120,7 +134,7 @@ public class BeatRootTracker extends EsperStatementSubscriber {
                 LOG.debug("New rhythm: {}", newRhythm);
                 rhythm.set(newRhythm);
                 // Update rhythm
-                publisher.publishEvent(new RhythmUpdatedEvent(this, newRhythm));
+                publishTraced(publisher, new RhythmUpdatedEvent(this, newRhythm));
             }
         }
         onsets.clear();
@@ -133,9 +147,9 @@ public class BeatRootTracker extends EsperStatementSubscriber {
      *            The new estimated beat
      * @return The current rhythm corrected with the new beat
      */
-    private static Rhythm correctRhythm(Rhythm currentRhythm, Beat newBeat) {
+    private Rhythm correctRhythm(Rhythm currentRhythm, Beat newBeat) {
         // Align beat offset
-        long currentTime = System.currentTimeMillis();
+        long currentTime = clock.currentTimeMillis();
         long referenceBeat = currentRhythm.getBeat().closestBeat(currentTime);
         long currentBeatNumber = currentRhythm.getBeat().beatNumber(referenceBeat);
         long newBeatNumber = newBeat.beatNumber(newBeat.closestBeat(referenceBeat));
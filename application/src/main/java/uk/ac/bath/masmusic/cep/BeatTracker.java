@@ -66,6 +66,8 @@ public class BeatTracker extends EsperStatementSubscriber {
      */
     @Autowired
     public BeatTracker(com.espertech.esper.client.Configuration config) {
+        // The beat is read on demand, not published
+        super(false);
         config.addPlugInSingleRowFunction("noteImportance",
                 "uk.ac.bath.masmusic.conductor.cep.BeatTracker",
                 "noteImportance");
@@ -294,7 +296,8 @@ public class BeatTracker extends EsperStatementSubscriber {
      * @param countOld
      *            Number of elements in the previous delivery.
      */
-    public void updateStart(int countNew, int countOld) {
+    @Override
+    protected void snapshotStart(int countNew, int countOld) {
         readings.clear();
         readings.ensureCapacity(countNew);
     }
@@ -314,7 +317,8 @@ public class BeatTracker extends EsperStatementSubscriber {
     /**
      * Finish event delivery.
      */
-    public void updateEnd() {
+    @Override
+    protected void snapshotEnd() {
         estimateBeat();
         readings.clear();
     }
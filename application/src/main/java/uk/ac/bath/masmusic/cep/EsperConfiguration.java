@@ -8,12 +8,15 @@ import org.springframework.context.annotation.Configuration;
 import com.espertech.esper.client.EPServiceProvider;
 import com.espertech.esper.client.EPServiceProviderManager;
 import com.espertech.esper.client.EPStatement;
+import com.espertech.esper.client.time.CurrentTimeEvent;
 
+import uk.ac.bath.masmusic.common.Clock;
 import uk.ac.bath.masmusic.common.Onset;
 import uk.ac.bath.masmusic.protobuf.TimeSpanNote;
+import uk.ac.bath.masmusic.session.Session;
 
 /**
- * Esper-related application configuration.
+ * Esper-related session configuration.
  *
  * @author Javier Dehesa
  */
@@ -21,11 +24,18 @@ import uk.ac.bath.masmusic.protobuf.TimeSpanNote;
 public class EsperConfiguration {
 
     /**
+     * Esper configuration.
+     *
+     * The internal timer of Esper is disabled, so the engine time follows the
+     * application clock as it is advanced by the {@link Session}, and no
+     * timer thread is created for each session.
+     *
      * @return Esper configuration
      */
     @Bean
     public com.espertech.esper.client.Configuration epConfiguration() {
         com.espertech.esper.client.Configuration config = new com.espertech.esper.client.Configuration();
+        config.getEngineDefaults().getThreading().setInternalTimerEnabled(false);
         config.addEventTypeAutoName("uk.ac.bath.masmusic.protobuf");
         config.addPlugInSingleRowFunction(
                 "noteOnset", "uk.ac.bath.masmusic.cep.EsperConfiguration", "noteOnset");
@@ -35,18 +45,27 @@ public class EsperConfiguration {
     /**
      * Esper service provider.
      *
-     * The service provider is configured with every
-     * {@link EsperStatementSubscriber} available.
+     * Each session has its own service provider, identified by the session
+     * id, configured with every {@link EsperStatementSubscriber} of the
+     * session. The engine time starts at the current time of the application
+     * clock.
      *
+     * @param config
+     *            Esper configuration
+     * @param clock
+     *            Application clock
+     * @param session
+     *            Session of the service provider
      * @param subscribers
      *            Available statement subscribers
      * @return Esper service provider
      */
-    @Bean
-    public EPServiceProvider epService(
-            com.espertech.esper.client.Configuration config, List<EsperStatementSubscriber> subscribers) {
+    @Bean(destroyMethod = "destroy")
+    public EPServiceProvider epService(com.espertech.esper.client.Configuration config, Clock clock,
+            Session session, List<EsperStatementSubscriber> subscribers) {
         // Get Esper provider
-        EPServiceProvider provider = EPServiceProviderManager.getDefaultProvider(config);
+        EPServiceProvider provider = EPServiceProviderManager.getProvider(session.getId(), config);
+        provider.getEPRuntime().sendEvent(new CurrentTimeEvent(clock.currentTimeMillis()));
         // Add statements and listeners
         for (EsperStatementSubscriber subscriber : subscribers) {
             EPStatement statement = provider.getEPAdministrator().createEPL(subscriber.getStatementQuery());
@@ -9,6 +9,9 @@ import org.springframework.util.Assert;
 
 import com.espertech.esper.client.EPServiceProvider;
 
+import uk.ac.bath.masmusic.session.Session;
+import uk.ac.bath.masmusic.tracing.LatencyTracer;
+
 /**
  * Message handler that publishes the received message to the Esper runtime.
  *
@@ -20,11 +23,18 @@ public class EsperMessageHandler implements MessageHandler {
     @Autowired
     private EPServiceProvider epService;
 
+    @Autowired
+    private LatencyTracer latencyTracer;
+
+    @Autowired
+    private Session session;
+
     @Override
     public void handleMessage(Message<?> message) throws MessagingException {
         Assert.notNull(message, "Message must not be null");
         Object payload = message.getPayload();
         Assert.notNull(payload, "Message payload must not be null");
+        latencyTracer.heard(session.getId());
         epService.getEPRuntime().sendEvent(payload);
     }
 
@@ -1,13 +1,28 @@
 package uk.ac.bath.masmusic.cep;
 
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationEventPublisher;
+
 import com.espertech.esper.client.EPStatement;
 
+import uk.ac.bath.masmusic.session.Session;
+import uk.ac.bath.masmusic.tracing.LatencyTracer;
+import uk.ac.bath.masmusic.tracing.Trace;
+import uk.ac.bath.masmusic.tracing.TraceStage;
+
 /**
  * Common interface for Esper subscribers that provide a custom query.
  *
  * Implementing classes should also include a void update method receiving a
  * {@link java.util.Map} with {@link String} as key and the expected type as
- * value according to the defined statement.
+ * value according to the defined statement. The beginning and end of each
+ * delivery are handled by {@link #snapshotStart} and {@link #snapshotEnd},
+ * which are measured in the subscriber {@link SubscriberMetrics}. Subscribers
+ * that publish the result of their snapshots do it through
+ * {@link #publishTraced}; the rest are built as non-publishing.
  *
  * @author Javier Dehesa
  */
@@ -15,6 +30,41 @@ public abstract class EsperStatementSubscriber {
 
     private EPStatement statement;
 
+    /** Latency tracer. */
+    @Autowired
+    private LatencyTracer latencyTracer;
+
+    /** Session of the subscriber. */
+    @Autowired
+    private Session session;
+
+    /** Trace of the snapshot being delivered. */
+    private Trace trace;
+
+    /** Execution metrics. */
+    private final SubscriberMetrics metrics;
+
+    /** Time the rows of the current snapshot started to be received (ns). */
+    private long updateStartTime;
+
+    /**
+     * Constructor of a subscriber publishing the result of its snapshots.
+     */
+    protected EsperStatementSubscriber() {
+        this(true);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param publishing
+     *            Whether the subscriber publishes the result of its snapshots
+     *            through {@link #publishTraced}
+     */
+    protected EsperStatementSubscriber(boolean publishing) {
+        metrics = new SubscriberMetrics(publishing);
+    }
+
     public void setStatement(EPStatement statement) {
         this.statement = statement;
     }
@@ -23,10 +73,88 @@ public abstract class EsperStatementSubscriber {
         return statement;
     }
 
+    /**
+     * @return The execution metrics of the subscriber
+     */
+    public SubscriberMetrics getMetrics() {
+        return metrics;
+    }
+
     /**
      * Get the EPL statement query the subscriber will listen to.
      *
      * @return The EPL statement query
      */
     public abstract String getStatementQuery();
+
+    /**
+     * Start new event delivery (called by Esper).
+     *
+     * @param countNew
+     *            Number of elements in the new delivery
+     * @param countOld
+     *            Number of elements in the previous delivery
+     */
+    public final void updateStart(int countNew, int countOld) {
+        trace = latencyTracer.begin(session.getId());
+        metrics.getRows().record(countNew);
+        snapshotStart(countNew, countOld);
+        updateStartTime = System.nanoTime();
+    }
+
+    /**
+     * Finish event delivery (called by Esper).
+     */
+    public final void updateEnd() {
+        long updateEndTime = System.nanoTime();
+        metrics.getUpdateTime().record(TimeUnit.NANOSECONDS.toMicros(updateEndTime - updateStartTime));
+        try {
+            snapshotEnd();
+        } finally {
+            metrics.getUpdateEndTime().record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - updateEndTime));
+            trace = null;
+        }
+    }
+
+    /**
+     * Start new event delivery.
+     *
+     * @param countNew
+     *            Number of elements in the new delivery
+     * @param countOld
+     *            Number of elements in the previous delivery
+     */
+    protected abstract void snapshotStart(int countNew, int countOld);
+
+    /**
+     * Finish event delivery.
+     */
+    protected abstract void snapshotEnd();
+
+    /**
+     * Publish an event with the result of the current snapshot, tracing it.
+     *
+     * @param publisher
+     *            Event publisher
+     * @param event
+     *            The published event
+     * @throws IllegalStateException
+     *             If the subscriber was built as non-publishing
+     */
+    protected void publishTraced(ApplicationEventPublisher publisher, ApplicationEvent event) {
+        if (metrics.getPublishTime() == null) {
+            throw new IllegalStateException("Subscriber " + getClass().getSimpleName() + " does not publish");
+        }
+        long publishStartTime = System.nanoTime();
+        if (trace != null) {
+            trace.stamp(TraceStage.PUBLISHED);
+        }
+        publisher.publishEvent(event);
+        if (trace != null) {
+            trace.stamp(TraceStage.DELIVERED);
+            latencyTracer.delivered(session.getId(), trace);
+            trace = null;
+        }
+        metrics.getPublishTime().record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - publishStartTime));
+    }
 }
@@ -10,6 +10,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Component;
 
+import uk.ac.bath.masmusic.common.ChunkedWindow;
 import uk.ac.bath.masmusic.common.Onset;
 import uk.ac.bath.masmusic.events.MusicInputBufferUpdatedEvent;
 import uk.ac.bath.masmusic.protobuf.TimeSpanNote;
@@ -18,7 +19,9 @@ import uk.ac.bath.masmusic.protobuf.TimeSpanNote;
  * Input tracker for Esper {@link TimeSpanNote} events.
  *
  * This tracker publishes {@link MusicInputBufferUpdatedEvent} events
- * periodically.
+ * periodically. Consecutive snapshots of the input window mostly overlap, so
+ * the tracker keeps a persistent buffer where only expired onsets are removed
+ * and new onsets are added, and publishes immutable snapshots of it.
  *
  * @author Javier Dehesa
  */
@@ -37,14 +40,18 @@ public class MusicInputTracker extends EsperStatementSubscriber {
     @Autowired
     private ApplicationEventPublisher publisher;
 
-    /** Onsets list. */
+    /** Onsets received in the current delivery. */
     private final List<Onset> onsets;
 
+    /** Input buffer. */
+    private final ChunkedWindow<Onset> inputBuffer;
+
     /**
      * Constructor.
      */
     public MusicInputTracker() {
         onsets = new ArrayList<>();
+        inputBuffer = new ChunkedWindow<>();
     }
 
     /*** Esper ***/
@@ -70,7 +77,8 @@ public class MusicInputTracker extends EsperStatementSubscriber {
      * @param countOld
      *            Number of elements in the previous delivery
      */
-    public void updateStart(int countNew, int countOld) {
+    @Override
+    protected void snapshotStart(int countNew, int countOld) {
         onsets.clear();
     }
 
@@ -87,9 +95,45 @@ public class MusicInputTracker extends EsperStatementSubscriber {
     /**
      * Finish event delivery.
      */
-    public void updateEnd() {
-        if (!onsets.isEmpty()) {
-            publisher.publishEvent(new MusicInputBufferUpdatedEvent(this, onsets));
+    @Override
+    protected void snapshotEnd() {
+        updateInputBuffer();
+        if (!inputBuffer.isEmpty()) {
+            publishTraced(publisher, new MusicInputBufferUpdatedEvent(this, inputBuffer.snapshot()));
+        }
+    }
+
+    /**
+     * Update the input buffer with the received onsets.
+     *
+     * If the beginning of the received onsets matches the end of the buffer,
+     * the expired onsets are removed and only the new ones are added;
+     * otherwise, the buffer is rebuilt.
+     */
+    private void updateInputBuffer() {
+        if (onsets.isEmpty()) {
+            inputBuffer.clear();
+            return;
+        }
+        Onset first = onsets.get(0);
+        int start = 0;
+        while (start < inputBuffer.size() && !inputBuffer.get(start).equals(first)) {
+            start++;
+        }
+        int overlap = inputBuffer.size() - start;
+        boolean matches = overlap <= onsets.size();
+        for (int i = 1; matches && i < overlap; i++) {
+            matches = inputBuffer.get(start + i).equals(onsets.get(i));
+        }
+        if (matches) {
+            inputBuffer.removeFirst(start);
+        } else {
+            LOG.debug("Input buffer mismatch, rebuilding");
+            inputBuffer.clear();
+            overlap = 0;
+        }
+        for (int i = overlap; i < onsets.size(); i++) {
+            inputBuffer.add(onsets.get(i));
         }
     }
 }
@@ -1,7 +1,9 @@
 package uk.ac.bath.masmusic.cep;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicReference;
@@ -12,6 +14,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
+import uk.ac.bath.masmusic.common.Clock;
 import uk.ac.bath.masmusic.common.Onset;
 import uk.ac.bath.masmusic.common.Phrase;
 import uk.ac.bath.masmusic.common.Rhythm;
@@ -22,6 +25,11 @@ import uk.ac.bath.masmusic.protobuf.TimeSpanNote;
 /**
  * Extract phrases from Esper {@link TimeSpanNote} events.
  *
+ * Only the notes received since the previous delivery are passed to the
+ * {@link PhraseExtractor}, which keeps the open phrases between deliveries.
+ * The phrases closed within the last analysis window are kept as the
+ * extracted phrases.
+ *
  * @author Javier Dehesa
  */
 @Component
@@ -33,31 +41,57 @@ public class PhrasesTracker extends EsperStatementSubscriber {
     /** Frequency of beat analysis (ms) */
     private static final int ANALYSIS_FREQUENCY = 5000;
 
+    /** Maximum delay of a note start with respect to its delivery (ms) */
+    private static final int NOTE_LATENESS = ANALYSIS_FREQUENCY;
+
     /** Logger */
     private static Logger LOG = LoggerFactory.getLogger(PhrasesTracker.class);
 
     @Autowired
     private RhythmDetector rhythmDetector;
 
+    /** Application clock. */
+    @Autowired
+    private Clock clock;
+
     /** Phrase extractor. */
     private final PhraseExtractor phraseExtractor;
 
     /** Last known rhythm. */
     private final AtomicReference<Rhythm> rhythm;
 
-    /** Events in the last analyzed window (sorted by time) */
+    /** Events received in the current delivery */
     private final ArrayList<Onset> onsets;
 
+    /** Phrases closed within the analysis window (sorted by closing time). */
+    private final Deque<ExtractedPhrase> recentPhrases;
+
     /** Extracted phrases. */
     private final AtomicReference<List<Phrase>> extractedPhrases;
 
+    /**
+     * A phrase with the time at which it was closed.
+     */
+    private static class ExtractedPhrase {
+        final Phrase phrase;
+        final long timestamp;
+
+        ExtractedPhrase(Phrase phrase, long timestamp) {
+            this.phrase = phrase;
+            this.timestamp = timestamp;
+        }
+    }
+
     /**
      * Constructor.
      */
     public PhrasesTracker() {
+        // Extracted phrases are read on demand, not published
+        super(false);
         phraseExtractor = new PhraseExtractor();
         rhythm = new AtomicReference<>();
         onsets = new ArrayList<>();
+        recentPhrases = new ArrayDeque<>();
         extractedPhrases = new AtomicReference<>(Collections.emptyList());
     }
 
@@ -68,6 +102,23 @@ public class PhrasesTracker extends EsperStatementSubscriber {
         return extractedPhrases.get();
     }
 
+    /**
+     * @return A snapshot of the phrases still open
+     */
+    public synchronized PhraseExtractor.Snapshot getExtractorSnapshot() {
+        return phraseExtractor.getSnapshot();
+    }
+
+    /**
+     * Restore the phrases still open of a previous extraction.
+     *
+     * @param snapshot
+     *            Snapshot of the phrases still open
+     */
+    public synchronized void restoreExtractor(PhraseExtractor.Snapshot snapshot) {
+        phraseExtractor.restore(snapshot);
+    }
+
     /**
      * Handle a rhythm update event.
      *
@@ -89,8 +140,8 @@ public class PhrasesTracker extends EsperStatementSubscriber {
         return "select"
                 // + " Math.round(avg(timestamp)) as timestamp"
                 + " noteOnset(*) as onset"
-                + " from TimeSpanNote.win:time(" + ANALYSIS_WINDOW + " msec) "
-                + " output snapshot every " + ANALYSIS_FREQUENCY + " msec" + " order by timestamp asc";
+                + " from TimeSpanNote"
+                + " output every " + ANALYSIS_FREQUENCY + " msec" + " order by timestamp asc";
     }
 
     /**
@@ -101,7 +152,8 @@ public class PhrasesTracker extends EsperStatementSubscriber {
      * @param countOld
      *            Number of elements in the previous delivery
      */
-    public void updateStart(int countNew, int countOld) {
+    @Override
+    protected void snapshotStart(int countNew, int countOld) {
         onsets.clear();
         onsets.ensureCapacity(countNew);
     }
@@ -119,19 +171,34 @@ public class PhrasesTracker extends EsperStatementSubscriber {
     /**
      * Finish event delivery.
      */
-    public void updateEnd() {
-        if (onsets.isEmpty()) {
-            return;
-        }
+    @Override
+    protected synchronized void snapshotEnd() {
         Rhythm currentRhythm = rhythm.get();
         if (currentRhythm == null) {
+            onsets.clear();
             return;
         }
 
-        List<Phrase> phrases = phraseExtractor.extractPhrases(onsets, currentRhythm);
-        extractedPhrases.set(Collections.unmodifiableList(phrases));
-
+        long currentTime = clock.currentTimeMillis();
+        List<Phrase> phrases = phraseExtractor.update(onsets, currentRhythm, currentTime - NOTE_LATENESS);
         onsets.clear();
+
+        // Update phrases in the analysis window
+        boolean changed = !phrases.isEmpty();
+        for (Phrase phrase : phrases) {
+            recentPhrases.add(new ExtractedPhrase(phrase, currentTime));
+        }
+        while (!recentPhrases.isEmpty() && recentPhrases.peek().timestamp < currentTime - ANALYSIS_WINDOW) {
+            recentPhrases.poll();
+            changed = true;
+        }
+        if (changed) {
+            List<Phrase> windowPhrases = new ArrayList<>(recentPhrases.size());
+            for (ExtractedPhrase extractedPhrase : recentPhrases) {
+                windowPhrases.add(extractedPhrase.phrase);
+            }
+            extractedPhrases.set(Collections.unmodifiableList(windowPhrases));
+        }
     }
 
 }
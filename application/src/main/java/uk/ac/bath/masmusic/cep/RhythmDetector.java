@@ -11,6 +11,7 @@ import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Component;
 
 import uk.ac.bath.masmusic.common.Beat;
+import uk.ac.bath.masmusic.common.Clock;
 import uk.ac.bath.masmusic.common.Rhythm;
 import uk.ac.bath.masmusic.common.TimeSignature;
 import uk.ac.bath.masmusic.events.RhythmUpdatedEvent;
@@ -36,6 +37,10 @@ public class RhythmDetector extends EsperStatementSubscriber {
     @Autowired
     private ApplicationEventPublisher publisher;
 
+    /** Application clock. */
+    @Autowired
+    private Clock clock;
+
     /** Events in the last analysed window (sorted by time) */
     private final ArrayList<Long> onsetTimes;
 
@@ -62,6 +67,24 @@ public class RhythmDetector extends EsperStatementSubscriber {
         return rhythm.get();
     }
 
+    /**
+     * Restore a previously detected rhythm.
+     *
+     * Rhythm detection is stopped and the rhythm is published as if it had
+     * just been detected.
+     *
+     * @param restoredRhythm
+     *            The restored rhythm
+     */
+    public void restoreRhythm(Rhythm restoredRhythm) {
+        LOG.debug("Restored rhythm: {}", restoredRhythm);
+        rhythm.set(restoredRhythm);
+        if (getStatement() != null) {
+            getStatement().stop();
+        }
+        publisher.publishEvent(new RhythmUpdatedEvent(this, restoredRhythm));
+    }
+
     /*** Esper ***/
 
     /**
@@ -85,7 +108,8 @@ public class RhythmDetector extends EsperStatementSubscriber {
      * @param countOld
      *            Number of elements in the previous delivery
      */
-    public void updateStart(int countNew, int countOld) {
+    @Override
+    protected void snapshotStart(int countNew, int countOld) {
         onsetTimes.clear();
         if (rhythm.get() != null) {
             return;
@@ -110,7 +134,8 @@ public class RhythmDetector extends EsperStatementSubscriber {
     /**
      * Finish event delivery.
      */
-    public void updateEnd() {
+    @Override
+    protected void snapshotEnd() {
         if (rhythm.get() != null) {
             return;
         }
@@ -123,7 +148,7 @@ public class RhythmDetector extends EsperStatementSubscriber {
         }
         int beatDuration = Math.round(diffs / (onsetTimes.size() - 1.f));
         // Check if rhythm input is finished
-        long now = System.currentTimeMillis();
+        long now = clock.currentTimeMillis();
         long lastOnsetTime = onsetTimes.get(onsetTimes.size() - 1);
         if (now - lastOnsetTime < 2 * beatDuration) {
             // May not have finished yet
@@ -146,7 +171,7 @@ public class RhythmDetector extends EsperStatementSubscriber {
         LOG.debug("New rhythm: {}", newRhythm);
         rhythm.set(newRhythm);
         // Update rhythm
-        publisher.publishEvent(new RhythmUpdatedEvent(this, newRhythm));
+        publishTraced(publisher, new RhythmUpdatedEvent(this, newRhythm));
         // Stop listening statement
         getStatement().stop();
     }
@@ -78,7 +78,8 @@ public class ScaleTracker extends EsperStatementSubscriber {
      * @param countOld
      *            Number of elements in the previous delivery
      */
-    public void updateStart(int countNew, int countOld) {
+    @Override
+    protected void snapshotStart(int countNew, int countOld) {
         onsets.clear();
     }
 
@@ -95,15 +96,30 @@ public class ScaleTracker extends EsperStatementSubscriber {
     /**
      * Finish event delivery.
      */
-    public void updateEnd() {
+    @Override
+    protected void snapshotEnd() {
         Scale newScale = scaleInducer.induceScale(onsets);
         if (newScale != null) {
             LOG.debug("New scale: {}", newScale);
             scale.set(newScale);
-            publisher.publishEvent(new ScaleUpdatedEvent(this, newScale));
+            publishTraced(publisher, new ScaleUpdatedEvent(this, newScale));
         }
     }
 
+    /**
+     * Restore a previously induced scale.
+     *
+     * The scale is published as if it had just been induced.
+     *
+     * @param restoredScale
+     *            The restored scale
+     */
+    public void restoreScale(Scale restoredScale) {
+        LOG.debug("Restored scale: {}", restoredScale);
+        scale.set(restoredScale);
+        publisher.publishEvent(new ScaleUpdatedEvent(this, restoredScale));
+    }
+
     /**
      * @return The induced scale, or null of no scale has been induced
      */
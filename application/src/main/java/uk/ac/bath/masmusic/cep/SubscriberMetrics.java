@@ -0,0 +1,96 @@
+package uk.ac.bath.masmusic.cep;
+
+import uk.ac.bath.masmusic.common.LatencyHistogram;
+
+/**
+ * Execution metrics of an {@link EsperStatementSubscriber}.
+ *
+ * Every metric is recorded once per delivered snapshot. Times are measured in
+ * microseconds. Subscribers that do not publish events have no publish time.
+ *
+ * @author Javier Dehesa
+ */
+public class SubscriberMetrics {
+
+    /** Number of rows in each snapshot. */
+    private final LatencyHistogram rows;
+
+    /** Time spent receiving the rows of each snapshot (us). */
+    private final LatencyHistogram updateTime;
+
+    /** Time spent analyzing each snapshot once received (us). */
+    private final LatencyHistogram updateEndTime;
+
+    /** Time spent publishing the result of each snapshot (us), if any. */
+    private final LatencyHistogram publishTime;
+
+    /**
+     * Constructor.
+     *
+     * @param publishing
+     *            Whether the subscriber publishes the result of its snapshots
+     */
+    public SubscriberMetrics(boolean publishing) {
+        rows = new LatencyHistogram();
+        updateTime = new LatencyHistogram();
+        updateEndTime = new LatencyHistogram();
+        publishTime = publishing ? new LatencyHistogram() : null;
+    }
+
+    /**
+     * @return Histogram of the number of rows in each snapshot
+     */
+    public LatencyHistogram getRows() {
+        return rows;
+    }
+
+    /**
+     * @return Histogram of the time spent receiving the rows of each snapshot
+     *         (us)
+     */
+    public LatencyHistogram getUpdateTime() {
+        return updateTime;
+    }
+
+    /**
+     * @return Histogram of the time spent analyzing each snapshot once
+     *         received (us)
+     */
+    public LatencyHistogram getUpdateEndTime() {
+        return updateEndTime;
+    }
+
+    /**
+     * @return Histogram of the time spent publishing the result of each
+     *         snapshot (us), or null if the subscriber does not publish
+     */
+    public LatencyHistogram getPublishTime() {
+        return publishTime;
+    }
+
+    /**
+     * @return The number of delivered snapshots
+     */
+    public long getSnapshots() {
+        return rows.getCount();
+    }
+
+    /**
+     * Discard every recorded metric.
+     */
+    public void reset() {
+        rows.reset();
+        updateTime.reset();
+        updateEndTime.reset();
+        if (publishTime != null) {
+            publishTime.reset();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SubscriberMetrics [snapshots=" + getSnapshots() + ", rows=" + rows + ", updateTime=" + updateTime
+                + ", updateEndTime=" + updateEndTime + (publishTime != null ? ", publishTime=" + publishTime : "")
+                + "]";
+    }
+}
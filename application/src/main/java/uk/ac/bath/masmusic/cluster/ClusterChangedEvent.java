@@ -0,0 +1,39 @@
+package uk.ac.bath.masmusic.cluster;
+
+import java.util.List;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * An event informing that the nodes of the cluster have changed.
+ *
+ * @author Javier Dehesa
+ */
+public class ClusterChangedEvent extends ApplicationEvent {
+
+    /** Nodes of the cluster. */
+    private final List<String> nodes;
+
+    /** Serial version UID. */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructor.
+     *
+     * @param source
+     *            Event source
+     * @param nodes
+     *            The nodes of the cluster
+     */
+    public ClusterChangedEvent(Object source, List<String> nodes) {
+        super(source);
+        this.nodes = nodes;
+    }
+
+    /**
+     * @return The nodes of the cluster
+     */
+    public List<String> getNodes() {
+        return nodes;
+    }
+}
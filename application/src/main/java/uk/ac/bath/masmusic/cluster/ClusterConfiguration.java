@@ -0,0 +1,212 @@
+package uk.ac.bath.masmusic.cluster;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.integration.annotation.IntegrationComponentScan;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.channel.ExecutorChannel;
+import org.springframework.integration.dsl.IntegrationFlow;
+import org.springframework.integration.dsl.IntegrationFlows;
+import org.springframework.integration.endpoint.MessageProducerSupport;
+import org.springframework.integration.mqtt.core.MqttPahoClientFactory;
+import org.springframework.integration.mqtt.inbound.MqttPahoMessageDrivenChannelAdapter;
+import org.springframework.integration.mqtt.outbound.MqttPahoMessageHandler;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import com.google.protobuf.MessageLite;
+
+import uk.ac.bath.masmusic.integration.ProtobufMqttMessageConverter;
+import uk.ac.bath.masmusic.protobuf.NodeInfo;
+import uk.ac.bath.masmusic.protobuf.SessionSnapshot;
+import uk.ac.bath.masmusic.protobuf.TimeSpanNote;
+
+/**
+ * MQTT integration configuration of the cluster.
+ *
+ * Only used if the cluster is enabled.
+ *
+ * @author Javier Dehesa
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "masmusic.cluster", name = "enabled", havingValue = "true")
+@IntegrationComponentScan
+public class ClusterConfiguration {
+
+    @Value("${mqtt.qos}")
+    private int     mqttQos;
+    @Value("${mqtt.retain}")
+    private boolean mqttRetain;
+    @Value("${masmusic.cluster.client.id:masmusic-cluster}")
+    private String  clusterClientId;
+    @Value("${masmusic.cluster.queue-capacity:1024}")
+    private int     clusterQueueCapacity;
+
+    @Autowired
+    private MqttPahoClientFactory clientFactory;
+
+    @Autowired
+    private ClusterMembership membership;
+
+    @Autowired
+    private SessionRouter sessionRouter;
+
+    /**
+     * Publisher of the cluster messages.
+     *
+     * A single thread publishes the queued messages, so senders do not wait
+     * for the broker. If the queue is full, senders publish their messages
+     * themselves.
+     *
+     * @return Cluster publisher
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ThreadPoolTaskExecutor clusterExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(clusterQueueCapacity);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setThreadNamePrefix("cluster-publisher-");
+        executor.setDaemon(true);
+        return executor;
+    }
+
+    /**
+     * @return Cluster channel
+     */
+    @Bean
+    public MessageChannel clusterChannel() {
+        return new ExecutorChannel(clusterExecutor());
+    }
+
+    /**
+     * @return Cluster message deliverer
+     */
+    @Bean
+    public MessageHandler clusterConsumer() {
+        MqttPahoMessageHandler handler = new MqttPahoMessageHandler(
+                membership.getClientId(clusterClientId + "-out"), clientFactory);
+        handler.setDefaultQos(mqttQos);
+        // Any message can be delivered, the class is only used to parse
+        handler.setConverter(new ProtobufMqttMessageConverter(TimeSpanNote.class, mqttQos, mqttRetain));
+        return handler;
+    }
+
+    /**
+     * @return Cluster flow
+     */
+    @Bean
+    public IntegrationFlow clusterFlow() {
+        return IntegrationFlows.from(clusterChannel()).handle(clusterConsumer()).get();
+    }
+
+    /**
+     * @return Cluster nodes channel
+     */
+    @Bean
+    public MessageChannel clusterNodesChannel() {
+        return new DirectChannel();
+    }
+
+    /**
+     * @return Cluster nodes message producer
+     */
+    @Bean
+    public MessageProducerSupport clusterNodesProducer() {
+        return producer("-nodes", NodeInfo.class, membership.getNodesTopic(), clusterNodesChannel());
+    }
+
+    /**
+     * @return Cluster nodes flow
+     */
+    @Bean
+    public IntegrationFlow clusterNodesFlow() {
+        return IntegrationFlows.from(clusterNodesChannel())
+                .handle(message -> membership.onNodeInfo((NodeInfo) message.getPayload()))
+                .get();
+    }
+
+    /**
+     * @return Cluster route channel
+     */
+    @Bean
+    public MessageChannel clusterRouteChannel() {
+        return new DirectChannel();
+    }
+
+    /**
+     * @return Cluster route message producer
+     */
+    @Bean
+    public MessageProducerSupport clusterRouteProducer() {
+        return producer("-route", TimeSpanNote.class, membership.getLocalRouteTopic(), clusterRouteChannel());
+    }
+
+    /**
+     * @return Cluster route flow
+     */
+    @Bean
+    public IntegrationFlow clusterRouteFlow() {
+        return IntegrationFlows.from(clusterRouteChannel())
+                .handle(message -> sessionRouter.handleRouted(message))
+                .get();
+    }
+
+    /**
+     * @return Cluster handoff channel
+     */
+    @Bean
+    public MessageChannel clusterHandoffChannel() {
+        return new DirectChannel();
+    }
+
+    /**
+     * @return Cluster handoff message producer
+     */
+    @Bean
+    public MessageProducerSupport clusterHandoffProducer() {
+        return producer("-handoff", SessionSnapshot.class, membership.getHandoffTopic(membership.getNodeId()),
+                clusterHandoffChannel());
+    }
+
+    /**
+     * @return Cluster handoff flow
+     */
+    @Bean
+    public IntegrationFlow clusterHandoffFlow() {
+        return IntegrationFlows.from(clusterHandoffChannel())
+                .handle(message -> sessionRouter.handleHandoff((SessionSnapshot) message.getPayload()))
+                .get();
+    }
+
+    /**
+     * Create a cluster message producer.
+     *
+     * @param clientIdSuffix
+     *            Suffix of the MQTT client id
+     * @param messageClass
+     *            Class of the received messages
+     * @param topic
+     *            Topic of the received messages
+     * @param outputChannel
+     *            Channel of the received messages
+     * @return The message producer
+     */
+    private MessageProducerSupport producer(String clientIdSuffix, Class<? extends MessageLite> messageClass,
+            String topic, MessageChannel outputChannel) {
+        MqttPahoMessageDrivenChannelAdapter adapter = new MqttPahoMessageDrivenChannelAdapter(
+                membership.getClientId(clusterClientId + clientIdSuffix), clientFactory, topic);
+        adapter.setConverter(new ProtobufMqttMessageConverter(messageClass, mqttQos, mqttRetain));
+        adapter.setQos(mqttQos);
+        adapter.setOutputChannel(outputChannel);
+        return adapter;
+    }
+
+}
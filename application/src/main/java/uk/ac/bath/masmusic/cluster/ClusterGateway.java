@@ -0,0 +1,25 @@
+package uk.ac.bath.masmusic.cluster;
+
+import org.springframework.integration.annotation.MessagingGateway;
+import org.springframework.integration.mqtt.support.MqttHeaders;
+import org.springframework.messaging.handler.annotation.Header;
+
+import uk.ac.bath.masmusic.protobuf.NodeInfo;
+import uk.ac.bath.masmusic.protobuf.SessionSnapshot;
+import uk.ac.bath.masmusic.protobuf.TimeSpanNote;
+
+/**
+ * Messaging gateway for the messages between the nodes of a cluster.
+ *
+ * @author Javier Dehesa
+ */
+@MessagingGateway(defaultRequestChannel = "clusterChannel")
+public interface ClusterGateway {
+
+    void send(NodeInfo node, @Header(MqttHeaders.TOPIC) String topic);
+
+    void send(TimeSpanNote note, @Header(MqttHeaders.TOPIC) String topic);
+
+    void send(SessionSnapshot snapshot, @Header(MqttHeaders.TOPIC) String topic);
+
+}
@@ -0,0 +1,353 @@
+package uk.ac.bath.masmusic.cluster;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import uk.ac.bath.masmusic.common.Clock;
+import uk.ac.bath.masmusic.common.ConsistentHashRing;
+import uk.ac.bath.masmusic.protobuf.NodeInfo;
+
+/**
+ * Membership of this node in a cluster of MasMusic nodes.
+ *
+ * Every node publishes a heartbeat periodically on
+ * {@code <cluster topic>/nodes/<node id>}, and considers alive the nodes whose
+ * heartbeats have been received recently. Sessions are assigned to the alive
+ * nodes with a {@link ConsistentHashRing}, so every node agrees on the owner of
+ * each session and a change of nodes only moves a few sessions. A
+ * {@link ClusterChangedEvent} is published whenever the nodes change.
+ *
+ * Membership changes are processed in a dedicated thread, never in the
+ * threads receiving the heartbeats. Heartbeat timeouts are measured in real
+ * time with {@link System#nanoTime()}, not with the application {@link Clock},
+ * which may be a {@link uk.ac.bath.masmusic.common.VirtualClock} running
+ * faster, slower or not at all. When the cluster is disabled, this node owns
+ * every session.
+ *
+ * @author Javier Dehesa
+ */
+@Component
+public class ClusterMembership {
+
+    /** Logger */
+    private static Logger LOG = LoggerFactory.getLogger(ClusterMembership.class);
+
+    /** Whether the cluster is enabled. */
+    @Value("${masmusic.cluster.enabled:false}")
+    private boolean enabled;
+
+    /** Configured node id (empty for a random one). */
+    @Value("${masmusic.cluster.node-id:}")
+    private String configuredNodeId;
+
+    /** Base topic of the cluster messages. */
+    @Value("${masmusic.cluster.topic:cluster}")
+    private String clusterTopic;
+
+    /** Shared subscription group of the nodes. */
+    @Value("${masmusic.cluster.group:masmusic}")
+    private String group;
+
+    /** Time between heartbeats (ms). */
+    @Value("${masmusic.cluster.heartbeat-period:1000}")
+    private long heartbeatPeriod;
+
+    /** Time without heartbeats after which a node is considered gone (ms). */
+    @Value("${masmusic.cluster.node-timeout:5000}")
+    private long nodeTimeout;
+
+    /** Number of points of each node in the hash ring. */
+    @Value("${masmusic.cluster.virtual-nodes:" + ConsistentHashRing.DEFAULT_VIRTUAL_NODES + "}")
+    private int virtualNodes;
+
+    @Autowired
+    private ApplicationEventPublisher publisher;
+
+    /** Application clock. */
+    @Autowired
+    private Clock clock;
+
+    /** Cluster messaging gateway (only available if the cluster is enabled). */
+    @Autowired(required = false)
+    private ClusterGateway clusterGateway;
+
+    /** Id of this node. */
+    private String nodeId;
+
+    /** Time ({@link System#nanoTime()}) of the last heartbeat of each known node. */
+    private final Map<String, Long> lastHeartbeats;
+
+    /** Hash ring of the alive nodes (replaced, never modified, once published). */
+    private volatile ConsistentHashRing ring;
+
+    /** Executor of the heartbeats and membership changes. */
+    private ScheduledExecutorService executor;
+
+    /**
+     * Constructor.
+     */
+    public ClusterMembership() {
+        nodeId = null;
+        lastHeartbeats = new ConcurrentHashMap<>();
+        ring = null;
+        executor = null;
+    }
+
+    /**
+     * Join the cluster, if it is enabled.
+     */
+    @PostConstruct
+    public void start() {
+        nodeId = configuredNodeId.isEmpty() ? UUID.randomUUID().toString() : configuredNodeId;
+        if (nodeId.indexOf('/') >= 0 || nodeId.indexOf('+') >= 0 || nodeId.indexOf('#') >= 0) {
+            throw new IllegalArgumentException("Invalid cluster node id '" + nodeId + "'");
+        }
+        ConsistentHashRing initialRing = new ConsistentHashRing(virtualNodes);
+        initialRing.add(nodeId);
+        ring = initialRing;
+        if (!enabled) {
+            return;
+        }
+        if (clusterGateway == null) {
+            throw new IllegalStateException("No cluster gateway available");
+        }
+        lastHeartbeats.put(nodeId, System.nanoTime());
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "cluster-membership");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::heartbeat, 0, heartbeatPeriod, TimeUnit.MILLISECONDS);
+        LOG.info("Node {} joining cluster", nodeId);
+    }
+
+    /**
+     * Leave the cluster, letting the other nodes know.
+     */
+    @PreDestroy
+    public void stop() {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdownNow();
+        executor = null;
+        try {
+            clusterGateway.send(nodeInfo(true), getNodeTopic(nodeId));
+        } catch (RuntimeException e) {
+            LOG.warn("Could not notify cluster of node leaving: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * @return Whether the cluster is enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return The id of this node
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * @return The alive nodes of the cluster, sorted
+     */
+    public List<String> getNodes() {
+        return ring.getNodes();
+    }
+
+    /**
+     * @param sessionId
+     *            A session id
+     * @return The node owning the session
+     */
+    public String getOwner(String sessionId) {
+        return ring.getNode(sessionId);
+    }
+
+    /**
+     * @param sessionId
+     *            A session id
+     * @return Whether this node owns the session
+     */
+    public boolean isLocal(String sessionId) {
+        return !enabled || nodeId.equals(getOwner(sessionId));
+    }
+
+    /**
+     * MQTT client ids must be unique across the cluster, so the id of the node
+     * is appended to them when the cluster is enabled.
+     *
+     * @param baseClientId
+     *            A base MQTT client id
+     * @return The MQTT client id of this node
+     */
+    public String getClientId(String baseClientId) {
+        return enabled ? baseClientId + "-" + nodeId : baseClientId;
+    }
+
+    /**
+     * Topics are shared by the nodes of the cluster, so each message is
+     * received by only one of them.
+     *
+     * @param topic
+     *            A topic
+     * @return The topic to subscribe to
+     */
+    public String getSubscriptionTopic(String topic) {
+        return enabled ? "$share/" + group + "/" + topic : topic;
+    }
+
+    /**
+     * @param node
+     *            A node id
+     * @return The topic of the heartbeats of the node
+     */
+    public String getNodeTopic(String node) {
+        return clusterTopic + "/nodes/" + node;
+    }
+
+    /**
+     * @return The topic of the heartbeats of every node
+     */
+    public String getNodesTopic() {
+        return clusterTopic + "/nodes/+";
+    }
+
+    /**
+     * @param node
+     *            A node id
+     * @param sessionId
+     *            A session id
+     * @return The topic of the notes routed to a session owned by the node
+     */
+    public String getRouteTopic(String node, String sessionId) {
+        return clusterTopic + "/route/" + node + "/" + sessionId;
+    }
+
+    /**
+     * @return The topic of the notes routed to the sessions of this node
+     */
+    public String getLocalRouteTopic() {
+        return clusterTopic + "/route/" + nodeId + "/+";
+    }
+
+    /**
+     * @param node
+     *            A node id
+     * @return The topic of the sessions handed off to the node
+     */
+    public String getHandoffTopic(String node) {
+        return clusterTopic + "/handoff/" + node;
+    }
+
+    /**
+     * Run a task in the membership thread once a node timeout has passed, so
+     * any change of the nodes in progress has been noticed by then.
+     *
+     * The task is not run if the cluster is disabled or this node has left it.
+     *
+     * @param task
+     *            The task to run
+     */
+    public void runAfterNodeTimeout(Runnable task) {
+        ScheduledExecutorService currentExecutor = executor;
+        if (currentExecutor != null) {
+            try {
+                currentExecutor.schedule(task, nodeTimeout + heartbeatPeriod, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // Leaving the cluster
+            }
+        }
+    }
+
+    /**
+     * Handle a heartbeat of a node.
+     *
+     * @param nodeInfo
+     *            The heartbeat
+     */
+    public void onNodeInfo(NodeInfo nodeInfo) {
+        String node = nodeInfo.getNodeId();
+        if (!enabled || node.isEmpty() || node.equals(nodeId)) {
+            return;
+        }
+        boolean changed;
+        if (nodeInfo.getLeaving()) {
+            changed = lastHeartbeats.remove(node) != null;
+        } else {
+            changed = lastHeartbeats.put(node, System.nanoTime()) == null;
+        }
+        ScheduledExecutorService currentExecutor = executor;
+        if (changed && currentExecutor != null) {
+            currentExecutor.execute(this::updateNodes);
+        }
+    }
+
+    /**
+     * Publish a heartbeat and forget the nodes without recent heartbeats.
+     */
+    private void heartbeat() {
+        long now = System.nanoTime();
+        long timeout = TimeUnit.MILLISECONDS.toNanos(nodeTimeout);
+        lastHeartbeats.put(nodeId, now);
+        try {
+            clusterGateway.send(nodeInfo(false), getNodeTopic(nodeId));
+        } catch (RuntimeException e) {
+            LOG.warn("Could not send cluster heartbeat: {}", e.getMessage());
+        }
+        lastHeartbeats.entrySet().removeIf(e -> !e.getKey().equals(nodeId) && now - e.getValue() > timeout);
+        updateNodes();
+    }
+
+    /**
+     * Rebuild the hash ring if the alive nodes have changed.
+     */
+    private void updateNodes() {
+        ConsistentHashRing currentRing = ring;
+        if (currentRing.size() == lastHeartbeats.size()
+                && lastHeartbeats.keySet().stream().allMatch(currentRing::contains)) {
+            return;
+        }
+        ConsistentHashRing newRing = new ConsistentHashRing(virtualNodes);
+        for (String node : lastHeartbeats.keySet()) {
+            newRing.add(node);
+        }
+        ring = newRing;
+        LOG.info("Cluster nodes: {}", newRing.getNodes());
+        publisher.publishEvent(new ClusterChangedEvent(this, newRing.getNodes()));
+    }
+
+    /**
+     * @param leaving
+     *            Whether this node is leaving
+     * @return The heartbeat of this node
+     */
+    private NodeInfo nodeInfo(boolean leaving) {
+        return NodeInfo.newBuilder()
+                .setNodeId(nodeId)
+                .setTimestamp(clock.currentTimeMillis())
+                .setLeaving(leaving)
+                .build();
+    }
+
+}
@@ -0,0 +1,240 @@
+package uk.ac.bath.masmusic.cluster;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.integration.mqtt.support.MqttHeaders;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessagingException;
+import org.springframework.stereotype.Component;
+
+import uk.ac.bath.masmusic.protobuf.SessionSnapshot;
+import uk.ac.bath.masmusic.protobuf.TimeSpanNote;
+import uk.ac.bath.masmusic.session.SessionManager;
+
+/**
+ * Router of heard messages to the node of the cluster owning their session.
+ *
+ * Heard messages are received by any node of the cluster. The messages of
+ * sessions owned by this node are handled by the local {@link SessionManager},
+ * and the rest are forwarded to their owner on
+ * {@code <cluster topic>/route/<node id>/<session id>}. When the nodes of the
+ * cluster change, the sessions now owned by other nodes are closed and handed
+ * off to them with a snapshot of their learned state, so they do not have to
+ * learn the music again. This includes the default session, so only one node
+ * of the cluster plays it.
+ *
+ * While the nodes change, the sender of a forwarded message and this node may
+ * disagree on the owner of its session. Such messages are not dropped: they
+ * are kept until the next cluster change, or a node timeout at most, and then
+ * handled or forwarded again to the owner at that time. If too many messages
+ * are waiting, new ones are dropped and counted.
+ *
+ * When the cluster is disabled every message is handled locally.
+ *
+ * @author Javier Dehesa
+ */
+@Component
+public class SessionRouter implements MessageHandler {
+
+    /** Logger */
+    private static Logger LOG = LoggerFactory.getLogger(SessionRouter.class);
+
+    /** Local session manager. */
+    @Autowired
+    private SessionManager sessionManager;
+
+    /** Cluster membership. */
+    @Autowired
+    private ClusterMembership membership;
+
+    /** Cluster messaging gateway (only available if the cluster is enabled). */
+    @Autowired(required = false)
+    private ClusterGateway clusterGateway;
+
+    /** Maximum number of forwarded messages waiting for the owner of their session. */
+    @Value("${masmusic.cluster.pending-capacity:1024}")
+    private int pendingCapacity;
+
+    /** Forwarded messages of sessions not owned by this node, in arrival order. */
+    private final Deque<Message<?>> pending;
+
+    /** Number of dropped forwarded messages. */
+    private final AtomicLong dropped;
+
+    /**
+     * Constructor.
+     */
+    public SessionRouter() {
+        pending = new ArrayDeque<>();
+        dropped = new AtomicLong();
+    }
+
+    /**
+     * @return The topics where heard messages are received
+     */
+    public String[] getHearTopics() {
+        return Arrays.stream(sessionManager.getHearTopics())
+                .map(membership::getSubscriptionTopic)
+                .toArray(String[]::new);
+    }
+
+    @Override
+    public void handleMessage(Message<?> message) throws MessagingException {
+        if (!membership.isEnabled()) {
+            sessionManager.handleMessage(message);
+            return;
+        }
+        String id = sessionManager.getSessionId(message);
+        String owner = membership.getOwner(id);
+        if (owner.equals(membership.getNodeId())) {
+            handleLocal(message, id);
+        } else {
+            clusterGateway.send((TimeSpanNote) message.getPayload(), membership.getRouteTopic(owner, id));
+        }
+    }
+
+    /**
+     * Handle a heard message forwarded by another node.
+     *
+     * @param message
+     *            The forwarded message
+     */
+    public void handleRouted(Message<?> message) {
+        Object topic = message.getHeaders().get(MqttHeaders.TOPIC);
+        if (topic == null) {
+            LOG.warn("Ignoring routed message without topic");
+            return;
+        }
+        String id = getRoutedSessionId(message);
+        if (membership.isLocal(id)) {
+            handleLocal(message, id);
+            return;
+        }
+        // The owner changed while the message was on its way, or this node has
+        // not noticed the change yet; handling it now would open the session
+        // again in this node
+        boolean first;
+        synchronized (pending) {
+            if (pending.size() >= pendingCapacity) {
+                if (dropped.getAndIncrement() == 0) {
+                    LOG.warn("Too many forwarded messages waiting, dropping them");
+                }
+                return;
+            }
+            first = pending.isEmpty();
+            pending.add(message);
+        }
+        LOG.debug("Holding message of session {} owned by another node", id);
+        if (first) {
+            membership.runAfterNodeTimeout(this::flushPending);
+        }
+    }
+
+    /**
+     * @return The number of forwarded messages dropped so far
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Handle a session handed off by another node.
+     *
+     * @param snapshot
+     *            Snapshot of the session
+     */
+    public void handleHandoff(SessionSnapshot snapshot) {
+        LOG.info("Receiving session {}", snapshot.getSessionId());
+        sessionManager.restoreSession(snapshot);
+    }
+
+    /**
+     * Close the sessions now owned by other nodes and hand them off.
+     *
+     * @param event
+     *            Cluster change event
+     */
+    @EventListener
+    public void onClusterChanged(ClusterChangedEvent event) {
+        for (String id : sessionManager.getSessionIds()) {
+            String owner = membership.getOwner(id);
+            if (owner == null || owner.equals(membership.getNodeId())) {
+                continue;
+            }
+            SessionSnapshot snapshot = sessionManager.handOffSession(id);
+            if (snapshot == null || !snapshot.hasRhythm()) {
+                // Nothing learned worth sending
+                continue;
+            }
+            LOG.info("Handing off session {} to node {}", id, owner);
+            try {
+                clusterGateway.send(snapshot, membership.getHandoffTopic(owner));
+            } catch (RuntimeException e) {
+                LOG.warn("Could not hand off session {}: {}", id, e.getMessage());
+            }
+        }
+        // After the snapshots, so the new owners restore them first
+        flushPending();
+    }
+
+    /**
+     * Handle or forward again the held forwarded messages, according to the
+     * current owners of their sessions.
+     */
+    private void flushPending() {
+        List<Message<?>> messages;
+        synchronized (pending) {
+            messages = new ArrayList<>(pending);
+            pending.clear();
+        }
+        for (Message<?> message : messages) {
+            String id = getRoutedSessionId(message);
+            String owner = membership.getOwner(id);
+            if (owner.equals(membership.getNodeId())) {
+                handleLocal(message, id);
+                continue;
+            }
+            try {
+                clusterGateway.send((TimeSpanNote) message.getPayload(), membership.getRouteTopic(owner, id));
+            } catch (RuntimeException e) {
+                LOG.warn("Could not forward message of session {}: {}", id, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @param message
+     *            A forwarded message
+     * @return The session id of the message, taken from its topic
+     */
+    private String getRoutedSessionId(Message<?> message) {
+        String topic = message.getHeaders().get(MqttHeaders.TOPIC).toString();
+        return topic.substring(topic.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Handle a heard message in this node.
+     *
+     * @param message
+     *            The heard message
+     * @param id
+     *            Session id of the message
+     */
+    private void handleLocal(Message<?> message, String id) {
+        sessionManager.handleMessage(
+                MessageBuilder.fromMessage(message).setHeader(SessionManager.SESSION_HEADER, id).build());
+    }
+
+}
@@ -0,0 +1,55 @@
+package uk.ac.bath.masmusic.events;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.support.AbstractApplicationContext;
+
+/**
+ * Application events configuration of a session.
+ *
+ * Analysis events are published and listened to by the components of each
+ * session, so this configuration is imported by every session context (see
+ * {@link uk.ac.bath.masmusic.session.SessionConfiguration}) and not used in
+ * the application context.
+ *
+ * @author Javier Dehesa
+ */
+@Configuration
+public class EventsConfiguration {
+
+    /** Event types delivered asynchronously. */
+    private static final Set<Class<? extends ApplicationEvent>> ASYNC_TYPES = Collections.unmodifiableSet(
+            new HashSet<>(Arrays.asList(
+                    RhythmUpdatedEvent.class, ScaleUpdatedEvent.class, MusicInputBufferUpdatedEvent.class)));
+
+    /**
+     * Session event multicaster.
+     *
+     * If asynchronous events are enabled, {@link RhythmUpdatedEvent},
+     * {@link ScaleUpdatedEvent} and {@link MusicInputBufferUpdatedEvent} are
+     * delivered through a {@link RingBufferEventMulticaster}, so the analysis
+     * does not wait for the listeners unless one falls a whole buffer behind.
+     * Otherwise every event is delivered synchronously. The consumer threads
+     * are stopped when the session is closed.
+     *
+     * @param async
+     *            Whether analysis events are delivered asynchronously
+     * @param bufferSize
+     *            Size of the event ring buffer
+     * @return Session event multicaster
+     */
+    @Bean(name = AbstractApplicationContext.APPLICATION_EVENT_MULTICASTER_BEAN_NAME, destroyMethod = "shutdown")
+    public RingBufferEventMulticaster applicationEventMulticaster(
+            @Value("${masmusic.events.async:true}") boolean async,
+            @Value("${masmusic.events.buffer-size:1024}") int bufferSize) {
+        Set<Class<? extends ApplicationEvent>> asyncTypes = async ? ASYNC_TYPES : Collections.emptySet();
+        return new RingBufferEventMulticaster(asyncTypes, bufferSize);
+    }
+}
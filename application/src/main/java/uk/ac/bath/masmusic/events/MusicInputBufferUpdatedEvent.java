@@ -1,16 +1,19 @@
 package uk.ac.bath.masmusic.events;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 import org.springframework.context.ApplicationEvent;
 
+import uk.ac.bath.masmusic.common.ChunkedWindow;
 import uk.ac.bath.masmusic.common.Onset;
 
 /**
  * An event indicating that the music input buffer has been updated.
  *
+ * The input buffer is an immutable snapshot that shares its storage with the
+ * buffer of the tracker, so it is not copied when the event is created and it
+ * can be safely kept by listeners.
+ *
  * @author Javier Dehesa
  */
 public class MusicInputBufferUpdatedEvent extends ApplicationEvent {
@@ -27,11 +30,11 @@ public class MusicInputBufferUpdatedEvent extends ApplicationEvent {
      * @param source
      *            Event source
      * @param inputBuffer
-     *            The input buffer
+     *            Snapshot of the input buffer
      */
-    public MusicInputBufferUpdatedEvent(Object source, List<Onset> inputBuffer) {
+    public MusicInputBufferUpdatedEvent(Object source, ChunkedWindow.Snapshot<Onset> inputBuffer) {
         super(source);
-        this.inputBuffer = Collections.unmodifiableList(new ArrayList<>(inputBuffer));
+        this.inputBuffer = inputBuffer;
     }
 
     /**
@@ -0,0 +1,275 @@
+package uk.ac.bath.masmusic.events;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.SimpleApplicationEventMulticaster;
+import org.springframework.core.ResolvableType;
+
+import uk.ac.bath.masmusic.common.BroadcastRingBuffer;
+
+/**
+ * Application event multicaster delivering some event types asynchronously
+ * through a {@link BroadcastRingBuffer}.
+ *
+ * Events of the asynchronous types are published to the ring buffer and each
+ * listener of those events consumes the buffer from its own thread, waiting
+ * while there are no new events, so slow listeners do not delay the publisher
+ * or the rest of listeners as long as the buffer has room. Asynchronous events
+ * are state changes, so they are never dropped: when a listener falls a whole
+ * buffer behind, the publisher waits for it, or, if the publisher is itself a
+ * listener thread and could wait for itself, the event is delivered
+ * synchronously instead. Every other event is delivered synchronously as usual.
+ *
+ * Consumer threads are started for each listener when it first receives an
+ * asynchronous event, and stopped by {@link #shutdown()}, after which every
+ * event is delivered synchronously.
+ *
+ * @author Javier Dehesa
+ */
+public class RingBufferEventMulticaster extends SimpleApplicationEventMulticaster {
+
+    /** Logger */
+    private static Logger LOG = LoggerFactory.getLogger(RingBufferEventMulticaster.class);
+
+    /** Event types delivered asynchronously. */
+    private final Set<Class<? extends ApplicationEvent>> asyncTypes;
+
+    /** Event ring buffer. */
+    private final BroadcastRingBuffer<ApplicationEvent> ring;
+
+    /** Consumer of each listener of asynchronous events. */
+    private final Map<ApplicationListener<?>, ListenerConsumer> consumers;
+
+    /** Number of publishers waiting for room in the ring buffer. */
+    private int waitingPublishers;
+
+    /** Number of asynchronous events delivered synchronously. */
+    private final AtomicLong synchronous;
+
+    /** Whether the consumers have been stopped. */
+    private boolean shutdown;
+
+    /**
+     * Constructor.
+     *
+     * @param asyncTypes
+     *            Event types delivered asynchronously
+     * @param bufferSize
+     *            Size of the event ring buffer, must be a power of two
+     */
+    public RingBufferEventMulticaster(Set<Class<? extends ApplicationEvent>> asyncTypes, int bufferSize) {
+        this.asyncTypes = asyncTypes;
+        this.ring = new BroadcastRingBuffer<>(bufferSize);
+        this.consumers = new ConcurrentHashMap<>();
+        this.waitingPublishers = 0;
+        this.synchronous = new AtomicLong();
+        this.shutdown = false;
+    }
+
+    @Override
+    public void multicastEvent(ApplicationEvent event) {
+        multicastEvent(event, ResolvableType.forInstance(event));
+    }
+
+    @Override
+    public void multicastEvent(ApplicationEvent event, ResolvableType eventType) {
+        if (!isAsync(event)) {
+            super.multicastEvent(event, eventType);
+            return;
+        }
+        Collection<ApplicationListener<?>> listeners = getApplicationListeners(event, eventType);
+        boolean published;
+        synchronized (ring) {
+            published = !shutdown;
+            if (published) {
+                for (ApplicationListener<?> listener : listeners) {
+                    consumers.computeIfAbsent(listener, ListenerConsumer::new);
+                }
+            }
+            // Publishing now would overwrite events not read by some listener
+            while (published && getMaxLag() >= ring.capacity()) {
+                if (isConsumerThread()) {
+                    published = false;
+                    break;
+                }
+                waitingPublishers++;
+                try {
+                    ring.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    published = false;
+                    break;
+                } finally {
+                    waitingPublishers--;
+                }
+                published = !shutdown;
+            }
+            if (published) {
+                ring.publish(event);
+                ring.notifyAll();
+            }
+        }
+        if (!published) {
+            synchronous.incrementAndGet();
+            super.multicastEvent(event, eventType);
+        }
+    }
+
+    /**
+     * Stop the consumer threads.
+     *
+     * Events not yet delivered to a listener are discarded.
+     */
+    public void shutdown() {
+        synchronized (ring) {
+            shutdown = true;
+            for (ListenerConsumer consumer : consumers.values()) {
+                consumer.thread.interrupt();
+            }
+            consumers.clear();
+            // Release the waiting publishers
+            ring.notifyAll();
+        }
+    }
+
+    /**
+     * @return The number of events published to the ring buffer
+     */
+    public long getPublishedCount() {
+        return ring.getPublished() + 1;
+    }
+
+    /**
+     * @return The lag and number of missed events of every listener
+     */
+    public String[] getListenerLags() {
+        List<String> lags = new ArrayList<>();
+        for (ListenerConsumer consumer : consumers.values()) {
+            lags.add(String.format("%s: lag=%d, missed=%d", consumer.listener,
+                    consumer.cursor.getLag(), consumer.cursor.getMissed()));
+        }
+        return lags.toArray(new String[lags.size()]);
+    }
+
+    /**
+     * @return The number of asynchronous events delivered synchronously
+     *         because some listener was too far behind
+     */
+    public long getSynchronousCount() {
+        return synchronous.get();
+    }
+
+    /**
+     * @return The maximum lag of any listener
+     */
+    public long getMaxLag() {
+        return consumers.values().stream().mapToLong(c -> c.cursor.getLag()).max().orElse(0);
+    }
+
+    /**
+     * @return true if the current thread is the thread of a listener consumer
+     */
+    private boolean isConsumerThread() {
+        Thread current = Thread.currentThread();
+        for (ListenerConsumer consumer : consumers.values()) {
+            if (consumer.thread == current) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param event
+     *            An event
+     * @return true if the event is delivered asynchronously, false otherwise
+     */
+    private boolean isAsync(ApplicationEvent event) {
+        for (Class<? extends ApplicationEvent> asyncType : asyncTypes) {
+            if (asyncType.isInstance(event)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Consumer of the ring buffer delivering events to a single listener.
+     */
+    private class ListenerConsumer implements Runnable {
+
+        /** Listener. */
+        final ApplicationListener<?> listener;
+
+        /** Reading position in the ring buffer. */
+        final BroadcastRingBuffer<ApplicationEvent>.Cursor cursor;
+
+        /** Consumer thread. */
+        final Thread thread;
+
+        /**
+         * Constructor.
+         *
+         * Starts the consumer thread.
+         *
+         * @param listener
+         *            Listener receiving the events
+         */
+        ListenerConsumer(ApplicationListener<?> listener) {
+            this.listener = listener;
+            this.cursor = ring.newCursor();
+            this.thread = new Thread(this, "event-bus-" + consumers.size());
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    ApplicationEvent event = take();
+                    if (!getApplicationListeners(event, ResolvableType.forInstance(event)).contains(listener)) {
+                        continue;
+                    }
+                    try {
+                        invokeListener(listener, event);
+                    } catch (RuntimeException e) {
+                        LOG.error("Error delivering {} to {}", event, listener, e);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Stop consuming
+            }
+        }
+
+        /**
+         * Read the next event, waiting until there is one.
+         *
+         * @return The next event
+         * @throws InterruptedException
+         *             If the thread is interrupted while waiting
+         */
+        private ApplicationEvent take() throws InterruptedException {
+            synchronized (ring) {
+                ApplicationEvent event;
+                while ((event = cursor.poll()) == null) {
+                    ring.wait();
+                }
+                if (waitingPublishers > 0) {
+                    ring.notifyAll();
+                }
+                return event;
+            }
+        }
+    }
+}
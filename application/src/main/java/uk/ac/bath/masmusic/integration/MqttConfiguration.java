@@ -5,7 +5,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.integration.annotation.IntegrationComponentScan;
-import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.channel.ExecutorChannel;
 import org.springframework.integration.channel.PublishSubscribeChannel;
 import org.springframework.integration.dsl.IntegrationFlow;
 import org.springframework.integration.dsl.IntegrationFlows;
@@ -16,9 +16,11 @@ import org.springframework.integration.mqtt.inbound.MqttPahoMessageDrivenChannel
 import org.springframework.integration.mqtt.outbound.MqttPahoMessageHandler;
 import org.springframework.messaging.MessageChannel;
 import org.springframework.messaging.MessageHandler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
-import uk.ac.bath.masmusic.cep.EsperMessageHandler;
-import uk.ac.bath.masmusic.mas.MasMusic;
+import uk.ac.bath.masmusic.cluster.ClusterMembership;
+import uk.ac.bath.masmusic.cluster.SessionRouter;
+import uk.ac.bath.masmusic.journal.SessionJournal;
 import uk.ac.bath.masmusic.protobuf.TimeSpanNote;
 
 /**
@@ -43,18 +45,23 @@ public class MqttConfiguration {
     private boolean mqttRetain;
     @Value("${mqtt.hear.client.id}")
     private String  mqttHearClientId;
-    @Value("${mqtt.hear.topic}")
-    private String  mqttHearTopic;
     @Value("${mqtt.play.client.id}")
     private String  mqttPlayClientId;
     @Value("${mqtt.play.topic}")
     private String  mqttPlayTopic;
+    @Value("${mqtt.play.queue-capacity:1024}")
+    private int     mqttPlayQueueCapacity;
+    @Value("${mqtt.play.offer-timeout:50}")
+    private long    mqttPlayOfferTimeout;
 
     @Autowired
-    private EsperMessageHandler esperMessageHandler;
+    private SessionRouter sessionRouter;
 
     @Autowired
-    private MasMusic masMusic;
+    private ClusterMembership clusterMembership;
+
+    @Autowired
+    private SessionJournal sessionJournal;
 
     /**
      * @return MQTT client factory
@@ -82,7 +89,7 @@ public class MqttConfiguration {
     @Bean
     public MessageProducerSupport hearProducer() {
         MqttPahoMessageDrivenChannelAdapter adapter = new MqttPahoMessageDrivenChannelAdapter(
-                mqttHearClientId, clientFactory(), mqttHearTopic);
+                clusterMembership.getClientId(mqttHearClientId), clientFactory(), sessionRouter.getHearTopics());
         adapter.setConverter(new ProtobufMqttMessageConverter(TimeSpanNote.class, mqttQos, mqttRetain));
         adapter.setQos(mqttQos);
         adapter.setOutputChannel(hearChannel());
@@ -90,19 +97,19 @@ public class MqttConfiguration {
     }
 
     /**
-     * @return MQTT hear MasMusic flow
+     * @return MQTT hear session flow
      */
     @Bean
-    public IntegrationFlow hearMasMusicFlow() {
-        return IntegrationFlows.from(hearChannel()).handle(masMusic).get();
+    public IntegrationFlow hearSessionFlow() {
+        return IntegrationFlows.from(hearChannel()).handle(sessionRouter).get();
     }
 
     /**
-     * @return MQTT hear Esper flow
+     * @return MQTT hear journal flow
      */
     @Bean
-    public IntegrationFlow hearEsperFlow() {
-        return IntegrationFlows.from(hearChannel()).handle(esperMessageHandler).get();
+    public IntegrationFlow hearJournalFlow() {
+        return IntegrationFlows.from(hearChannel()).handle(sessionJournal).get();
     }
 
     /**
@@ -110,19 +117,51 @@ public class MqttConfiguration {
      */
     @Bean
     public MessageHandler playConsumer() {
-        MqttPahoMessageHandler handler = new MqttPahoMessageHandler(mqttPlayClientId, clientFactory());
+        MqttPahoMessageHandler handler = new MqttPahoMessageHandler(clusterMembership.getClientId(mqttPlayClientId),
+                clientFactory());
         handler.setDefaultTopic(mqttPlayTopic);
         handler.setDefaultQos(mqttQos);
         handler.setConverter(new ProtobufMqttMessageConverter(TimeSpanNote.class, mqttQos, mqttRetain));
         return handler;
     }
 
+    /**
+     * MQTT play publisher.
+     *
+     * A single thread publishes the queued messages, so senders do not wait
+     * for the broker and the publishing order is preserved. If the queue is
+     * full, senders wait for room in it a bounded time and then drop their
+     * message (see {@link #playRejectionPolicy()}), so session workers are
+     * never stalled by a slow broker.
+     *
+     * @return MQTT play publisher
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ThreadPoolTaskExecutor playExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(mqttPlayQueueCapacity);
+        executor.setRejectedExecutionHandler(playRejectionPolicy());
+        executor.setThreadNamePrefix("mqtt-play-");
+        executor.setDaemon(true);
+        return executor;
+    }
+
+    /**
+     * @return Policy of the MQTT play publisher when its queue is full
+     */
+    @Bean
+    public TimedOfferPolicy playRejectionPolicy() {
+        return new TimedOfferPolicy("Play publisher", mqttPlayOfferTimeout);
+    }
+
     /**
      * @return MQTT play channel
      */
     @Bean
     public MessageChannel playChannel() {
-        return new DirectChannel();
+        return new ExecutorChannel(playExecutor());
     }
 
     /**
@@ -1,12 +1,18 @@
 package uk.ac.bath.masmusic.integration;
 
 import org.springframework.integration.annotation.MessagingGateway;
+import org.springframework.integration.mqtt.support.MqttHeaders;
+import org.springframework.messaging.handler.annotation.Header;
 
 import uk.ac.bath.masmusic.protobuf.TimeSpanNote;
+import uk.ac.bath.masmusic.protobuf.TimeSpanNoteBatch;
 
 /**
  * Messaging gateway for {@link TimeSpanNote}s.
  *
+ * Note batches must be played on a different topic than single notes, so
+ * receivers know the type of each message.
+ *
  * @author Javier Dehesa
  */
 @MessagingGateway(defaultRequestChannel = "playChannel")
@@ -14,4 +20,10 @@ public interface MusicGateway {
 
     void play(TimeSpanNote note);
 
+    void play(TimeSpanNoteBatch notes);
+
+    void play(TimeSpanNote note, @Header(MqttHeaders.TOPIC) String topic);
+
+    void play(TimeSpanNoteBatch notes, @Header(MqttHeaders.TOPIC) String topic);
+
 }
@@ -0,0 +1,79 @@
+package uk.ac.bath.masmusic.integration;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rejected execution handler waiting a bounded time for room in the queue of
+ * the executor.
+ *
+ * Tasks that still do not fit after the timeout are dropped and counted, so
+ * the submitting threads are never stalled for longer than that by a slow
+ * consumer.
+ *
+ * @author Javier Dehesa
+ */
+public class TimedOfferPolicy implements RejectedExecutionHandler {
+
+    /** Logger */
+    private static Logger LOG = LoggerFactory.getLogger(TimedOfferPolicy.class);
+
+    /** Name of the executor, for the log. */
+    private final String name;
+
+    /** Maximum time waited for room in the queue (ms). */
+    private final long timeout;
+
+    /** Number of dropped tasks. */
+    private final AtomicLong dropped;
+
+    /**
+     * Constructor.
+     *
+     * @param name
+     *            Name of the executor, for the log
+     * @param timeout
+     *            Maximum time waited for room in the queue (ms)
+     * @throws IllegalArgumentException
+     *             If the timeout is negative
+     */
+    public TimedOfferPolicy(String name, long timeout) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("The timeout cannot be negative");
+        }
+        this.name = name;
+        this.timeout = timeout;
+        this.dropped = new AtomicLong();
+    }
+
+    @Override
+    public void rejectedExecution(Runnable task, ThreadPoolExecutor pool) {
+        if (pool.isShutdown()) {
+            throw new RejectedExecutionException(name + " is shut down");
+        }
+        boolean queued;
+        try {
+            queued = pool.getQueue().offer(task, timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            queued = false;
+        }
+        if (!queued && dropped.getAndIncrement() == 0) {
+            LOG.warn("{} queue is full, dropping tasks", name);
+        }
+    }
+
+    /**
+     * @return The number of tasks dropped so far
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+}
@@ -0,0 +1,118 @@
+package uk.ac.bath.masmusic.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.google.protobuf.CodedInputStream;
+
+import uk.ac.bath.masmusic.protobuf.JournalEntry;
+
+/**
+ * Reader of session journals written by a {@link JournalWriter}.
+ *
+ * Entries are read in the order they were written, going through every
+ * segment of the journal.
+ *
+ * @author Javier Dehesa
+ */
+public class JournalReader implements Closeable {
+
+    /** Remaining segments. */
+    private final Iterator<Path> segments;
+
+    /** Channel of the current segment. */
+    private FileChannel channel;
+
+    /** Mapped buffer of the current segment. */
+    private MappedByteBuffer buffer;
+
+    /** Deserialization buffer. */
+    private byte[] scratch;
+
+    /**
+     * Constructor.
+     *
+     * @param directory
+     *            Journal directory
+     * @throws IOException
+     *             If the journal could not be opened
+     */
+    public JournalReader(Path directory) throws IOException {
+        List<Path> segmentList;
+        try (Stream<Path> files = Files.list(directory)) {
+            segmentList = files
+                    .filter(p -> p.getFileName().toString().endsWith(JournalWriter.SEGMENT_EXTENSION))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        this.segments = segmentList.iterator();
+        this.channel = null;
+        this.buffer = null;
+        this.scratch = new byte[256];
+    }
+
+    /**
+     * Read the next entry of the journal.
+     *
+     * @return The next entry, or null if the end of the journal has been
+     *         reached
+     * @throws IOException
+     *             If the journal could not be read or is corrupt
+     */
+    public JournalEntry read() throws IOException {
+        while (buffer == null || buffer.remaining() < Integer.BYTES || buffer.getInt(buffer.position()) == 0) {
+            if (!nextSegment()) {
+                return null;
+            }
+        }
+        int size = buffer.getInt();
+        if (size < 0 || size > buffer.remaining()) {
+            throw new IOException("Corrupt journal segment (invalid entry size " + size + ")");
+        }
+        if (scratch.length < size) {
+            scratch = new byte[Math.max(size, 2 * scratch.length)];
+        }
+        buffer.get(scratch, 0, size);
+        return JournalEntry.parseFrom(CodedInputStream.newInstance(scratch, 0, size));
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer = null;
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * Open the next segment of the journal.
+     *
+     * @return true if a new segment was opened, false if there are no more
+     *         segments
+     * @throws IOException
+     *             If the segment could not be opened or is not valid
+     */
+    private boolean nextSegment() throws IOException {
+        close();
+        if (!segments.hasNext()) {
+            return false;
+        }
+        Path segment = segments.next();
+        channel = FileChannel.open(segment, StandardOpenOption.READ);
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (buffer.remaining() < Integer.BYTES || buffer.getInt() != JournalWriter.MAGIC) {
+            throw new IOException("Invalid journal segment " + segment);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,155 @@
+package uk.ac.bath.masmusic.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.google.protobuf.CodedOutputStream;
+
+import uk.ac.bath.masmusic.protobuf.JournalEntry;
+
+/**
+ * Writer of session journals.
+ *
+ * A journal is a directory of fixed-size, memory-mapped segment files. Each
+ * segment starts with a magic number followed by a sequence of records, each
+ * made of the length of a serialized {@link JournalEntry} and the entry
+ * itself. The length of a record is written after its contents, so a partially
+ * written record is never visible to a reader. When an entry does not fit in
+ * the current segment a new one is started; the unused space left at the end
+ * of a segment remains zeroed.
+ *
+ * A writer is not thread-safe.
+ *
+ * @author Javier Dehesa
+ */
+public class JournalWriter implements Closeable {
+
+    /** Magic number at the beginning of every segment ("MMJ1"). */
+    static final int MAGIC = 0x4D4D4A31;
+
+    /** Extension of segment files. */
+    static final String SEGMENT_EXTENSION = ".journal";
+
+    /** Segment file name format. */
+    private static final String SEGMENT_FORMAT = "%05d" + SEGMENT_EXTENSION;
+
+    /** Journal directory. */
+    private final Path directory;
+
+    /** Size of each segment in bytes. */
+    private final int segmentSize;
+
+    /** Index of the current segment. */
+    private int segmentIndex;
+
+    /** Channel of the current segment. */
+    private FileChannel channel;
+
+    /** Mapped buffer of the current segment. */
+    private MappedByteBuffer buffer;
+
+    /** Serialization buffer. */
+    private byte[] scratch;
+
+    /**
+     * Constructor.
+     *
+     * @param directory
+     *            Journal directory, created if it does not exist
+     * @param segmentSize
+     *            Size of each segment in bytes
+     * @throws IOException
+     *             If the journal could not be created
+     */
+    public JournalWriter(Path directory, int segmentSize) throws IOException {
+        if (segmentSize < 2 * Integer.BYTES) {
+            throw new IllegalArgumentException("The segment size is too small");
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.segmentIndex = -1;
+        this.channel = null;
+        this.buffer = null;
+        this.scratch = new byte[256];
+        Files.createDirectories(directory);
+        roll();
+    }
+
+    /**
+     * Append an entry to the journal.
+     *
+     * @param entry
+     *            The appended entry
+     * @throws IOException
+     *             If the entry could not be written
+     */
+    public void append(JournalEntry entry) throws IOException {
+        if (buffer == null) {
+            throw new IOException("The journal is closed");
+        }
+        int size = entry.getSerializedSize();
+        if (Integer.BYTES + size > segmentSize - Integer.BYTES) {
+            throw new IOException("Journal entry too large (" + size + " bytes)");
+        }
+        if (buffer.remaining() < Integer.BYTES + size) {
+            roll();
+        }
+        if (scratch.length < size) {
+            scratch = new byte[Math.max(size, 2 * scratch.length)];
+        }
+        CodedOutputStream output = CodedOutputStream.newInstance(scratch, 0, size);
+        entry.writeTo(output);
+        output.checkNoSpaceLeft();
+        int position = buffer.position();
+        buffer.position(position + Integer.BYTES);
+        buffer.put(scratch, 0, size);
+        buffer.putInt(position, size);
+    }
+
+    /**
+     * Force the contents of the current segment to the storage device.
+     */
+    public void flush() {
+        if (buffer != null) {
+            buffer.force();
+        }
+    }
+
+    /**
+     * @return The index of the current segment
+     */
+    public int getSegmentIndex() {
+        return segmentIndex;
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        buffer = null;
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * Close the current segment and start a new one.
+     *
+     * @throws IOException
+     *             If the new segment could not be created
+     */
+    private void roll() throws IOException {
+        close();
+        segmentIndex++;
+        Path segment = directory.resolve(String.format(SEGMENT_FORMAT, segmentIndex));
+        channel = FileChannel.open(segment, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        buffer.putInt(MAGIC);
+    }
+}
@@ -0,0 +1,303 @@
+package uk.ac.bath.masmusic.journal;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessagingException;
+import org.springframework.stereotype.Component;
+
+import uk.ac.bath.masmusic.common.Clock;
+import uk.ac.bath.masmusic.common.Rhythm;
+import uk.ac.bath.masmusic.common.Scale;
+import uk.ac.bath.masmusic.protobuf.JournalEntry;
+import uk.ac.bath.masmusic.protobuf.TimeSpanNote;
+import uk.ac.bath.masmusic.session.SessionManager;
+import uk.ac.bath.masmusic.session.SessionSnapshots;
+
+/**
+ * Session journal.
+ *
+ * Records every heard and played note, and every rhythm and scale update, in
+ * a {@link JournalWriter}. Recording never blocks the caller: entries are
+ * queued and written by a dedicated thread, and entries that do not fit in the
+ * queue are dropped and counted. Each run of the application is recorded in
+ * its own subdirectory of the journal directory, named after the time the
+ * journal was started. Every entry records the id of its session; the rhythm
+ * and scale updates of each session are recorded by its
+ * {@link SessionJournalRecorder}.
+ *
+ * The journal also handles hear messages, so it can be subscribed directly to
+ * the hear channel.
+ *
+ * @author Javier Dehesa
+ */
+@Component
+public class SessionJournal implements MessageHandler {
+
+    /** Logger */
+    private static Logger LOG = LoggerFactory.getLogger(SessionJournal.class);
+
+    /** Maximum time to wait for the journal to be closed when stopped (ms). */
+    private static final long STOP_TIMEOUT = 5000;
+
+    /** Whether the journal is enabled. */
+    @Value("${masmusic.journal.enabled:false}")
+    private boolean enabled;
+
+    /** Journal directory. */
+    @Value("${masmusic.journal.directory:journal}")
+    private String directory;
+
+    /** Size of each journal segment (bytes). */
+    @Value("${masmusic.journal.segment-size:16777216}")
+    private int segmentSize;
+
+    /** Maximum number of entries waiting to be written. */
+    @Value("${masmusic.journal.capacity:65536}")
+    private int capacity;
+
+    /** Application clock. */
+    @Autowired
+    private Clock clock;
+
+    /** Session manager. */
+    @Autowired
+    private SessionManager sessionManager;
+
+    /** Entries waiting to be written. */
+    private BlockingQueue<JournalEntry> queue;
+
+    /** Number of written entries. */
+    private final AtomicLong written;
+
+    /** Number of dropped entries. */
+    private final AtomicLong dropped;
+
+    /** Whether the journal is running. */
+    private final AtomicBoolean started;
+
+    /** Whether the journal must finish. */
+    private final AtomicBoolean finish;
+
+    /** Thread writing the journal. */
+    private Thread writerThread;
+
+    /**
+     * Constructor.
+     */
+    public SessionJournal() {
+        queue = null;
+        written = new AtomicLong();
+        dropped = new AtomicLong();
+        started = new AtomicBoolean(false);
+        finish = new AtomicBoolean(false);
+        writerThread = null;
+    }
+
+    /**
+     * Start the journal, if it is enabled.
+     *
+     * @throws IOException
+     *             If the journal could not be created
+     */
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled || started.get()) {
+            return;
+        }
+        Path sessionDirectory = Paths.get(directory, Long.toString(clock.currentTimeMillis()));
+        JournalWriter writer = new JournalWriter(sessionDirectory, segmentSize);
+        queue = new ArrayBlockingQueue<>(capacity);
+        finish.set(false);
+        started.set(true);
+        LOG.info("Recording session journal in {}", sessionDirectory);
+        writerThread = new Thread(() -> write(writer), "session-journal");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Stop the journal.
+     *
+     * Entries already queued are still written, waiting for the journal to be
+     * forced and closed up to {@link #STOP_TIMEOUT} ms.
+     */
+    @PreDestroy
+    public void stop() {
+        finish.set(true);
+        Thread thread = writerThread;
+        if (thread == null) {
+            return;
+        }
+        try {
+            thread.join(STOP_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            LOG.warn("Session journal not closed after {} ms", STOP_TIMEOUT);
+        } else {
+            writerThread = null;
+        }
+    }
+
+    /**
+     * @return true if the journal is recording, false otherwise
+     */
+    public boolean isRecording() {
+        return started.get();
+    }
+
+    /**
+     * @return The number of entries written so far
+     */
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    /**
+     * @return The number of entries dropped so far
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    @Override
+    public void handleMessage(Message<?> message) throws MessagingException {
+        Object payload = message.getPayload();
+        if (payload instanceof TimeSpanNote) {
+            recordHeard((TimeSpanNote) payload, sessionManager.getSessionId(message));
+        }
+    }
+
+    /**
+     * Record a heard note.
+     *
+     * @param note
+     *            The heard note
+     * @param sessionId
+     *            Id of the session of the note
+     */
+    public void recordHeard(TimeSpanNote note, String sessionId) {
+        if (started.get()) {
+            record(entry(sessionId).setHeard(note).build());
+        }
+    }
+
+    /**
+     * Record a played note.
+     *
+     * @param note
+     *            The played note
+     * @param sessionId
+     *            Id of the session of the note
+     */
+    public void recordPlayed(TimeSpanNote note, String sessionId) {
+        if (started.get()) {
+            record(entry(sessionId).setPlayed(note).build());
+        }
+    }
+
+    /**
+     * Record a rhythm update.
+     *
+     * @param rhythm
+     *            The updated rhythm
+     * @param sessionId
+     *            Id of the session of the rhythm
+     */
+    public void recordRhythm(Rhythm rhythm, String sessionId) {
+        if (started.get()) {
+            record(entry(sessionId).setRhythm(SessionSnapshots.toRhythmInfo(rhythm)).build());
+        }
+    }
+
+    /**
+     * Record a scale update.
+     *
+     * @param scale
+     *            The updated scale
+     * @param sessionId
+     *            Id of the session of the scale
+     */
+    public void recordScale(Scale scale, String sessionId) {
+        if (started.get()) {
+            record(entry(sessionId).setScale(SessionSnapshots.toScaleInfo(scale)).build());
+        }
+    }
+
+    /**
+     * @param sessionId
+     *            Id of the session of the entry
+     * @return A builder of a journal entry of the session at the current time
+     */
+    private JournalEntry.Builder entry(String sessionId) {
+        return JournalEntry.newBuilder().setTimestamp(clock.currentTimeMillis()).setSessionId(sessionId);
+    }
+
+    /**
+     * Queue an entry to be written.
+     *
+     * @param entry
+     *            The recorded entry
+     */
+    private void record(JournalEntry entry) {
+        if (!queue.offer(entry)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Write queued entries until the journal is stopped.
+     *
+     * @param writer
+     *            Journal writer
+     */
+    private void write(JournalWriter writer) {
+        List<JournalEntry> pending = new ArrayList<>();
+        try {
+            while (!finish.get() || !queue.isEmpty()) {
+                JournalEntry entry = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (entry == null) {
+                    continue;
+                }
+                pending.add(entry);
+                queue.drainTo(pending);
+                for (JournalEntry pendingEntry : pending) {
+                    writer.append(pendingEntry);
+                }
+                written.addAndGet(pending.size());
+                pending.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            LOG.error("Could not write session journal, recording stopped", e);
+        } finally {
+            started.set(false);
+            try {
+                writer.close();
+            } catch (IOException e) {
+                LOG.error("Could not close session journal", e);
+            }
+            LOG.info("Session journal closed: written={}, dropped={}", written.get(), dropped.get());
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package uk.ac.bath.masmusic.journal;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+
+import uk.ac.bath.masmusic.events.RhythmUpdatedEvent;
+import uk.ac.bath.masmusic.events.ScaleUpdatedEvent;
+import uk.ac.bath.masmusic.session.Session;
+
+/**
+ * Recorder of the rhythm and scale updates of a session in the
+ * {@link SessionJournal}.
+ *
+ * Lives in the application context of the session, so it only receives the
+ * events published in the session.
+ *
+ * @author Javier Dehesa
+ */
+public class SessionJournalRecorder {
+
+    /** Session journal. */
+    @Autowired
+    private SessionJournal sessionJournal;
+
+    /** Recorded session. */
+    @Autowired
+    private Session session;
+
+    /**
+     * Handle a rhythm update event.
+     *
+     * @param event
+     *            The rhythm update event
+     */
+    @EventListener
+    public void onRhythmUpdated(RhythmUpdatedEvent event) {
+        sessionJournal.recordRhythm(event.getRhythm(), session.getId());
+    }
+
+    /**
+     * Handle a scale update event.
+     *
+     * @param event
+     *            The scale update event
+     */
+    @EventListener
+    public void onScaleUpdated(ScaleUpdatedEvent event) {
+        sessionJournal.recordScale(event.getScale(), session.getId());
+    }
+
+}
@@ -0,0 +1,142 @@
+package uk.ac.bath.masmusic.journal;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.stereotype.Component;
+
+import uk.ac.bath.masmusic.application.ClockConfiguration;
+import uk.ac.bath.masmusic.common.Clock;
+import uk.ac.bath.masmusic.common.VirtualClock;
+import uk.ac.bath.masmusic.protobuf.JournalEntry;
+import uk.ac.bath.masmusic.protobuf.TimeSpanNote;
+import uk.ac.bath.masmusic.session.SessionManager;
+
+/**
+ * Replays a recorded session journal.
+ *
+ * The heard notes of the journal are fed, in order, to the
+ * {@link SessionManager}, each one to the session it was recorded in (or the
+ * default session, for journals without session ids), with their timestamps
+ * moved to the current time line. Played notes and rhythm and scale updates
+ * are not replayed, since they are produced again by the application.
+ *
+ * When the clock mode is {@value ClockConfiguration#MODE_MANUAL} the replayer
+ * advances the clock itself, waiting between notes the recorded time divided
+ * by the clock rate; otherwise, it waits for the application clock to reach
+ * the time of each note.
+ *
+ * @author Javier Dehesa
+ */
+@Component
+public class SessionReplayer implements CommandLineRunner {
+
+    /** Logger */
+    private static Logger LOG = LoggerFactory.getLogger(SessionReplayer.class);
+
+    /** Directory of the replayed session journal (empty for no replay). */
+    @Value("${masmusic.journal.replay:}")
+    private String replayDirectory;
+
+    /** Clock mode. */
+    @Value("${masmusic.clock.mode:" + ClockConfiguration.MODE_SYSTEM + "}")
+    private String clockMode;
+
+    /** Application clock. */
+    @Autowired
+    private Clock clock;
+
+    /** Session manager. */
+    @Autowired
+    private SessionManager sessionManager;
+
+    @Override
+    public void run(String... args) {
+        if (replayDirectory.isEmpty()) {
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                replay();
+            } catch (IOException e) {
+                LOG.error("Could not replay session journal", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "session-replayer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Replay the configured session journal.
+     *
+     * @throws IOException
+     *             If the journal could not be read
+     * @throws InterruptedException
+     *             If the replay is interrupted
+     */
+    public void replay() throws IOException, InterruptedException {
+        LOG.info("Replaying session journal {}", replayDirectory);
+        boolean manual = ClockConfiguration.MODE_MANUAL.equalsIgnoreCase(clockMode)
+                && clock instanceof VirtualClock;
+        long replayed = 0;
+        long offset = 0;
+        long previous = Long.MIN_VALUE;
+        try (JournalReader reader = new JournalReader(Paths.get(replayDirectory))) {
+            JournalEntry entry;
+            while ((entry = reader.read()) != null) {
+                if (!entry.hasHeard()) {
+                    continue;
+                }
+                if (previous == Long.MIN_VALUE) {
+                    offset = clock.currentTimeMillis() - entry.getTimestamp();
+                    previous = entry.getTimestamp();
+                }
+                long due = entry.getTimestamp() + offset;
+                if (manual) {
+                    sleep(entry.getTimestamp() - previous);
+                    ((VirtualClock) clock).advanceTo(due);
+                } else {
+                    long now;
+                    while ((now = clock.currentTimeMillis()) < due) {
+                        Thread.sleep(Math.max(1, Math.round((due - now) / clock.getRate())));
+                    }
+                }
+                previous = entry.getTimestamp();
+                TimeSpanNote heard = entry.getHeard();
+                TimeSpanNote note = heard.toBuilder().setTimestamp(heard.getTimestamp() + offset).build();
+                MessageBuilder<TimeSpanNote> builder = MessageBuilder.withPayload(note);
+                if (entry.hasSessionId()) {
+                    builder.setHeader(SessionManager.SESSION_HEADER, entry.getSessionId());
+                }
+                Message<TimeSpanNote> message = builder.build();
+                sessionManager.handleMessage(message);
+                replayed++;
+            }
+        }
+        LOG.info("Session journal replay finished: {} notes replayed", replayed);
+    }
+
+    /**
+     * Wait for some clock time.
+     *
+     * @param millis
+     *            Clock time to wait (ms)
+     * @throws InterruptedException
+     *             If the wait is interrupted
+     */
+    private void sleep(long millis) throws InterruptedException {
+        long realMillis = Math.round(millis / clock.getRate());
+        if (realMillis > 0) {
+            Thread.sleep(realMillis);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package uk.ac.bath.masmusic.mas;
+
+import jason.JasonException;
+import jason.asSemantics.DefaultArithFunction;
+import jason.asSemantics.TransitionSystem;
+import jason.asSyntax.NumberTerm;
+import jason.asSyntax.Term;
+
+/**
+ * ASL function {@code masmusic.delay(D)}, converting a duration of the
+ * application clock into the real time duration that should be waited for.
+ *
+ * Waits in agent plans (through {@code .wait}) always take real time, so they
+ * must be scaled when the application clock runs faster than real time.
+ *
+ * @author Javier Dehesa
+ */
+public class ClockDelayFunction extends DefaultArithFunction {
+
+    @Override
+    public String getName() {
+        return "masmusic.delay";
+    }
+
+    @Override
+    public boolean checkArity(int a) {
+        return a == 1;
+    }
+
+    @Override
+    public double evaluate(TransitionSystem ts, Term[] args) throws Exception {
+        if (!args[0].isNumeric()) {
+            throw new JasonException("The argument of " + getName() + " must be a number");
+        }
+        double delay = ((NumberTerm) args[0]).solve();
+        if (ts.getUserAgArch() instanceof MasMusicAbstractAgent) {
+            return delay / ((MasMusicAbstractAgent) ts.getUserAgArch()).getClockRate();
+        } else {
+            return delay;
+        }
+    }
+}
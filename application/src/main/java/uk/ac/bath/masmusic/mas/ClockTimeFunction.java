@@ -0,0 +1,36 @@
+package uk.ac.bath.masmusic.mas;
+
+import jason.asSemantics.DefaultArithFunction;
+import jason.asSemantics.TransitionSystem;
+import jason.asSyntax.Term;
+
+/**
+ * ASL function {@code masmusic.time}, giving the current time of the
+ * application clock in milliseconds.
+ *
+ * This function replaces {@code system.time} in agent plans, so agents follow
+ * the virtual time line when the application is not run on the system clock.
+ *
+ * @author Javier Dehesa
+ */
+public class ClockTimeFunction extends DefaultArithFunction {
+
+    @Override
+    public String getName() {
+        return "masmusic.time";
+    }
+
+    @Override
+    public boolean checkArity(int a) {
+        return a == 0;
+    }
+
+    @Override
+    public double evaluate(TransitionSystem ts, Term[] args) throws Exception {
+        if (ts.getUserAgArch() instanceof MasMusicAbstractAgent) {
+            return ((MasMusicAbstractAgent) ts.getUserAgArch()).currentTimeMillis();
+        } else {
+            return System.currentTimeMillis();
+        }
+    }
+}
@@ -18,6 +18,8 @@ import uk.ac.bath.masmusic.common.Rhythm;
 import uk.ac.bath.masmusic.common.Scale;
 import uk.ac.bath.masmusic.common.TimeSignature;
 import uk.ac.bath.masmusic.events.MusicInputBufferUpdatedEvent;
+import uk.ac.bath.masmusic.tracing.Trace;
+import uk.ac.bath.masmusic.tracing.TraceStage;
 
 /**
  * An agent that plays harmony inferred from the received melody.
@@ -57,7 +59,7 @@ public class HarmonizerAgent extends MasMusicAbstractAgent {
         Structure actionTerm = action.getActionTerm();
         if (actionTerm.getFunctor().equalsIgnoreCase("play")) {
             int pitch = Integer.parseInt(actionTerm.getTerm(0).toString());
-            long timestamp = System.currentTimeMillis();
+            long timestamp = currentTimeMillis();
             playNote(pitch, DEFAULT_VELOCITY, timestamp, DEFAULT_DURATION, INSTRUMENT);
             return true;
         } else if (actionTerm.getFunctor().equalsIgnoreCase("harmonize")) {
@@ -77,9 +79,11 @@ public class HarmonizerAgent extends MasMusicAbstractAgent {
             Scale scale = new Scale(Note.fromValue(fundamental), scaleName);
 
             // Generate harmony and play it
+            Trace trace = beginActionTrace();
             List<Onset> harmony = harmonyGenerator.getHarmony(scale, rhythm, start, bars);
+            trace.stamp(TraceStage.GENERATED);
             for (Onset onset : harmony) {
-                playNote(onset.getPitch(), VELOCITY, onset.getTimestamp(), onset.getDuration(), INSTRUMENT);
+                playNote(onset.getPitch(), VELOCITY, onset.getTimestamp(), onset.getDuration(), INSTRUMENT, trace);
             }
             return true;
         } else {
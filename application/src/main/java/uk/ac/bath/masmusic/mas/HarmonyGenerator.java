@@ -1,30 +1,26 @@
 package uk.ac.bath.masmusic.mas;
 
-import java.io.IOException;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.ApplicationContext;
 import org.springframework.context.event.EventListener;
-import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Component;
 
+import uk.ac.bath.masmusic.common.Chord;
+import uk.ac.bath.masmusic.common.Clock;
 import uk.ac.bath.masmusic.common.Onset;
 import uk.ac.bath.masmusic.common.Rhythm;
 import uk.ac.bath.masmusic.common.Scale;
 import uk.ac.bath.masmusic.events.RhythmUpdatedEvent;
 import uk.ac.bath.masmusic.events.ScaleUpdatedEvent;
 import uk.ac.bath.masmusic.generation.harmony.ChordBigramModel;
-import uk.ac.bath.masmusic.generation.harmony.ChordBigramModelReader;
 import uk.ac.bath.masmusic.generation.harmony.Harmonizer;
 import uk.ac.bath.masmusic.generation.harmony.PitchClassChordModel;
-import uk.ac.bath.masmusic.generation.harmony.PitchClassChordModelReader;
+import uk.ac.bath.masmusic.models.GenerationModels;
 
 /**
  * Harmony generator.
@@ -41,20 +37,13 @@ public class HarmonyGenerator {
     /** Logger */
     private static Logger LOG = LoggerFactory.getLogger(HarmonyGenerator.class);
 
-    /** String format for chord bigram model resources. */
-    private static final String CHORD_BIGRAM_MODEL_RESOURCE_FORMAT = "classpath:generation/%s.cbm";
-
-    /** String format for pitch class model resources. */
-    private static final String PITCH_CLASS_CHORD_MODEL_RESOURCE_FORMAT = "classpath:generation/%s.pcm";
-
+    /** Shared generation models. */
     @Autowired
-    private ApplicationContext ctx;
+    private GenerationModels generationModels;
 
-    /** Loaded chord bigram models. */
-    private final Map<String, ChordBigramModel> chordBigramModels;
-
-    /** Loaded pitch class chord models. */
-    private final Map<String, PitchClassChordModel> pitchClassChordModels;
+    /** Application clock. */
+    @Autowired
+    private Clock clock;
 
     /** Current rhythm. */
     private Rhythm rhythm;
@@ -69,8 +58,6 @@ public class HarmonyGenerator {
      * Constructor.
      */
     public HarmonyGenerator() {
-        chordBigramModels = new HashMap<>();
-        pitchClassChordModels = new HashMap<>();
         rhythm = null;
         scale = null;
     }
@@ -123,17 +110,17 @@ public class HarmonyGenerator {
         // Create new harmonizer on new scale type
         if (this.scale == null || !this.scale.getType().equalsIgnoreCase(scale.getType())) {
             String scaleType = scale.getType().toLowerCase();
-            ChordBigramModel chordBigramModel = getChordBigramModel(scaleType);
+            ChordBigramModel chordBigramModel = generationModels.getChordBigramModel(scaleType);
             if (chordBigramModel == null) {
                 throw new IllegalArgumentException(
                         "No chord bigram model available for scale type '" + scaleType + "'");
             }
-            PitchClassChordModel pitchClassChordModel = getPitchClassChordModel(scaleType);
+            PitchClassChordModel pitchClassChordModel = generationModels.getPitchClassChordModel(scaleType);
             if (pitchClassChordModel == null) {
                 throw new IllegalArgumentException(
                         "No pitch class chord model available for scale type '" + scaleType + "'");
             }
-            harmonizer = new Harmonizer(HARMONIZATION_MEASURES_PERIOD, chordBigramModel, pitchClassChordModel);
+            harmonizer = new Harmonizer(HARMONIZATION_MEASURES_PERIOD, chordBigramModel, pitchClassChordModel, clock);
             if (this.rhythm != null) {
                 harmonizer.setRhythm(rhythm);
             }
@@ -145,6 +132,30 @@ public class HarmonyGenerator {
         this.scale = scale;
     }
 
+    /**
+     * @return The chords of the current harmonization (see
+     *         {@link Harmonizer#getHarmonization()}), or an empty list if there
+     *         is no harmonization
+     */
+    public synchronized List<Chord> getHarmonization() {
+        return harmonizer != null ? harmonizer.getHarmonization() : Collections.emptyList();
+    }
+
+    /**
+     * Restore a previously computed harmonization for the current scale and
+     * rhythm.
+     *
+     * @param chords
+     *            Chords of the harmonization, as returned by
+     *            {@link #getHarmonization()}
+     */
+    public synchronized void restoreHarmonization(List<Chord> chords) {
+        if (harmonizer == null || rhythm == null) {
+            throw new IllegalStateException("A scale and a rhythm must be set to restore an harmonization");
+        }
+        harmonizer.setHarmonization(rhythm, chords);
+    }
+
     /**
      * @return True if the harmonizer has an harmonization, false otherwise
      */
@@ -233,48 +244,4 @@ public class HarmonyGenerator {
             LOG.debug("Could not perform harmonization");
         }
     }
-
-    /**
-     * @param scaleType
-     *            A scale type
-     * @return The chord bigram model corresponding to the given scale type, or
-     *         null if the table does not exist
-     */
-    private ChordBigramModel getChordBigramModel(String scaleType) {
-        scaleType = scaleType.toLowerCase();
-        if (!chordBigramModels.containsKey(scaleType)) {
-            Resource tableRes = ctx
-                    .getResource(String.format(CHORD_BIGRAM_MODEL_RESOURCE_FORMAT, scaleType.toLowerCase()));
-            if (tableRes.exists()) {
-                try (ChordBigramModelReader reader = new ChordBigramModelReader(
-                        tableRes.getInputStream())) {
-                    chordBigramModels.put(scaleType, reader.readModel());
-                } catch (IOException e) {
-                }
-            }
-        }
-        return chordBigramModels.get(scaleType);
-    }
-
-    /**
-     * @param scaleType
-     *            A scale type
-     * @return The pitch class chord model corresponding to the given scale
-     *         type, or null if the table does not exist
-     */
-    private PitchClassChordModel getPitchClassChordModel(String scaleType) {
-        scaleType = scaleType.toLowerCase();
-        if (!pitchClassChordModels.containsKey(scaleType)) {
-            Resource tableRes = ctx
-                    .getResource(String.format(PITCH_CLASS_CHORD_MODEL_RESOURCE_FORMAT, scaleType.toLowerCase()));
-            if (tableRes.exists()) {
-                try (PitchClassChordModelReader reader = new PitchClassChordModelReader(
-                        tableRes.getInputStream())) {
-                    pitchClassChordModels.put(scaleType, reader.readModel());
-                } catch (IOException e) {
-                }
-            }
-        }
-        return pitchClassChordModels.get(scaleType);
-    }
 }
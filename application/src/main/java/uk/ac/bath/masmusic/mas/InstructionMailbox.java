@@ -0,0 +1,125 @@
+package uk.ac.bath.masmusic.mas;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * Bounded mailbox of agent instructions.
+ *
+ * Instructions are delivered in arrival order and consumed only once. Posting
+ * an instruction identical to one already pending has no effect, and when the
+ * mailbox is full the oldest pending instruction is evicted to make room for
+ * the new one. The implementation is thread-safe.
+ *
+ * @param <E>
+ *            Instruction type
+ *
+ * @author Javier Dehesa
+ */
+public class InstructionMailbox<E> {
+
+    /** Maximum number of pending instructions. */
+    private final int capacity;
+
+    /** Pending instructions, in arrival order. */
+    private final LinkedHashSet<E> pending;
+
+    /** Number of instructions discarded as duplicates. */
+    private long duplicated;
+
+    /** Number of instructions evicted due to lack of capacity. */
+    private long evicted;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity
+     *            Maximum number of pending instructions
+     * @throws IllegalArgumentException
+     *             If the capacity is not positive
+     */
+    public InstructionMailbox(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.pending = new LinkedHashSet<>();
+        this.duplicated = 0;
+        this.evicted = 0;
+    }
+
+    /**
+     * Post an instruction to the mailbox.
+     *
+     * @param instruction
+     *            The posted instruction
+     * @return true if the instruction was added, false if an identical
+     *         instruction was already pending
+     */
+    public synchronized boolean post(E instruction) {
+        if (pending.contains(instruction)) {
+            duplicated++;
+            return false;
+        }
+        if (pending.size() >= capacity) {
+            Iterator<E> it = pending.iterator();
+            it.next();
+            it.remove();
+            evicted++;
+        }
+        pending.add(instruction);
+        return true;
+    }
+
+    /**
+     * Move every pending instruction to the given collection.
+     *
+     * After this call the mailbox is empty.
+     *
+     * @param target
+     *            Collection receiving the pending instructions in arrival
+     *            order
+     * @return The number of instructions moved
+     */
+    public synchronized int drainTo(Collection<? super E> target) {
+        int count = pending.size();
+        target.addAll(pending);
+        pending.clear();
+        return count;
+    }
+
+    /**
+     * @return The number of pending instructions
+     */
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    /**
+     * @return The maximum number of pending instructions
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return The number of instructions discarded as duplicates so far
+     */
+    public synchronized long getDuplicatedCount() {
+        return duplicated;
+    }
+
+    /**
+     * @return The number of instructions evicted due to lack of capacity so far
+     */
+    public synchronized long getEvictedCount() {
+        return evicted;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "InstructionMailbox [size=" + pending.size() + ", capacity=" + capacity + ", duplicated="
+                + duplicated + ", evicted=" + evicted + "]";
+    }
+}
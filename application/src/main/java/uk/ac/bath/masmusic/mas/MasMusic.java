@@ -1,11 +1,8 @@
 package uk.ac.bath.masmusic.mas;
 
 import java.util.List;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
-import javax.annotation.PostConstruct;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -19,18 +16,22 @@ import uk.ac.bath.masmusic.common.Rhythm;
 import uk.ac.bath.masmusic.common.Scale;
 import uk.ac.bath.masmusic.events.RhythmUpdatedEvent;
 import uk.ac.bath.masmusic.events.ScaleUpdatedEvent;
-import uk.ac.bath.masmusic.integration.MusicGateway;
 import uk.ac.bath.masmusic.protobuf.Note;
 import uk.ac.bath.masmusic.protobuf.Pitch;
 import uk.ac.bath.masmusic.protobuf.TimeSpanNote;
+import uk.ac.bath.masmusic.session.Session;
+import uk.ac.bath.masmusic.tracing.Trace;
 
 /**
  * MasMusic orchestra multi-agent system.
  *
+ * The reasoning cycles of the agents are run by the session (see
+ * {@link Session}), so the system does not have a thread of its own.
+ *
  * @author Javier Dehesa
  */
 @Component
-public class MasMusic implements MessageHandler, Runnable {
+public class MasMusic implements MessageHandler {
 
     /** Logger */
     private static Logger LOG = LoggerFactory.getLogger(MasMusic.class);
@@ -42,21 +43,15 @@ public class MasMusic implements MessageHandler, Runnable {
     @Autowired
     private List<MasMusicAbstractAgent> agents;
 
-    /** Output message channel. */
+    /** Playback scheduler. */
     @Autowired
-    private MusicGateway musicPlayer;
-
-    /** Builder for {@link TimeSpanNote} objects. */
-    private final TimeSpanNote.Builder timeSpanNoteBuilder;
+    private PlaybackScheduler playbackScheduler;
 
-    /** Builder for {@link Pitch} objects. */
-    private final Pitch.Builder pitchBuilder;
+    /** Builder for {@link TimeSpanNote} objects (one per playing thread). */
+    private final ThreadLocal<TimeSpanNote.Builder> timeSpanNoteBuilder;
 
-    /** Whether the system is running. */
-    private final AtomicBoolean started;
-
-    /** Whether the system must finish. */
-    private final AtomicBoolean finish;
+    /** Builder for {@link Pitch} objects (one per playing thread). */
+    private final ThreadLocal<Pitch.Builder> pitchBuilder;
 
     /** The current rhythm. */
     private final AtomicReference<Rhythm> rhythm;
@@ -68,10 +63,8 @@ public class MasMusic implements MessageHandler, Runnable {
      * Constructor.
      */
     public MasMusic() {
-        timeSpanNoteBuilder = TimeSpanNote.newBuilder();
-        pitchBuilder = Pitch.newBuilder();
-        started = new AtomicBoolean(false);
-        finish = new AtomicBoolean(false);
+        timeSpanNoteBuilder = ThreadLocal.withInitial(TimeSpanNote::newBuilder);
+        pitchBuilder = ThreadLocal.withInitial(Pitch::newBuilder);
         rhythm = new AtomicReference<>();
         scale = new AtomicReference<>();
     }
@@ -112,32 +105,6 @@ public class MasMusic implements MessageHandler, Runnable {
         rhythm.set(event.getRhythm());
     }
 
-    /**
-     * Start the system.
-     */
-    @PostConstruct
-    public void start() {
-        if (!started.getAndSet(true)) {
-            finish.set(false);
-            new Thread(this).start();
-        }
-    }
-
-    /**
-     * Stop the system.
-     */
-    public void stop() {
-        finish.set(true);
-    }
-
-    @Override
-    public void run() {
-        while (!finish.get()) {
-            reason();
-        }
-        started.set(false);
-    }
-
     /**
      * Perform a reasoning cycle of the agents.
      */
@@ -166,6 +133,10 @@ public class MasMusic implements MessageHandler, Runnable {
     }
 
     /**
+     * Play a note.
+     *
+     * This method may be called concurrently from different threads.
+     *
      * @param pitch
      *            Pitch of the played note
      * @param velocity
@@ -177,15 +148,17 @@ public class MasMusic implements MessageHandler, Runnable {
      * @param instrument
      *            Instrument used to played the note (should be in the range
      *            0-127)
+     * @param trace
+     *            Latency trace of the generation of the note, or null
      */
-    protected void play(int pitch, int velocity, long timestamp, int duration, int instrument) {
+    protected void play(int pitch, int velocity, long timestamp, int duration, int instrument, Trace trace) {
         if (instrument < 0 || instrument > 127) {
             throw new IllegalArgumentException("Invalid instrument value");
         }
         Note baseNote = Note.valueOf(pitch % 12);
         int octave = (pitch / 12) - 1;
-        TimeSpanNote timeSpanNote = timeSpanNoteBuilder
-                .setPitch(pitchBuilder
+        TimeSpanNote timeSpanNote = timeSpanNoteBuilder.get()
+                .setPitch(pitchBuilder.get()
                         .setNote(baseNote)
                         .setOctave(octave))
                 .setVelocity(velocity)
@@ -193,6 +166,6 @@ public class MasMusic implements MessageHandler, Runnable {
                 .setDuration(duration)
                 .setInstrument(instrument)
                 .build();
-        musicPlayer.play(timeSpanNote);
+        playbackScheduler.schedule(timeSpanNote, trace);
     }
 }
@@ -1,7 +1,6 @@
 package uk.ac.bath.masmusic.mas;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -22,10 +21,14 @@ import jason.asSemantics.TransitionSystem;
 import jason.asSyntax.Literal;
 import jason.asSyntax.directives.Include;
 import jason.runtime.Settings;
+import uk.ac.bath.masmusic.common.Clock;
 import uk.ac.bath.masmusic.common.Rhythm;
 import uk.ac.bath.masmusic.common.Scale;
 import uk.ac.bath.masmusic.events.RhythmUpdatedEvent;
 import uk.ac.bath.masmusic.events.ScaleUpdatedEvent;
+import uk.ac.bath.masmusic.session.Session;
+import uk.ac.bath.masmusic.tracing.LatencyTracer;
+import uk.ac.bath.masmusic.tracing.Trace;
 
 /**
  * Base class for MasMusic agents.
@@ -58,31 +61,53 @@ public abstract class MasMusicAbstractAgent extends AgArch {
     /** Event for rhythm. */
     private static final String RHYTHM_EVENT = "rhythm";
 
+    /** Maximum number of pending performance instructions. */
+    private static final int INSTRUCTIONS_CAPACITY = 16;
+
+    /** Maximum time an agent sleeps without being woken (ms). */
+    private static final long SLEEP_TIME = 10;
+
     /** MasMusic multi-agent system. */
     @Autowired
     private MasMusic masMusic;
 
+    /** Application clock. */
+    @Autowired
+    private Clock clock;
+
+    /** Latency tracer. */
+    @Autowired
+    private LatencyTracer latencyTracer;
+
+    /** Session of the agent. */
+    @Autowired
+    private Session session;
+
     /** Agent hearing literals queue. */
     private final Queue<Literal> heard;
 
-    /** Agent instructions literals queue. */
-    private final List<Literal> instructions;
+    /** Agent instructions literals mailbox. */
+    private final InstructionMailbox<Literal> instructions;
 
     /** Currently perceived rhythm literal. */
-    private Literal currentRhythm;
+    private volatile Literal currentRhythm;
 
     /** Currently perceived scale literal. */
-    private Literal currentScale;
+    private volatile Literal currentScale;
 
     /** Perceived literals. */
     private final List<Literal> percepts;
 
+    /** Time until which the agent sleeps (ms). */
+    private volatile long sleepingUntil;
+
     public MasMusicAbstractAgent() {
         heard = new ConcurrentLinkedQueue<Literal>();
-        instructions = Collections.synchronizedList(new ArrayList<>());
+        instructions = new InstructionMailbox<>(INSTRUCTIONS_CAPACITY);
         currentRhythm = null;
         currentScale = null;
         percepts = new ArrayList<>();
+        sleepingUntil = Long.MIN_VALUE;
     }
 
     /**
@@ -115,7 +140,7 @@ public abstract class MasMusicAbstractAgent extends AgArch {
         if (!heard.isEmpty()) {
             percepts.add(heard.poll());
         }
-        percepts.addAll(instructions);
+        instructions.drainTo(percepts);
         return percepts;
     }
 
@@ -144,24 +169,44 @@ public abstract class MasMusicAbstractAgent extends AgArch {
 
     /**
      * Run a reasoning cycle of the agent.
+     *
+     * Nothing is done while the agent is asleep.
      */
     public void reason() {
-        if (isRunning()) {
+        if (isRunning() && !isSleeping()) {
             getTS().reasoningCycle();
         }
     }
 
+    /**
+     * @return Whether the agent is sleeping
+     */
+    public boolean isSleeping() {
+        return sleepingUntil > clock.currentTimeMillis();
+    }
+
     @Override
     public boolean canSleep() {
         return true;
     }
 
+    /**
+     * Put the agent to sleep until something is perceived or some time has
+     * passed.
+     *
+     * The agent does not block while sleeping, since reasoning cycles are run
+     * by shared session workers; the cycles of a sleeping agent are skipped
+     * instead.
+     */
     @Override
     public void sleep() {
-        try {
-            Thread.sleep(10);
-        } catch (InterruptedException e) {
-        }
+        sleepingUntil = clock.currentTimeMillis() + SLEEP_TIME;
+    }
+
+    @Override
+    public void wake() {
+        sleepingUntil = Long.MIN_VALUE;
+        super.wake();
     }
 
     /**
@@ -178,6 +223,7 @@ public abstract class MasMusicAbstractAgent extends AgArch {
         Literal literal = Literal.parseLiteral(
                 String.format("%s(%d, %d)", HEAR_EVENT, pitch, velocity));
         heard.offer(literal);
+        wake();
     }
 
     /**
@@ -191,7 +237,32 @@ public abstract class MasMusicAbstractAgent extends AgArch {
     public void perform(long start, long bars) {
         Literal literal = Literal.parseLiteral(
                 String.format("%s(%d, %d)", PERFORM_EVENT, start, bars));
-        instructions.add(literal);
+        if (instructions.post(literal)) {
+            wake();
+        } else {
+            LOG.trace("Ignoring repeated instruction {}", literal);
+        }
+    }
+
+    /**
+     * @return The current time of the application clock in milliseconds
+     */
+    public long currentTimeMillis() {
+        return clock.currentTimeMillis();
+    }
+
+    /**
+     * @return The rate of the application clock with respect to real time
+     */
+    public double getClockRate() {
+        return clock.getRate();
+    }
+
+    /**
+     * @return The number of performance instructions waiting to be perceived
+     */
+    public int getPendingInstructions() {
+        return instructions.size();
     }
 
     /**
@@ -212,6 +283,7 @@ public abstract class MasMusicAbstractAgent extends AgArch {
                 String.format("%s(%d, %d, %d, %d, %d)", RHYTHM_EVENT,
                         beatDuration, beatPhase, barBeats, barUnit,
                         barBeatOffset));
+        wake();
     }
 
     /**
@@ -225,6 +297,7 @@ public abstract class MasMusicAbstractAgent extends AgArch {
         Scale scale = event.getScale();
         currentScale = Literal.parseLiteral(String.format("%s(%d, %s)",
                 SCALE_EVENT, scale.getFundamental().value(), scale.getType().toLowerCase()));
+        wake();
     }
 
     /**
@@ -241,6 +314,34 @@ public abstract class MasMusicAbstractAgent extends AgArch {
      */
     protected void playNote(int pitch, int velocity, long timestamp,
             int duration, int instrument) {
-        masMusic.play(pitch, velocity, timestamp, duration, instrument);
+        masMusic.play(pitch, velocity, timestamp, duration, instrument, null);
+    }
+
+    /**
+     * @param pitch
+     *            Pitch of the played note
+     * @param velocity
+     *            Velocity of the played note
+     * @param timestamp
+     *            Start time of the played note
+     * @param duration
+     *            Duration of the played note
+     * @param instrument
+     *            Instrument used to play the note
+     * @param trace
+     *            Latency trace of the generation of the note
+     */
+    protected void playNote(int pitch, int velocity, long timestamp,
+            int duration, int instrument, Trace trace) {
+        masMusic.play(pitch, velocity, timestamp, duration, instrument, trace);
+    }
+
+    /**
+     * Start the latency trace of a generation action.
+     *
+     * @return The trace of the generation action
+     */
+    protected Trace beginActionTrace() {
+        return latencyTracer.act(session.getId());
     }
 }
@@ -3,13 +3,17 @@ package uk.ac.bath.masmusic.mas;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
-import java.util.Random;
+import java.util.SplittableRandom;
+
+import javax.annotation.PostConstruct;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
+import uk.ac.bath.masmusic.common.Clock;
 import uk.ac.bath.masmusic.common.Onset;
 import uk.ac.bath.masmusic.common.Rhythm;
 import uk.ac.bath.masmusic.common.Scale;
@@ -20,7 +24,8 @@ import uk.ac.bath.masmusic.generation.melody.MelodyLearner;
 /**
  * Melody copycat.
  *
- * Imitates the received melody using a {@link MelodyLearner}.
+ * Imitates the received melody using a {@link MelodyLearner}, continuing
+ * the most recently heard notes with similar learned bars when possible.
  *
  * @author Javier Dehesa
  */
@@ -33,6 +38,18 @@ public class MelodyCopycat {
     /** Logger */
     private static Logger LOG = LoggerFactory.getLogger(MelodyCopycat.class);
 
+    /** Application clock. */
+    @Autowired
+    private Clock clock;
+
+    /** Session random number generators. */
+    @Autowired
+    private SessionRandom sessionRandom;
+
+    /** Markov melody models adapted to the learned melodies. */
+    @Autowired
+    private MelodyModels melodyModels;
+
     /** Current rhythm. */
     private Rhythm rhythm;
 
@@ -40,7 +57,7 @@ public class MelodyCopycat {
     private Scale scale;
 
     /** RNG. */
-    private final Random rng;
+    private SplittableRandom rng;
 
     /** Melody learner. */
     private MelodyLearner learner;
@@ -51,10 +68,18 @@ public class MelodyCopycat {
     public MelodyCopycat() {
         rhythm = null;
         scale = null;
-        rng = new Random();
+        rng = null;
         learner = null;
     }
 
+    /**
+     * Initialize the RNG.
+     */
+    @PostConstruct
+    public synchronized void init() {
+        rng = sessionRandom.newStream("melody-copycat");
+    }
+
     /**
      * Handle a rhythm update event.
      *
@@ -74,7 +99,7 @@ public class MelodyCopycat {
      */
     private synchronized void setRhythm(Rhythm rhythm) {
         if (this.rhythm == null || !this.rhythm.getTimeSignature().equals(rhythm.getTimeSignature())) {
-            learner = new MelodyLearner(LEARNER_NUM_BAR_CLASSES, LEARNER_NUM_BAR_PHRASES);
+            learner = new MelodyLearner(LEARNER_NUM_BAR_CLASSES, LEARNER_NUM_BAR_PHRASES, clock);
         }
         this.rhythm = rhythm;
         learner.setRhythm(rhythm);
@@ -99,7 +124,7 @@ public class MelodyCopycat {
      */
     private synchronized void setScale(Scale scale) {
         if (this.scale == null || !this.scale.equals(scale)) {
-            learner = new MelodyLearner(LEARNER_NUM_BAR_CLASSES, LEARNER_NUM_BAR_PHRASES);
+            learner = new MelodyLearner(LEARNER_NUM_BAR_CLASSES, LEARNER_NUM_BAR_PHRASES, clock);
             if (this.rhythm != null) {
                 learner.setRhythm(this.rhythm);
             }
@@ -107,6 +132,29 @@ public class MelodyCopycat {
         this.scale = scale;
     }
 
+    /**
+     * @return A snapshot of the learned music, or null if nothing can be
+     *         learned yet
+     */
+    public synchronized MelodyLearner.Snapshot getLearnerSnapshot() {
+        return learner != null ? learner.getSnapshot() : null;
+    }
+
+    /**
+     * Restore previously learned music for the current scale and rhythm.
+     *
+     * @param snapshot
+     *            Snapshot of the learned music
+     */
+    public synchronized void restoreLearner(MelodyLearner.Snapshot snapshot) {
+        if (learner == null || scale == null || rhythm == null) {
+            throw new IllegalStateException("A scale and a rhythm must be set to restore the learned music");
+        }
+        learner.restore(snapshot);
+        // Align the restored bars with the current rhythm
+        learner.setRhythm(rhythm);
+    }
+
     /**
      * Get a number of bars selected randomly from the learned music.
      *
@@ -148,7 +196,7 @@ public class MelodyCopycat {
             throw new IllegalArgumentException("The number of bars cannot be negative");
         }
         if (rhythm != null && scale != null && learner != null) {
-            return learner.getRandomBars(timestamp, bars, MasMusic.DEFAULT_VELOCITY, rng);
+            return learner.getSimilarBars(timestamp, bars, MasMusic.DEFAULT_VELOCITY, rng);
         } else {
             return Collections.emptyList();
         }
@@ -183,6 +231,7 @@ public class MelodyCopycat {
         if (scale == null || rhythm == null || learner == null) {
             return;
         }
-        learner.learn(onsets);
+        List<Onset> melody = learner.learn(onsets);
+        melodyModels.learn(scale, rhythm.getBeat(), melody);
     }
 }
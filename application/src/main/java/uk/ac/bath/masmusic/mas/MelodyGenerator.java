@@ -1,29 +1,29 @@
 package uk.ac.bath.masmusic.mas;
 
-import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.SplittableRandom;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.ApplicationContext;
-import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Component;
 
 import uk.ac.bath.masmusic.common.Phrase;
 import uk.ac.bath.masmusic.common.Scale;
 import uk.ac.bath.masmusic.common.ScoreElement;
-import uk.ac.bath.masmusic.generation.melody.MarkovDurationGeneratorTable;
-import uk.ac.bath.masmusic.generation.melody.MarkovDurationGeneratorTableReader;
+import uk.ac.bath.masmusic.generation.melody.AdaptiveMelodyModel;
 import uk.ac.bath.masmusic.generation.melody.MarkovMelodyGenerator;
-import uk.ac.bath.masmusic.generation.melody.MarkovPitchGeneratorTable;
-import uk.ac.bath.masmusic.generation.melody.MarkovPitchGeneratorTableReader;
 
 /**
  * Melody generator.
  *
- * Generates music using learned Markov tables.
+ * Generates music using Markov tables adapted to the heard music (see
+ * {@link MelodyModels}). Each {@link Melody} keeps its own generation state,
+ * so melodies started for different purposes do not affect each other.
+ *
+ * Random numbers come from a deterministic sub-stream for every fragment of
+ * every melody, derived from the session seed, the index of the melody and the
+ * index of the fragment. A seeded session therefore generates the same
+ * melodies no matter when, or from which thread, they are generated.
  *
  * @author Javier Dehesa
  */
@@ -33,119 +33,106 @@ public class MelodyGenerator {
     /** Logger */
     private static Logger LOG = LoggerFactory.getLogger(MelodyGenerator.class);
 
-    /** String format for pitch table resources. */
-    private static final String PITCH_TABLE_RESOURCE_FORMAT = "classpath:generation/%s.pit";
-
-    /** String format for duration table resources. */
-    private static final String DURATION_TABLE_RESOURCE_FORMAT = "classpath:generation/%s.dur";
-
     /** Low bound for pitch values. */
     private final static int PITCH_BOUND_LOW = 48;
 
     /** High bound for pitch values. */
     private final static int PITCH_BOUND_HIGH = 84;
 
+    /** Markov melody models. */
     @Autowired
-    private ApplicationContext ctx;
-
-    /** Loaded pitch Markov tables. */
-    private final Map<String, MarkovPitchGeneratorTable> pitchTables;
-
-    /** Loaded duration Markov tables. */
-    private final Map<String, MarkovDurationGeneratorTable> durationTables;
-
-    /** Melody generator. */
-    private MarkovMelodyGenerator melodyGenerator;
+    private MelodyModels melodyModels;
 
-    /** Offset for the next generation of melody */
-    private double generationOffset;
-
-    /**
-     * Constructor.
-     */
-    public MelodyGenerator() {
-        pitchTables = new HashMap<>();
-        durationTables = new HashMap<>();
-        melodyGenerator = null;
-        generationOffset = .0;
-    }
+    /** Session random number generators. */
+    @Autowired
+    private SessionRandom sessionRandom;
 
     /**
-     * Generate a melody of a fixed length.
+     * Start a new melody.
      *
      * @param scale
-     *            Scale of the generated melody
-     * @param beats
-     *            Duration of the melody in beats
-     * @return The generated melody
+     *            Scale of the melody
+     * @param index
+     *            Index of the melody, which determines its random numbers
+     * @return The new melody
+     * @throws IllegalArgumentException
+     *             If there are no Markov tables for the scale type
      */
-    public Phrase generateMelody(Scale scale, int beats) {
-        LOG.debug("Generating {} beats of melody in {}", beats, scale);
+    public Melody newMelody(Scale scale, long index) {
         String scaleType = scale.getType();
-        MarkovPitchGeneratorTable pitchTable = getPitchTable(scaleType);
-        if (pitchTable == null) {
-            throw new IllegalArgumentException("No pitch table available for scale type '" + scaleType + "'");
-        }
-        MarkovDurationGeneratorTable durationTable = getDurationTable(scaleType);
-        if (durationTable == null) {
-            throw new IllegalArgumentException("No duration table available for scale type '" + scaleType + "'");
+        AdaptiveMelodyModel model = melodyModels.getModel(scaleType);
+        if (model == null) {
+            throw new IllegalArgumentException("No Markov tables available for scale type '" + scaleType + "'");
         }
-
-        // Create a new generator if necessary
-        if (melodyGenerator == null || !melodyGenerator.getScale().equals(scale)) {
-            melodyGenerator = new MarkovMelodyGenerator(pitchTable, durationTable, scale);
-            melodyGenerator.setPitchBounds(PITCH_BOUND_LOW, PITCH_BOUND_HIGH);
-            generationOffset = .0;
-        }
-        // Generate music
-        Phrase generatedPhrase = new Phrase();
-        double generatedLength = generationOffset;
-        while (generatedLength < beats) {
-            ScoreElement generated = melodyGenerator.generateElement();
-            generatedPhrase.addElement(generated, generatedLength);
-            generatedLength += generated.getDuration();
-        }
-        generationOffset = generatedLength - beats;
-        return generatedPhrase;
+        long seed = sessionRandom.getStream("melody-generator", index).nextLong();
+        MarkovMelodyGenerator melodyGenerator = new MarkovMelodyGenerator(model.getPitchModel(),
+                model.getDurationModel(), scale, new SplittableRandom(seed));
+        melodyGenerator.setPitchBounds(PITCH_BOUND_LOW, PITCH_BOUND_HIGH);
+        return new Melody(melodyGenerator, seed);
     }
 
     /**
-     * @param scaleType
-     *            A scale type
-     * @return The pitch table corresponding to the given scale type, or null if
-     *         the table does not exist
+     * A melody generated in consecutive fragments.
+     *
+     * Each fragment continues the previous one, so the last element of a
+     * fragment may extend into the next one. Melodies are not thread-safe.
      */
-    private MarkovPitchGeneratorTable getPitchTable(String scaleType) {
-        if (!pitchTables.containsKey(scaleType)) {
-            Resource tableRes = ctx.getResource(String.format(PITCH_TABLE_RESOURCE_FORMAT, scaleType.toLowerCase()));
-            if (tableRes.exists()) {
-                try (MarkovPitchGeneratorTableReader reader = new MarkovPitchGeneratorTableReader(
-                        tableRes.getInputStream())) {
-                    pitchTables.put(scaleType, reader.readTable(true));
-                } catch (IOException e) {
-                }
-            }
+    public static class Melody {
+
+        /** Melody generator. */
+        private final MarkovMelodyGenerator melodyGenerator;
+
+        /** Seed of the melody. */
+        private final long seed;
+
+        /** Index of the next fragment. */
+        private long fragmentIndex;
+
+        /** Offset for the next generation of melody */
+        private double generationOffset;
+
+        /**
+         * Constructor.
+         *
+         * @param melodyGenerator
+         *            Melody generator
+         * @param seed
+         *            Seed of the melody
+         */
+        private Melody(MarkovMelodyGenerator melodyGenerator, long seed) {
+            this.melodyGenerator = melodyGenerator;
+            this.seed = seed;
+            this.fragmentIndex = 0;
+            this.generationOffset = .0;
         }
-        return pitchTables.get(scaleType);
-    }
 
-    /**
-     * @param scaleType
-     *            A scale type
-     * @return The duration table corresponding to the given scale type, or null
-     *         if the table does not exist
-     */
-    private MarkovDurationGeneratorTable getDurationTable(String scaleType) {
-        if (!durationTables.containsKey(scaleType)) {
-            Resource tableRes = ctx.getResource(String.format(DURATION_TABLE_RESOURCE_FORMAT, scaleType.toLowerCase()));
-            if (tableRes.exists()) {
-                try (MarkovDurationGeneratorTableReader reader = new MarkovDurationGeneratorTableReader(
-                        tableRes.getInputStream())) {
-                    durationTables.put(scaleType, reader.readTable());
-                } catch (IOException e) {
-                }
+        /**
+         * @return The scale of the melody
+         */
+        public Scale getScale() {
+            return melodyGenerator.getScale();
+        }
+
+        /**
+         * Generate the next fragment of the melody.
+         *
+         * @param beats
+         *            Duration of the fragment in beats
+         * @return The generated fragment
+         */
+        public Phrase generate(int beats) {
+            LOG.debug("Generating {} beats of melody in {}", beats, getScale());
+            melodyGenerator.setRandom(new SplittableRandom(seed ^ fragmentIndex++));
+            Phrase generatedPhrase = new Phrase();
+            double generatedLength = generationOffset;
+            while (generatedLength < beats) {
+                ScoreElement generated = melodyGenerator.generateElement();
+                generatedPhrase.addElement(generated, generatedLength);
+                generatedLength += generated.getDuration();
             }
+            generationOffset = generatedLength - beats;
+            return generatedPhrase;
         }
-        return durationTables.get(scaleType);
+
     }
 }
@@ -14,6 +14,8 @@ import uk.ac.bath.masmusic.common.Rhythm;
 import uk.ac.bath.masmusic.common.Scale;
 import uk.ac.bath.masmusic.common.ScoreElement;
 import uk.ac.bath.masmusic.common.TimeSignature;
+import uk.ac.bath.masmusic.tracing.Trace;
+import uk.ac.bath.masmusic.tracing.TraceStage;
 
 /**
  * An agent that plays a randomly generated melody.
@@ -36,7 +38,7 @@ public class MelodyGeneratorAgent extends MasMusicAbstractAgent {
     private static final String ASL_PATH = "/asl/melodyGeneratorAgent.asl";
 
     @Autowired
-    private MelodyGenerator melodyGenerator;
+    private MelodyLookahead melodyLookahead;
 
     public MelodyGeneratorAgent() {
         initAgent(ASL_PATH);
@@ -47,7 +49,7 @@ public class MelodyGeneratorAgent extends MasMusicAbstractAgent {
         Structure actionTerm = action.getActionTerm();
         if (actionTerm.getFunctor().equalsIgnoreCase("play")) {
             int pitch = Integer.parseInt(actionTerm.getTerm(0).toString());
-            long timestamp = System.currentTimeMillis();
+            long timestamp = currentTimeMillis();
             playNote(pitch, DEFAULT_VELOCITY, timestamp, DEFAULT_DURATION, INSTRUMENT);
             return true;
         } else if (actionTerm.getFunctor().equalsIgnoreCase("compose")) {
@@ -67,7 +69,9 @@ public class MelodyGeneratorAgent extends MasMusicAbstractAgent {
             Scale scale = new Scale(Note.fromValue(fundamental), scaleName);
 
             // Generate melody and play it
-            Phrase generated = melodyGenerator.generateMelody(scale, barBeats * bars);
+            Trace trace = beginActionTrace();
+            Phrase generated = melodyLookahead.takeMelody(scale, barBeats, bars);
+            trace.stamp(TraceStage.GENERATED);
             long baseTimestamp = rhythm.nextBar(start);
             int snapTolerance = Math.round(.125f * beat.getDuration());
             for (Phrase.Element phraseElement : generated) {
@@ -81,7 +85,7 @@ public class MelodyGeneratorAgent extends MasMusicAbstractAgent {
                     elementStart = elementStartSnap;
                 }
                 for (int pitch : scoreElement.getPitches()) {
-                    playNote(pitch, VELOCITY, elementStart, elementDuration, INSTRUMENT);
+                    playNote(pitch, VELOCITY, elementStart, elementDuration, INSTRUMENT, trace);
                 }
             }
             return true;
@@ -0,0 +1,310 @@
+package uk.ac.bath.masmusic.mas;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import uk.ac.bath.masmusic.common.Phrase;
+import uk.ac.bath.masmusic.common.Scale;
+import uk.ac.bath.masmusic.events.RhythmUpdatedEvent;
+import uk.ac.bath.masmusic.events.ScaleUpdatedEvent;
+
+/**
+ * Look-ahead melody generation service.
+ *
+ * Keeps a number of bars of melody for the current scale and time signature
+ * already generated by the {@link MelodyGenerator}, one bar each time the
+ * session runs, so taking a melody does not need to wait for its generation.
+ * Pregenerated bars are discarded whenever the scale or the number of beats
+ * per bar change, and a new {@link MelodyGenerator.Melody} is started for the
+ * new target, so nothing of the discarded bars carries over.
+ *
+ * All the bars of a target are generated in order from the same melody, one
+ * at a time. If there are not enough bars ready when a melody is requested,
+ * the missing ones are generated on the spot, after waiting for the bar being
+ * pregenerated, if any, and taking it.
+ *
+ * @author Javier Dehesa
+ */
+@Component
+public class MelodyLookahead {
+
+    /** Logger */
+    private static Logger LOG = LoggerFactory.getLogger(MelodyLookahead.class);
+
+    /** Number of bars kept generated in advance (0 to disable look-ahead). */
+    @Value("${masmusic.melody.lookahead-bars:4}")
+    private int lookaheadBars;
+
+    /** Melody generator. */
+    @Autowired
+    private MelodyGenerator melodyGenerator;
+
+    /** Pregenerated bars. */
+    private final Deque<Phrase> bars;
+
+    /** Scale of the pregenerated bars. */
+    private Scale scale;
+
+    /** Number of beats per bar of the pregenerated bars. */
+    private int barBeats;
+
+    /** Melody of the current target, or null if not started yet. */
+    private MelodyGenerator.Melody melody;
+
+    /** Whether a bar is being generated. */
+    private boolean generating;
+
+    /** Generation epoch, increased every time the target changes. */
+    private long epoch;
+
+    /** Last epoch in which generation failed. */
+    private long failedEpoch;
+
+    /** Number of bars taken from the pregenerated ones. */
+    private final AtomicLong hits;
+
+    /** Number of bars generated on the spot. */
+    private final AtomicLong misses;
+
+    /**
+     * Constructor.
+     */
+    public MelodyLookahead() {
+        bars = new ArrayDeque<>();
+        scale = null;
+        barBeats = 0;
+        melody = null;
+        generating = false;
+        epoch = 0;
+        failedEpoch = -1;
+        hits = new AtomicLong();
+        misses = new AtomicLong();
+    }
+
+    /**
+     * Handle a scale update event.
+     *
+     * @param event
+     *            The scale update event
+     */
+    @EventListener
+    public synchronized void onScaleUpdated(ScaleUpdatedEvent event) {
+        if (barBeats > 0) {
+            setTarget(event.getScale(), barBeats);
+        }
+    }
+
+    /**
+     * Handle a rhythm update event.
+     *
+     * @param event
+     *            The rhythm update event
+     */
+    @EventListener
+    public synchronized void onRhythmUpdated(RhythmUpdatedEvent event) {
+        // Generated melodies are measured in beats, so only the time signature matters
+        int newBarBeats = event.getRhythm().getTimeSignature().getBeats();
+        if (scale != null) {
+            setTarget(scale, newBarBeats);
+        } else {
+            barBeats = newBarBeats;
+        }
+    }
+
+    /**
+     * Take a melody of a number of bars.
+     *
+     * @param scale
+     *            Scale of the melody
+     * @param barBeats
+     *            Number of beats per bar
+     * @param numBars
+     *            Number of bars of the melody
+     * @return The melody
+     */
+    public Phrase takeMelody(Scale scale, int barBeats, int numBars) {
+        Objects.requireNonNull(scale);
+        Phrase melody = new Phrase();
+        boolean interrupted = false;
+        int taken = 0;
+        while (taken < numBars) {
+            Phrase bar = null;
+            synchronized (this) {
+                setTarget(scale, barBeats);
+                // Never generate while another bar is being generated
+                while (generating) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                    setTarget(scale, barBeats);
+                }
+                if (!bars.isEmpty()) {
+                    bar = bars.poll();
+                    hits.incrementAndGet();
+                } else {
+                    misses.incrementAndGet();
+                    if (lookaheadBars > 0) {
+                        LOG.debug("Melody look-ahead exhausted, generating bar");
+                    }
+                    generating = true;
+                }
+            }
+            if (bar == null) {
+                bar = generateBar();
+            }
+            // Generate again if the target changed meanwhile
+            if (bar != null) {
+                append(melody, bar, taken * barBeats);
+                taken++;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return melody;
+    }
+
+    /**
+     * @return The number of bars taken from the pregenerated ones
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return The number of bars that had to be generated on the spot
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return The number of bars currently pregenerated
+     */
+    public synchronized int getReadyBars() {
+        return bars.size();
+    }
+
+    /**
+     * Pregenerate one bar of melody, if more are needed.
+     *
+     * This method is called periodically by the session and does not block
+     * waiting for changes; it returns immediately when there is nothing to do.
+     */
+    public void generate() {
+        synchronized (this) {
+            if (lookaheadBars <= 0 || scale == null || generating || bars.size() >= lookaheadBars
+                    || failedEpoch == epoch) {
+                return;
+            }
+            generating = true;
+        }
+        Phrase bar;
+        try {
+            bar = generateBar();
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Could not pregenerate melody: {}", e.getMessage());
+            synchronized (this) {
+                failedEpoch = epoch;
+            }
+            return;
+        }
+        synchronized (this) {
+            // Bars of a previous target are discarded
+            if (bar != null) {
+                bars.add(bar);
+            }
+        }
+    }
+
+    /**
+     * Generate the next bar of the current target.
+     *
+     * The caller must have set {@link #generating}, which is cleared when the
+     * bar is generated.
+     *
+     * @return The generated bar, or null if the target changed while it was
+     *         being generated
+     * @throws IllegalArgumentException
+     *             If the melody could not be generated
+     */
+    private Phrase generateBar() {
+        MelodyGenerator.Melody targetMelody;
+        Scale targetScale;
+        int targetBarBeats;
+        long targetEpoch;
+        synchronized (this) {
+            targetMelody = melody;
+            targetScale = scale;
+            targetBarBeats = barBeats;
+            targetEpoch = epoch;
+        }
+        Phrase bar = null;
+        try {
+            if (targetMelody == null) {
+                targetMelody = melodyGenerator.newMelody(targetScale, targetEpoch);
+            }
+            bar = targetMelody.generate(targetBarBeats);
+        } finally {
+            synchronized (this) {
+                generating = false;
+                if (targetEpoch == epoch) {
+                    melody = targetMelody;
+                } else {
+                    bar = null;
+                }
+                notifyAll();
+            }
+        }
+        return bar;
+    }
+
+    /**
+     * Set the scale and number of beats per bar of the pregenerated bars,
+     * discarding the current ones if they do not match.
+     *
+     * @param scale
+     *            Scale of the pregenerated bars
+     * @param barBeats
+     *            Number of beats per bar
+     */
+    private synchronized void setTarget(Scale scale, int barBeats) {
+        if (scale.equals(this.scale) && barBeats == this.barBeats) {
+            return;
+        }
+        LOG.debug("Melody look-ahead retargeted to {} with {} beats per bar", scale, barBeats);
+        this.scale = scale;
+        this.barBeats = barBeats;
+        bars.clear();
+        melody = null;
+        epoch++;
+    }
+
+    /**
+     * Append the elements of a phrase to another phrase.
+     *
+     * @param phrase
+     *            Phrase where the elements are appended
+     * @param appended
+     *            Phrase with the appended elements
+     * @param offset
+     *            Position offset of the appended elements (beats)
+     */
+    private static void append(Phrase phrase, Phrase appended, double offset) {
+        for (Phrase.Element element : appended) {
+            phrase.addElement(element.getScoreElement(), offset + element.getPosition());
+        }
+    }
+
+}
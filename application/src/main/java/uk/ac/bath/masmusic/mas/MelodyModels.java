@@ -0,0 +1,119 @@
+package uk.ac.bath.masmusic.mas;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import uk.ac.bath.masmusic.common.Beat;
+import uk.ac.bath.masmusic.common.Onset;
+import uk.ac.bath.masmusic.common.Scale;
+import uk.ac.bath.masmusic.generation.melody.AdaptiveMelodyModel;
+import uk.ac.bath.masmusic.generation.melody.MarkovDurationGeneratorTable;
+import uk.ac.bath.masmusic.generation.melody.MarkovPitchGeneratorTable;
+import uk.ac.bath.masmusic.models.GenerationModels;
+
+/**
+ * Markov melody models.
+ *
+ * Adapts the static Markov tables of each scale type (shared through
+ * {@link GenerationModels}) to the melodies heard during the session. Models
+ * can be used for generation while they are being adapted.
+ *
+ * @author Javier Dehesa
+ */
+@Component
+public class MelodyModels {
+
+    /** Logger */
+    private static Logger LOG = LoggerFactory.getLogger(MelodyModels.class);
+
+    /** Shared generation models. */
+    @Autowired
+    private GenerationModels generationModels;
+
+    /** Whether the models are adapted to the heard melodies. */
+    @Value("${masmusic.generation.adaptation.enabled:true}")
+    private boolean adaptationEnabled;
+
+    /** Number of learned notes after which the learned counts are halved. */
+    @Value("${masmusic.generation.adaptation.half-life:" + AdaptiveMelodyModel.DEFAULT_HALF_LIFE + "}")
+    private int halfLife;
+
+    /** Weight of the static tables against the learned counts. */
+    @Value("${masmusic.generation.adaptation.prior:" + AdaptiveMelodyModel.DEFAULT_PRIOR + "}")
+    private double prior;
+
+    /** Loaded models by scale type. */
+    private final Map<String, AdaptiveMelodyModel> models;
+
+    /**
+     * Constructor.
+     */
+    public MelodyModels() {
+        models = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @param scaleType
+     *            A scale type
+     * @return The melody model of the given scale type, or null if there are
+     *         no tables for it
+     */
+    public AdaptiveMelodyModel getModel(String scaleType) {
+        AdaptiveMelodyModel model = models.get(scaleType);
+        if (model == null) {
+            model = loadModel(scaleType);
+        }
+        return model;
+    }
+
+    /**
+     * Adapt the model of a scale to a heard melody.
+     *
+     * @param scale
+     *            Scale of the melody
+     * @param beat
+     *            Beat of the melody
+     * @param melody
+     *            Notes of the melody sorted by timestamp
+     */
+    public void learn(Scale scale, Beat beat, List<Onset> melody) {
+        if (!adaptationEnabled || melody.isEmpty()) {
+            return;
+        }
+        AdaptiveMelodyModel model = getModel(scale.getType());
+        if (model != null) {
+            model.learn(scale, beat, melody);
+        }
+    }
+
+    /**
+     * Load the model of a scale type if it has not been loaded yet.
+     *
+     * @param scaleType
+     *            A scale type
+     * @return The melody model of the given scale type, or null if there are
+     *         no tables for it
+     */
+    private synchronized AdaptiveMelodyModel loadModel(String scaleType) {
+        AdaptiveMelodyModel model = models.get(scaleType);
+        if (model != null) {
+            return model;
+        }
+        MarkovPitchGeneratorTable pitchTable = generationModels.getPitchTable(scaleType);
+        MarkovDurationGeneratorTable durationTable = generationModels.getDurationTable(scaleType);
+        if (pitchTable == null || durationTable == null) {
+            return null;
+        }
+        model = new AdaptiveMelodyModel(pitchTable, durationTable, halfLife, prior);
+        LOG.debug("Created melody model for scale type '{}'", scaleType);
+        models.put(scaleType, model);
+        return model;
+    }
+}
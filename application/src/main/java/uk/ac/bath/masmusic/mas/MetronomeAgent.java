@@ -38,7 +38,7 @@ public class MetronomeAgent extends MasMusicAbstractAgent {
     protected boolean doAction(ActionExec action) {
         Structure actionTerm = action.getActionTerm();
         if (actionTerm.getFunctor().equalsIgnoreCase("metronome")) {
-            long start = System.currentTimeMillis();
+            long start = currentTimeMillis();
             int bars = Integer.parseInt(actionTerm.getTerm(0).toString());
             int beatDuration = Integer
                     .parseInt(actionTerm.getTerm(1).toString());
@@ -0,0 +1,325 @@
+package uk.ac.bath.masmusic.mas;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import uk.ac.bath.masmusic.common.Clock;
+import uk.ac.bath.masmusic.common.LatencyHistogram;
+import uk.ac.bath.masmusic.integration.MusicGateway;
+import uk.ac.bath.masmusic.journal.SessionJournal;
+import uk.ac.bath.masmusic.protobuf.TimeSpanNote;
+import uk.ac.bath.masmusic.protobuf.TimeSpanNoteBatch;
+import uk.ac.bath.masmusic.session.Session;
+import uk.ac.bath.masmusic.tracing.LatencyTracer;
+import uk.ac.bath.masmusic.tracing.Trace;
+import uk.ac.bath.masmusic.tracing.TraceStage;
+
+/**
+ * Look-ahead playback scheduler.
+ *
+ * Generated notes are kept in a time-ordered queue and released to the
+ * {@link MusicGateway} in batches, each time the session runs, a fixed lead
+ * time before they are due, to the play topic of the session. Notes released
+ * after their start time are considered late; they are either dropped or
+ * played anyway, depending on the configuration. Optionally, notes released
+ * together that share the same timestamp are coalesced and published as a
+ * single {@link TimeSpanNoteBatch} on the batch topic of the session, so
+ * receivers can tell both kinds of message apart.
+ *
+ * @author Javier Dehesa
+ */
+@Component
+public class PlaybackScheduler {
+
+    /** Logger */
+    private static Logger LOG = LoggerFactory.getLogger(PlaybackScheduler.class);
+
+    /** Time before their start that notes are released (ms). */
+    @Value("${masmusic.playback.lead:100}")
+    private int leadTime;
+
+    /** Time after their start that late notes are still played (ms). */
+    @Value("${masmusic.playback.tolerance:20}")
+    private int tolerance;
+
+    /** Whether notes later than the tolerance are dropped. */
+    @Value("${masmusic.playback.drop-late:false}")
+    private boolean dropLate;
+
+    /** Whether notes with the same timestamp are published together. */
+    @Value("${masmusic.playback.coalesce:false}")
+    private boolean coalesce;
+
+    /** Time between lateness reports in the log (ms). */
+    @Value("${masmusic.playback.report-period:60000}")
+    private int reportPeriod;
+
+    /** Output gateway. */
+    @Autowired
+    private MusicGateway musicPlayer;
+
+    /** Application clock. */
+    @Autowired
+    private Clock clock;
+
+    /** Session journal. */
+    @Autowired
+    private SessionJournal sessionJournal;
+
+    /** Latency tracer. */
+    @Autowired
+    private LatencyTracer latencyTracer;
+
+    /** Session of the scheduler. */
+    @Autowired
+    private Session session;
+
+    /** Scheduled notes, sorted by release time. */
+    private final PriorityQueue<ScheduledNote> queue;
+
+    /** Sequence number for scheduled notes. */
+    private long sequence;
+
+    /** Notes released on the current tick. */
+    private final List<ScheduledNote> batch;
+
+    /** Builder for coalesced note batches. */
+    private final TimeSpanNoteBatch.Builder batchBuilder;
+
+    /** Delay between the expected and actual release of notes (ms). */
+    private final LatencyHistogram releaseDelay;
+
+    /** Time by which late notes missed their start (ms). */
+    private final LatencyHistogram lateness;
+
+    /** Number of released notes. */
+    private final AtomicLong released;
+
+    /** Number of dropped notes. */
+    private final AtomicLong dropped;
+
+    /** Time of the next lateness report, or -1 if not known yet. */
+    private long nextReport;
+
+    /**
+     * Constructor.
+     */
+    public PlaybackScheduler() {
+        queue = new PriorityQueue<>(Comparator.comparingLong((ScheduledNote n) -> n.timestamp)
+                .thenComparingLong(n -> n.sequence));
+        sequence = 0;
+        batch = new ArrayList<>();
+        batchBuilder = TimeSpanNoteBatch.newBuilder();
+        releaseDelay = new LatencyHistogram();
+        lateness = new LatencyHistogram();
+        released = new AtomicLong();
+        dropped = new AtomicLong();
+        nextReport = -1;
+    }
+
+    /**
+     * Schedule a note for playback.
+     *
+     * @param note
+     *            The note to play
+     */
+    public void schedule(TimeSpanNote note) {
+        schedule(note, null);
+    }
+
+    /**
+     * Schedule a traced note for playback.
+     *
+     * @param note
+     *            The note to play
+     * @param trace
+     *            Latency trace of the generation of the note, or null
+     */
+    public void schedule(TimeSpanNote note, Trace trace) {
+        if (trace != null) {
+            trace.stamp(TraceStage.SCHEDULED);
+        }
+        synchronized (queue) {
+            queue.add(new ScheduledNote(note.getTimestamp(), sequence++, note, trace, clock.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * @return The number of notes waiting to be released
+     */
+    public int getPending() {
+        synchronized (queue) {
+            return queue.size();
+        }
+    }
+
+    /**
+     * @return The number of notes released so far
+     */
+    public long getReleasedCount() {
+        return released.get();
+    }
+
+    /**
+     * @return The number of late notes dropped so far
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * @return Histogram of the delay between the expected and actual release
+     *         time of notes (ms)
+     */
+    public LatencyHistogram getReleaseDelay() {
+        return releaseDelay;
+    }
+
+    /**
+     * @return Histogram of the time by which late notes missed their start
+     *         (ms)
+     */
+    public LatencyHistogram getLateness() {
+        return lateness;
+    }
+
+    /**
+     * Release every note due at the current time.
+     *
+     * This method is called periodically by the session, never concurrently.
+     */
+    public void release() {
+        long now = clock.currentTimeMillis();
+        if (nextReport < 0) {
+            nextReport = now + reportPeriod;
+        }
+        release(now);
+        if (now >= nextReport) {
+            report();
+            nextReport = now + reportPeriod;
+        }
+    }
+
+    /**
+     * Release every note due at the given time.
+     *
+     * @param now
+     *            The current time
+     */
+    private void release(long now) {
+        long horizon = now + leadTime;
+        synchronized (queue) {
+            while (!queue.isEmpty() && queue.peek().timestamp <= horizon) {
+                ScheduledNote scheduled = queue.poll();
+                long late = now - scheduled.timestamp;
+                if (late > 0) {
+                    lateness.record(late);
+                    if (late > tolerance && dropLate) {
+                        dropped.incrementAndGet();
+                        continue;
+                    }
+                }
+                releaseDelay.record(now - (scheduled.timestamp - leadTime));
+                batch.add(scheduled);
+                sessionJournal.recordPlayed(scheduled.note, session.getId());
+            }
+        }
+        if (coalesce) {
+            publishCoalesced();
+        } else {
+            for (ScheduledNote scheduled : batch) {
+                musicPlayer.play(scheduled.note, session.getPlayTopic());
+                sent(scheduled);
+            }
+        }
+        released.addAndGet(batch.size());
+        batch.clear();
+    }
+
+    /**
+     * Complete the latency trace of a note that has just been sent.
+     *
+     * The time the note was held waiting for its release, a lead time before
+     * its start, is intentional and not counted as latency.
+     *
+     * @param scheduled
+     *            The sent note
+     */
+    private void sent(ScheduledNote scheduled) {
+        if (scheduled.trace == null) {
+            return;
+        }
+        long held = scheduled.timestamp - leadTime - scheduled.scheduledAt;
+        scheduled.trace.stamp(TraceStage.SENT, TimeUnit.MILLISECONDS.toNanos(held));
+        latencyTracer.complete(scheduled.trace);
+    }
+
+    /**
+     * Publish the released notes grouping those with the same timestamp.
+     *
+     * The released notes are sorted by timestamp, so notes to be grouped are
+     * always contiguous.
+     */
+    private void publishCoalesced() {
+        int start = 0;
+        while (start < batch.size()) {
+            long timestamp = batch.get(start).timestamp;
+            int end = start + 1;
+            while (end < batch.size() && batch.get(end).timestamp == timestamp) {
+                end++;
+            }
+            if (end - start == 1) {
+                musicPlayer.play(batch.get(start).note, session.getPlayTopic());
+            } else {
+                batchBuilder.clear();
+                for (int i = start; i < end; i++) {
+                    batchBuilder.addNotes(batch.get(i).note);
+                }
+                musicPlayer.play(batchBuilder.build(), session.getPlayBatchTopic());
+            }
+            for (int i = start; i < end; i++) {
+                sent(batch.get(i));
+            }
+            start = end;
+        }
+    }
+
+    /**
+     * Log a summary of the scheduler statistics.
+     */
+    private void report() {
+        LOG.info("Playback ({}): released={}, dropped={}, pending={}", session.getId(), released.get(), dropped.get(),
+                getPending());
+        LOG.info("Playback release delay (ms): {}", releaseDelay);
+        LOG.info("Playback lateness (ms): {}", lateness);
+    }
+
+    /**
+     * A note waiting in the scheduler queue.
+     */
+    private static class ScheduledNote {
+        final long         timestamp;
+        final long         sequence;
+        final TimeSpanNote note;
+        final Trace        trace;
+        final long         scheduledAt;
+
+        ScheduledNote(long timestamp, long sequence, TimeSpanNote note, Trace trace, long scheduledAt) {
+            this.timestamp = timestamp;
+            this.sequence = sequence;
+            this.note = note;
+            this.trace = trace;
+            this.scheduledAt = scheduledAt;
+        }
+    }
+}
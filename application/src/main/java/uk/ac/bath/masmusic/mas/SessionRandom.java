@@ -0,0 +1,99 @@
+package uk.ac.bath.masmusic.mas;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Source of random number generators for the session.
+ *
+ * Every generator is an independent {@link SplittableRandom} derived from a
+ * session seed, a stream name and an index within the stream, either given or
+ * the number of generators previously created with that name. As long as each
+ * component requests its generators in the same order, or with the same
+ * indices, a session run with the same seed generates exactly the same music,
+ * regardless of the order in which components are initialized.
+ *
+ * @author Javier Dehesa
+ */
+@Component
+public class SessionRandom {
+
+    /** Logger */
+    private static Logger LOG = LoggerFactory.getLogger(SessionRandom.class);
+
+    /** Configured session seed (empty for a random seed). */
+    @Value("${masmusic.generation.seed:}")
+    private String configuredSeed;
+
+    /** Session seed. */
+    private long seed;
+
+    /** Number of generators created for each stream name. */
+    private final Map<String, Long> streamCounts;
+
+    /**
+     * Constructor.
+     */
+    public SessionRandom() {
+        seed = new SplittableRandom().nextLong();
+        streamCounts = new HashMap<>();
+    }
+
+    /**
+     * Initialize the session seed.
+     */
+    @PostConstruct
+    public void init() {
+        if (configuredSeed != null && !configuredSeed.trim().isEmpty()) {
+            try {
+                seed = Long.parseLong(configuredSeed.trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid session seed '" + configuredSeed + "'", e);
+            }
+        }
+        LOG.info("Session seed: {}", seed);
+    }
+
+    /**
+     * @return The session seed
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Create a new random number generator.
+     *
+     * @param name
+     *            Name of the stream of generators
+     * @return A new random number generator
+     */
+    public synchronized SplittableRandom newStream(String name) {
+        long index = streamCounts.merge(name, 1L, Long::sum) - 1;
+        return getStream(name, index);
+    }
+
+    /**
+     * Get the random number generator of a stream with a given index.
+     *
+     * @param name
+     *            Name of the stream of generators
+     * @param index
+     *            Index of the generator in the stream
+     * @return A new random number generator, always the same for the same
+     *         name and index
+     */
+    public SplittableRandom getStream(String name, long index) {
+        long streamSeed = new SplittableRandom(seed ^ ((long) name.hashCode() << 32)).split().nextLong() + index;
+        return new SplittableRandom(new SplittableRandom(streamSeed).nextLong());
+    }
+
+}
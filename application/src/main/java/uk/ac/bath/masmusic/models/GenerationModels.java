@@ -0,0 +1,191 @@
+package uk.ac.bath.masmusic.models;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import uk.ac.bath.masmusic.generation.harmony.ChordBigramModel;
+import uk.ac.bath.masmusic.generation.harmony.ChordBigramModelReader;
+import uk.ac.bath.masmusic.generation.harmony.PitchClassChordModel;
+import uk.ac.bath.masmusic.generation.harmony.PitchClassChordModelReader;
+import uk.ac.bath.masmusic.generation.melody.MarkovDurationGeneratorTable;
+import uk.ac.bath.masmusic.generation.melody.MarkovDurationGeneratorTableReader;
+import uk.ac.bath.masmusic.generation.melody.MarkovPitchGeneratorTable;
+import uk.ac.bath.masmusic.generation.melody.MarkovPitchGeneratorTableReader;
+
+/**
+ * Generation models loaded from the classpath.
+ *
+ * Models are loaded once per scale type and shared by every session. They
+ * are never modified after being loaded, so they can be used concurrently
+ * without synchronization.
+ *
+ * @author Javier Dehesa
+ */
+@Component
+public class GenerationModels {
+
+    /** Logger */
+    private static Logger LOG = LoggerFactory.getLogger(GenerationModels.class);
+
+    /** String format for pitch table resources. */
+    private static final String PITCH_TABLE_RESOURCE_FORMAT = "classpath:generation/%s.pit";
+
+    /** String format for duration table resources. */
+    private static final String DURATION_TABLE_RESOURCE_FORMAT = "classpath:generation/%s.dur";
+
+    /** String format for chord bigram model resources. */
+    private static final String CHORD_BIGRAM_MODEL_RESOURCE_FORMAT = "classpath:generation/%s.cbm";
+
+    /** String format for pitch class model resources. */
+    private static final String PITCH_CLASS_CHORD_MODEL_RESOURCE_FORMAT = "classpath:generation/%s.pcm";
+
+    @Autowired
+    private ApplicationContext ctx;
+
+    /** Loaded models by resource name (null values are not allowed). */
+    private final Map<String, Object> models;
+
+    /**
+     * Constructor.
+     */
+    public GenerationModels() {
+        models = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @param scaleType
+     *            A scale type
+     * @return The pitch table corresponding to the given scale type, or null if
+     *         the table does not exist
+     */
+    public MarkovPitchGeneratorTable getPitchTable(String scaleType) {
+        return getModel(PITCH_TABLE_RESOURCE_FORMAT, scaleType, MarkovPitchGeneratorTable.class, input -> {
+            try (MarkovPitchGeneratorTableReader reader = new MarkovPitchGeneratorTableReader(input)) {
+                return reader.readTable(true);
+            }
+        });
+    }
+
+    /**
+     * @param scaleType
+     *            A scale type
+     * @return The duration table corresponding to the given scale type, or null
+     *         if the table does not exist
+     */
+    public MarkovDurationGeneratorTable getDurationTable(String scaleType) {
+        return getModel(DURATION_TABLE_RESOURCE_FORMAT, scaleType, MarkovDurationGeneratorTable.class, input -> {
+            try (MarkovDurationGeneratorTableReader reader = new MarkovDurationGeneratorTableReader(input)) {
+                return reader.readTable();
+            }
+        });
+    }
+
+    /**
+     * @param scaleType
+     *            A scale type
+     * @return The chord bigram model corresponding to the given scale type, or
+     *         null if the model does not exist
+     */
+    public ChordBigramModel getChordBigramModel(String scaleType) {
+        return getModel(CHORD_BIGRAM_MODEL_RESOURCE_FORMAT, scaleType, ChordBigramModel.class, input -> {
+            try (ChordBigramModelReader reader = new ChordBigramModelReader(input)) {
+                return reader.readModel();
+            }
+        });
+    }
+
+    /**
+     * @param scaleType
+     *            A scale type
+     * @return The pitch class chord model corresponding to the given scale
+     *         type, or null if the model does not exist
+     */
+    public PitchClassChordModel getPitchClassChordModel(String scaleType) {
+        return getModel(PITCH_CLASS_CHORD_MODEL_RESOURCE_FORMAT, scaleType, PitchClassChordModel.class, input -> {
+            try (PitchClassChordModelReader reader = new PitchClassChordModelReader(input)) {
+                return reader.readModel();
+            }
+        });
+    }
+
+    /**
+     * Get a model, loading it if it has not been loaded yet.
+     *
+     * @param format
+     *            String format of the model resource
+     * @param scaleType
+     *            Scale type of the model
+     * @param type
+     *            Class of the model
+     * @param loader
+     *            Function reading the model from the resource
+     * @return The model, or null if it does not exist or cannot be read
+     */
+    private <T> T getModel(String format, String scaleType, Class<T> type, ModelLoader<T> loader) {
+        String name = String.format(format, scaleType.toLowerCase());
+        Object model = models.get(name);
+        if (model == null) {
+            synchronized (this) {
+                model = models.get(name);
+                if (model == null) {
+                    model = load(name, loader);
+                    if (model == null) {
+                        return null;
+                    }
+                    models.put(name, model);
+                }
+            }
+        }
+        return type.cast(model);
+    }
+
+    /**
+     * @param name
+     *            Name of the model resource
+     * @param loader
+     *            Function reading the model from the resource
+     * @return The loaded model, or null if it does not exist or cannot be read
+     */
+    private <T> T load(String name, ModelLoader<T> loader) {
+        Resource resource = ctx.getResource(name);
+        if (!resource.exists()) {
+            return null;
+        }
+        try {
+            LOG.debug("Loading model {}", name);
+            return loader.load(resource.getInputStream());
+        } catch (IOException e) {
+            LOG.error("Could not read model {}: {}", name, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Function reading a model from a stream.
+     *
+     * @param <T>
+     *            Type of the model
+     */
+    @FunctionalInterface
+    private interface ModelLoader<T> {
+
+        /**
+         * @param input
+         *            Stream with the model
+         * @return The read model
+         * @throws IOException
+         *             If the model cannot be read
+         */
+        T load(InputStream input) throws IOException;
+
+    }
+}
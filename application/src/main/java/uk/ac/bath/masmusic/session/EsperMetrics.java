@@ -0,0 +1,168 @@
+package uk.ac.bath.masmusic.session;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import uk.ac.bath.masmusic.cep.EsperStatementSubscriber;
+import uk.ac.bath.masmusic.cep.SubscriberMetrics;
+import uk.ac.bath.masmusic.common.LatencyHistogram;
+
+/**
+ * Runtime access to the {@link SubscriberMetrics} of every
+ * {@link EsperStatementSubscriber} of every open {@link Session}, exposed
+ * through JMX.
+ *
+ * Subscribers live in the session contexts, so they are looked up through the
+ * {@link SessionManager} and identified by the session id and their simple
+ * class name.
+ *
+ * @author Javier Dehesa
+ */
+@Component
+@ManagedResource(objectName = "masmusic:type=EsperMetrics", description = "Esper subscriber metrics")
+public class EsperMetrics {
+
+    /** Rows metric name. */
+    private static final String ROWS = "rows";
+
+    /** Update time metric name. */
+    private static final String UPDATE_TIME = "update";
+
+    /** Update end time metric name. */
+    private static final String UPDATE_END_TIME = "updateEnd";
+
+    /** Publish time metric name. */
+    private static final String PUBLISH_TIME = "publish";
+
+    /** Session manager. */
+    @Autowired
+    private SessionManager sessionManager;
+
+    /**
+     * @return Summary of the metrics of every subscriber of every session
+     */
+    @ManagedAttribute(description = "Metrics of every subscriber of every session")
+    public String[] getSubscriberSummaries() {
+        List<String> summaries = new ArrayList<>();
+        for (String id : sessionManager.getSessionIds()) {
+            Session session = sessionManager.getSession(id);
+            if (session == null) {
+                continue;
+            }
+            for (EsperStatementSubscriber subscriber : session.getSubscribers()) {
+                summaries.add(id + "/" + getName(subscriber) + ": " + subscriber.getMetrics());
+            }
+        }
+        return summaries.toArray(new String[summaries.size()]);
+    }
+
+    /**
+     * @param session
+     *            Session id
+     * @param subscriber
+     *            Subscriber name
+     * @return Summary of the metrics of the subscriber
+     */
+    @ManagedOperation(description = "Metrics of a subscriber of a session")
+    public String getSummary(String session, String subscriber) {
+        return getSubscriber(session, subscriber).getMetrics().toString();
+    }
+
+    /**
+     * @param session
+     *            Session id
+     * @param subscriber
+     *            Subscriber name
+     * @param metric
+     *            Metric name, one of {@value #ROWS}, {@value #UPDATE_TIME},
+     *            {@value #UPDATE_END_TIME} or {@value #PUBLISH_TIME}
+     * @param percentile
+     *            Percentile, in the range [0, 100]
+     * @return Upper bound of the percentile of the metric (rows or us)
+     */
+    @ManagedOperation(description = "Percentile of a subscriber metric of a session (rows or us)")
+    public long getPercentile(String session, String subscriber, String metric, double percentile) {
+        return getHistogram(getSubscriber(session, subscriber).getMetrics(), metric).getPercentile(percentile);
+    }
+
+    /**
+     * Discard every recorded metric of every session.
+     */
+    @ManagedOperation(description = "Discard every recorded metric")
+    public void reset() {
+        for (String id : sessionManager.getSessionIds()) {
+            Session session = sessionManager.getSession(id);
+            if (session == null) {
+                continue;
+            }
+            for (EsperStatementSubscriber subscriber : session.getSubscribers()) {
+                subscriber.getMetrics().reset();
+            }
+        }
+    }
+
+    /**
+     * @param subscriber
+     *            A subscriber
+     * @return The name of the subscriber
+     */
+    private static String getName(EsperStatementSubscriber subscriber) {
+        return subscriber.getClass().getSimpleName();
+    }
+
+    /**
+     * @param id
+     *            Session id
+     * @param name
+     *            Subscriber name
+     * @return The subscriber of the session with the given name
+     * @throws IllegalArgumentException
+     *             If the session is not open or has no subscriber with the
+     *             given name
+     */
+    private EsperStatementSubscriber getSubscriber(String id, String name) {
+        Session session = sessionManager.getSession(id);
+        if (session == null) {
+            throw new IllegalArgumentException("Unknown session '" + id + "'");
+        }
+        return session.getSubscribers().stream()
+                .filter(s -> getName(s).equalsIgnoreCase(name))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException(
+                        "Unknown subscriber '" + name + "' in session '" + id + "'"));
+    }
+
+    /**
+     * @param metrics
+     *            Subscriber metrics
+     * @param metric
+     *            Metric name
+     * @return The histogram of the metric
+     * @throws IllegalArgumentException
+     *             If the metric name is not valid or the subscriber does not
+     *             have the metric
+     */
+    private static LatencyHistogram getHistogram(SubscriberMetrics metrics, String metric) {
+        switch (metric) {
+        case ROWS:
+            return metrics.getRows();
+        case UPDATE_TIME:
+            return metrics.getUpdateTime();
+        case UPDATE_END_TIME:
+            return metrics.getUpdateEndTime();
+        case PUBLISH_TIME:
+            if (metrics.getPublishTime() == null) {
+                throw new IllegalArgumentException("The subscriber does not publish events");
+            }
+            return metrics.getPublishTime();
+        default:
+            throw new IllegalArgumentException("Unknown metric '" + metric + "'");
+        }
+    }
+}
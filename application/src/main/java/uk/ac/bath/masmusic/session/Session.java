@@ -0,0 +1,522 @@
+package uk.ac.bath.masmusic.session;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.messaging.Message;
+
+import com.espertech.esper.client.EPServiceProvider;
+import com.espertech.esper.client.time.CurrentTimeEvent;
+
+import uk.ac.bath.masmusic.cep.BeatRootTracker;
+import uk.ac.bath.masmusic.cep.EsperMessageHandler;
+import uk.ac.bath.masmusic.cep.EsperStatementSubscriber;
+import uk.ac.bath.masmusic.cep.PhrasesTracker;
+import uk.ac.bath.masmusic.cep.RhythmDetector;
+import uk.ac.bath.masmusic.cep.ScaleTracker;
+import uk.ac.bath.masmusic.common.Chord;
+import uk.ac.bath.masmusic.common.Clock;
+import uk.ac.bath.masmusic.common.Rhythm;
+import uk.ac.bath.masmusic.common.Scale;
+import uk.ac.bath.masmusic.common.VirtualClock;
+import uk.ac.bath.masmusic.generation.melody.MelodyLearner;
+import uk.ac.bath.masmusic.mas.HarmonyGenerator;
+import uk.ac.bath.masmusic.mas.MasMusic;
+import uk.ac.bath.masmusic.mas.MelodyCopycat;
+import uk.ac.bath.masmusic.mas.MelodyLookahead;
+import uk.ac.bath.masmusic.mas.PlaybackScheduler;
+import uk.ac.bath.masmusic.protobuf.ChordInfo;
+import uk.ac.bath.masmusic.protobuf.SessionSnapshot;
+
+/**
+ * A performance session.
+ *
+ * Each session has its own application context (see
+ * {@link SessionConfiguration}), with an isolated set of trackers, generators
+ * and agents and its own Esper engine. Sessions do not run threads of their
+ * own: the {@link SessionManager} runs a slice of every session periodically
+ * in a shared worker pool, and each slice advances the Esper time, releases
+ * due notes, pregenerates melody and runs a reasoning cycle of the agents.
+ * A session never runs more than one slice at a time.
+ *
+ * Heard messages are not processed by the threads receiving them: they are
+ * queued and processed by a worker, holding the same lock as the slices, so
+ * the analysis and the slices of a session never run at once. If the queue is
+ * full, heard messages are dropped. Messages heard while the session is being
+ * opened wait in the queue until it is ready. Analysis events are delivered
+ * to their listeners on the event threads of the session (see
+ * {@link SessionConfiguration}), without the lock, so the listeners
+ * synchronize their own state.
+ *
+ * The learned state of a session can be saved with {@link #snapshot()} and
+ * restored, in the same or another session, with {@link #restore}.
+ *
+ * @author Javier Dehesa
+ */
+public class Session implements Runnable {
+
+    /** Logger */
+    private static Logger LOG = LoggerFactory.getLogger(Session.class);
+
+    /** Maximum number of heard messages waiting to be processed. */
+    private static final int INBOX_CAPACITY = 4096;
+
+    /** Number of dropped messages between warnings. */
+    private static final int DROPPED_WARNING_INTERVAL = 1000;
+
+    /** Subtopic of the play topic where note batches are played. */
+    public static final String BATCH_SUBTOPIC = "batch";
+
+    /** Session id. */
+    private final String id;
+
+    /** Topic where the session music is played. */
+    private final String playTopic;
+
+    /** Application clock. */
+    private final Clock clock;
+
+    /** Session application context. */
+    private final AnnotationConfigApplicationContext context;
+
+    /** Esper engine of the session. */
+    private EPServiceProvider epService;
+
+    /** Esper input handler of the session. */
+    private EsperMessageHandler esperMessageHandler;
+
+    /** Multi-agent system of the session. */
+    private MasMusic masMusic;
+
+    /** Playback scheduler of the session. */
+    private PlaybackScheduler playbackScheduler;
+
+    /** Melody look-ahead of the session. */
+    private MelodyLookahead melodyLookahead;
+
+    /** Rhythm detector of the session. */
+    private RhythmDetector rhythmDetector;
+
+    /** Beat tracker of the session. */
+    private BeatRootTracker beatRootTracker;
+
+    /** Scale tracker of the session. */
+    private ScaleTracker scaleTracker;
+
+    /** Phrases tracker of the session. */
+    private PhrasesTracker phrasesTracker;
+
+    /** Harmony generator of the session. */
+    private HarmonyGenerator harmonyGenerator;
+
+    /** Melody copycat of the session. */
+    private MelodyCopycat melodyCopycat;
+
+    /** Esper subscribers of the session, empty until it is opened. */
+    private volatile List<EsperStatementSubscriber> subscribers;
+
+    /** Listener sending virtual clock changes to Esper, or null. */
+    private LongConsumer clockListener;
+
+    /** Periodic task running the session, or null if not scheduled. */
+    private ScheduledFuture<?> task;
+
+    /** Workers running the session, or null if not scheduled. */
+    private volatile ScheduledExecutorService executor;
+
+    /** Heard messages waiting to be processed. */
+    private final BlockingQueue<Message<?>> inbox;
+
+    /** Whether the heard messages are already due to be processed. */
+    private final AtomicBoolean processPending;
+
+    /** Number of dropped heard messages. */
+    private final AtomicLong dropped;
+
+    /** Released once the session has been opened or has failed to open. */
+    private final CountDownLatch opened;
+
+    /** Whether the session has been closed. */
+    private boolean closed;
+
+    /** Time of the last heard message. */
+    private volatile long lastHeard;
+
+    /**
+     * Constructor.
+     *
+     * @param id
+     *            Session id
+     * @param playTopic
+     *            Topic where the session music is played
+     * @param parent
+     *            Parent application context
+     * @param clock
+     *            Application clock
+     */
+    Session(String id, String playTopic, ApplicationContext parent, Clock clock) {
+        this.id = Objects.requireNonNull(id);
+        this.playTopic = Objects.requireNonNull(playTopic);
+        this.clock = Objects.requireNonNull(clock);
+        this.context = new AnnotationConfigApplicationContext();
+        this.context.setParent(parent);
+        this.context.setDisplayName("MasMusic session " + id);
+        this.context.getBeanFactory().registerSingleton("session", this);
+        this.context.register(SessionConfiguration.class);
+        this.epService = null;
+        this.esperMessageHandler = null;
+        this.masMusic = null;
+        this.playbackScheduler = null;
+        this.melodyLookahead = null;
+        this.rhythmDetector = null;
+        this.beatRootTracker = null;
+        this.scaleTracker = null;
+        this.phrasesTracker = null;
+        this.harmonyGenerator = null;
+        this.melodyCopycat = null;
+        this.subscribers = Collections.emptyList();
+        this.clockListener = null;
+        this.task = null;
+        this.executor = null;
+        this.inbox = new ArrayBlockingQueue<>(INBOX_CAPACITY);
+        this.processPending = new AtomicBoolean(false);
+        this.dropped = new AtomicLong();
+        this.opened = new CountDownLatch(1);
+        this.closed = false;
+        this.lastHeard = clock.currentTimeMillis();
+    }
+
+    /**
+     * @return The session id
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return The topic where the session music is played
+     */
+    public String getPlayTopic() {
+        return playTopic;
+    }
+
+    /**
+     * @return The topic where the session music is played in note batches
+     */
+    public String getPlayBatchTopic() {
+        return playTopic + "/" + BATCH_SUBTOPIC;
+    }
+
+    /**
+     * @return The number of heard messages dropped so far
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * @return The Esper subscribers of the session, or an empty list if it is
+     *         not open yet
+     */
+    public List<EsperStatementSubscriber> getSubscribers() {
+        return subscribers;
+    }
+
+    /**
+     * @return Time of the last heard message
+     */
+    public long getLastHeard() {
+        return lastHeard;
+    }
+
+    /**
+     * Create the components of the session.
+     *
+     * This may take a while, so it should not be done by the threads
+     * receiving the heard messages.
+     *
+     * @return true if the session was opened, false if it had been closed
+     */
+    synchronized boolean open() {
+        try {
+            if (closed) {
+                return false;
+            }
+            createComponents();
+            return true;
+        } finally {
+            opened.countDown();
+        }
+    }
+
+    /**
+     * Wait until the session has been opened.
+     *
+     * @param timeout
+     *            Maximum time to wait (ms)
+     * @return true if the opening finished, successfully or not, false if
+     *         the time ran out
+     * @throws InterruptedException
+     *             If the waiting thread is interrupted
+     */
+    boolean awaitOpen(long timeout) throws InterruptedException {
+        return opened.await(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Create and retrieve the components of the session context.
+     */
+    private void createComponents() {
+        context.refresh();
+        epService = context.getBean(EPServiceProvider.class);
+        esperMessageHandler = context.getBean(EsperMessageHandler.class);
+        masMusic = context.getBean(MasMusic.class);
+        playbackScheduler = context.getBean(PlaybackScheduler.class);
+        melodyLookahead = context.getBean(MelodyLookahead.class);
+        rhythmDetector = context.getBean(RhythmDetector.class);
+        beatRootTracker = context.getBean(BeatRootTracker.class);
+        scaleTracker = context.getBean(ScaleTracker.class);
+        phrasesTracker = context.getBean(PhrasesTracker.class);
+        harmonyGenerator = context.getBean(HarmonyGenerator.class);
+        melodyCopycat = context.getBean(MelodyCopycat.class);
+        subscribers = Collections.unmodifiableList(
+                new ArrayList<>(context.getBeansOfType(EsperStatementSubscriber.class).values()));
+        // Virtual clock changes are sent as they happen, so replays are exact
+        if (clock instanceof VirtualClock) {
+            clockListener = time -> {
+                synchronized (this) {
+                    if (context.isActive()) {
+                        epService.getEPRuntime().sendEvent(new CurrentTimeEvent(time));
+                    }
+                }
+            };
+            ((VirtualClock) clock).addListener(clockListener);
+        }
+        LOG.info("Session {} opened", id);
+    }
+
+    /**
+     * Schedule the session.
+     *
+     * @param executor
+     *            Workers running the session
+     * @param tick
+     *            Time between runs of the session (ms)
+     * @return true if the session was scheduled, false if it is not open
+     */
+    synchronized boolean start(ScheduledExecutorService executor, long tick) {
+        if (closed || !context.isActive()) {
+            return false;
+        }
+        this.task = executor.scheduleWithFixedDelay(this, tick, tick, TimeUnit.MILLISECONDS);
+        this.executor = executor;
+        // Process the messages heard so far
+        scheduleProcessing();
+        return true;
+    }
+
+    /**
+     * Stop the session and destroy its components.
+     */
+    void close() {
+        // Wait for the current slice or opening, if any
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (task != null) {
+                task.cancel(false);
+            }
+            executor = null;
+            if (clockListener != null) {
+                ((VirtualClock) clock).removeListener(clockListener);
+            }
+            inbox.clear();
+            context.close();
+        }
+        LOG.info("Session {} closed", id);
+    }
+
+    /**
+     * Hear a message.
+     *
+     * @param message
+     *            The heard message
+     */
+    public void hear(Message<?> message) {
+        lastHeard = clock.currentTimeMillis();
+        if (!inbox.offer(message)) {
+            if (dropped.incrementAndGet() % DROPPED_WARNING_INTERVAL == 1) {
+                LOG.warn("Session {} is not keeping up, {} heard message(s) dropped", id, dropped.get());
+            }
+            return;
+        }
+        scheduleProcessing();
+    }
+
+    /**
+     * Have a worker process the heard messages, unless it is already due.
+     */
+    private void scheduleProcessing() {
+        ScheduledExecutorService currentExecutor = executor;
+        if (currentExecutor == null || !processPending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            currentExecutor.execute(this::processHeard);
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+            processPending.set(false);
+        }
+    }
+
+    /**
+     * Process the heard messages.
+     */
+    private synchronized void processHeard() {
+        processPending.set(false);
+        if (!context.isActive()) {
+            inbox.clear();
+            return;
+        }
+        Message<?> message;
+        while ((message = inbox.poll()) != null) {
+            try {
+                esperMessageHandler.handleMessage(message);
+                masMusic.handleMessage(message);
+            } catch (RuntimeException e) {
+                LOG.error("Error hearing message in session " + id, e);
+            }
+        }
+    }
+
+    /**
+     * Run a slice of the session.
+     */
+    @Override
+    public synchronized void run() {
+        if (!context.isActive()) {
+            return;
+        }
+        processHeard();
+        try {
+            if (clockListener == null) {
+                epService.getEPRuntime().sendEvent(new CurrentTimeEvent(clock.currentTimeMillis()));
+            }
+            playbackScheduler.release();
+            melodyLookahead.generate();
+            masMusic.reason();
+        } catch (RuntimeException e) {
+            // Keep the session scheduled
+            LOG.error("Error running session " + id, e);
+        }
+    }
+
+    /**
+     * Take a snapshot of the learned state of the session.
+     *
+     * The snapshot includes the rhythm, the scale, the harmonization, the
+     * learned melody bars and the phrases still open. Only the state is
+     * copied while the session is held; the returned message can be encoded
+     * anywhere else.
+     *
+     * @return The snapshot of the session
+     */
+    public synchronized SessionSnapshot snapshot() {
+        SessionSnapshot.Builder builder = SessionSnapshot.newBuilder()
+                .setSessionId(id)
+                .setTimestamp(clock.currentTimeMillis());
+        if (!context.isActive()) {
+            return builder.build();
+        }
+        Rhythm rhythm = beatRootTracker.getCurrentRhythm();
+        if (rhythm == null) {
+            rhythm = rhythmDetector.getDetectedRhtyhm();
+        }
+        if (rhythm != null) {
+            builder.setRhythm(SessionSnapshots.toRhythmInfo(rhythm));
+        }
+        Scale scale = scaleTracker.getCurrentScale();
+        if (scale != null) {
+            builder.setScale(SessionSnapshots.toScaleInfo(scale));
+        }
+        for (Chord chord : harmonyGenerator.getHarmonization()) {
+            builder.addHarmonization(SessionSnapshots.toChordInfo(chord));
+        }
+        MelodyLearner.Snapshot melody = melodyCopycat.getLearnerSnapshot();
+        if (melody != null) {
+            builder.setMelody(SessionSnapshots.toMelodyLearnerInfo(melody));
+        }
+        builder.setPhrases(SessionSnapshots.toPhraseExtractorInfo(phrasesTracker.getExtractorSnapshot()));
+        return builder.build();
+    }
+
+    /**
+     * Restore the learned state of a session.
+     *
+     * The restored rhythm and scale are published as if they had just been
+     * detected, so every component of the session is updated, and then the
+     * harmonization, the learned melody bars and the open phrases are
+     * restored. Parts of the state that cannot be restored are skipped.
+     *
+     * @param snapshot
+     *            Snapshot of the session
+     */
+    public synchronized void restore(SessionSnapshot snapshot) {
+        if (!context.isActive()) {
+            return;
+        }
+        try {
+            if (snapshot.hasScale()) {
+                scaleTracker.restoreScale(SessionSnapshots.fromScaleInfo(snapshot.getScale()));
+            }
+            if (!snapshot.hasRhythm()) {
+                LOG.info("Session {} restored without rhythm", id);
+                return;
+            }
+            Rhythm rhythm = SessionSnapshots.fromRhythmInfo(snapshot.getRhythm());
+            rhythmDetector.restoreRhythm(rhythm);
+            if (snapshot.hasPhrases()) {
+                phrasesTracker.restoreExtractor(SessionSnapshots.fromPhraseExtractorInfo(snapshot.getPhrases()));
+            }
+            if (snapshot.hasScale()) {
+                if (snapshot.getHarmonizationCount() > 0) {
+                    List<Chord> harmonization = new ArrayList<>(snapshot.getHarmonizationCount());
+                    for (ChordInfo chordInfo : snapshot.getHarmonizationList()) {
+                        harmonization.add(SessionSnapshots.fromChordInfo(chordInfo));
+                    }
+                    harmonyGenerator.restoreHarmonization(harmonization);
+                }
+                if (snapshot.hasMelody()) {
+                    melodyCopycat.restoreLearner(SessionSnapshots.fromMelodyLearnerInfo(snapshot.getMelody(), rhythm));
+                }
+            }
+            LOG.info("Session {} restored from snapshot taken at {}", id, snapshot.getTimestamp());
+        } catch (RuntimeException e) {
+            LOG.error("Could not restore session " + id, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Session [id=" + id + ", playTopic=" + playTopic + "]";
+    }
+
+}
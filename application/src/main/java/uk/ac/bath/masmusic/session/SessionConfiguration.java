@@ -0,0 +1,54 @@
+package uk.ac.bath.masmusic.session;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
+
+import uk.ac.bath.masmusic.events.EventsConfiguration;
+import uk.ac.bath.masmusic.journal.SessionJournalRecorder;
+
+/**
+ * Configuration of the application context of a {@link Session}.
+ *
+ * Every session context contains its own trackers, generators and agents,
+ * while the rest of components (clock, MQTT integration, journal, shared
+ * models...) are taken from the parent application context. Events published
+ * in a session context are delivered to the listeners of the session by its
+ * own event multicaster (see {@link EventsConfiguration}): analysis events
+ * are delivered asynchronously, so generation never runs on the worker
+ * running the analysis, and the rest synchronously.
+ *
+ * @author Javier Dehesa
+ */
+@Configuration
+@Import(EventsConfiguration.class)
+@ComponentScan({ SessionConfiguration.CEP_PACKAGE, SessionConfiguration.MAS_PACKAGE })
+public class SessionConfiguration {
+
+    /** Package of the session event processing components. */
+    public static final String CEP_PACKAGE = "uk.ac.bath.masmusic.cep";
+
+    /** Package of the session multi-agent system components. */
+    public static final String MAS_PACKAGE = "uk.ac.bath.masmusic.mas";
+
+    /**
+     * Resolver for property placeholders of the session components.
+     *
+     * @return Property placeholder configurer
+     */
+    @Bean
+    public static PropertySourcesPlaceholderConfigurer sessionPropertyPlaceholderConfigurer() {
+        return new PropertySourcesPlaceholderConfigurer();
+    }
+
+    /**
+     * @return Recorder of the session in the session journal
+     */
+    @Bean
+    public SessionJournalRecorder sessionJournalRecorder() {
+        return new SessionJournalRecorder();
+    }
+
+}
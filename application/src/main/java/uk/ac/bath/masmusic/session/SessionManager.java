@@ -0,0 +1,413 @@
+package uk.ac.bath.masmusic.session;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.integration.mqtt.support.MqttHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessagingException;
+import org.springframework.stereotype.Component;
+
+import uk.ac.bath.masmusic.common.Clock;
+import uk.ac.bath.masmusic.protobuf.SessionSnapshot;
+import uk.ac.bath.masmusic.tracing.LatencyTracer;
+
+/**
+ * Manager of the performance {@link Session}s.
+ *
+ * Heard messages are routed to the session given by the
+ * {@value #SESSION_HEADER} message header or, failing that, by the suffix of
+ * the MQTT topic where they were received ({@code <hear topic>/<session id>}).
+ * Sessions are opened on their first message and closed after some time
+ * without hearing anything. Opening a session takes a while, so it is done by a
+ * dedicated thread, and the messages of the session wait until it is ready.
+ * Messages without a session id go to the default session, which is never
+ * closed for being idle; if multiple sessions are disabled every message goes
+ * to the default session. The default session is opened at startup, except
+ * in a cluster, where it is only opened by the node owning it when its first
+ * message arrives.
+ *
+ * Every session is run periodically by a shared pool of workers. Each run of a
+ * session is rescheduled a tick after it finishes, and runs are executed in
+ * order of due time, so every session gets its turn even if the workers are
+ * overloaded.
+ *
+ * @author Javier Dehesa
+ */
+@Component
+public class SessionManager implements MessageHandler {
+
+    /** Logger */
+    private static Logger LOG = LoggerFactory.getLogger(SessionManager.class);
+
+    /** Message header with the session id. */
+    public static final String SESSION_HEADER = "masmusic_session";
+
+    /** Maximum time to wait for a session to be opened (ms). */
+    private static final long OPEN_TIMEOUT = 60000;
+
+    /** Whether multiple sessions are enabled. */
+    @Value("${masmusic.sessions.enabled:false}")
+    private boolean enabled;
+
+    /** Id of the default session. */
+    @Value("${masmusic.sessions.default-id:default}")
+    private String defaultId;
+
+    /** Maximum number of open sessions. */
+    @Value("${masmusic.sessions.max:128}")
+    private int maxSessions;
+
+    /** Number of workers running the sessions (0 for one per processor). */
+    @Value("${masmusic.sessions.workers:0}")
+    private int workers;
+
+    /** Time between runs of each session (ms). */
+    @Value("${masmusic.sessions.tick:5}")
+    private int tick;
+
+    /** Time without hearing anything after which a session is closed (ms). */
+    @Value("${masmusic.sessions.idle-timeout:600000}")
+    private long idleTimeout;
+
+    /** Base hear topic. */
+    @Value("${mqtt.hear.topic}")
+    private String hearTopic;
+
+    /** Base play topic. */
+    @Value("${mqtt.play.topic}")
+    private String playTopic;
+
+    /** Whether the cluster is enabled. */
+    @Value("${masmusic.cluster.enabled:false}")
+    private boolean clusterEnabled;
+
+    @Autowired
+    private ApplicationContext ctx;
+
+    /** Application clock. */
+    @Autowired
+    private Clock clock;
+
+    /** Latency tracer. */
+    @Autowired
+    private LatencyTracer latencyTracer;
+
+    /** Open sessions by id. */
+    private final Map<String, Session> sessions;
+
+    /** Session workers. */
+    private ScheduledThreadPoolExecutor executor;
+
+    /** Opener of sessions. */
+    private ExecutorService opener;
+
+    /**
+     * Constructor.
+     */
+    public SessionManager() {
+        sessions = new ConcurrentHashMap<>();
+        executor = null;
+        opener = null;
+    }
+
+    /**
+     * Start the workers and open the default session, unless the cluster is
+     * enabled, once the application context is ready.
+     *
+     * Runs before any other listener, so sessions can be opened by them.
+     *
+     * @param event
+     *            The context refreshed event
+     */
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public synchronized void onContextRefreshed(ContextRefreshedEvent event) {
+        // Ignore the events of the session contexts
+        if (event.getApplicationContext() != ctx || executor != null) {
+            return;
+        }
+        int numWorkers = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        AtomicInteger workerCount = new AtomicInteger();
+        executor = new ScheduledThreadPoolExecutor(numWorkers, r -> {
+            Thread thread = new Thread(r, "session-worker-" + workerCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        opener = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "session-opener");
+            thread.setDaemon(true);
+            return thread;
+        });
+        LOG.info("Running sessions in {} worker(s)", numWorkers);
+        // In a cluster the default session may be owned by another node
+        if (!clusterEnabled) {
+            openSession(defaultId);
+        }
+        if (enabled) {
+            long period = Math.max(idleTimeout / 10, 1000);
+            executor.scheduleWithFixedDelay(this::closeIdleSessions, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Close every session and stop the workers.
+     */
+    @PreDestroy
+    public void shutdown() {
+        List<Session> closed;
+        synchronized (this) {
+            closed = new ArrayList<>(sessions.values());
+            sessions.clear();
+            if (opener != null) {
+                opener.shutdownNow();
+                opener = null;
+            }
+        }
+        for (Session session : closed) {
+            session.close();
+        }
+        synchronized (this) {
+            if (executor != null) {
+                executor.shutdownNow();
+                executor = null;
+            }
+        }
+    }
+
+    /**
+     * @return Whether multiple sessions are enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return The topics where heard messages are received
+     */
+    public String[] getHearTopics() {
+        if (enabled) {
+            return new String[] { hearTopic, hearTopic + "/+" };
+        } else {
+            return new String[] { hearTopic };
+        }
+    }
+
+    /**
+     * @return The ids of the open sessions
+     */
+    public List<String> getSessionIds() {
+        return new ArrayList<>(sessions.keySet());
+    }
+
+    /**
+     * @param id
+     *            A session id
+     * @return The open session with the given id, or null if there is none
+     */
+    public Session getSession(String id) {
+        return sessions.get(id);
+    }
+
+    /**
+     * @return The default session, or null if it is not open
+     */
+    public Session getDefaultSession() {
+        return sessions.get(defaultId);
+    }
+
+    @Override
+    public void handleMessage(Message<?> message) throws MessagingException {
+        String id = getSessionId(message);
+        Session session = sessions.get(id);
+        if (session == null) {
+            session = openSession(id);
+            if (session == null) {
+                return;
+            }
+        }
+        session.hear(message);
+    }
+
+    /**
+     * @param message
+     *            A heard message
+     * @return The id of the session of the message
+     */
+    public String getSessionId(Message<?> message) {
+        if (!enabled) {
+            return defaultId;
+        }
+        Object header = message.getHeaders().get(SESSION_HEADER);
+        if (header != null && !header.toString().isEmpty()) {
+            return header.toString();
+        }
+        Object topic = message.getHeaders().get(MqttHeaders.TOPIC);
+        if (topic != null && topic.toString().startsWith(hearTopic + "/")) {
+            String id = topic.toString().substring(hearTopic.length() + 1);
+            // The batch subtopic is reserved, it would mix with the default
+            // session batches on the play topic
+            if (!id.isEmpty() && id.indexOf('/') < 0 && !id.equals(Session.BATCH_SUBTOPIC)) {
+                return id;
+            }
+        }
+        return defaultId;
+    }
+
+    /**
+     * Open a session if it is not open yet.
+     *
+     * The session is returned right away and opened in the background.
+     *
+     * @param id
+     *            Session id
+     * @return The session, or null if it could not be opened
+     */
+    private synchronized Session openSession(String id) {
+        Session session = sessions.get(id);
+        if (session != null) {
+            return session;
+        }
+        if (executor == null || opener == null) {
+            LOG.warn("Ignoring message for session {} before startup", id);
+            return null;
+        }
+        if (sessions.size() >= maxSessions) {
+            LOG.warn("Cannot open session {}: maximum number of sessions reached", id);
+            return null;
+        }
+        String sessionPlayTopic = id.equals(defaultId) ? playTopic : playTopic + "/" + id;
+        Session newSession = new Session(id, sessionPlayTopic, ctx, clock);
+        sessions.put(id, newSession);
+        opener.execute(() -> startSession(newSession));
+        return newSession;
+    }
+
+    /**
+     * Open and schedule a session.
+     *
+     * The manager is not held while the session is opened, so other sessions
+     * are not delayed.
+     *
+     * @param session
+     *            The session
+     */
+    private void startSession(Session session) {
+        boolean opened;
+        try {
+            opened = session.open();
+        } catch (RuntimeException e) {
+            LOG.error("Could not open session " + session.getId(), e);
+            opened = false;
+        }
+        synchronized (this) {
+            if (opened && executor != null && sessions.get(session.getId()) == session
+                    && session.start(executor, tick)) {
+                return;
+            }
+            sessions.remove(session.getId(), session);
+        }
+        session.close();
+    }
+
+    /**
+     * Close a session.
+     *
+     * @param id
+     *            Session id
+     * @return true if the session was closed, false if it was not open
+     */
+    public boolean closeSession(String id) {
+        Session session = sessions.remove(id);
+        if (session == null) {
+            return false;
+        }
+        // Not holding the manager, the session may still be opening
+        session.close();
+        latencyTracer.forget(id);
+        return true;
+    }
+
+    /**
+     * Restore the learned state of a session, opening it if necessary.
+     *
+     * @param snapshot
+     *            Snapshot of the session
+     * @return true if the session was restored, false if it could not be
+     *         opened
+     */
+    public boolean restoreSession(SessionSnapshot snapshot) {
+        String id = snapshot.getSessionId();
+        if (!enabled && !id.equals(defaultId)) {
+            LOG.warn("Ignoring snapshot of session {}: multiple sessions are disabled", id);
+            return false;
+        }
+        Session session = openSession(id);
+        if (session == null) {
+            return false;
+        }
+        try {
+            if (!session.awaitOpen(OPEN_TIMEOUT)) {
+                LOG.warn("Could not restore session {}: opening timed out", id);
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        session.restore(snapshot);
+        return true;
+    }
+
+    /**
+     * Take a snapshot of a session and close it, so it can be continued
+     * somewhere else.
+     *
+     * @param id
+     *            Session id
+     * @return The snapshot of the session, or null if it was not open
+     */
+    public SessionSnapshot handOffSession(String id) {
+        Session session = sessions.get(id);
+        if (session == null) {
+            return null;
+        }
+        SessionSnapshot snapshot = session.snapshot();
+        closeSession(id);
+        return snapshot;
+    }
+
+    /**
+     * Close the sessions that have not heard anything for too long.
+     */
+    private void closeIdleSessions() {
+        long now = clock.currentTimeMillis();
+        for (Session session : sessions.values()) {
+            if (!session.getId().equals(defaultId) && now - session.getLastHeard() > idleTimeout) {
+                LOG.info("Closing idle session {}", session.getId());
+                closeSession(session.getId());
+            }
+        }
+    }
+
+}
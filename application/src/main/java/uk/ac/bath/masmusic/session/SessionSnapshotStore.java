@@ -0,0 +1,247 @@
+package uk.ac.bath.masmusic.session;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import uk.ac.bath.masmusic.common.Clock;
+import uk.ac.bath.masmusic.protobuf.SessionSnapshot;
+import uk.ac.bath.masmusic.protobuf.SessionSnapshotSet;
+
+/**
+ * Store of periodic snapshots of the open sessions.
+ *
+ * Every period, the learned state of each open session is copied with
+ * {@link Session#snapshot()} and written to a new file of the snapshot
+ * directory, named after the time of the snapshot. Files are written to a
+ * temporary file first and then moved into place, so a snapshot file is
+ * always complete, and only the newest ones are kept. Snapshots are encoded
+ * and written by a dedicated thread, never by the session workers.
+ *
+ * When the application starts, the sessions of the newest snapshot file are
+ * restored, unless the snapshot is too old, so a restarted process can
+ * continue the performances where they were left. A last snapshot is written
+ * when the application stops.
+ *
+ * @author Javier Dehesa
+ */
+@Component
+public class SessionSnapshotStore {
+
+    /** Logger */
+    private static Logger LOG = LoggerFactory.getLogger(SessionSnapshotStore.class);
+
+    /** Extension of snapshot files. */
+    private static final String SNAPSHOT_EXTENSION = ".snapshot";
+
+    /** Snapshot file name format. */
+    private static final String SNAPSHOT_FORMAT = "%020d" + SNAPSHOT_EXTENSION;
+
+    /** Whether snapshots are enabled. */
+    @Value("${masmusic.snapshots.enabled:false}")
+    private boolean enabled;
+
+    /** Snapshot directory. */
+    @Value("${masmusic.snapshots.directory:snapshots}")
+    private String directory;
+
+    /** Time between snapshots (ms). */
+    @Value("${masmusic.snapshots.period:10000}")
+    private long period;
+
+    /** Number of snapshot files kept. */
+    @Value("${masmusic.snapshots.keep:3}")
+    private int keep;
+
+    /** Maximum age of a snapshot restored at startup (ms). */
+    @Value("${masmusic.snapshots.max-age:600000}")
+    private long maxAge;
+
+    @Autowired
+    private ApplicationContext ctx;
+
+    /** Application clock. */
+    @Autowired
+    private Clock clock;
+
+    /** Session manager. */
+    @Autowired
+    private SessionManager sessionManager;
+
+    /** Snapshot writer. */
+    private ScheduledExecutorService executor;
+
+    /**
+     * Constructor.
+     */
+    public SessionSnapshotStore() {
+        executor = null;
+    }
+
+    /**
+     * Restore the newest snapshot and start taking snapshots once the
+     * sessions are ready.
+     *
+     * @param event
+     *            The context refreshed event
+     */
+    @EventListener
+    public synchronized void onContextRefreshed(ContextRefreshedEvent event) {
+        // Ignore the events of the session contexts
+        if (!enabled || event.getApplicationContext() != ctx || executor != null) {
+            return;
+        }
+        if (keep < 1) {
+            throw new IllegalArgumentException("At least one snapshot must be kept");
+        }
+        Path snapshotDirectory = Paths.get(directory);
+        try {
+            Files.createDirectories(snapshotDirectory);
+            restoreNewest(snapshotDirectory);
+        } catch (IOException e) {
+            LOG.error("Could not restore sessions from " + snapshotDirectory, e);
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "session-snapshots");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(() -> write(snapshotDirectory), period, period, TimeUnit.MILLISECONDS);
+        LOG.info("Writing session snapshots in {}", snapshotDirectory);
+    }
+
+    /**
+     * Stop taking snapshots, writing a last one.
+     */
+    @PreDestroy
+    public synchronized void stop() {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(period, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+        write(Paths.get(directory));
+    }
+
+    /**
+     * Take a snapshot of the open sessions and write it.
+     *
+     * @param snapshotDirectory
+     *            Snapshot directory
+     */
+    private void write(Path snapshotDirectory) {
+        long timestamp = clock.currentTimeMillis();
+        SessionSnapshotSet.Builder builder = SessionSnapshotSet.newBuilder().setTimestamp(timestamp);
+        for (String id : sessionManager.getSessionIds()) {
+            Session session = sessionManager.getSession(id);
+            if (session == null) {
+                continue;
+            }
+            try {
+                SessionSnapshot snapshot = session.snapshot();
+                // Sessions without rhythm have not learned anything yet
+                if (snapshot.hasRhythm()) {
+                    builder.addSessions(snapshot);
+                }
+            } catch (RuntimeException e) {
+                // Keep the snapshots scheduled
+                LOG.error("Could not take snapshot of session " + id, e);
+            }
+        }
+        if (builder.getSessionsCount() == 0) {
+            return;
+        }
+        Path file = snapshotDirectory.resolve(String.format(SNAPSHOT_FORMAT, timestamp));
+        Path tempFile = snapshotDirectory.resolve(file.getFileName() + ".tmp");
+        try {
+            try (OutputStream output = Files.newOutputStream(tempFile)) {
+                builder.build().writeTo(output);
+            }
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            List<Path> files = list(snapshotDirectory);
+            for (int i = 0; i < files.size() - keep; i++) {
+                Files.deleteIfExists(files.get(i));
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not write session snapshot {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Restore the sessions of the newest snapshot file.
+     *
+     * @param snapshotDirectory
+     *            Snapshot directory
+     * @throws IOException
+     *             If the snapshot directory could not be read
+     */
+    private void restoreNewest(Path snapshotDirectory) throws IOException {
+        List<Path> files = list(snapshotDirectory);
+        // Fall back to older snapshots if the newest ones cannot be read
+        for (int i = files.size() - 1; i >= 0; i--) {
+            Path file = files.get(i);
+            SessionSnapshotSet snapshots;
+            try (InputStream input = Files.newInputStream(file)) {
+                snapshots = SessionSnapshotSet.parseFrom(input);
+            } catch (IOException e) {
+                LOG.warn("Could not read session snapshot {}: {}", file, e.getMessage());
+                continue;
+            }
+            long age = clock.currentTimeMillis() - snapshots.getTimestamp();
+            if (age > maxAge) {
+                LOG.info("Not restoring session snapshot {}: taken {} ms ago", file, age);
+                return;
+            }
+            long start = System.nanoTime();
+            for (SessionSnapshot snapshot : snapshots.getSessionsList()) {
+                sessionManager.restoreSession(snapshot);
+            }
+            LOG.info("Restored {} session(s) from {} in {} ms", snapshots.getSessionsCount(), file,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return;
+        }
+    }
+
+    /**
+     * @param snapshotDirectory
+     *            Snapshot directory
+     * @return The snapshot files, from oldest to newest
+     * @throws IOException
+     *             If the snapshot directory could not be read
+     */
+    private static List<Path> list(Path snapshotDirectory) throws IOException {
+        try (Stream<Path> files = Files.list(snapshotDirectory)) {
+            return files
+                    .filter(p -> p.getFileName().toString().endsWith(SNAPSHOT_EXTENSION))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+}
@@ -0,0 +1,239 @@
+package uk.ac.bath.masmusic.session;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.protobuf.ByteString;
+
+import uk.ac.bath.masmusic.common.Beat;
+import uk.ac.bath.masmusic.common.Chord;
+import uk.ac.bath.masmusic.common.Onset;
+import uk.ac.bath.masmusic.common.PackedPhrase;
+import uk.ac.bath.masmusic.common.Phrase;
+import uk.ac.bath.masmusic.common.Rhythm;
+import uk.ac.bath.masmusic.common.Scale;
+import uk.ac.bath.masmusic.common.TimeSignature;
+import uk.ac.bath.masmusic.generation.melody.MelodyLearner;
+import uk.ac.bath.masmusic.generation.melody.PhraseExtractor;
+import uk.ac.bath.masmusic.protobuf.BarClassInfo;
+import uk.ac.bath.masmusic.protobuf.ChordInfo;
+import uk.ac.bath.masmusic.protobuf.MelodyLearnerInfo;
+import uk.ac.bath.masmusic.protobuf.Note;
+import uk.ac.bath.masmusic.protobuf.OpenPhraseInfo;
+import uk.ac.bath.masmusic.protobuf.PhraseExtractorInfo;
+import uk.ac.bath.masmusic.protobuf.Pitch;
+import uk.ac.bath.masmusic.protobuf.RhythmInfo;
+import uk.ac.bath.masmusic.protobuf.ScaleInfo;
+import uk.ac.bath.masmusic.protobuf.SessionSnapshot;
+import uk.ac.bath.masmusic.protobuf.TimeSpanNote;
+
+/**
+ * Conversion of the learned state of a session to and from the messages of a
+ * {@link SessionSnapshot}.
+ *
+ * Phrases are stored with their {@link PackedPhrase} encoding, so snapshots
+ * stay compact.
+ *
+ * @author Javier Dehesa
+ */
+public final class SessionSnapshots {
+
+    private SessionSnapshots() {
+    }
+
+    /**
+     * @param rhythm
+     *            A rhythm
+     * @return The rhythm message
+     */
+    public static RhythmInfo toRhythmInfo(Rhythm rhythm) {
+        return RhythmInfo.newBuilder()
+                .setBeatDuration(rhythm.getBeat().getDuration())
+                .setBeatPhase(rhythm.getBeat().getPhase())
+                .setBarBeats(rhythm.getTimeSignature().getBeats())
+                .setBarUnit(rhythm.getTimeSignature().getUnit())
+                .setBeatOffset(rhythm.getBeatOffset())
+                .build();
+    }
+
+    /**
+     * @param rhythmInfo
+     *            A rhythm message
+     * @return The rhythm
+     */
+    public static Rhythm fromRhythmInfo(RhythmInfo rhythmInfo) {
+        return new Rhythm(new Beat(rhythmInfo.getBeatDuration(), rhythmInfo.getBeatPhase()),
+                new TimeSignature(rhythmInfo.getBarBeats(), rhythmInfo.getBarUnit()), rhythmInfo.getBeatOffset());
+    }
+
+    /**
+     * @param scale
+     *            A scale
+     * @return The scale message
+     */
+    public static ScaleInfo toScaleInfo(Scale scale) {
+        return ScaleInfo.newBuilder()
+                .setFundamental(Note.valueOf(scale.getFundamental().value()))
+                .setType(scale.getType())
+                .build();
+    }
+
+    /**
+     * @param scaleInfo
+     *            A scale message
+     * @return The scale
+     */
+    public static Scale fromScaleInfo(ScaleInfo scaleInfo) {
+        return new Scale(uk.ac.bath.masmusic.common.Note.fromValue(scaleInfo.getFundamental().getNumber()),
+                scaleInfo.getType());
+    }
+
+    /**
+     * @param chord
+     *            A chord
+     * @return The chord message
+     */
+    public static ChordInfo toChordInfo(Chord chord) {
+        ChordInfo.Builder builder = ChordInfo.newBuilder().setRoot(Note.valueOf(chord.getRoot().value()));
+        for (int i = 0; i < chord.size(); i++) {
+            builder.addStructure(chord.getInterval(i));
+        }
+        return builder.build();
+    }
+
+    /**
+     * @param chordInfo
+     *            A chord message
+     * @return The chord
+     */
+    public static Chord fromChordInfo(ChordInfo chordInfo) {
+        return new Chord(uk.ac.bath.masmusic.common.Note.fromValue(chordInfo.getRoot().getNumber()),
+                chordInfo.getStructureList());
+    }
+
+    /**
+     * @param onset
+     *            An onset
+     * @return The note message
+     */
+    public static TimeSpanNote toTimeSpanNote(Onset onset) {
+        return TimeSpanNote.newBuilder()
+                .setTimestamp(onset.getTimestamp())
+                .setPitch(Pitch.newBuilder()
+                        .setNote(Note.valueOf(onset.getPitch() % 12))
+                        .setOctave(onset.getPitch() / 12 - 1))
+                .setVelocity(onset.getVelocity())
+                .setDuration(onset.getDuration())
+                .build();
+    }
+
+    /**
+     * @param note
+     *            A note message
+     * @return The onset
+     */
+    public static Onset fromTimeSpanNote(TimeSpanNote note) {
+        int pitch = note.getPitch().getNote().getNumber() + (note.getPitch().getOctave() + 1) * 12;
+        return new Onset(note.getTimestamp(), note.getDuration(), pitch, note.getVelocity());
+    }
+
+    /**
+     * @param snapshot
+     *            Snapshot of a melody learner
+     * @return The melody learner message
+     */
+    public static MelodyLearnerInfo toMelodyLearnerInfo(MelodyLearner.Snapshot snapshot) {
+        MelodyLearnerInfo.Builder builder = MelodyLearnerInfo.newBuilder();
+        for (List<PackedPhrase> barPhrases : snapshot.getBarPhrases()) {
+            BarClassInfo.Builder barClassBuilder = BarClassInfo.newBuilder();
+            for (PackedPhrase phrase : barPhrases) {
+                barClassBuilder.addPhrases(ByteString.copyFrom(phrase.toBytes()));
+            }
+            builder.addBarClasses(barClassBuilder);
+        }
+        for (PackedPhrase phrase : snapshot.getIndexedBars()) {
+            builder.addIndexedBars(ByteString.copyFrom(phrase.toBytes()));
+        }
+        builder.addAllIndexedBarClasses(snapshot.getIndexedBarClasses());
+        for (Onset onset : snapshot.getRecentNotes()) {
+            builder.addRecentNotes(toTimeSpanNote(onset));
+        }
+        return builder.setLastLearned(snapshot.getLastLearned()).build();
+    }
+
+    /**
+     * @param melodyInfo
+     *            A melody learner message
+     * @param rhythm
+     *            Rhythm of the learned music
+     * @return The snapshot of the melody learner
+     */
+    public static MelodyLearner.Snapshot fromMelodyLearnerInfo(MelodyLearnerInfo melodyInfo, Rhythm rhythm) {
+        List<List<PackedPhrase>> barPhrases = new ArrayList<>(melodyInfo.getBarClassesCount());
+        for (BarClassInfo barClassInfo : melodyInfo.getBarClassesList()) {
+            List<PackedPhrase> phrases = new ArrayList<>(barClassInfo.getPhrasesCount());
+            for (ByteString bytes : barClassInfo.getPhrasesList()) {
+                phrases.add(PackedPhrase.fromBytes(bytes.toByteArray()));
+            }
+            barPhrases.add(phrases);
+        }
+        List<PackedPhrase> indexedBars = new ArrayList<>(melodyInfo.getIndexedBarsCount());
+        for (ByteString bytes : melodyInfo.getIndexedBarsList()) {
+            indexedBars.add(PackedPhrase.fromBytes(bytes.toByteArray()));
+        }
+        List<Onset> recentNotes = new ArrayList<>(melodyInfo.getRecentNotesCount());
+        for (TimeSpanNote note : melodyInfo.getRecentNotesList()) {
+            recentNotes.add(fromTimeSpanNote(note));
+        }
+        // Older snapshots do not have the bar classes of the indexed bars
+        List<Integer> indexedBarClasses = melodyInfo.getIndexedBarClassesCount() == indexedBars.size()
+                ? melodyInfo.getIndexedBarClassesList() : Collections.emptyList();
+        return new MelodyLearner.Snapshot(rhythm, barPhrases, indexedBars, indexedBarClasses, recentNotes,
+                melodyInfo.getLastLearned());
+    }
+
+    /**
+     * @param snapshot
+     *            Snapshot of a phrase extractor
+     * @return The phrase extractor message
+     */
+    public static PhraseExtractorInfo toPhraseExtractorInfo(PhraseExtractor.Snapshot snapshot) {
+        PhraseExtractorInfo.Builder builder = PhraseExtractorInfo.newBuilder()
+                .setBaseTimestamp(snapshot.getBaseTimestamp())
+                .setWatermark(snapshot.getWatermark());
+        for (Onset onset : snapshot.getPendingOnsets()) {
+            builder.addPendingNotes(toTimeSpanNote(onset));
+        }
+        List<Phrase> openPhrases = snapshot.getOpenPhrases();
+        for (int i = 0; i < openPhrases.size(); i++) {
+            builder.addOpenPhrases(OpenPhraseInfo.newBuilder()
+                    .setInitialPosition(snapshot.getOpenPhrasePosition(i))
+                    .setPhrase(ByteString.copyFrom(PackedPhrase.fromPhrase(openPhrases.get(i)).toBytes())));
+        }
+        return builder.build();
+    }
+
+    /**
+     * @param phrasesInfo
+     *            A phrase extractor message
+     * @return The snapshot of the phrase extractor
+     */
+    public static PhraseExtractor.Snapshot fromPhraseExtractorInfo(PhraseExtractorInfo phrasesInfo) {
+        List<Onset> pendingOnsets = new ArrayList<>(phrasesInfo.getPendingNotesCount());
+        for (TimeSpanNote note : phrasesInfo.getPendingNotesList()) {
+            pendingOnsets.add(fromTimeSpanNote(note));
+        }
+        int numOpen = phrasesInfo.getOpenPhrasesCount();
+        List<Phrase> openPhrases = new ArrayList<>(numOpen);
+        double[] openPhrasePositions = new double[numOpen];
+        for (int i = 0; i < numOpen; i++) {
+            OpenPhraseInfo openPhraseInfo = phrasesInfo.getOpenPhrases(i);
+            openPhrases.add(PackedPhrase.fromBytes(openPhraseInfo.getPhrase().toByteArray()).toPhrase());
+            openPhrasePositions[i] = openPhraseInfo.getInitialPosition();
+        }
+        return new PhraseExtractor.Snapshot(phrasesInfo.getBaseTimestamp(), phrasesInfo.getWatermark(),
+                pendingOnsets, openPhrases, openPhrasePositions);
+    }
+
+}
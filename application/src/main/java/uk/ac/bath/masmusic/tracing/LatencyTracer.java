@@ -0,0 +1,287 @@
+package uk.ac.bath.masmusic.tracing;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import uk.ac.bath.masmusic.common.LatencyHistogram;
+
+/**
+ * Hear-to-play latency tracer.
+ *
+ * Every tracker snapshot starts a {@link Trace}, stamped with the time the
+ * last note of its session was heard. The trace of the last snapshot
+ * delivered in a session is taken by the agents of that session when they
+ * generate music, and it follows the generated notes until the first of them
+ * is sent. Completed traces of every session are aggregated in one
+ * {@link LatencyHistogram} per stage (in microseconds), which are exposed
+ * through JMX and logged periodically.
+ *
+ * @author Javier Dehesa
+ */
+@Component
+@ManagedResource(objectName = "masmusic:type=LatencyTracer", description = "Hear-to-play latency tracer")
+public class LatencyTracer implements Runnable {
+
+    /** Logger */
+    private static Logger LOG = LoggerFactory.getLogger(LatencyTracer.class);
+
+    /** Time between latency reports in the log (ms). */
+    @Value("${masmusic.tracing.report-period:60000}")
+    private int reportPeriod;
+
+    /** Time the last note was heard in each session (ns). */
+    private final Map<String, Long> lastHeard;
+
+    /** Trace of the last delivered snapshot of each session. */
+    private final Map<String, Trace> current;
+
+    /** Latency of each stage (us). */
+    private final LatencyHistogram[] stageLatencies;
+
+    /** Total hear-to-play latency (us). */
+    private final LatencyHistogram totalLatency;
+
+    /** Whether the reporter is running. */
+    private final AtomicBoolean started;
+
+    /** Whether the reporter must finish. */
+    private final AtomicBoolean finish;
+
+    /**
+     * Constructor.
+     */
+    public LatencyTracer() {
+        lastHeard = new ConcurrentHashMap<>();
+        current = new ConcurrentHashMap<>();
+        stageLatencies = new LatencyHistogram[TraceStage.values().length];
+        for (int i = 0; i < stageLatencies.length; i++) {
+            stageLatencies[i] = new LatencyHistogram();
+        }
+        totalLatency = new LatencyHistogram();
+        started = new AtomicBoolean(false);
+        finish = new AtomicBoolean(false);
+    }
+
+    /**
+     * Start the periodic reports.
+     */
+    @PostConstruct
+    public void start() {
+        if (!started.getAndSet(true)) {
+            finish.set(false);
+            Thread thread = new Thread(this, "latency-tracer");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stop the periodic reports.
+     */
+    @PreDestroy
+    public void stop() {
+        finish.set(true);
+    }
+
+    /**
+     * Register that a note has been heard.
+     *
+     * @param sessionId
+     *            Id of the session that heard the note
+     */
+    public void heard(String sessionId) {
+        lastHeard.put(sessionId, System.nanoTime());
+    }
+
+    /**
+     * Start the trace of a tracker snapshot.
+     *
+     * @param sessionId
+     *            Id of the session of the tracker
+     * @return A new trace, stamped up to {@link TraceStage#ANALYZED}
+     */
+    public Trace begin(String sessionId) {
+        Trace trace = new Trace();
+        Long heard = lastHeard.get(sessionId);
+        if (heard != null) {
+            trace.set(TraceStage.HEARD, heard);
+        }
+        trace.stamp(TraceStage.ANALYZED);
+        return trace;
+    }
+
+    /**
+     * Register the trace of a delivered snapshot as the current one of its
+     * session.
+     *
+     * @param sessionId
+     *            Id of the session of the tracker
+     * @param trace
+     *            A trace stamped up to {@link TraceStage#DELIVERED}
+     */
+    public void delivered(String sessionId, Trace trace) {
+        current.put(sessionId, trace);
+    }
+
+    /**
+     * Start the trace of a generation action.
+     *
+     * @param sessionId
+     *            Id of the session of the acting agent
+     * @return A copy of the trace of the last delivered snapshot of the
+     *         session stamped with {@link TraceStage#ACTED}, or a new trace if
+     *         no snapshot has been delivered yet
+     */
+    public Trace act(String sessionId) {
+        Trace last = current.get(sessionId);
+        Trace trace = last != null ? last.copy() : new Trace();
+        trace.stamp(TraceStage.ACTED);
+        return trace;
+    }
+
+    /**
+     * Forget the traces of a closed session.
+     *
+     * @param sessionId
+     *            Id of the session
+     */
+    public void forget(String sessionId) {
+        lastHeard.remove(sessionId);
+        current.remove(sessionId);
+    }
+
+    /**
+     * Complete a trace and aggregate its stage latencies.
+     *
+     * Traces are only aggregated the first time they are completed.
+     *
+     * @param trace
+     *            A trace stamped up to {@link TraceStage#SENT}
+     */
+    public void complete(Trace trace) {
+        if (!trace.complete()) {
+            return;
+        }
+        TraceStage[] stages = TraceStage.values();
+        for (int i = 1; i < stages.length; i++) {
+            long previous = trace.getStamp(stages[i - 1]);
+            long stamp = trace.getStamp(stages[i]);
+            if (previous != 0 && stamp != 0) {
+                stageLatencies[i].record(TimeUnit.NANOSECONDS.toMicros(stamp - previous));
+            }
+        }
+        long heard = trace.getStamp(TraceStage.HEARD);
+        long sent = trace.getStamp(TraceStage.SENT);
+        if (heard != 0 && sent != 0) {
+            totalLatency.record(TimeUnit.NANOSECONDS.toMicros(sent - heard));
+        }
+    }
+
+    /**
+     * @param stage
+     *            A stage
+     * @return Histogram of the latency of the stage (us)
+     */
+    public LatencyHistogram getStageLatency(TraceStage stage) {
+        return stageLatencies[stage.ordinal()];
+    }
+
+    /**
+     * @return Histogram of the total hear-to-play latency (us)
+     */
+    public LatencyHistogram getTotalLatency() {
+        return totalLatency;
+    }
+
+    /**
+     * @return Summary of the latency of each stage
+     */
+    @ManagedAttribute(description = "Latency of each stage (us)")
+    public String[] getStageSummaries() {
+        TraceStage[] stages = TraceStage.values();
+        String[] summaries = new String[stages.length - 1];
+        for (int i = 1; i < stages.length; i++) {
+            summaries[i - 1] = stages[i].getName() + ": " + stageLatencies[i];
+        }
+        return summaries;
+    }
+
+    /**
+     * @return Summary of the total hear-to-play latency
+     */
+    @ManagedAttribute(description = "Total hear-to-play latency (us)")
+    public String getTotalSummary() {
+        return totalLatency.toString();
+    }
+
+    /**
+     * @return Number of completed traces
+     */
+    @ManagedAttribute(description = "Number of completed traces")
+    public long getTraceCount() {
+        return totalLatency.getCount();
+    }
+
+    /**
+     * @param stage
+     *            Stage name
+     * @param percentile
+     *            Percentile, in the range [0, 100]
+     * @return Upper bound of the percentile of the stage latency (us)
+     */
+    @ManagedOperation(description = "Percentile of the latency of a stage (us)")
+    public long getStagePercentile(String stage, double percentile) {
+        return getStageLatency(TraceStage.valueOf(stage.toUpperCase())).getPercentile(percentile);
+    }
+
+    /**
+     * Discard every aggregated latency.
+     */
+    @ManagedOperation(description = "Discard every aggregated latency")
+    public void reset() {
+        for (LatencyHistogram histogram : stageLatencies) {
+            histogram.reset();
+        }
+        totalLatency.reset();
+    }
+
+    @Override
+    public void run() {
+        while (!finish.get()) {
+            try {
+                Thread.sleep(reportPeriod);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            report();
+        }
+        started.set(false);
+    }
+
+    /**
+     * Log a summary of the aggregated latencies.
+     */
+    private void report() {
+        if (totalLatency.getCount() == 0) {
+            return;
+        }
+        for (String summary : getStageSummaries()) {
+            LOG.info("Latency {}", summary);
+        }
+        LOG.info("Latency total: {}", totalLatency);
+    }
+}
@@ -0,0 +1,110 @@
+package uk.ac.bath.masmusic.tracing;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Monotonic timestamps of a traced item at every {@link TraceStage} boundary.
+ *
+ * Each stage can only be stamped once; later stamps of the same stage are
+ * ignored, so a trace shared by several notes records the first one. A trace
+ * is not thread-safe, but it can be handed over between threads through any
+ * synchronized structure.
+ *
+ * @author Javier Dehesa
+ */
+public class Trace {
+
+    /** Stage timestamps (ns, 0 if not stamped). */
+    private final long[] stamps;
+
+    /** Whether the trace has been completed. */
+    private final AtomicBoolean completed;
+
+    /**
+     * Constructor.
+     */
+    public Trace() {
+        this(new long[TraceStage.values().length]);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param stamps
+     *            Initial stage timestamps
+     */
+    private Trace(long[] stamps) {
+        this.stamps = stamps;
+        this.completed = new AtomicBoolean(false);
+    }
+
+    /**
+     * Stamp a stage with the current time, if it has not been stamped yet.
+     *
+     * @param stage
+     *            The stamped stage
+     */
+    public void stamp(TraceStage stage) {
+        set(stage, System.nanoTime());
+    }
+
+    /**
+     * Stamp a stage with the current time minus a delay that must not count as
+     * latency, like an intentional wait, if it has not been stamped yet.
+     *
+     * The stamp is never earlier than the stamps of the previous stages.
+     *
+     * @param stage
+     *            The stamped stage
+     * @param excludedNanos
+     *            Delay excluded from the stamp (ns)
+     */
+    public void stamp(TraceStage stage, long excludedNanos) {
+        long nanos = System.nanoTime() - Math.max(excludedNanos, 0);
+        for (int i = 0; i < stage.ordinal(); i++) {
+            if (stamps[i] != 0) {
+                nanos = Math.max(nanos, stamps[i]);
+            }
+        }
+        set(stage, nanos);
+    }
+
+    /**
+     * Set the timestamp of a stage, if it has not been set yet.
+     *
+     * @param stage
+     *            The stamped stage
+     * @param nanos
+     *            Timestamp as given by {@link System#nanoTime()}
+     */
+    void set(TraceStage stage, long nanos) {
+        if (stamps[stage.ordinal()] == 0) {
+            stamps[stage.ordinal()] = nanos;
+        }
+    }
+
+    /**
+     * @param stage
+     *            A stage
+     * @return The timestamp of the stage (ns), or 0 if it has not been stamped
+     */
+    public long getStamp(TraceStage stage) {
+        return stamps[stage.ordinal()];
+    }
+
+    /**
+     * @return A copy of this trace with the same stamps
+     */
+    public Trace copy() {
+        return new Trace(stamps.clone());
+    }
+
+    /**
+     * Mark the trace as completed.
+     *
+     * @return true if the trace was not completed before, false otherwise
+     */
+    boolean complete() {
+        return completed.compareAndSet(false, true);
+    }
+}
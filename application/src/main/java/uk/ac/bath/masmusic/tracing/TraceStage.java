@@ -0,0 +1,46 @@
+package uk.ac.bath.masmusic.tracing;
+
+/**
+ * Boundaries of the stages of the hear-to-play pipeline, in order.
+ *
+ * The latency of a stage is the time between its boundary and the previous
+ * one.
+ *
+ * @author Javier Dehesa
+ */
+public enum TraceStage {
+
+    /** The last note of the analyzed input was received. */
+    HEARD,
+
+    /** The Esper window snapshot was delivered to a tracker. */
+    ANALYZED,
+
+    /** The tracker finished its analysis and published its result. */
+    PUBLISHED,
+
+    /** The published Spring event was handed over to its listeners. */
+    DELIVERED,
+
+    /** An agent started a generation action. */
+    ACTED,
+
+    /** The generator produced the generated bars. */
+    GENERATED,
+
+    /** The generated notes were handed to the playback scheduler. */
+    SCHEDULED,
+
+    /**
+     * The first generated note was sent to the play topic, not counting the
+     * time it was intentionally held by the playback look-ahead.
+     */
+    SENT;
+
+    /**
+     * @return The stage name used in reports
+     */
+    public String getName() {
+        return name().toLowerCase();
+    }
+}
@@ -0,0 +1,387 @@
+package uk.ac.bath.masmusic.cluster;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.integration.mqtt.support.MqttHeaders;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+
+import uk.ac.bath.masmusic.common.ConsistentHashRing;
+import uk.ac.bath.masmusic.common.VirtualClock;
+import uk.ac.bath.masmusic.protobuf.NodeInfo;
+import uk.ac.bath.masmusic.protobuf.RhythmInfo;
+import uk.ac.bath.masmusic.protobuf.SessionSnapshot;
+import uk.ac.bath.masmusic.protobuf.TimeSpanNote;
+import uk.ac.bath.masmusic.session.SessionManager;
+
+public class SessionRouterTest {
+
+    /** Maximum time waited by the tests (ms). */
+    private static final long TIMEOUT = 5000;
+
+    /** Time between heartbeats of the test nodes (ms). */
+    private static final long HEARTBEAT_PERIOD = 50;
+
+    /** Time without heartbeats after which a test node is gone (ms). */
+    private static final long NODE_TIMEOUT = 300;
+
+    /** Topic of the heard messages. */
+    private static final String HEAR_TOPIC = "hear";
+
+    /**
+     * In-memory broker delivering the cluster messages synchronously.
+     */
+    private static class Broker {
+
+        /** Subscriptions of the connected nodes. */
+        final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+        /** Disconnected nodes. */
+        final Set<String> disconnected = ConcurrentHashMap.newKeySet();
+
+        void subscribe(String node, String filter, Consumer<Message<?>> consumer) {
+            subscriptions.add(new Subscription(node, filter, consumer));
+        }
+
+        void publish(String sender, Object payload, String topic) {
+            if (disconnected.contains(sender)) {
+                return;
+            }
+            Message<?> message = MessageBuilder.withPayload(payload).setHeader(MqttHeaders.TOPIC, topic).build();
+            for (Subscription subscription : subscriptions) {
+                if (!disconnected.contains(subscription.node) && subscription.matches(topic)) {
+                    subscription.consumer.accept(message);
+                }
+            }
+        }
+    }
+
+    /**
+     * Subscription of a node to a topic filter.
+     */
+    private static class Subscription {
+
+        final String node;
+        final String[] filter;
+        final Consumer<Message<?>> consumer;
+
+        Subscription(String node, String filter, Consumer<Message<?>> consumer) {
+            this.node = node;
+            this.filter = filter.split("/");
+            this.consumer = consumer;
+        }
+
+        boolean matches(String topic) {
+            String[] levels = topic.split("/");
+            if (levels.length != filter.length) {
+                return false;
+            }
+            for (int i = 0; i < levels.length; i++) {
+                if (!filter[i].equals("+") && !filter[i].equals(levels[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Session manager recording the sessions instead of running them.
+     */
+    private static class RecordingSessionManager extends SessionManager {
+
+        /** Open sessions. */
+        final Set<String> sessions = ConcurrentHashMap.newKeySet();
+
+        /** Restored sessions. */
+        final Set<String> restored = ConcurrentHashMap.newKeySet();
+
+        /** Session of every heard message. */
+        final List<String> heard = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void handleMessage(Message<?> message) {
+            String id = getSessionId(message);
+            sessions.add(id);
+            heard.add(id);
+        }
+
+        @Override
+        public String getSessionId(Message<?> message) {
+            Object header = message.getHeaders().get(SESSION_HEADER);
+            if (header != null) {
+                return header.toString();
+            }
+            return message.getHeaders().get(MqttHeaders.TOPIC).toString().substring(HEAR_TOPIC.length() + 1);
+        }
+
+        @Override
+        public List<String> getSessionIds() {
+            return new ArrayList<>(sessions);
+        }
+
+        @Override
+        public boolean restoreSession(SessionSnapshot snapshot) {
+            sessions.add(snapshot.getSessionId());
+            restored.add(snapshot.getSessionId());
+            return true;
+        }
+
+        @Override
+        public SessionSnapshot handOffSession(String id) {
+            if (!sessions.remove(id)) {
+                return null;
+            }
+            return SessionSnapshot.newBuilder()
+                    .setSessionId(id)
+                    .setRhythm(RhythmInfo.newBuilder().setBeatDuration(500))
+                    .build();
+        }
+    }
+
+    /**
+     * A node of the cluster.
+     */
+    private static class Node {
+
+        final String id;
+        final Broker broker;
+        final ClusterMembership membership;
+        final SessionRouter router;
+        final RecordingSessionManager sessionManager;
+
+        Node(String id, Broker broker) throws ReflectiveOperationException {
+            this.id = id;
+            this.broker = broker;
+            membership = new ClusterMembership();
+            router = new SessionRouter();
+            sessionManager = new RecordingSessionManager();
+            ClusterGateway gateway = new ClusterGateway() {
+
+                @Override
+                public void send(NodeInfo node, String topic) {
+                    broker.publish(id, node, topic);
+                }
+
+                @Override
+                public void send(TimeSpanNote note, String topic) {
+                    broker.publish(id, note, topic);
+                }
+
+                @Override
+                public void send(SessionSnapshot snapshot, String topic) {
+                    broker.publish(id, snapshot, topic);
+                }
+            };
+            ApplicationEventPublisher publisher = new ApplicationEventPublisher() {
+
+                @Override
+                public void publishEvent(ApplicationEvent event) {
+                    publishEvent((Object) event);
+                }
+
+                @Override
+                public void publishEvent(Object event) {
+                    if (event instanceof ClusterChangedEvent) {
+                        router.onClusterChanged((ClusterChangedEvent) event);
+                    }
+                }
+            };
+            set(membership, "enabled", true);
+            set(membership, "configuredNodeId", id);
+            set(membership, "clusterTopic", "cluster");
+            set(membership, "group", "masmusic");
+            set(membership, "heartbeatPeriod", HEARTBEAT_PERIOD);
+            set(membership, "nodeTimeout", NODE_TIMEOUT);
+            set(membership, "virtualNodes", ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+            set(membership, "publisher", publisher);
+            // Virtual time never advances, liveness must not depend on it
+            set(membership, "clock", new VirtualClock(0));
+            set(membership, "clusterGateway", gateway);
+            set(router, "sessionManager", sessionManager);
+            set(router, "membership", membership);
+            set(router, "clusterGateway", gateway);
+            set(router, "pendingCapacity", 16);
+        }
+
+        void start() {
+            // Subscribed before the first heartbeat, so no handoff is missed
+            broker.subscribe(id, membership.getNodesTopic(), m -> membership.onNodeInfo((NodeInfo) m.getPayload()));
+            broker.subscribe(id, membership.getRouteTopic(id, "+"), router::handleRouted);
+            broker.subscribe(id, membership.getHandoffTopic(id),
+                    m -> router.handleHandoff((SessionSnapshot) m.getPayload()));
+            membership.start();
+        }
+
+        void stop() {
+            membership.stop();
+        }
+
+        private static void set(Object target, String name, Object value) throws ReflectiveOperationException {
+            Field field = target.getClass().getDeclaredField(name);
+            field.setAccessible(true);
+            field.set(target, value);
+        }
+    }
+
+    /** Message broker of the cluster. */
+    private Broker broker;
+
+    /** First node, started alone. */
+    private Node nodeA;
+
+    /** Second node, joining later. */
+    private Node nodeB;
+
+    /** A session owned by the first node once both nodes are alive. */
+    private String sessionA;
+
+    /** A session owned by the second node once both nodes are alive. */
+    private String sessionB;
+
+    @Before
+    public void setUp() throws ReflectiveOperationException {
+        broker = new Broker();
+        nodeA = new Node("a", broker);
+        nodeB = new Node("b", broker);
+        ConsistentHashRing ring = new ConsistentHashRing(ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+        ring.add("a");
+        ring.add("b");
+        for (int i = 0; sessionA == null || sessionB == null; i++) {
+            String id = "session" + i;
+            if (ring.getNode(id).equals("a")) {
+                sessionA = sessionA == null ? id : sessionA;
+            } else {
+                sessionB = sessionB == null ? id : sessionB;
+            }
+        }
+    }
+
+    @After
+    public void tearDown() {
+        nodeA.stop();
+        nodeB.stop();
+    }
+
+    @Test
+    public void testSingleNodeOwnsEverySession() {
+        nodeA.start();
+        assertThat(nodeA.membership.getNodes(), is(Collections.singletonList("a")));
+        nodeA.router.handleMessage(heard(sessionB));
+        assertThat(nodeA.sessionManager.heard, is(Collections.singletonList(sessionB)));
+    }
+
+    @Test
+    public void testHandoffAndRouting() {
+        nodeA.start();
+        nodeA.router.handleMessage(heard(sessionA));
+        nodeA.router.handleMessage(heard(sessionB));
+        nodeB.start();
+        awaitNodes(nodeA, "a", "b");
+        awaitNodes(nodeB, "a", "b");
+
+        // The session now owned by the new node is handed off to it
+        await(() -> nodeB.sessionManager.restored.contains(sessionB));
+        assertTrue(!nodeA.sessionManager.sessions.contains(sessionB));
+        assertThat(nodeA.sessionManager.getSessionIds(), is(Collections.singletonList(sessionA)));
+
+        // Heard messages are handled by the owner of their session
+        nodeA.router.handleMessage(heard(sessionB));
+        nodeB.router.handleMessage(heard(sessionA));
+        await(() -> nodeB.sessionManager.heard.contains(sessionB));
+        await(() -> nodeA.sessionManager.heard.size() == 3);
+        assertThat(nodeA.sessionManager.heard, is(Arrays.asList(sessionA, sessionB, sessionA)));
+        assertThat(nodeB.sessionManager.heard, is(Collections.singletonList(sessionB)));
+    }
+
+    @Test
+    public void testRoutedToStaleOwnerIsForwarded() {
+        nodeA.start();
+        nodeB.start();
+        awaitNodes(nodeA, "a", "b");
+        awaitNodes(nodeB, "a", "b");
+        // Sent by a node still believing that the first node owns the session
+        nodeA.router.handleRouted(MessageBuilder.withPayload(TimeSpanNote.getDefaultInstance())
+                .setHeader(MqttHeaders.TOPIC, nodeA.membership.getRouteTopic("a", sessionB))
+                .build());
+        assertTrue(!nodeA.sessionManager.sessions.contains(sessionB));
+        await(() -> nodeB.sessionManager.heard.contains(sessionB));
+        assertTrue(!nodeA.sessionManager.sessions.contains(sessionB));
+        assertThat(nodeA.router.getDroppedCount(), is(0L));
+    }
+
+    @Test
+    public void testNodeTimeoutInRealTime() {
+        nodeA.start();
+        nodeB.start();
+        awaitNodes(nodeA, "a", "b");
+        // The second node stops sending heartbeats without leaving
+        broker.disconnected.add("b");
+        awaitNodes(nodeA, "a");
+        nodeA.router.handleMessage(heard(sessionB));
+        assertThat(nodeA.sessionManager.heard, is(Collections.singletonList(sessionB)));
+    }
+
+    /**
+     * @param sessionId
+     *            A session id
+     * @return A heard message of the session
+     */
+    private static Message<?> heard(String sessionId) {
+        return MessageBuilder.withPayload(TimeSpanNote.getDefaultInstance())
+                .setHeader(MqttHeaders.TOPIC, HEAR_TOPIC + "/" + sessionId)
+                .build();
+    }
+
+    /**
+     * Wait until a node sees the given nodes alive.
+     *
+     * @param node
+     *            A node
+     * @param nodes
+     *            The expected alive nodes, sorted
+     */
+    private static void awaitNodes(Node node, String... nodes) {
+        List<String> expected = Arrays.asList(nodes);
+        await(() -> node.membership.getNodes().equals(expected));
+        assertThat(node.membership.getNodes(), is(expected));
+    }
+
+    /**
+     * Wait until a condition holds or the test timeout passes.
+     *
+     * @param condition
+     *            The awaited condition
+     */
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+}
@@ -0,0 +1,116 @@
+package uk.ac.bath.masmusic.events;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
+
+import uk.ac.bath.masmusic.common.Beat;
+import uk.ac.bath.masmusic.common.Rhythm;
+import uk.ac.bath.masmusic.common.TimeSignature;
+
+public class EventsConfigurationTest {
+
+    /** Maximum time waited by the tests (ms). */
+    private static final long TIMEOUT = 5000;
+
+    /**
+     * Listener holding every rhythm update until it is released.
+     */
+    public static class RhythmListener {
+
+        final CountDownLatch received = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        volatile Thread thread;
+        volatile boolean finished;
+
+        @EventListener
+        public void onRhythmUpdated(RhythmUpdatedEvent event) throws InterruptedException {
+            thread = Thread.currentThread();
+            received.countDown();
+            release.await(TIMEOUT, TimeUnit.MILLISECONDS);
+            finished = true;
+        }
+    }
+
+    /**
+     * Listener of events that are not analysis events.
+     */
+    public static class OtherListener {
+
+        volatile Thread thread;
+
+        @EventListener
+        public void onOther(OtherEvent event) {
+            thread = Thread.currentThread();
+        }
+    }
+
+    /**
+     * An event that is not an analysis event.
+     */
+    public static class OtherEvent extends ApplicationEvent {
+
+        private static final long serialVersionUID = 1L;
+
+        public OtherEvent(Object source) {
+            super(source);
+        }
+    }
+
+    /** Session-like context with the events configuration. */
+    private AnnotationConfigApplicationContext context;
+
+    @Before
+    public void setUp() {
+        context = new AnnotationConfigApplicationContext();
+        context.register(PropertySourcesPlaceholderConfigurer.class, EventsConfiguration.class,
+                RhythmListener.class, OtherListener.class);
+        context.refresh();
+    }
+
+    @After
+    public void tearDown() {
+        context.close();
+    }
+
+    @Test
+    public void testAnalysisEventsAsync() throws InterruptedException {
+        RhythmListener listener = context.getBean(RhythmListener.class);
+        context.publishEvent(new RhythmUpdatedEvent(this, new Rhythm(new Beat(500), new TimeSignature(4, 4))));
+        // The publisher does not wait for the listener
+        assertThat(listener.finished, is(false));
+        assertThat(listener.received.await(TIMEOUT, TimeUnit.MILLISECONDS), is(true));
+        assertTrue(listener.thread != Thread.currentThread());
+        listener.release.countDown();
+    }
+
+    @Test
+    public void testOtherEventsSync() {
+        OtherListener listener = context.getBean(OtherListener.class);
+        context.publishEvent(new OtherEvent(this));
+        assertThat(listener.thread, is(Thread.currentThread()));
+    }
+
+    @Test
+    public void testCloseStopsConsumers() throws InterruptedException {
+        RhythmListener listener = context.getBean(RhythmListener.class);
+        listener.release.countDown();
+        context.publishEvent(new RhythmUpdatedEvent(this, new Rhythm(new Beat(500), new TimeSignature(4, 4))));
+        assertThat(listener.received.await(TIMEOUT, TimeUnit.MILLISECONDS), is(true));
+        context.close();
+        listener.thread.join(TIMEOUT);
+        assertThat(listener.thread.isAlive(), is(false));
+    }
+
+}
@@ -0,0 +1,87 @@
+package uk.ac.bath.masmusic.integration;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TimedOfferPolicyTest {
+
+    /** Maximum time waited by the tests (ms). */
+    private static final long TIMEOUT = 5000;
+
+    /** Released to let the blocked worker go on. */
+    private CountDownLatch release;
+
+    /** Number of run tasks. */
+    private AtomicInteger run;
+
+    /** Policy under test. */
+    private TimedOfferPolicy policy;
+
+    /** Single thread executor with room for one queued task. */
+    private ThreadPoolExecutor executor;
+
+    @Before
+    public void setUp() throws InterruptedException {
+        release = new CountDownLatch(1);
+        run = new AtomicInteger();
+        policy = new TimedOfferPolicy("Test", 20);
+        executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1), policy);
+        CountDownLatch started = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            try {
+                release.await(TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        started.await(TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testDropsWhenFull() throws InterruptedException {
+        executor.execute(run::incrementAndGet);
+        executor.execute(run::incrementAndGet);
+        executor.execute(run::incrementAndGet);
+        assertThat(policy.getDroppedCount(), is(2L));
+        release.countDown();
+        executor.shutdown();
+        executor.awaitTermination(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertThat(run.get(), is(1));
+    }
+
+    @Test
+    public void testWaitsForRoom() throws InterruptedException {
+        TimedOfferPolicy patientPolicy = new TimedOfferPolicy("Test", TIMEOUT);
+        executor.setRejectedExecutionHandler(patientPolicy);
+        executor.execute(run::incrementAndGet);
+        new Thread(() -> release.countDown()).start();
+        executor.execute(run::incrementAndGet);
+        assertThat(patientPolicy.getDroppedCount(), is(0L));
+        executor.shutdown();
+        executor.awaitTermination(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertThat(run.get(), is(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeTimeout() {
+        new TimedOfferPolicy("Test", -1);
+    }
+
+}
@@ -0,0 +1,170 @@
+package uk.ac.bath.masmusic.journal;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import uk.ac.bath.masmusic.common.VirtualClock;
+import uk.ac.bath.masmusic.protobuf.JournalEntry;
+import uk.ac.bath.masmusic.protobuf.RhythmInfo;
+import uk.ac.bath.masmusic.protobuf.TimeSpanNote;
+
+public class JournalTest {
+
+    /** Size of the test segments (bytes). */
+    private static final int SEGMENT_SIZE = 128;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Journal directory. */
+    private Path directory;
+
+    @Before
+    public void setUp() {
+        directory = folder.getRoot().toPath().resolve("journal");
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        List<JournalEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            JournalEntry.Builder builder = JournalEntry.newBuilder().setTimestamp(1000 + i).setSessionId("s" + i % 3);
+            TimeSpanNote note = TimeSpanNote.newBuilder().setTimestamp(1000 + i).setVelocity(i).build();
+            switch (i % 3) {
+            case 0:
+                builder.setHeard(note);
+                break;
+            case 1:
+                builder.setPlayed(note);
+                break;
+            default:
+                builder.setRhythm(RhythmInfo.newBuilder().setBeatDuration(500 + i));
+            }
+            entries.add(builder.build());
+        }
+        try (JournalWriter writer = new JournalWriter(directory, SEGMENT_SIZE)) {
+            for (JournalEntry entry : entries) {
+                writer.append(entry);
+            }
+            // The entries do not fit in a single segment
+            assertTrue(writer.getSegmentIndex() > 0);
+        }
+        assertThat(readAll(), is(entries));
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        new JournalWriter(directory, SEGMENT_SIZE).close();
+        assertThat(readAll(), is(new ArrayList<>()));
+    }
+
+    @Test
+    public void testReadWhileWriting() throws IOException {
+        try (JournalWriter writer = new JournalWriter(directory, SEGMENT_SIZE)) {
+            JournalEntry entry = JournalEntry.newBuilder().setTimestamp(1).build();
+            writer.append(entry);
+            writer.flush();
+            List<JournalEntry> expected = new ArrayList<>();
+            expected.add(entry);
+            assertThat(readAll(), is(expected));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testEntryTooLarge() throws IOException {
+        StringBuilder id = new StringBuilder();
+        while (id.length() < SEGMENT_SIZE) {
+            id.append("session");
+        }
+        try (JournalWriter writer = new JournalWriter(directory, SEGMENT_SIZE)) {
+            writer.append(JournalEntry.newBuilder().setSessionId(id.toString()).build());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testAppendAfterClose() throws IOException {
+        JournalWriter writer = new JournalWriter(directory, SEGMENT_SIZE);
+        writer.close();
+        writer.append(JournalEntry.newBuilder().setTimestamp(1).build());
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidSegment() throws IOException {
+        Files.createDirectories(directory);
+        Files.write(directory.resolve("00000" + JournalWriter.SEGMENT_EXTENSION), new byte[SEGMENT_SIZE]);
+        readAll();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSegmentTooSmall() throws IOException {
+        new JournalWriter(directory, Integer.BYTES);
+    }
+
+    @Test
+    public void testSessionJournalWrittenOnStop() throws IOException, ReflectiveOperationException {
+        SessionJournal journal = new SessionJournal();
+        set(journal, "enabled", true);
+        set(journal, "directory", directory.toString());
+        set(journal, "segmentSize", SEGMENT_SIZE);
+        set(journal, "capacity", 1024);
+        set(journal, "clock", new VirtualClock(1234));
+        journal.start();
+        assertThat(journal.isRecording(), is(true));
+        List<JournalEntry> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            TimeSpanNote note = TimeSpanNote.newBuilder().setTimestamp(i).build();
+            journal.recordPlayed(note, "s");
+            expected.add(JournalEntry.newBuilder().setTimestamp(1234).setSessionId("s").setPlayed(note).build());
+        }
+        // Every queued entry is written and the journal closed once stopped
+        journal.stop();
+        assertThat(journal.isRecording(), is(false));
+        assertThat(journal.getWrittenCount(), is(100L));
+        directory = directory.resolve("1234");
+        assertThat(readAll(), is(expected));
+    }
+
+    /**
+     * Set a field of an object.
+     *
+     * @param target
+     *            The object
+     * @param name
+     *            Field name
+     * @param value
+     *            Field value
+     */
+    private static void set(Object target, String name, Object value) throws ReflectiveOperationException {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    /**
+     * @return Every entry of the journal
+     */
+    private List<JournalEntry> readAll() throws IOException {
+        List<JournalEntry> entries = new ArrayList<>();
+        try (JournalReader reader = new JournalReader(directory)) {
+            JournalEntry entry;
+            while ((entry = reader.read()) != null) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+}
@@ -0,0 +1,81 @@
+package uk.ac.bath.masmusic.mas;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class InstructionMailboxTest {
+
+    @Test
+    public void testArrivalOrder() {
+        InstructionMailbox<String> mailbox = new InstructionMailbox<>(4);
+        assertThat(mailbox.post("a"), is(true));
+        assertThat(mailbox.post("b"), is(true));
+        assertThat(mailbox.post("c"), is(true));
+        List<String> drained = new ArrayList<>();
+        assertThat(mailbox.drainTo(drained), is(3));
+        assertThat(drained, is(Arrays.asList("a", "b", "c")));
+    }
+
+    @Test
+    public void testConsumedOnce() {
+        InstructionMailbox<String> mailbox = new InstructionMailbox<>(4);
+        mailbox.post("a");
+        mailbox.drainTo(new ArrayList<>());
+        assertThat(mailbox.size(), is(0));
+        List<String> drained = new ArrayList<>();
+        assertThat(mailbox.drainTo(drained), is(0));
+        assertThat(drained, is(Collections.emptyList()));
+    }
+
+    @Test
+    public void testDuplicates() {
+        InstructionMailbox<String> mailbox = new InstructionMailbox<>(4);
+        mailbox.post("a");
+        mailbox.post("b");
+        assertThat(mailbox.post("a"), is(false));
+        assertThat(mailbox.size(), is(2));
+        assertThat(mailbox.getDuplicatedCount(), is(1L));
+        // The duplicate does not move the pending instruction
+        List<String> drained = new ArrayList<>();
+        mailbox.drainTo(drained);
+        assertThat(drained, is(Arrays.asList("a", "b")));
+        // Once consumed, the instruction can be posted again
+        assertThat(mailbox.post("a"), is(true));
+    }
+
+    @Test
+    public void testEvictsOldest() {
+        InstructionMailbox<String> mailbox = new InstructionMailbox<>(2);
+        mailbox.post("a");
+        mailbox.post("b");
+        assertThat(mailbox.post("c"), is(true));
+        assertThat(mailbox.size(), is(2));
+        assertThat(mailbox.getEvictedCount(), is(1L));
+        List<String> drained = new ArrayList<>();
+        mailbox.drainTo(drained);
+        assertThat(drained, is(Arrays.asList("b", "c")));
+    }
+
+    @Test
+    public void testDuplicateWhenFullEvictsNothing() {
+        InstructionMailbox<String> mailbox = new InstructionMailbox<>(2);
+        mailbox.post("a");
+        mailbox.post("b");
+        assertThat(mailbox.post("b"), is(false));
+        assertThat(mailbox.getEvictedCount(), is(0L));
+        assertThat(mailbox.size(), is(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCapacity() {
+        new InstructionMailbox<String>(0);
+    }
+
+}
@@ -0,0 +1,201 @@
+package uk.ac.bath.masmusic.mas;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.ApplicationContext;
+
+import uk.ac.bath.masmusic.common.Clock;
+import uk.ac.bath.masmusic.common.VirtualClock;
+import uk.ac.bath.masmusic.integration.MusicGateway;
+import uk.ac.bath.masmusic.journal.SessionJournal;
+import uk.ac.bath.masmusic.protobuf.TimeSpanNote;
+import uk.ac.bath.masmusic.protobuf.TimeSpanNoteBatch;
+import uk.ac.bath.masmusic.session.Session;
+
+public class PlaybackSchedulerTest {
+
+    /** Lead time of the scheduler (ms). */
+    private static final int LEAD_TIME = 100;
+
+    /** Tolerance of the scheduler (ms). */
+    private static final int TOLERANCE = 20;
+
+    /**
+     * Gateway recording the played messages.
+     */
+    private static class RecordingGateway implements MusicGateway {
+
+        /** Played notes and batches. */
+        final List<Object> played = new ArrayList<>();
+
+        /** Topic of each played message. */
+        final List<String> topics = new ArrayList<>();
+
+        @Override
+        public void play(TimeSpanNote note) {
+            play(note, null);
+        }
+
+        @Override
+        public void play(TimeSpanNoteBatch notes) {
+            play(notes, null);
+        }
+
+        @Override
+        public void play(TimeSpanNote note, String topic) {
+            played.add(note);
+            topics.add(topic);
+        }
+
+        @Override
+        public void play(TimeSpanNoteBatch notes, String topic) {
+            played.add(notes);
+            topics.add(topic);
+        }
+    }
+
+    /** Scheduler clock. */
+    private VirtualClock clock;
+
+    /** Scheduler output. */
+    private RecordingGateway gateway;
+
+    /** Scheduler under test. */
+    private PlaybackScheduler scheduler;
+
+    @Before
+    public void setUp() throws ReflectiveOperationException {
+        clock = new VirtualClock(0);
+        gateway = new RecordingGateway();
+        scheduler = new PlaybackScheduler();
+        set("leadTime", LEAD_TIME);
+        set("tolerance", TOLERANCE);
+        set("dropLate", false);
+        set("coalesce", false);
+        set("reportPeriod", 60000);
+        set("musicPlayer", gateway);
+        set("clock", clock);
+        // Not started, records nothing
+        set("sessionJournal", new SessionJournal());
+        set("session", session("test", "play"));
+    }
+
+    @Test
+    public void testReleasedInTimeOrder() {
+        scheduler.schedule(note(300, 1));
+        scheduler.schedule(note(100, 2));
+        scheduler.schedule(note(200, 3));
+        scheduler.schedule(note(100, 4));
+        clock.advanceTo(200);
+        scheduler.release();
+        // Notes with the same timestamp keep their scheduling order
+        assertThat(gateway.played, is(Arrays.asList(note(100, 2), note(100, 4), note(200, 3), note(300, 1))));
+        assertThat(gateway.topics, is(Arrays.asList("play", "play", "play", "play")));
+        assertThat(scheduler.getReleasedCount(), is(4L));
+        assertThat(scheduler.getPending(), is(0));
+    }
+
+    @Test
+    public void testReleasedLeadTimeBefore() {
+        scheduler.schedule(note(1000, 1));
+        scheduler.schedule(note(1001, 2));
+        clock.advanceTo(1000 - LEAD_TIME - 1);
+        scheduler.release();
+        assertThat(gateway.played.size(), is(0));
+        clock.advanceTo(1000 - LEAD_TIME);
+        scheduler.release();
+        assertThat(gateway.played, is(Arrays.asList(note(1000, 1))));
+        assertThat(scheduler.getPending(), is(1));
+    }
+
+    @Test
+    public void testLateNotesPlayed() {
+        scheduler.schedule(note(1000, 1));
+        clock.advanceTo(1000 + TOLERANCE + 1);
+        scheduler.release();
+        assertThat(gateway.played, is(Arrays.asList(note(1000, 1))));
+        assertThat(scheduler.getDroppedCount(), is(0L));
+        assertThat(scheduler.getLateness().getCount(), is(1L));
+    }
+
+    @Test
+    public void testLateNotesDropped() throws ReflectiveOperationException {
+        set("dropLate", true);
+        scheduler.schedule(note(1000, 1));
+        scheduler.schedule(note(1000 + TOLERANCE + 1, 2));
+        scheduler.schedule(note(2000, 3));
+        clock.advanceTo(1000 + 2 * TOLERANCE + 1);
+        scheduler.release();
+        // Late beyond the tolerance, within it and not late
+        assertThat(gateway.played, is(Arrays.asList(note(1000 + TOLERANCE + 1, 2))));
+        assertThat(scheduler.getDroppedCount(), is(1L));
+        assertThat(scheduler.getReleasedCount(), is(1L));
+        assertThat(scheduler.getLateness().getCount(), is(2L));
+        assertThat(scheduler.getPending(), is(1));
+    }
+
+    @Test
+    public void testCoalesced() throws ReflectiveOperationException {
+        set("coalesce", true);
+        scheduler.schedule(note(100, 1));
+        scheduler.schedule(note(100, 2));
+        scheduler.schedule(note(150, 3));
+        clock.advanceTo(100);
+        scheduler.release();
+        TimeSpanNoteBatch batch = TimeSpanNoteBatch.newBuilder().addNotes(note(100, 1)).addNotes(note(100, 2)).build();
+        assertThat(gateway.played, is(Arrays.asList(batch, note(150, 3))));
+        assertThat(gateway.topics, is(Arrays.asList("play/" + Session.BATCH_SUBTOPIC, "play")));
+        assertThat(scheduler.getReleasedCount(), is(3L));
+    }
+
+    /**
+     * @param timestamp
+     *            Note timestamp
+     * @param velocity
+     *            Note velocity, to tell notes apart
+     * @return A note
+     */
+    private static TimeSpanNote note(long timestamp, int velocity) {
+        return TimeSpanNote.newBuilder().setTimestamp(timestamp).setVelocity(velocity).setDuration(100).build();
+    }
+
+    /**
+     * Create a session without opening it.
+     *
+     * @param id
+     *            Session id
+     * @param playTopic
+     *            Play topic of the session
+     * @return The session
+     */
+    private Session session(String id, String playTopic) throws ReflectiveOperationException {
+        Constructor<Session> constructor = Session.class.getDeclaredConstructor(String.class, String.class,
+                ApplicationContext.class, Clock.class);
+        constructor.setAccessible(true);
+        return constructor.newInstance(id, playTopic, null, clock);
+    }
+
+    /**
+     * Set a field of the scheduler.
+     *
+     * @param name
+     *            Field name
+     * @param value
+     *            Field value
+     */
+    private void set(String name, Object value) throws ReflectiveOperationException {
+        Field field = PlaybackScheduler.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(scheduler, value);
+    }
+
+}
@@ -0,0 +1,162 @@
+package uk.ac.bath.masmusic.session;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.integration.mqtt.support.MqttHeaders;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+
+import uk.ac.bath.masmusic.common.VirtualClock;
+import uk.ac.bath.masmusic.protobuf.TimeSpanNote;
+import uk.ac.bath.masmusic.tracing.LatencyTracer;
+
+public class SessionManagerTest {
+
+    /** Time without hearing anything after which a session is closed (ms). */
+    private static final long IDLE_TIMEOUT = 500;
+
+    /** Application clock. */
+    private VirtualClock clock;
+
+    /** Manager under test. */
+    private SessionManager manager;
+
+    @Before
+    public void setUp() throws ReflectiveOperationException {
+        clock = new VirtualClock(0);
+        manager = new SessionManager();
+        set("enabled", true);
+        set("defaultId", "default");
+        set("hearTopic", "hear");
+        set("playTopic", "play");
+        set("idleTimeout", IDLE_TIMEOUT);
+        set("clock", clock);
+        set("latencyTracer", new LatencyTracer());
+    }
+
+    @Test
+    public void testSessionIdFromTopic() {
+        assertThat(manager.getSessionId(heard("hear/abc")), is("abc"));
+        assertThat(manager.getSessionId(heard("hear")), is("default"));
+        assertThat(manager.getSessionId(heard("hear/")), is("default"));
+        assertThat(manager.getSessionId(heard("hear/a/b")), is("default"));
+        assertThat(manager.getSessionId(heard("other/abc")), is("default"));
+        // Reserved for the batches of the default session
+        assertThat(manager.getSessionId(heard("hear/" + Session.BATCH_SUBTOPIC)), is("default"));
+    }
+
+    @Test
+    public void testSessionIdFromHeader() {
+        Message<?> message = MessageBuilder.fromMessage(heard("hear/abc"))
+                .setHeader(SessionManager.SESSION_HEADER, "xyz")
+                .build();
+        assertThat(manager.getSessionId(message), is("xyz"));
+    }
+
+    @Test
+    public void testSessionIdDisabled() throws ReflectiveOperationException {
+        set("enabled", false);
+        assertThat(manager.getSessionId(heard("hear/abc")), is("default"));
+        assertThat(manager.getHearTopics(), is(new String[] { "hear" }));
+    }
+
+    @Test
+    public void testHeardBeforeStartup() {
+        manager.handleMessage(heard("hear/abc"));
+        assertThat(manager.getSessionIds(), is(Collections.emptyList()));
+    }
+
+    @Test
+    public void testIdleSessionsClosed() throws ReflectiveOperationException {
+        Session defaultSession = add("default");
+        Session idle = add("idle");
+        Session active = add("active");
+        clock.advanceTo(IDLE_TIMEOUT / 2);
+        Session recent = add("recent");
+        clock.advanceTo(IDLE_TIMEOUT + 1);
+        active.hear(heard("hear/active"));
+        closeIdleSessions();
+        // The default session is never closed for being idle
+        assertThat(sortedSessionIds(), is(Arrays.asList("active", "default", "recent")));
+        assertThat(manager.getSession("idle"), is((Session) null));
+        assertThat(manager.getDefaultSession(), is(defaultSession));
+
+        clock.advanceTo(2 * IDLE_TIMEOUT + 2);
+        closeIdleSessions();
+        assertThat(sortedSessionIds(), is(Arrays.asList("default")));
+        assertThat(manager.closeSession(idle.getId()), is(false));
+        assertThat(manager.closeSession(recent.getId()), is(false));
+        assertThat(manager.closeSession("default"), is(true));
+    }
+
+    /**
+     * @param topic
+     *            Topic of the message
+     * @return A heard message
+     */
+    private static Message<?> heard(String topic) {
+        return MessageBuilder.withPayload(TimeSpanNote.getDefaultInstance())
+                .setHeader(MqttHeaders.TOPIC, topic)
+                .build();
+    }
+
+    /**
+     * Add a session to the manager, without opening it.
+     *
+     * @param id
+     *            Session id
+     * @return The session
+     */
+    @SuppressWarnings("unchecked")
+    private Session add(String id) throws ReflectiveOperationException {
+        Session session = new Session(id, "play/" + id, null, clock);
+        Field field = SessionManager.class.getDeclaredField("sessions");
+        field.setAccessible(true);
+        ((Map<String, Session>) field.get(manager)).put(id, session);
+        return session;
+    }
+
+    /**
+     * @return The sorted ids of the open sessions
+     */
+    private List<String> sortedSessionIds() {
+        List<String> ids = new ArrayList<>(manager.getSessionIds());
+        Collections.sort(ids);
+        return ids;
+    }
+
+    /**
+     * Run the periodic closing of idle sessions.
+     */
+    private void closeIdleSessions() throws ReflectiveOperationException {
+        Method method = SessionManager.class.getDeclaredMethod("closeIdleSessions");
+        method.setAccessible(true);
+        method.invoke(manager);
+    }
+
+    /**
+     * Set a field of the manager.
+     *
+     * @param name
+     *            Field name
+     * @param value
+     *            Field value
+     */
+    private void set(String name, Object value) throws ReflectiveOperationException {
+        Field field = SessionManager.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(manager, value);
+    }
+
+}
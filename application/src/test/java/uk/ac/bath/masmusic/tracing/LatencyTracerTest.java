@@ -0,0 +1,120 @@
+package uk.ac.bath.masmusic.tracing;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class LatencyTracerTest {
+
+    /** Tracer under test. */
+    private LatencyTracer tracer;
+
+    @Before
+    public void setUp() {
+        tracer = new LatencyTracer();
+    }
+
+    @Test
+    public void testStageLatencies() {
+        Trace trace = new Trace();
+        // Each stage takes one more microsecond than the previous one
+        long stamp = TimeUnit.SECONDS.toNanos(1);
+        for (TraceStage stage : TraceStage.values()) {
+            stamp += TimeUnit.MICROSECONDS.toNanos(stage.ordinal());
+            trace.set(stage, stamp);
+        }
+        tracer.complete(trace);
+        TraceStage[] stages = TraceStage.values();
+        long total = 0;
+        for (int i = 1; i < stages.length; i++) {
+            assertThat(tracer.getStageLatency(stages[i]).getCount(), is(1L));
+            assertThat(tracer.getStageLatency(stages[i]).getMax(), is((long) i));
+            total += i;
+        }
+        assertThat(tracer.getTraceCount(), is(1L));
+        assertThat(tracer.getTotalLatency().getMax(), is(total));
+        assertThat(tracer.getStageSummaries().length, is(stages.length - 1));
+    }
+
+    @Test
+    public void testCompletedOnce() {
+        Trace trace = tracer.act("s");
+        trace.stamp(TraceStage.SCHEDULED);
+        trace.stamp(TraceStage.SENT);
+        tracer.complete(trace);
+        tracer.complete(trace);
+        assertThat(tracer.getStageLatency(TraceStage.SENT).getCount(), is(1L));
+    }
+
+    @Test
+    public void testTotalNeedsHeard() {
+        // Nothing heard in the session, so the trace starts when analyzed
+        Trace trace = tracer.begin("s");
+        assertThat(trace.getStamp(TraceStage.HEARD), is(0L));
+        trace.stamp(TraceStage.SENT);
+        tracer.complete(trace);
+        assertThat(tracer.getTraceCount(), is(0L));
+        assertThat(tracer.getStageLatency(TraceStage.ANALYZED).getCount(), is(0L));
+    }
+
+    @Test
+    public void testTraceFollowsSession() {
+        tracer.heard("s");
+        Trace trace = tracer.begin("s");
+        assertTrue(trace.getStamp(TraceStage.HEARD) != 0);
+        assertTrue(trace.getStamp(TraceStage.ANALYZED) >= trace.getStamp(TraceStage.HEARD));
+        trace.stamp(TraceStage.PUBLISHED);
+        trace.stamp(TraceStage.DELIVERED);
+        tracer.delivered("s", trace);
+
+        // Every action of the session continues its own copy of the trace
+        Trace first = tracer.act("s");
+        Trace second = tracer.act("s");
+        assertThat(first.getStamp(TraceStage.HEARD), is(trace.getStamp(TraceStage.HEARD)));
+        assertTrue(first.getStamp(TraceStage.ACTED) != 0);
+        assertThat(trace.getStamp(TraceStage.ACTED), is(0L));
+        first.stamp(TraceStage.SENT);
+        second.stamp(TraceStage.SENT);
+        tracer.complete(first);
+        tracer.complete(second);
+        assertThat(tracer.getTraceCount(), is(2L));
+
+        // Other sessions have their own traces
+        assertThat(tracer.act("other").getStamp(TraceStage.HEARD), is(0L));
+    }
+
+    @Test
+    public void testForget() {
+        tracer.heard("s");
+        tracer.delivered("s", tracer.begin("s"));
+        tracer.forget("s");
+        assertThat(tracer.act("s").getStamp(TraceStage.HEARD), is(0L));
+        assertThat(tracer.begin("s").getStamp(TraceStage.HEARD), is(0L));
+    }
+
+    @Test
+    public void testExcludedDelayKeepsStageOrder() {
+        Trace trace = new Trace();
+        trace.stamp(TraceStage.SCHEDULED);
+        // Excluding more than the time since the previous stage
+        trace.stamp(TraceStage.SENT, TimeUnit.SECONDS.toNanos(10));
+        assertThat(trace.getStamp(TraceStage.SENT), is(trace.getStamp(TraceStage.SCHEDULED)));
+    }
+
+    @Test
+    public void testReset() {
+        tracer.heard("s");
+        Trace trace = tracer.begin("s");
+        trace.stamp(TraceStage.SENT);
+        tracer.complete(trace);
+        tracer.reset();
+        assertThat(tracer.getTraceCount(), is(0L));
+        assertThat(tracer.getStageLatency(TraceStage.ANALYZED).getCount(), is(0L));
+    }
+
+}
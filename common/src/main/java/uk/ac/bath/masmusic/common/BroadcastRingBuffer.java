@@ -0,0 +1,175 @@
+package uk.ac.bath.masmusic.common;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single-writer, multi-consumer ring buffer where every consumer receives
+ * every element.
+ *
+ * Elements are stored in pre-allocated slots. The writer never waits for the
+ * consumers: a consumer that falls more than the capacity of the buffer behind
+ * the writer skips the elements that have been overwritten, which are counted
+ * as missed. Each consumer reads the buffer through its own {@link Cursor}.
+ *
+ * Only one thread may publish elements at a time; each cursor must be used
+ * from a single thread, but different cursors can be used from different
+ * threads.
+ *
+ * @param <E>
+ *            Buffer element type
+ *
+ * @author Javier Dehesa
+ */
+public class BroadcastRingBuffer<E> {
+
+    /** Slots. */
+    private final Slot<E>[] slots;
+
+    /** Mask for slot indices. */
+    private final int mask;
+
+    /** Sequence of the last published element (-1 if none). */
+    private final AtomicLong published;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity
+     *            Capacity of the buffer, must be a power of two
+     * @throws IllegalArgumentException
+     *             If the capacity is not a positive power of two
+     */
+    @SuppressWarnings("unchecked")
+    public BroadcastRingBuffer(int capacity) {
+        if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("The capacity must be a positive power of two");
+        }
+        this.slots = (Slot<E>[]) new Slot<?>[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot<>();
+        }
+        this.mask = capacity - 1;
+        this.published = new AtomicLong(-1);
+    }
+
+    /**
+     * @return The capacity of the buffer
+     */
+    public int capacity() {
+        return slots.length;
+    }
+
+    /**
+     * Publish an element.
+     *
+     * @param element
+     *            The published element
+     * @return The sequence number of the published element
+     */
+    public long publish(E element) {
+        long sequence = published.get() + 1;
+        Slot<E> slot = slots[(int) (sequence & mask)];
+        slot.sequence = -1;
+        slot.element = element;
+        slot.sequence = sequence;
+        published.set(sequence);
+        return sequence;
+    }
+
+    /**
+     * @return The sequence number of the last published element, or -1 if no
+     *         element has been published
+     */
+    public long getPublished() {
+        return published.get();
+    }
+
+    /**
+     * Create a new cursor.
+     *
+     * The cursor starts after the last published element, so it only receives
+     * elements published after its creation.
+     *
+     * @return A new cursor
+     */
+    public Cursor newCursor() {
+        return new Cursor(published.get() + 1);
+    }
+
+    /**
+     * Reading position of a consumer in the buffer.
+     */
+    public class Cursor {
+
+        /** Sequence of the next element to read. */
+        private volatile long next;
+
+        /** Number of missed elements. */
+        private volatile long missed;
+
+        /**
+         * Constructor.
+         *
+         * @param next
+         *            Sequence of the first element to read
+         */
+        private Cursor(long next) {
+            this.next = next;
+            this.missed = 0;
+        }
+
+        /**
+         * Read the next element.
+         *
+         * @return The next element, or null if there are no new elements
+         */
+        public E poll() {
+            while (true) {
+                long last = published.get();
+                long current = next;
+                if (current > last) {
+                    return null;
+                }
+                // Skip overwritten elements
+                long oldest = last - slots.length + 1;
+                if (current < oldest) {
+                    missed += oldest - current;
+                    current = oldest;
+                    next = current;
+                }
+                Slot<E> slot = slots[(int) (current & mask)];
+                long before = slot.sequence;
+                E element = slot.element;
+                long after = slot.sequence;
+                if (before == current && after == current) {
+                    next = current + 1;
+                    return element;
+                }
+                // The slot was overwritten while reading, try again
+            }
+        }
+
+        /**
+         * @return The number of published elements not read yet
+         */
+        public long getLag() {
+            return Math.max(0, published.get() + 1 - next);
+        }
+
+        /**
+         * @return The number of elements skipped because they were overwritten
+         *         before being read
+         */
+        public long getMissed() {
+            return missed;
+        }
+    }
+
+    /**
+     * A slot of the buffer.
+     */
+    private static class Slot<E> {
+        volatile long sequence = -1;
+        volatile E    element;
+    }
+}
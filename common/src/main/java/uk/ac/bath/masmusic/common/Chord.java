@@ -17,6 +17,9 @@ public class Chord {
     /** Chord structure in half-steps with respect to the root. */
     private final int[] structure;
 
+    /** Chord notes as a pitch class set. */
+    private final int pitchClassSet;
+
     /**
      * Constructor.
      *
@@ -28,6 +31,7 @@ public class Chord {
     public Chord(Note root, int[] structure) {
         this.root = root;
         this.structure = Arrays.copyOf(structure, structure.length);
+        this.pitchClassSet = PitchClassSet.rotate(PitchClassSet.of(this.structure), root.value());
     }
 
     /**
@@ -41,6 +45,7 @@ public class Chord {
     public Chord(Note root, List<Integer> structure) {
         this.root = root;
         this.structure = structure.stream().mapToInt(i -> i).toArray();
+        this.pitchClassSet = PitchClassSet.rotate(PitchClassSet.of(this.structure), root.value());
     }
 
     /**
@@ -61,6 +66,58 @@ public class Chord {
         return (octave + 1) * 12 + root.value();
     }
 
+    /**
+     * @return The notes of the chord as a {@link PitchClassSet}
+     */
+    public int getPitchClassSet() {
+        return pitchClassSet;
+    }
+
+    /**
+     * @param note
+     *            A note
+     * @return true if the note is in the chord, false otherwise
+     */
+    public boolean contains(Note note) {
+        return PitchClassSet.contains(pitchClassSet, note);
+    }
+
+    /**
+     * @return The number of pitches in the chord
+     */
+    public int size() {
+        return structure.length;
+    }
+
+    /**
+     * Get an interval of the chord structure.
+     *
+     * @param index
+     *            Index of the chord pitch, between 0 and {@link #size()}
+     *            (exclusive)
+     * @return The distance in half-steps from the root to the chord pitch
+     */
+    public int getInterval(int index) {
+        return structure[index];
+    }
+
+    /**
+     * Get a pitch of the chord on the given octave.
+     *
+     * Together with {@link #size()}, this allows iterating the pitches of the
+     * chord without creating new objects.
+     *
+     * @param octave
+     *            The octave, where 4 is the octave containing central C
+     * @param index
+     *            Index of the chord pitch, between 0 and {@link #size()}
+     *            (exclusive)
+     * @return The pitch of the chord in the given octave
+     */
+    public int getPitch(int octave, int index) {
+        return (octave + 1) * 12 + root.value() + structure[index];
+    }
+
     /**
      * Get the pitches of the chord on the given octave.
      *
@@ -0,0 +1,188 @@
+package uk.ac.bath.masmusic.common;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Sliding window of elements that produces immutable, structurally shared
+ * snapshots.
+ *
+ * Elements are stored in fixed-size chunks. Elements can only be added at the
+ * end of the window and removed from its beginning, and every chunk slot is
+ * written at most once, so a {@link Snapshot} can share the chunks of the
+ * window instead of copying the elements: taking a snapshot only copies the
+ * references to the chunks. Snapshots are never affected by later changes in
+ * the window.
+ *
+ * The window itself is not thread-safe, but its snapshots can be safely read
+ * from any thread once published.
+ *
+ * @param <E>
+ *            Window element type
+ *
+ * @author Javier Dehesa
+ */
+public class ChunkedWindow<E> {
+
+    /** Base 2 logarithm of the chunk size. */
+    private static final int CHUNK_SHIFT = 5;
+
+    /** Number of elements in a chunk. */
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+    /** Mask for indices within a chunk. */
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /** Chunks. */
+    private List<Object[]> chunks;
+
+    /** Index of the first element in the first chunk. */
+    private int head;
+
+    /** Number of elements. */
+    private int size;
+
+    /**
+     * Constructor.
+     */
+    public ChunkedWindow() {
+        this.chunks = new ArrayList<>();
+        this.head = 0;
+        this.size = 0;
+    }
+
+    /**
+     * @return The number of elements in the window
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if the window is empty, false otherwise
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @param index
+     *            Index of an element
+     * @return The element at the given index
+     * @throws IndexOutOfBoundsException
+     *             If the index is not valid
+     */
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        int i = head + index;
+        return (E) chunks.get(i >>> CHUNK_SHIFT)[i & CHUNK_MASK];
+    }
+
+    /**
+     * Add an element at the end of the window.
+     *
+     * @param element
+     *            The added element
+     */
+    public void add(E element) {
+        int i = head + size;
+        if ((i >>> CHUNK_SHIFT) == chunks.size()) {
+            chunks.add(new Object[CHUNK_SIZE]);
+        }
+        chunks.get(i >>> CHUNK_SHIFT)[i & CHUNK_MASK] = element;
+        size++;
+    }
+
+    /**
+     * Remove a number of elements from the beginning of the window.
+     *
+     * @param count
+     *            Number of removed elements
+     * @throws IllegalArgumentException
+     *             If the count is negative or greater than the size of the
+     *             window
+     */
+    public void removeFirst(int count) {
+        if (count < 0 || count > size) {
+            throw new IllegalArgumentException("Invalid number of elements to remove: " + count);
+        }
+        head += count;
+        size -= count;
+        int freeChunks = head >>> CHUNK_SHIFT;
+        if (freeChunks > 0) {
+            chunks.subList(0, freeChunks).clear();
+            head &= CHUNK_MASK;
+        }
+    }
+
+    /**
+     * Remove every element in the window.
+     */
+    public void clear() {
+        // Chunks may be shared by snapshots, so they cannot be reused
+        chunks = new ArrayList<>();
+        head = 0;
+        size = 0;
+    }
+
+    /**
+     * @return An immutable snapshot of the current contents of the window
+     */
+    public Snapshot<E> snapshot() {
+        return new Snapshot<>(chunks.toArray(new Object[chunks.size()][]), head, size);
+    }
+
+    /**
+     * Immutable snapshot of a {@link ChunkedWindow}.
+     *
+     * @param <E>
+     *            Snapshot element type
+     */
+    public static final class Snapshot<E> extends AbstractList<E> implements RandomAccess {
+
+        /** Shared chunks. */
+        private final Object[][] chunks;
+
+        /** Index of the first element in the first chunk. */
+        private final int head;
+
+        /** Number of elements. */
+        private final int size;
+
+        /**
+         * Constructor.
+         *
+         * @param chunks
+         *            Shared chunks
+         * @param head
+         *            Index of the first element in the first chunk
+         * @param size
+         *            Number of elements
+         */
+        private Snapshot(Object[][] chunks, int head, int size) {
+            this.chunks = chunks;
+            this.head = head;
+            this.size = size;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public E get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            int i = head + index;
+            return (E) chunks[i >>> CHUNK_SHIFT][i & CHUNK_MASK];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
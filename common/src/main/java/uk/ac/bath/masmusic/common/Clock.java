@@ -0,0 +1,32 @@
+package uk.ac.bath.masmusic.common;
+
+/**
+ * Source of the current time.
+ *
+ * Every component that needs to know the current time should obtain it from a
+ * clock instead of the system, so the whole system can be run on a virtual
+ * time line (for example, to replay a recorded session faster than real
+ * time).
+ *
+ * @author Javier Dehesa
+ */
+public interface Clock {
+
+    /**
+     * @return The current time in milliseconds
+     */
+    long currentTimeMillis();
+
+    /**
+     * Get the rate at which the clock advances with respect to real time.
+     *
+     * A rate of 2 means that the clock advances two milliseconds for every
+     * real millisecond. Real time waits must be divided by this rate to last
+     * the expected time in the clock.
+     *
+     * @return The rate of the clock
+     */
+    default double getRate() {
+        return 1.0;
+    }
+}
@@ -0,0 +1,204 @@
+package uk.ac.bath.masmusic.common;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Consistent hashing of keys to nodes.
+ *
+ * Every node is placed in a number of points (virtual nodes) of a 64-bit
+ * hash ring, and each key is assigned to the node of the first point at or
+ * after the hash of the key. Adding or removing a node only moves the keys of
+ * the points next to the ones of that node, so most keys keep their node.
+ *
+ * Hashes only depend on the strings of the keys and the nodes, so every
+ * process with the same nodes assigns keys the same way. The implementation
+ * is not thread-safe.
+ *
+ * @author Javier Dehesa
+ */
+public class ConsistentHashRing {
+
+    /** Default number of points of each node. */
+    public static final int DEFAULT_VIRTUAL_NODES = 64;
+
+    /** FNV-1a 64-bit offset basis. */
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    /** FNV-1a 64-bit prime. */
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /** Number of points of each node. */
+    private final int virtualNodes;
+
+    /** Nodes in the ring. */
+    private final SortedSet<String> nodes;
+
+    /** Hashes of the points, in increasing order. */
+    private long[] points;
+
+    /** Node of each point. */
+    private String[] pointNodes;
+
+    /**
+     * Constructor.
+     */
+    public ConsistentHashRing() {
+        this(DEFAULT_VIRTUAL_NODES);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param virtualNodes
+     *            Number of points of each node
+     */
+    public ConsistentHashRing(int virtualNodes) {
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("The number of virtual nodes must be positive");
+        }
+        this.virtualNodes = virtualNodes;
+        this.nodes = new TreeSet<>();
+        this.points = new long[0];
+        this.pointNodes = new String[0];
+    }
+
+    /**
+     * Add a node to the ring.
+     *
+     * @param node
+     *            The node
+     * @return true if the node was added, false if it was already in the ring
+     */
+    public boolean add(String node) {
+        Objects.requireNonNull(node);
+        if (!nodes.add(node)) {
+            return false;
+        }
+        rebuild();
+        return true;
+    }
+
+    /**
+     * Remove a node from the ring.
+     *
+     * @param node
+     *            The node
+     * @return true if the node was removed, false if it was not in the ring
+     */
+    public boolean remove(String node) {
+        if (!nodes.remove(node)) {
+            return false;
+        }
+        rebuild();
+        return true;
+    }
+
+    /**
+     * @param node
+     *            A node
+     * @return true if the node is in the ring, false otherwise
+     */
+    public boolean contains(String node) {
+        return nodes.contains(node);
+    }
+
+    /**
+     * @return The nodes in the ring, sorted
+     */
+    public List<String> getNodes() {
+        return Collections.unmodifiableList(new ArrayList<>(nodes));
+    }
+
+    /**
+     * @return The number of nodes in the ring
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * @return true if the ring has no nodes, false otherwise
+     */
+    public boolean isEmpty() {
+        return nodes.isEmpty();
+    }
+
+    /**
+     * @param key
+     *            A key
+     * @return The node assigned to the key, or null if the ring is empty
+     */
+    public String getNode(String key) {
+        if (points.length == 0) {
+            return null;
+        }
+        int index = Arrays.binarySearch(points, hash(key));
+        if (index < 0) {
+            index = -index - 1;
+            if (index == points.length) {
+                index = 0;
+            }
+        } else {
+            // Take the first of several equal points
+            while (index > 0 && points[index - 1] == points[index]) {
+                index--;
+            }
+        }
+        return pointNodes[index];
+    }
+
+    /**
+     * Compute the ring hash of a string.
+     *
+     * The hash is the 64-bit FNV-1a hash of the UTF-8 bytes of the string,
+     * with its bits mixed so close strings are spread over the ring.
+     *
+     * @param s
+     *            A string
+     * @return The hash of the string
+     */
+    static long hash(String s) {
+        long h = FNV_OFFSET_BASIS;
+        for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= FNV_PRIME;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Recompute the points of the ring.
+     */
+    private void rebuild() {
+        int numPoints = nodes.size() * virtualNodes;
+        long[][] sorted = new long[numPoints][];
+        List<String> nodeList = new ArrayList<>(nodes);
+        int i = 0;
+        for (int iNode = 0; iNode < nodeList.size(); iNode++) {
+            for (int j = 0; j < virtualNodes; j++) {
+                sorted[i++] = new long[] { hash(nodeList.get(iNode) + "#" + j), iNode };
+            }
+        }
+        // Sort by hash, then by node (nodes are sorted) for equal hashes
+        Arrays.sort(sorted, (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+        points = new long[numPoints];
+        pointNodes = new String[numPoints];
+        for (i = 0; i < numPoints; i++) {
+            points[i] = sorted[i][0];
+            pointNodes[i] = nodeList.get((int) sorted[i][1]);
+        }
+    }
+
+}
@@ -0,0 +1,378 @@
+package uk.ac.bath.masmusic.common;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Circular buffer of double values with fixed capacity that evicts older entries.
+ *
+ * This is a primitive specialization of {@link EvictingCircularBuffer} that
+ * avoids boxing. The storage is sized to a power of two so positions are
+ * computed with a mask. The implementation is not thread-safe.
+ *
+ * @author Javier Dehesa
+ */
+public class DoubleRingBuffer {
+
+    /** Value returned by {@link #packedKey(int, int, double)} if it cannot be packed. */
+    public static final long NO_KEY = -1L;
+
+    /** Tolerance to consider a value a multiple of the packing resolution. */
+    private static final double PACK_TOLERANCE = 1e-6;
+
+    /** Data. */
+    private final double[] data;
+
+    /** Mask for data indices. */
+    private final int mask;
+
+    /** Capacity. */
+    private final int capacity;
+
+    /** Index of the first element. */
+    private int first;
+
+    /** Number of elements. */
+    private int size;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity
+     *            Capacity of the buffer
+     * @throws IllegalArgumentException
+     *             If the capacity is not positive
+     */
+    public DoubleRingBuffer(int capacity) {
+        if (capacity < 1 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("The capacity must be positive");
+        }
+        int length = Integer.highestOneBit(capacity);
+        if (length < capacity) {
+            length <<= 1;
+        }
+        this.data = new double[length];
+        this.mask = length - 1;
+        this.capacity = capacity;
+        this.first = 0;
+        this.size = 0;
+    }
+
+    /**
+     * @return The capacity of the buffer
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return The number of elements in the buffer
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if the buffer is empty, false otherwise
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns true if the buffer is full.
+     *
+     * Note that, due to the evicting behavior of the buffer, being full does
+     * not impede to add new elements to it.
+     *
+     * @return Whether the buffer is full.
+     */
+    public boolean isFull() {
+        return size == capacity;
+    }
+
+    /**
+     * Remove every element in the buffer.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Add a value at the end of the buffer, evicting the first one if the
+     * buffer is full.
+     *
+     * @param value
+     *            The added value
+     */
+    public void add(double value) {
+        if (size == capacity) {
+            first = (first + 1) & mask;
+        } else {
+            size++;
+        }
+        data[(first + size - 1) & mask] = value;
+    }
+
+    /**
+     * Add a sequence of values at the end of the buffer.
+     *
+     * @param values
+     *            The added values
+     */
+    public void addAll(double... values) {
+        for (double value : values) {
+            add(value);
+        }
+    }
+
+    /**
+     * @param index
+     *            Index of an element
+     * @return The element at the given index
+     * @throws IndexOutOfBoundsException
+     *             If the index is not valid
+     */
+    public double get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException();
+        }
+        return data[(first + index) & mask];
+    }
+
+    /**
+     * @return The first element of the buffer
+     * @throws NoSuchElementException
+     *             If the buffer is empty
+     */
+    public double firstElement() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return data[first];
+    }
+
+    /**
+     * @return The last element of the buffer
+     * @throws NoSuchElementException
+     *             If the buffer is empty
+     */
+    public double lastElement() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return data[(first + size - 1) & mask];
+    }
+
+    /**
+     * Remove the first element of the buffer.
+     *
+     * @return The removed element
+     * @throws NoSuchElementException
+     *             If the buffer is empty
+     */
+    public double removeFirst() {
+        double value = firstElement();
+        first = (first + 1) & mask;
+        size--;
+        return value;
+    }
+
+    /**
+     * @param value
+     *            A value
+     * @return The index of the first occurrence of the value in the buffer, or
+     *         -1 if it is not contained
+     */
+    public int indexOf(double value) {
+        for (int i = 0; i < size; i++) {
+            if (Double.compare(data[(first + i) & mask], value) == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param value
+     *            A value
+     * @return true if the buffer contains the value, false otherwise
+     */
+    public boolean contains(double value) {
+        return indexOf(value) >= 0;
+    }
+
+    /**
+     * @param values
+     *            Some values
+     * @return true if the buffer contains every given value, false otherwise
+     */
+    public boolean containsAll(double... values) {
+        for (double value : values) {
+            if (!contains(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Remove the first occurrence of a value from the buffer.
+     *
+     * @param value
+     *            The removed value
+     * @return true if the value was removed, false if it was not contained
+     */
+    public boolean remove(double value) {
+        int index = indexOf(value);
+        if (index < 0) {
+            return false;
+        }
+        removeAt(index);
+        return true;
+    }
+
+    /**
+     * Remove every occurrence of the given values from the buffer.
+     *
+     * @param values
+     *            The removed values
+     * @return true if the buffer was modified, false otherwise
+     */
+    public boolean removeAll(double... values) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            double value = data[(first + i) & mask];
+            boolean remove = false;
+            for (double v : values) {
+                if (Double.compare(v, value) == 0) {
+                    remove = true;
+                    break;
+                }
+            }
+            if (!remove) {
+                data[(first + kept++) & mask] = value;
+            }
+        }
+        boolean modified = kept < size;
+        size = kept;
+        return modified;
+    }
+
+    /**
+     * Remove every element of the buffer not in the given values.
+     *
+     * @param values
+     *            The retained values
+     * @return true if the buffer was modified, false otherwise
+     */
+    public boolean retainAll(double... values) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            double value = data[(first + i) & mask];
+            for (double v : values) {
+                if (Double.compare(v, value) == 0) {
+                    data[(first + kept++) & mask] = value;
+                    break;
+                }
+            }
+        }
+        boolean modified = kept < size;
+        size = kept;
+        return modified;
+    }
+
+    /**
+     * Remove the element at the given index.
+     *
+     * @param index
+     *            Index of the removed element
+     */
+    private void removeAt(int index) {
+        for (int i = index; i < size - 1; i++) {
+            data[(first + i) & mask] = data[(first + i + 1) & mask];
+        }
+        size--;
+    }
+
+    /**
+     * @return A new array with the elements of the buffer
+     */
+    public double[] toArray() {
+        double[] array = new double[size];
+        copyTo(array, 0);
+        return array;
+    }
+
+    /**
+     * Copy the elements of the buffer into an array.
+     *
+     * @param dest
+     *            Destination array
+     * @param destPos
+     *            Position of the destination array where the first element is
+     *            copied
+     * @return The number of copied elements
+     * @throws IndexOutOfBoundsException
+     *             If the elements do not fit in the destination array
+     */
+    public int copyTo(double[] dest, int destPos) {
+        int firstPart = Math.min(size, data.length - first);
+        System.arraycopy(data, first, dest, destPos, firstPart);
+        System.arraycopy(data, 0, dest, destPos + firstPart, size - firstPart);
+        return size;
+    }
+
+    /**
+     * Pack the last elements of the buffer in a single key.
+     *
+     * Each element is expressed as an integer multiple of the given resolution
+     * and stored as a signed field of the given number of bits, the oldest
+     * element in the most significant position. The resulting key is never
+     * negative, so it can be combined with other non-negative fields in the
+     * upper bits.
+     *
+     * @param count
+     *            Number of elements to pack
+     * @param bits
+     *            Number of bits for each element
+     * @param resolution
+     *            Value of the unit of the packed fields
+     * @return The packed key, or {@link #NO_KEY} if the buffer has fewer
+     *         elements than requested or some of them is not a multiple of
+     *         the resolution or does not fit in the given number of bits
+     * @throws IllegalArgumentException
+     *             If the packed elements do not fit in 63 bits or the
+     *             resolution is not positive
+     */
+    public long packedKey(int count, int bits, double resolution) {
+        if (count < 0 || bits < 1 || bits > 32 || count * bits > 63) {
+            throw new IllegalArgumentException("The packed elements must fit in 63 bits");
+        }
+        if (!(resolution > 0)) {
+            throw new IllegalArgumentException("The resolution must be positive");
+        }
+        if (count > size) {
+            return NO_KEY;
+        }
+        long min = -(1L << (bits - 1));
+        long max = (1L << (bits - 1)) - 1;
+        long fieldMask = (1L << bits) - 1;
+        long key = 0;
+        for (int i = size - count; i < size; i++) {
+            double units = data[(first + i) & mask] / resolution;
+            long value = Math.round(units);
+            if (Math.abs(units - value) > PACK_TOLERANCE || value < min || value > max) {
+                return NO_KEY;
+            }
+            key = (key << bits) | (value & fieldMask);
+        }
+        return key;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+
+}
@@ -109,12 +109,13 @@ public class EvictingCircularBuffer<E> extends AbstractList<E>
             E e = get(i);
             if (e == o || (o != null && e != null && e.equals(o))) {
                 int idx = (first + i) % data.length;
-                last = Math.floorMod(last - 1, data.length);
-                while (idx < last) {
+                int remaining = size() - i - 1;
+                for (int j = 0; j < remaining; j++) {
                     int nextIdx = (idx + 1) % data.length;
                     data[idx] = data[nextIdx];
                     idx = nextIdx;
                 }
+                last = Math.floorMod(last - 1, data.length);
                 return true;
             }
         }
@@ -0,0 +1,162 @@
+package uk.ac.bath.masmusic.common;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of non-negative latency values.
+ *
+ * Values are counted in buckets with power of two bounds, so percentiles are
+ * reported with a relative error of at most a factor of two. Recording a value
+ * does not allocate and never blocks, and the histogram can be safely shared
+ * between threads.
+ *
+ * @author Javier Dehesa
+ */
+public class LatencyHistogram {
+
+    /** Number of buckets (one for zero and one per bit of a long). */
+    private static final int NUM_BUCKETS = Long.SIZE;
+
+    /** Bucket counts. */
+    private final AtomicLongArray buckets;
+
+    /** Number of recorded values. */
+    private final AtomicLong count;
+
+    /** Sum of recorded values. */
+    private final AtomicLong sum;
+
+    /** Maximum recorded value. */
+    private final AtomicLong max;
+
+    /**
+     * Constructor.
+     */
+    public LatencyHistogram() {
+        buckets = new AtomicLongArray(NUM_BUCKETS);
+        count = new AtomicLong();
+        sum = new AtomicLong();
+        max = new AtomicLong();
+    }
+
+    /**
+     * Record a value.
+     *
+     * Negative values are recorded as zero.
+     *
+     * @param value
+     *            The recorded value
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        buckets.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * @return The number of recorded values
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return The mean of the recorded values, or 0 if no value has been
+     *         recorded
+     */
+    public double getMean() {
+        long n = count.get();
+        return n > 0 ? sum.get() / (double) n : 0;
+    }
+
+    /**
+     * @return The maximum recorded value, or 0 if no value has been recorded
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Estimate a percentile of the recorded values.
+     *
+     * @param percentile
+     *            The percentile, in the range [0, 100]
+     * @return An upper bound of the given percentile, or 0 if no value has
+     *         been recorded
+     */
+    public long getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("The percentile must be between 0 and 100");
+        }
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(n * percentile / 100.0));
+        long accumulated = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            accumulated += buckets.get(i);
+            if (accumulated >= rank) {
+                return Math.min(bucketUpperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Get the counts of every bucket.
+     *
+     * Bucket 0 counts values equal to 0, and bucket {@code i > 0} counts values
+     * in the range [2<sup>i-1</sup>, 2<sup>i</sup>).
+     *
+     * @return The count of every bucket
+     */
+    public long[] getBucketCounts() {
+        long[] counts = new long[NUM_BUCKETS];
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+        }
+        return counts;
+    }
+
+    /**
+     * Reset the histogram, discarding every recorded value.
+     */
+    public void reset() {
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * @param value
+     *            A non-negative value
+     * @return The bucket where the value is counted
+     */
+    private static int bucketOf(long value) {
+        return Long.SIZE - Long.numberOfLeadingZeros(value);
+    }
+
+    /**
+     * @param bucket
+     *            A bucket index
+     * @return The greatest value counted in the bucket
+     */
+    private static long bucketUpperBound(int bucket) {
+        return bucket >= NUM_BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LatencyHistogram [count=%d, mean=%.1f, p50=%d, p90=%d, p99=%d, max=%d]",
+                getCount(), getMean(), getPercentile(50), getPercentile(90), getPercentile(99), getMax());
+    }
+}
@@ -0,0 +1,194 @@
+package uk.ac.bath.masmusic.common;
+
+import java.util.Arrays;
+
+/**
+ * Map from long keys to positive counts.
+ *
+ * Uses open addressing with linear probing over primitive arrays, so counting
+ * does not create any object. Slots with a count of zero are empty. The
+ * implementation is not thread-safe; concurrent counting should use one map
+ * per thread and merge them with {@link #addAll(LongCountMap)}.
+ *
+ * @author Javier Dehesa
+ */
+public class LongCountMap {
+
+    /** Maximum load factor before growing. */
+    private static final float LOAD_FACTOR = .6f;
+
+    /** Keys. */
+    private long[] keys;
+
+    /** Counts (zero for empty slots). */
+    private long[] counts;
+
+    /** Mask for slot indices. */
+    private int mask;
+
+    /** Number of keys. */
+    private int size;
+
+    /**
+     * Constructor.
+     */
+    public LongCountMap() {
+        this(16);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param expectedSize
+     *            Expected number of keys
+     */
+    public LongCountMap(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("The expected size cannot be negative");
+        }
+        int capacity = Integer.highestOneBit(Math.max((int) (expectedSize / LOAD_FACTOR), 2) - 1) << 1;
+        keys = new long[capacity];
+        counts = new long[capacity];
+        mask = capacity - 1;
+        size = 0;
+    }
+
+    /**
+     * @return The number of keys in the map
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if the map is empty, false otherwise
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Increase the count of a key by one.
+     *
+     * @param key
+     *            The key
+     */
+    public void increment(long key) {
+        add(key, 1);
+    }
+
+    /**
+     * Increase the count of a key.
+     *
+     * @param key
+     *            The key
+     * @param count
+     *            Count to add
+     * @throws IllegalArgumentException
+     *             If the count is not positive
+     */
+    public void add(long key, long count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("The count must be positive");
+        }
+        int slot = slotOf(key);
+        if (counts[slot] == 0) {
+            keys[slot] = key;
+            counts[slot] = count;
+            if (++size > LOAD_FACTOR * keys.length) {
+                grow();
+            }
+        } else {
+            counts[slot] += count;
+        }
+    }
+
+    /**
+     * @param key
+     *            The key
+     * @return The count of the key, or zero if it is not in the map
+     */
+    public long get(long key) {
+        return counts[slotOf(key)];
+    }
+
+    /**
+     * Add every count of another map to this one.
+     *
+     * @param other
+     *            The other map
+     */
+    public void addAll(LongCountMap other) {
+        for (int i = 0; i < other.keys.length; i++) {
+            if (other.counts[i] != 0) {
+                add(other.keys[i], other.counts[i]);
+            }
+        }
+    }
+
+    /**
+     * @return The keys of the map in ascending order
+     */
+    public long[] sortedKeys() {
+        long[] result = new long[size];
+        int n = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (counts[i] != 0) {
+                result[n++] = keys[i];
+            }
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Remove every key from the map.
+     */
+    public void clear() {
+        Arrays.fill(counts, 0);
+        size = 0;
+    }
+
+    /**
+     * @param key
+     *            A key
+     * @return The slot where the key is, or the empty slot where it would be
+     *         inserted
+     */
+    private int slotOf(long key) {
+        int slot = mix(key) & mask;
+        while (counts[slot] != 0 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Double the capacity of the map.
+     */
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldCounts = counts;
+        keys = new long[oldKeys.length * 2];
+        counts = new long[oldCounts.length * 2];
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldCounts[i] != 0) {
+                int slot = slotOf(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    /**
+     * @param key
+     *            A key
+     * @return A well-distributed hash of the key
+     */
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+}
@@ -0,0 +1,177 @@
+package uk.ac.bath.masmusic.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Parallel processing of a corpus of MIDI files.
+ *
+ * Files are split in ranges processed in a {@link ForkJoinPool}. Each range is
+ * processed by its own {@link Accumulator}, so accumulators do not need to be
+ * thread-safe; the accumulators of the ranges are merged as the tasks are
+ * joined.
+ *
+ * @author Javier Dehesa
+ */
+public final class MidiCorpus {
+
+    /** Number of files processed sequentially by a single task. */
+    private static final int FILES_PER_TASK = 16;
+
+    /**
+     * Accumulator of the results of processing a part of the corpus.
+     *
+     * @param <A>
+     *            Type of the accumulator
+     */
+    public interface Accumulator<A extends Accumulator<A>> {
+
+        /**
+         * Process a score of the corpus.
+         *
+         * @param score
+         *            The score
+         */
+        void add(MidiScore score);
+
+        /**
+         * Record a file of the corpus that could not be read.
+         *
+         * @param file
+         *            The file
+         * @param e
+         *            The error reading the file
+         */
+        void skip(File file, IOException e);
+
+        /**
+         * Merge the results of another accumulator into this one.
+         *
+         * @param other
+         *            The other accumulator
+         */
+        void addAll(A other);
+
+    }
+
+    private MidiCorpus() {
+    }
+
+    /**
+     * Find every MIDI file in a directory (recursively).
+     *
+     * @param directory
+     *            The directory
+     * @return The MIDI files in the directory, sorted by path
+     * @throws IOException
+     *             If the directory cannot be read
+     */
+    public static List<File> listFiles(File directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory.toPath())) {
+            List<File> files = paths
+                    .filter(Files::isRegularFile)
+                    .map(Path::toFile)
+                    .filter(file -> {
+                        String name = file.getName().toLowerCase();
+                        return name.endsWith(".mid") || name.endsWith(".midi");
+                    })
+                    .collect(Collectors.toList());
+            Collections.sort(files);
+            return files;
+        }
+    }
+
+    /**
+     * Process a collection of MIDI files in parallel.
+     *
+     * @param files
+     *            The MIDI files
+     * @param pool
+     *            Pool where the files are processed
+     * @param accumulatorSupplier
+     *            Supplier of empty accumulators
+     * @return The accumulated results of every file
+     */
+    public static <A extends Accumulator<A>> A process(List<File> files, ForkJoinPool pool,
+            Supplier<A> accumulatorSupplier) {
+        File[] fileArray = files.toArray(new File[files.size()]);
+        return pool.invoke(new ProcessTask<>(fileArray, 0, fileArray.length, accumulatorSupplier));
+    }
+
+    /**
+     * Task processing a range of files.
+     *
+     * @param <A>
+     *            Type of the accumulator
+     */
+    private static class ProcessTask<A extends Accumulator<A>> extends RecursiveTask<A> {
+
+        private static final long serialVersionUID = 1L;
+
+        /** Files to process. */
+        private final File[] files;
+
+        /** First file of the range (inclusive). */
+        private final int from;
+
+        /** Last file of the range (exclusive). */
+        private final int to;
+
+        /** Supplier of empty accumulators. */
+        private final Supplier<A> accumulatorSupplier;
+
+        /**
+         * Constructor.
+         *
+         * @param files
+         *            Files to process
+         * @param from
+         *            First file of the range (inclusive)
+         * @param to
+         *            Last file of the range (exclusive)
+         * @param accumulatorSupplier
+         *            Supplier of empty accumulators
+         */
+        ProcessTask(File[] files, int from, int to, Supplier<A> accumulatorSupplier) {
+            this.files = files;
+            this.from = from;
+            this.to = to;
+            this.accumulatorSupplier = accumulatorSupplier;
+        }
+
+        @Override
+        protected A compute() {
+            if (to - from <= FILES_PER_TASK) {
+                A accumulator = accumulatorSupplier.get();
+                for (int i = from; i < to; i++) {
+                    MidiScore score;
+                    try {
+                        score = MidiScore.read(files[i]);
+                    } catch (IOException e) {
+                        accumulator.skip(files[i], e);
+                        continue;
+                    }
+                    accumulator.add(score);
+                }
+                return accumulator;
+            }
+            int middle = (from + to) >>> 1;
+            ProcessTask<A> left = new ProcessTask<>(files, from, middle, accumulatorSupplier);
+            left.fork();
+            A accumulator = new ProcessTask<>(files, middle, to, accumulatorSupplier).compute();
+            accumulator.addAll(left.join());
+            return accumulator;
+        }
+
+    }
+
+}
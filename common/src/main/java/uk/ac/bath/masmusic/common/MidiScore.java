@@ -0,0 +1,261 @@
+package uk.ac.bath.masmusic.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+/**
+ * Notes read from a standard MIDI file.
+ *
+ * Onset timestamps and durations are measured in MIDI ticks, and
+ * {@link #getResolution()} gives the number of ticks per beat. Percussion
+ * notes are ignored.
+ *
+ * @author Javier Dehesa
+ */
+public class MidiScore {
+
+    /** MIDI channel reserved for percussion. */
+    private static final int DRUM_CHANNEL = 9;
+
+    /** Time signature meta message type. */
+    private static final int TIME_SIGNATURE = 0x58;
+
+    /** Key signature meta message type. */
+    private static final int KEY_SIGNATURE = 0x59;
+
+    /** Time signature assumed when the score does not have any. */
+    private static final TimeSignature DEFAULT_TIME_SIGNATURE = new TimeSignature(4, 4);
+
+    /** Scale types considered when inferring the scale. */
+    private static final String[] SCALE_TYPES = { "major", "minor" };
+
+    /** Notes of the score sorted by time. */
+    private final List<Onset> onsets;
+
+    /** Number of ticks per beat. */
+    private final int resolution;
+
+    /** Scale of the key signature, or null if there is not any. */
+    private final Scale keySignature;
+
+    /** Time signature. */
+    private final TimeSignature timeSignature;
+
+    /**
+     * Constructor.
+     *
+     * @param onsets
+     *            Notes of the score (timestamps and durations in ticks)
+     * @param resolution
+     *            Number of ticks per beat
+     * @param keySignature
+     *            Scale of the key signature, or null if there is not any
+     */
+    public MidiScore(List<Onset> onsets, int resolution, Scale keySignature) {
+        this(onsets, resolution, keySignature, DEFAULT_TIME_SIGNATURE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param onsets
+     *            Notes of the score (timestamps and durations in ticks)
+     * @param resolution
+     *            Number of ticks per beat
+     * @param keySignature
+     *            Scale of the key signature, or null if there is not any
+     * @param timeSignature
+     *            Time signature
+     */
+    public MidiScore(List<Onset> onsets, int resolution, Scale keySignature, TimeSignature timeSignature) {
+        if (resolution < 2) {
+            throw new IllegalArgumentException("The resolution must be greater than 1");
+        }
+        List<Onset> sortedOnsets = new ArrayList<>(onsets);
+        Collections.sort(sortedOnsets);
+        this.onsets = Collections.unmodifiableList(sortedOnsets);
+        this.resolution = resolution;
+        this.keySignature = keySignature;
+        this.timeSignature = Objects.requireNonNull(timeSignature);
+    }
+
+    /**
+     * Read a MIDI file.
+     *
+     * @param file
+     *            The MIDI file
+     * @return The score in the file
+     * @throws IOException
+     *             If the file cannot be read or is not a valid MIDI file with
+     *             a tempo-based time division
+     */
+    public static MidiScore read(File file) throws IOException {
+        try {
+            return fromSequence(MidiSystem.getSequence(file));
+        } catch (InvalidMidiDataException e) {
+            throw new IOException("Invalid MIDI file " + file, e);
+        }
+    }
+
+    /**
+     * Read the notes of a MIDI sequence.
+     *
+     * @param sequence
+     *            The MIDI sequence
+     * @return The score in the sequence
+     * @throws IOException
+     *             If the sequence does not use a tempo-based time division
+     */
+    public static MidiScore fromSequence(Sequence sequence) throws IOException {
+        if (sequence.getDivisionType() != Sequence.PPQ) {
+            throw new IOException("Only tempo-based MIDI sequences are supported");
+        }
+        List<Onset> onsets = new ArrayList<>();
+        Scale keySignature = null;
+        TimeSignature timeSignature = null;
+        long[] noteStart = new long[16 * 128];
+        int[] noteVelocity = new int[16 * 128];
+        for (Track track : sequence.getTracks()) {
+            Arrays.fill(noteStart, -1);
+            for (int i = 0; i < track.size(); i++) {
+                MidiEvent event = track.get(i);
+                if (event.getMessage() instanceof ShortMessage) {
+                    ShortMessage message = (ShortMessage) event.getMessage();
+                    int command = message.getCommand();
+                    if ((command != ShortMessage.NOTE_ON && command != ShortMessage.NOTE_OFF)
+                            || message.getChannel() == DRUM_CHANNEL) {
+                        continue;
+                    }
+                    int note = message.getChannel() * 128 + message.getData1();
+                    // Close the sounding note, if any
+                    if (noteStart[note] >= 0) {
+                        long duration = event.getTick() - noteStart[note];
+                        if (duration > 0) {
+                            onsets.add(new Onset(noteStart[note], (int) Math.min(duration, Integer.MAX_VALUE),
+                                    message.getData1(), noteVelocity[note]));
+                        }
+                        noteStart[note] = -1;
+                    }
+                    if (command == ShortMessage.NOTE_ON && message.getData2() > 0) {
+                        noteStart[note] = event.getTick();
+                        noteVelocity[note] = message.getData2();
+                    }
+                } else if (event.getMessage() instanceof MetaMessage) {
+                    // Only the first signatures of the score are used
+                    MetaMessage message = (MetaMessage) event.getMessage();
+                    byte[] data = message.getData();
+                    if (message.getType() == TIME_SIGNATURE && timeSignature == null && data.length >= 2
+                            && data[0] > 0 && data[1] >= 0 && data[1] < 8) {
+                        // Denominator as a power of two
+                        timeSignature = new TimeSignature(data[0], 1 << data[1]);
+                    } else if (message.getType() == KEY_SIGNATURE && keySignature == null && data.length >= 2) {
+                        // Number of sharps (positive) or flats (negative)
+                        Note majorTonic = Note.fromValue(7 * data[0]);
+                        keySignature = data[1] == 0 ? new Scale(majorTonic, "major")
+                                : new Scale(majorTonic.increasedBy(-3), "minor");
+                    }
+                }
+            }
+        }
+        return new MidiScore(onsets, sequence.getResolution(), keySignature,
+                timeSignature != null ? timeSignature : DEFAULT_TIME_SIGNATURE);
+    }
+
+    /**
+     * @return The notes of the score sorted by time (in ticks)
+     */
+    public List<Onset> getOnsets() {
+        return onsets;
+    }
+
+    /**
+     * @return The number of ticks per beat
+     */
+    public int getResolution() {
+        return resolution;
+    }
+
+    /**
+     * @return The beat of the score in ticks
+     */
+    public Beat getBeat() {
+        return new Beat(resolution, 0);
+    }
+
+    /**
+     * @return The time signature of the score (4/4 if the file does not have
+     *         any)
+     */
+    public TimeSignature getTimeSignature() {
+        return timeSignature;
+    }
+
+    /**
+     * @return The duration of a bar in ticks
+     */
+    public int getBarDuration() {
+        return timeSignature.getBeats() * resolution * 4 / timeSignature.getUnit();
+    }
+
+    /**
+     * @return The scale of the key signature, or null if there is not any
+     */
+    public Scale getKeySignature() {
+        return keySignature;
+    }
+
+    /**
+     * Get the scale of the score.
+     *
+     * If the score does not have a key signature, the scale is inferred as
+     * the one containing most of the played time, favoring scales whose
+     * fundamental is played the most.
+     *
+     * @return The scale of the score, or null if the score is empty
+     */
+    public Scale getScale() {
+        if (keySignature != null) {
+            return keySignature;
+        }
+        if (onsets.isEmpty()) {
+            return null;
+        }
+        long[] pitchClassDurations = new long[PitchClassSet.SIZE];
+        for (Onset onset : onsets) {
+            pitchClassDurations[PitchClassSet.pitchClass(onset.getPitch())] += onset.getDuration();
+        }
+        Scale bestScale = null;
+        long bestScore = -1;
+        for (String type : SCALE_TYPES) {
+            for (Note fundamental : Note.values()) {
+                Scale scale = new Scale(fundamental, type);
+                long score = pitchClassDurations[fundamental.value()];
+                int pitchClasses = scale.getPitchClassSet();
+                for (int pitchClass = 0; pitchClass < PitchClassSet.SIZE; pitchClass++) {
+                    if (PitchClassSet.contains(pitchClasses, pitchClass)) {
+                        score += pitchClassDurations[pitchClass];
+                    }
+                }
+                if (score > bestScore) {
+                    bestScore = score;
+                    bestScale = scale;
+                }
+            }
+        }
+        return bestScale;
+    }
+
+}
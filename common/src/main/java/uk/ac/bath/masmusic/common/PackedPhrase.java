@@ -0,0 +1,533 @@
+package uk.ac.bath.masmusic.common;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A compact immutable representation of a {@link Phrase}.
+ *
+ * Positions and durations are quantized to {@link #TICKS_PER_BEAT} ticks per
+ * beat and stored in int arrays, and the pitches of all the elements are
+ * stored in a single byte array, sorted in ascending order within each
+ * element. The duration and pitch range of the phrase are computed once.
+ * Transposed phrases share the arrays of the original phrase.
+ *
+ * @author Javier Dehesa
+ */
+public final class PackedPhrase {
+
+    /** Number of ticks per beat (allows binary and ternary subdivisions). */
+    public static final int TICKS_PER_BEAT = 48;
+
+    /** Highest MIDI pitch value. */
+    private static final int MAX_PITCH = 127;
+
+    /** Empty phrase. */
+    public static final PackedPhrase EMPTY = new Builder().build();
+
+    /** Element positions in ticks. */
+    private final int[] positions;
+
+    /** Element durations in ticks. */
+    private final int[] durations;
+
+    /** Index of the first pitch of each element (plus the total count). */
+    private final int[] pitchStart;
+
+    /** Pitches of every element. */
+    private final byte[] pitches;
+
+    /** Transposition applied to the stored pitches. */
+    private final int transposition;
+
+    /** Duration of the phrase in ticks. */
+    private final int durationTicks;
+
+    /** Lowest stored pitch. */
+    private final int lowestPitch;
+
+    /** Highest stored pitch. */
+    private final int highestPitch;
+
+    /**
+     * Constructor.
+     *
+     * @param positions
+     *            Element positions in ticks
+     * @param durations
+     *            Element durations in ticks
+     * @param pitchStart
+     *            Index of the first pitch of each element
+     * @param pitches
+     *            Pitches of every element
+     * @param transposition
+     *            Transposition applied to the pitches
+     */
+    private PackedPhrase(int[] positions, int[] durations, int[] pitchStart, byte[] pitches, int transposition) {
+        this.positions = positions;
+        this.durations = durations;
+        this.pitchStart = pitchStart;
+        this.pitches = pitches;
+        this.transposition = transposition;
+        int end = 0;
+        for (int i = 0; i < positions.length; i++) {
+            end = Math.max(end, positions[i] + durations[i]);
+        }
+        this.durationTicks = end;
+        int lowest = MAX_PITCH;
+        int highest = 0;
+        for (byte pitch : pitches) {
+            lowest = Math.min(lowest, pitch);
+            highest = Math.max(highest, pitch);
+        }
+        this.lowestPitch = lowest;
+        this.highestPitch = highest;
+    }
+
+    /**
+     * Convert a phrase into its packed representation.
+     *
+     * @param phrase
+     *            The phrase
+     * @return The packed phrase
+     * @throws IllegalArgumentException
+     *             If some pitch is not a valid MIDI pitch
+     */
+    public static PackedPhrase fromPhrase(Phrase phrase) {
+        Builder builder = new Builder(phrase.size());
+        for (Phrase.Element element : phrase) {
+            ScoreElement scoreElement = element.getScoreElement();
+            builder.add(element.getPosition(), scoreElement.getDuration(), scoreElement.getPitches());
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return A new phrase with the elements of this one
+     */
+    public Phrase toPhrase() {
+        Phrase phrase = new Phrase();
+        List<Integer> elementPitches = new ArrayList<>();
+        for (int i = 0; i < size(); i++) {
+            elementPitches.clear();
+            for (int j = 0; j < getPitchCount(i); j++) {
+                elementPitches.add(getPitch(i, j));
+            }
+            phrase.addElement(new ScoreElement(getElementDuration(i), elementPitches), getPosition(i));
+        }
+        return phrase;
+    }
+
+    /**
+     * @return The number of elements in the phrase
+     */
+    public int size() {
+        return positions.length;
+    }
+
+    /**
+     * @return The duration of the phrase in beats
+     */
+    public double getDuration() {
+        return durationTicks / (double) TICKS_PER_BEAT;
+    }
+
+    /**
+     * @return The duration of the phrase in ticks
+     */
+    public int getDurationTicks() {
+        return durationTicks;
+    }
+
+    /**
+     * @param index
+     *            Index of an element
+     * @return The position of the element in beats
+     */
+    public double getPosition(int index) {
+        return positions[index] / (double) TICKS_PER_BEAT;
+    }
+
+    /**
+     * @param index
+     *            Index of an element
+     * @return The position of the element in ticks
+     */
+    public int getPositionTicks(int index) {
+        return positions[index];
+    }
+
+    /**
+     * @param index
+     *            Index of an element
+     * @return The duration of the element in beats
+     */
+    public double getElementDuration(int index) {
+        return durations[index] / (double) TICKS_PER_BEAT;
+    }
+
+    /**
+     * @param index
+     *            Index of an element
+     * @return The duration of the element in ticks
+     */
+    public int getElementDurationTicks(int index) {
+        return durations[index];
+    }
+
+    /**
+     * @param index
+     *            Index of an element
+     * @return The number of pitches in the element
+     */
+    public int getPitchCount(int index) {
+        return pitchStart[index + 1] - pitchStart[index];
+    }
+
+    /**
+     * @param index
+     *            Index of an element
+     * @param pitchIndex
+     *            Index of the pitch in the element, between 0 and
+     *            {@link #getPitchCount(int)} (exclusive), in ascending order
+     * @return The pitch
+     */
+    public int getPitch(int index, int pitchIndex) {
+        if (pitchIndex < 0 || pitchIndex >= getPitchCount(index)) {
+            throw new IndexOutOfBoundsException();
+        }
+        return pitches[pitchStart[index] + pitchIndex] + transposition;
+    }
+
+    /**
+     * @return The lowest pitch in the phrase (undefined for phrases without
+     *         pitches)
+     */
+    public int getLowestPitch() {
+        return lowestPitch + transposition;
+    }
+
+    /**
+     * @return The highest pitch in the phrase (undefined for phrases without
+     *         pitches)
+     */
+    public int getHighestPitch() {
+        return highestPitch + transposition;
+    }
+
+    /**
+     * Transpose the phrase.
+     *
+     * The transposed phrase shares the data of this phrase.
+     *
+     * @param halfSteps
+     *            Number of half steps to transpose (may be negative)
+     * @return The transposed phrase
+     * @throws IllegalArgumentException
+     *             If some transposed pitch is not a valid MIDI pitch
+     */
+    public PackedPhrase transposed(int halfSteps) {
+        if (halfSteps == 0) {
+            return this;
+        }
+        if (pitches.length > 0
+                && (getLowestPitch() + halfSteps < 0 || getHighestPitch() + halfSteps > MAX_PITCH)) {
+            throw new IllegalArgumentException("The transposed phrase exceeds the valid pitch range");
+        }
+        return new PackedPhrase(positions, durations, pitchStart, pitches, transposition + halfSteps);
+    }
+
+    /**
+     * Serialize the phrase.
+     *
+     * The format is the number of elements, followed by the position,
+     * duration, number of pitches and pitches of each element.
+     *
+     * @return The serialized phrase
+     */
+    public byte[] toBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + size() * (2 * Integer.BYTES + 1) + pitches.length);
+        buffer.putInt(size());
+        for (int i = 0; i < size(); i++) {
+            buffer.putInt(positions[i]);
+            buffer.putInt(durations[i]);
+            buffer.put((byte) getPitchCount(i));
+            for (int j = pitchStart[i]; j < pitchStart[i + 1]; j++) {
+                buffer.put((byte) (pitches[j] + transposition));
+            }
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Deserialize a phrase.
+     *
+     * @param bytes
+     *            A phrase serialized with {@link #toBytes()}
+     * @return The deserialized phrase
+     * @throws IllegalArgumentException
+     *             If the data is not a valid serialized phrase
+     */
+    public static PackedPhrase fromBytes(byte[] bytes) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            int size = buffer.getInt();
+            if (size < 0 || size > bytes.length) {
+                throw new IllegalArgumentException("Invalid serialized phrase");
+            }
+            Builder builder = new Builder(size);
+            int[] elementPitches = new int[MAX_PITCH + 1];
+            for (int i = 0; i < size; i++) {
+                int position = buffer.getInt();
+                int duration = buffer.getInt();
+                int pitchCount = buffer.get() & 0xFF;
+                for (int j = 0; j < pitchCount; j++) {
+                    elementPitches[j] = buffer.get();
+                }
+                builder.addTicks(position, duration, elementPitches, pitchCount);
+            }
+            if (buffer.hasRemaining()) {
+                throw new IllegalArgumentException("Invalid serialized phrase");
+            }
+            return builder.build();
+        } catch (BufferUnderflowException | ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid serialized phrase", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("PackedPhrase [");
+        for (int i = 0; i < size(); i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(positions[i]).append('+').append(durations[i]).append(':');
+            sb.append('{');
+            for (int j = 0; j < getPitchCount(i); j++) {
+                if (j > 0) {
+                    sb.append(' ');
+                }
+                sb.append(getPitch(i, j));
+            }
+            sb.append('}');
+        }
+        return sb.append(']').toString();
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + Arrays.hashCode(positions);
+        result = prime * result + Arrays.hashCode(durations);
+        result = prime * result + Arrays.hashCode(pitchStart);
+        for (byte pitch : pitches) {
+            result = prime * result + pitch + transposition;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        PackedPhrase other = (PackedPhrase) obj;
+        if (!Arrays.equals(positions, other.positions)
+                || !Arrays.equals(durations, other.durations)
+                || !Arrays.equals(pitchStart, other.pitchStart)) {
+            return false;
+        }
+        for (int i = 0; i < pitches.length; i++) {
+            if (pitches[i] + transposition != other.pitches[i] + other.transposition) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Builder of packed phrases.
+     *
+     * Elements can be added in any order; elements with the same position
+     * keep the order in which they were added.
+     */
+    public static class Builder {
+
+        private int[] positions;
+        private int[] durations;
+        private int[] pitchStart;
+        private byte[] pitches;
+        private int size;
+        private int pitchCount;
+        private boolean sorted;
+
+        /**
+         * Constructor.
+         */
+        public Builder() {
+            this(8);
+        }
+
+        /**
+         * Constructor.
+         *
+         * @param expectedSize
+         *            Expected number of elements
+         */
+        public Builder(int expectedSize) {
+            int capacity = Math.max(expectedSize, 1);
+            positions = new int[capacity];
+            durations = new int[capacity];
+            pitchStart = new int[capacity + 1];
+            pitches = new byte[capacity];
+            size = 0;
+            pitchCount = 0;
+            sorted = true;
+        }
+
+        /**
+         * Add an element with a single pitch.
+         *
+         * @param position
+         *            Position of the element in beats
+         * @param duration
+         *            Duration of the element in beats
+         * @param pitch
+         *            Pitch of the element
+         * @return This builder
+         */
+        public Builder add(double position, double duration, int pitch) {
+            return addTicks(toTicks(position), toTicks(duration), new int[] { pitch }, 1);
+        }
+
+        /**
+         * Add an element.
+         *
+         * @param position
+         *            Position of the element in beats
+         * @param duration
+         *            Duration of the element in beats
+         * @param elementPitches
+         *            Pitches of the element
+         * @return This builder
+         */
+        public Builder add(double position, double duration, Collection<Integer> elementPitches) {
+            int[] values = new int[elementPitches.size()];
+            int count = 0;
+            for (int pitch : elementPitches) {
+                values[count++] = pitch;
+            }
+            return addTicks(toTicks(position), toTicks(duration), values, count);
+        }
+
+        /**
+         * Add an element.
+         *
+         * @param position
+         *            Position of the element in ticks
+         * @param duration
+         *            Duration of the element in ticks
+         * @param elementPitches
+         *            Array with the pitches of the element
+         * @param count
+         *            Number of pitches in the array
+         * @return This builder
+         */
+        public Builder addTicks(int position, int duration, int[] elementPitches, int count) {
+            if (duration < 0) {
+                throw new IllegalArgumentException("The duration cannot be negative");
+            }
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+                durations = Arrays.copyOf(durations, size * 2);
+                pitchStart = Arrays.copyOf(pitchStart, size * 2 + 1);
+            }
+            if (pitchCount + count > pitches.length) {
+                pitches = Arrays.copyOf(pitches, Math.max(pitches.length * 2, pitchCount + count));
+            }
+            int[] sortedPitches = Arrays.copyOf(elementPitches, count);
+            Arrays.sort(sortedPitches);
+            int start = pitchCount;
+            for (int i = 0; i < count; i++) {
+                int pitch = sortedPitches[i];
+                if (pitch < 0 || pitch > MAX_PITCH) {
+                    throw new IllegalArgumentException("Invalid pitch " + pitch);
+                }
+                // Skip repetitions
+                if (pitchCount == start || pitches[pitchCount - 1] != pitch) {
+                    pitches[pitchCount++] = (byte) pitch;
+                }
+            }
+            if (size > 0 && position < positions[size - 1]) {
+                sorted = false;
+            }
+            positions[size] = position;
+            durations[size] = duration;
+            pitchStart[size] = start;
+            size++;
+            pitchStart[size] = pitchCount;
+            return this;
+        }
+
+        /**
+         * @return The number of elements added to the builder
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @return The packed phrase with the added elements
+         */
+        public PackedPhrase build() {
+            if (sorted) {
+                return new PackedPhrase(Arrays.copyOf(positions, size), Arrays.copyOf(durations, size),
+                        Arrays.copyOf(pitchStart, size + 1), Arrays.copyOf(pitches, pitchCount), 0);
+            }
+            // Stable sort of the elements by position
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Integer.compare(positions[a], positions[b]));
+            int[] newPositions = new int[size];
+            int[] newDurations = new int[size];
+            int[] newPitchStart = new int[size + 1];
+            byte[] newPitches = new byte[pitchCount];
+            int newPitchCount = 0;
+            for (int i = 0; i < size; i++) {
+                int element = order[i];
+                newPositions[i] = positions[element];
+                newDurations[i] = durations[element];
+                newPitchStart[i] = newPitchCount;
+                int count = pitchStart[element + 1] - pitchStart[element];
+                System.arraycopy(pitches, pitchStart[element], newPitches, newPitchCount, count);
+                newPitchCount += count;
+            }
+            newPitchStart[size] = newPitchCount;
+            return new PackedPhrase(newPositions, newDurations, newPitchStart, newPitches, 0);
+        }
+
+        /**
+         * @param beats
+         *            A value in beats
+         * @return The value in ticks
+         */
+        private static int toTicks(double beats) {
+            return Math.toIntExact(Math.round(beats * TICKS_PER_BEAT));
+        }
+    }
+
+}
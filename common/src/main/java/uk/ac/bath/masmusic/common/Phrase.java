@@ -16,6 +16,9 @@ public class Phrase implements Iterable<Phrase.Element> {
 
     private final List<Element> elements;
 
+    /** Duration of the phrase in beats. */
+    private double duration;
+
     /**
      * An element of a phrase.
      *
@@ -101,6 +104,7 @@ public class Phrase implements Iterable<Phrase.Element> {
      */
     public Phrase() {
         this.elements = new ArrayList<>();
+        this.duration = 0;
     }
 
     /**
@@ -114,17 +118,7 @@ public class Phrase implements Iterable<Phrase.Element> {
      * @return The duration of the phrase in beats
      */
     public double getDuration() {
-        if (size() < 1) {
-            return 0;
-        }
-        double max = Double.NEGATIVE_INFINITY;
-        for (Element element : this) {
-            double current = element.getPosition() + element.getScoreElement().getDuration();
-            if (current > max) {
-                max = current;
-            }
-        }
-        return max;
+        return duration;
     }
 
     /**
@@ -140,6 +134,10 @@ public class Phrase implements Iterable<Phrase.Element> {
         for (index = elements.size(); index > 0 && elements.get(index - 1).position > position; index--) {
         }
         elements.add(index, new Element(position, element));
+        double end = position + element.getDuration();
+        if (elements.size() == 1 || end > duration) {
+            duration = end;
+        }
     }
 
     /**
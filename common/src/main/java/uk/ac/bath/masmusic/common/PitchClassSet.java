@@ -0,0 +1,202 @@
+package uk.ac.bath.masmusic.common;
+
+import java.util.StringJoiner;
+
+/**
+ * Operations on sets of pitch classes represented as 12-bit masks.
+ *
+ * Bit {@code i} of a set is on if the pitch class {@code i} (the note with
+ * {@link Note#value()} {@code i}) is in the set. Since sets are plain int
+ * values, membership, transposition and set operations are single integer
+ * operations.
+ *
+ * @author Javier Dehesa
+ */
+public final class PitchClassSet {
+
+    /** Number of pitch classes. */
+    public static final int SIZE = 12;
+
+    /** The empty set. */
+    public static final int EMPTY = 0;
+
+    /** The set with every pitch class. */
+    public static final int ALL = (1 << SIZE) - 1;
+
+    private PitchClassSet() {
+    }
+
+    /**
+     * @param pitch
+     *            A pitch value (e.g. a MIDI pitch value or an interval)
+     * @return The pitch class of the pitch, between 0 and 11
+     */
+    public static int pitchClass(int pitch) {
+        return Math.floorMod(pitch, SIZE);
+    }
+
+    /**
+     * @param pitch
+     *            A pitch value
+     * @return The set containing only the pitch class of the pitch
+     */
+    public static int of(int pitch) {
+        return 1 << pitchClass(pitch);
+    }
+
+    /**
+     * @param pitches
+     *            Some pitch values
+     * @return The set of the pitch classes of the pitches
+     */
+    public static int of(int... pitches) {
+        int set = EMPTY;
+        for (int pitch : pitches) {
+            set |= of(pitch);
+        }
+        return set;
+    }
+
+    /**
+     * @param note
+     *            A note
+     * @return The set containing only the given note
+     */
+    public static int of(Note note) {
+        return 1 << note.value();
+    }
+
+    /**
+     * @param set
+     *            A pitch class set
+     * @param pitch
+     *            A pitch value
+     * @return true if the pitch class of the pitch is in the set
+     */
+    public static boolean contains(int set, int pitch) {
+        return (set & of(pitch)) != 0;
+    }
+
+    /**
+     * @param set
+     *            A pitch class set
+     * @param note
+     *            A note
+     * @return true if the note is in the set
+     */
+    public static boolean contains(int set, Note note) {
+        return (set & of(note)) != 0;
+    }
+
+    /**
+     * @param set
+     *            A pitch class set
+     * @param other
+     *            Another pitch class set
+     * @return true if every pitch class in the second set is in the first one
+     */
+    public static boolean containsAll(int set, int other) {
+        return (other & ~set) == 0;
+    }
+
+    /**
+     * Transpose a pitch class set.
+     *
+     * @param set
+     *            A pitch class set
+     * @param halfSteps
+     *            Number of half steps to transpose the set upwards (may be
+     *            negative)
+     * @return The transposed set
+     */
+    public static int rotate(int set, int halfSteps) {
+        int shift = pitchClass(halfSteps);
+        return ((set << shift) | (set >>> (SIZE - shift))) & ALL;
+    }
+
+    /**
+     * @param set
+     *            A pitch class set
+     * @param other
+     *            Another pitch class set
+     * @return The pitch classes in both sets
+     */
+    public static int intersection(int set, int other) {
+        return set & other;
+    }
+
+    /**
+     * @param set
+     *            A pitch class set
+     * @param other
+     *            Another pitch class set
+     * @return The pitch classes in any of the sets
+     */
+    public static int union(int set, int other) {
+        return (set | other) & ALL;
+    }
+
+    /**
+     * @param set
+     *            A pitch class set
+     * @return The pitch classes not in the set
+     */
+    public static int complement(int set) {
+        return ~set & ALL;
+    }
+
+    /**
+     * @param set
+     *            A pitch class set
+     * @return The number of pitch classes in the set
+     */
+    public static int size(int set) {
+        return Integer.bitCount(set & ALL);
+    }
+
+    /**
+     * Count the pitch classes of a set lower than a given one.
+     *
+     * For a set of intervals from a scale fundamental, this is the zero-based
+     * degree of the given pitch class.
+     *
+     * @param set
+     *            A pitch class set
+     * @param pitchClass
+     *            A pitch class, between 0 and 11
+     * @return The number of pitch classes in the set lower than the given one
+     */
+    public static int rank(int set, int pitchClass) {
+        return Integer.bitCount(set & ((1 << pitchClass) - 1));
+    }
+
+    /**
+     * @param set
+     *            A pitch class set
+     * @return The pitch classes in the set in ascending order
+     */
+    public static int[] toArray(int set) {
+        int[] array = new int[size(set)];
+        int i = 0;
+        for (int pitchClass = 0; pitchClass < SIZE; pitchClass++) {
+            if ((set & (1 << pitchClass)) != 0) {
+                array[i++] = pitchClass;
+            }
+        }
+        return array;
+    }
+
+    /**
+     * @param set
+     *            A pitch class set
+     * @return A string representation of the set
+     */
+    public static String toString(int set) {
+        StringJoiner joiner = new StringJoiner(", ", "{", "}");
+        for (int pitchClass : toArray(set)) {
+            joiner.add(Note.fromValue(pitchClass).toString());
+        }
+        return joiner.toString();
+    }
+
+}
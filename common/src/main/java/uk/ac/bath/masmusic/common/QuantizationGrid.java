@@ -0,0 +1,237 @@
+package uk.ac.bath.masmusic.common;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A grid of beat subdivisions used to snap onsets.
+ *
+ * The grid precomputes the subdivision durations of a {@link Beat} for a given
+ * level of binary and ternary subdivision, so snapping is equivalent to
+ * {@link Beat#closestSubbeat(long, int, int)} but cheaper. Grids are immutable
+ * and can be reused as long as the beat and subdivision levels do not change
+ * (see {@link #matches(Beat, int, int)}).
+ *
+ * Optionally, the duration of snapped onsets can be rounded to a multiple of a
+ * given duration quantum.
+ *
+ * @author Javier Dehesa
+ */
+public class QuantizationGrid {
+
+    /** Beat. */
+    private final Beat beat;
+
+    /** Level of binary subdivision. */
+    private final int binarySubdivision;
+
+    /** Level of ternary subdivision. */
+    private final int ternarySubdivision;
+
+    /** Beat duration (ms). */
+    private final int beatDuration;
+
+    /** Beat phase (ms). */
+    private final int beatPhase;
+
+    /** Duration of binary subbeats (ms). */
+    private final int binarySubbeatDuration;
+
+    /** Duration of ternary subbeats (ms). */
+    private final int ternarySubbeatDuration;
+
+    /** Duration quantum of snapped onsets (ms), or 0 for no rounding. */
+    private final int durationQuantum;
+
+    /**
+     * Constructor.
+     *
+     * @param beat
+     *            Beat of the grid
+     * @param binarySubdivision
+     *            Level of binary beat subdivisons allowed (0 for no
+     *            subdivision, 1 for 2 subdivisions, 2 for 4, etc.)
+     * @param ternarySubdivision
+     *            Level of ternary beat subdivisons allowed (0 for no
+     *            subdivision, 1 for 3 subdivisions, 2 for 9, etc.)
+     */
+    public QuantizationGrid(Beat beat, int binarySubdivision, int ternarySubdivision) {
+        this(beat, binarySubdivision, ternarySubdivision, 0);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param beat
+     *            Beat of the grid
+     * @param binarySubdivision
+     *            Level of binary beat subdivisons allowed (0 for no
+     *            subdivision, 1 for 2 subdivisions, 2 for 4, etc.)
+     * @param ternarySubdivision
+     *            Level of ternary beat subdivisons allowed (0 for no
+     *            subdivision, 1 for 3 subdivisions, 2 for 9, etc.)
+     * @param durationQuantum
+     *            Duration to which the durations of the snapped onsets are
+     *            rounded, or 0 for no rounding
+     */
+    public QuantizationGrid(Beat beat, int binarySubdivision, int ternarySubdivision, int durationQuantum) {
+        Objects.requireNonNull(beat);
+        if (binarySubdivision < 0 || ternarySubdivision < 0) {
+            throw new IllegalArgumentException("The allowed subdivisions level cannot be negative");
+        }
+        if (durationQuantum < 0) {
+            throw new IllegalArgumentException("The duration quantum cannot be negative");
+        }
+        this.beat = beat;
+        this.binarySubdivision = binarySubdivision;
+        this.ternarySubdivision = ternarySubdivision;
+        this.beatDuration = beat.getDuration();
+        this.beatPhase = beat.getPhase();
+        this.binarySubbeatDuration = Math.toIntExact(
+                Math.round(beatDuration / (double) (1 << binarySubdivision)));
+        this.ternarySubbeatDuration = Math.toIntExact(
+                Math.round(beatDuration / Math.pow(3, ternarySubdivision)));
+        if (binarySubbeatDuration <= 0 || ternarySubbeatDuration <= 0) {
+            throw new IllegalArgumentException("The subdivision level is too high for the beat");
+        }
+        this.durationQuantum = durationQuantum;
+    }
+
+    /**
+     * @return The beat of the grid
+     */
+    public Beat getBeat() {
+        return beat;
+    }
+
+    /**
+     * @return The level of binary subdivision
+     */
+    public int getBinarySubdivision() {
+        return binarySubdivision;
+    }
+
+    /**
+     * @return The level of ternary subdivision
+     */
+    public int getTernarySubdivision() {
+        return ternarySubdivision;
+    }
+
+    /**
+     * @return The duration quantum of snapped onsets, or 0 for no rounding
+     */
+    public int getDurationQuantum() {
+        return durationQuantum;
+    }
+
+    /**
+     * Check whether the grid corresponds to the given parameters.
+     *
+     * @param beat
+     *            A beat
+     * @param binarySubdivision
+     *            Level of binary subdivision
+     * @param ternarySubdivision
+     *            Level of ternary subdivision
+     * @return true if the grid was built for the given parameters, false
+     *         otherwise
+     */
+    public boolean matches(Beat beat, int binarySubdivision, int ternarySubdivision) {
+        return this.binarySubdivision == binarySubdivision
+                && this.ternarySubdivision == ternarySubdivision
+                && this.beat.equals(beat);
+    }
+
+    /**
+     * Get the timestamp of the subbeat that is closest to the given timestamp.
+     *
+     * @param timestamp
+     *            Time at which the closest subbeat time is computed
+     * @return The closest subbeat to the timestamp
+     * @see Beat#closestSubbeat(long, int, int)
+     */
+    public long closestSubbeat(long timestamp) {
+        long prevBeat = ((timestamp - beatPhase) / beatDuration) * beatDuration + beatPhase;
+        long nextBeat = prevBeat + beatDuration;
+        long sincePrev = timestamp - prevBeat;
+        long toNext = nextBeat - timestamp;
+        long prev = prevBeat + Math.max((sincePrev / binarySubbeatDuration) * binarySubbeatDuration,
+                (sincePrev / ternarySubbeatDuration) * ternarySubbeatDuration);
+        long next = nextBeat - Math.max((toNext / binarySubbeatDuration) * binarySubbeatDuration,
+                (toNext / ternarySubbeatDuration) * ternarySubbeatDuration);
+        return (timestamp - prev) <= (next - timestamp) ? prev : next;
+    }
+
+    /**
+     * Create a new onset resulting of snapping the given onset to the grid.
+     *
+     * @param onset
+     *            Onset to snap
+     * @return The snapped onset
+     */
+    public Onset snap(Onset onset) {
+        long begin = closestSubbeat(onset.getTimestamp());
+        long end = closestSubbeat(onset.getTimestamp() + onset.getDuration());
+        return new Onset(begin, snapDuration(end - begin), onset.getPitch(), onset.getVelocity());
+    }
+
+    /**
+     * Snap a collection of onsets to the grid.
+     *
+     * The output list is cleared before adding the snapped onsets, so it can
+     * be reused between calls.
+     *
+     * @param onsets
+     *            Onsets to snap
+     * @param output
+     *            List where the snapped onsets are written
+     * @return The output list
+     */
+    public List<Onset> snapAll(Collection<Onset> onsets, List<Onset> output) {
+        output.clear();
+        for (Onset onset : onsets) {
+            output.add(snap(onset));
+        }
+        return output;
+    }
+
+    /**
+     * Snap an array of timestamps to the grid.
+     *
+     * @param timestamps
+     *            Timestamps to snap
+     * @param output
+     *            Array where the snapped timestamps are written (it may be the
+     *            same as the input)
+     * @param length
+     *            Number of timestamps to snap
+     */
+    public void snapAll(long[] timestamps, long[] output, int length) {
+        for (int i = 0; i < length; i++) {
+            output[i] = closestSubbeat(timestamps[i]);
+        }
+    }
+
+    /**
+     * Round a snapped duration to the duration quantum.
+     *
+     * @param duration
+     *            Snapped duration
+     * @return The rounded duration
+     */
+    private int snapDuration(long duration) {
+        if (durationQuantum == 0) {
+            return (int) duration;
+        }
+        return Math.round(duration / ((float) durationQuantum)) * durationQuantum;
+    }
+
+    @Override
+    public String toString() {
+        return "QuantizationGrid [beat=" + beat + ", binarySubdivision=" + binarySubdivision
+                + ", ternarySubdivision=" + ternarySubdivision + ", durationQuantum=" + durationQuantum + "]";
+    }
+
+}
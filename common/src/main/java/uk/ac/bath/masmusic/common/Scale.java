@@ -22,6 +22,12 @@ public class Scale {
     /** Intervals of the scale. */
     private final int[] intervals;
 
+    /** Intervals of the scale as a pitch class set. */
+    private final int intervalSet;
+
+    /** Notes of the scale as a pitch class set. */
+    private final int pitchClassSet;
+
     /** Known scale types. */
     private static Map<String, ScaleType> scaleTypes;
 
@@ -62,12 +68,19 @@ public class Scale {
     /**
      * Constructor.
      *
+     * The intervals must be strictly ascending and between 0 and 11, so each
+     * degree of the scale is a different pitch class and the degree of a note
+     * is its rank in {@link #getIntervalSet()}. The intervals are copied.
+     *
      * @param fundamental
      *            Fundamental note of the scale
      * @param type
      *            Type name of the scale
      * @param intervals
      *            Intervals of the scale
+     * @throws IllegalArgumentException
+     *             If the intervals are empty, not strictly ascending or out
+     *             of range
      */
     public Scale(Note fundamental, String type, int[] intervals) {
         if (intervals.length < 1) {
@@ -76,13 +89,17 @@ public class Scale {
         int lastInterval = -1;
         for (int interval : intervals) {
             if (interval <= lastInterval || interval >= 12) {
-                throw new IllegalArgumentException("Invalid intervals");
+                throw new IllegalArgumentException("Invalid intervals " + Arrays.toString(intervals)
+                        + ": they must be strictly ascending and between 0 and 11");
             }
             lastInterval = interval;
         }
         this.type = type;
         this.fundamental = fundamental;
-        this.intervals = intervals;
+        // Copied so the interval set cannot get out of sync with them
+        this.intervals = intervals.clone();
+        this.intervalSet = PitchClassSet.of(intervals);
+        this.pitchClassSet = PitchClassSet.rotate(intervalSet, fundamental.value());
     }
 
     /**
@@ -106,6 +123,39 @@ public class Scale {
         return fundamental;
     }
 
+    /**
+     * @return The notes of the scale as a {@link PitchClassSet}
+     */
+    public int getPitchClassSet() {
+        return pitchClassSet;
+    }
+
+    /**
+     * @return The intervals of the scale as a {@link PitchClassSet}
+     */
+    public int getIntervalSet() {
+        return intervalSet;
+    }
+
+    /**
+     * @param note
+     *            A note
+     * @return true if the note is in the scale, false otherwise
+     */
+    public boolean contains(Note note) {
+        return PitchClassSet.contains(pitchClassSet, note);
+    }
+
+    /**
+     * @param pitch
+     *            A pitch value
+     * @return true if the pitch class of the pitch is in the scale, false
+     *         otherwise
+     */
+    public boolean containsPitch(int pitch) {
+        return PitchClassSet.contains(pitchClassSet, pitch);
+    }
+
     /**
      * @param degree
      *            A degree of the scale
@@ -137,12 +187,10 @@ public class Scale {
      *         the note is not in the scale
      */
     public int degreeOf(Note note) {
-        for (int i = 1; i <= size(); i++) {
-            if (note == getNote(i)) {
-                return i;
-            }
+        if (!contains(note)) {
+            return -1;
         }
-        return -1;
+        return PitchClassSet.rank(intervalSet, fundamental.ascendingDistanceTo(note)) + 1;
     }
 
     /**
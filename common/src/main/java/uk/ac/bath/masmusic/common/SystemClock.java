@@ -0,0 +1,28 @@
+package uk.ac.bath.masmusic.common;
+
+/**
+ * Clock following the system time.
+ *
+ * @author Javier Dehesa
+ */
+public final class SystemClock implements Clock {
+
+    /** Singleton instance. */
+    public static final SystemClock INSTANCE = new SystemClock();
+
+    /**
+     * Constructor.
+     */
+    private SystemClock() {
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public String toString() {
+        return "SystemClock";
+    }
+}
@@ -0,0 +1,127 @@
+package uk.ac.bath.masmusic.common;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongConsumer;
+
+/**
+ * Clock following a virtual time line.
+ *
+ * The time of a virtual clock only changes when it is explicitly advanced,
+ * either by a driver advancing it periodically or by a replayed session
+ * advancing it to the time of each replayed event. The time never goes
+ * backwards. Listeners can be registered to be notified of every time change,
+ * in order, from the thread that advanced the clock.
+ *
+ * @author Javier Dehesa
+ */
+public class VirtualClock implements Clock {
+
+    /** Current time (ms). */
+    private volatile long time;
+
+    /** Nominal rate of the clock with respect to real time. */
+    private final double rate;
+
+    /** Time change listeners. */
+    private final List<LongConsumer> listeners;
+
+    /**
+     * Constructor.
+     *
+     * @param startTime
+     *            Initial time of the clock (ms)
+     */
+    public VirtualClock(long startTime) {
+        this(startTime, 1.0);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param startTime
+     *            Initial time of the clock (ms)
+     * @param rate
+     *            Nominal rate at which the clock is advanced with respect to
+     *            real time
+     * @throws IllegalArgumentException
+     *             If the rate is not positive
+     */
+    public VirtualClock(long startTime, double rate) {
+        if (!(rate > 0)) {
+            throw new IllegalArgumentException("The clock rate must be positive");
+        }
+        this.time = startTime;
+        this.rate = rate;
+        this.listeners = new CopyOnWriteArrayList<>();
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return time;
+    }
+
+    @Override
+    public double getRate() {
+        return rate;
+    }
+
+    /**
+     * Advance the clock.
+     *
+     * @param millis
+     *            Time to advance (ms)
+     * @throws IllegalArgumentException
+     *             If the given time is negative
+     */
+    public synchronized void advance(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("The clock cannot go backwards");
+        }
+        advanceTo(time + millis);
+    }
+
+    /**
+     * Advance the clock to the given time.
+     *
+     * If the given time is not after the current time the clock is not
+     * changed.
+     *
+     * @param timestamp
+     *            The new time of the clock (ms)
+     */
+    public synchronized void advanceTo(long timestamp) {
+        if (timestamp <= time) {
+            return;
+        }
+        time = timestamp;
+        for (LongConsumer listener : listeners) {
+            listener.accept(timestamp);
+        }
+    }
+
+    /**
+     * Add a time change listener.
+     *
+     * @param listener
+     *            Listener receiving the new time on each change
+     */
+    public void addListener(LongConsumer listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Remove a time change listener.
+     *
+     * @param listener
+     *            The removed listener
+     */
+    public void removeListener(LongConsumer listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public String toString() {
+        return "VirtualClock [time=" + time + ", rate=" + rate + "]";
+    }
+}
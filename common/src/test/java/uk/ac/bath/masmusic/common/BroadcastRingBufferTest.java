@@ -0,0 +1,62 @@
+package uk.ac.bath.masmusic.common;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class BroadcastRingBufferTest {
+
+    /** Test buffer. */
+    private BroadcastRingBuffer<Integer> buffer;
+
+    @Before
+    public void setUp() {
+        buffer = new BroadcastRingBuffer<>(4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCapacityFail() {
+        new BroadcastRingBuffer<Integer>(3);
+    }
+
+    @Test
+    public void testPoll() {
+        BroadcastRingBuffer<Integer>.Cursor cursor = buffer.newCursor();
+        assertThat(cursor.poll(), is(nullValue()));
+        buffer.publish(1);
+        buffer.publish(2);
+        assertThat(cursor.getLag(), is(2L));
+        assertThat(cursor.poll(), is(1));
+        assertThat(cursor.poll(), is(2));
+        assertThat(cursor.poll(), is(nullValue()));
+        assertThat(cursor.getLag(), is(0L));
+    }
+
+    @Test
+    public void testBroadcast() {
+        buffer.publish(0);
+        BroadcastRingBuffer<Integer>.Cursor cursor1 = buffer.newCursor();
+        buffer.publish(1);
+        BroadcastRingBuffer<Integer>.Cursor cursor2 = buffer.newCursor();
+        buffer.publish(2);
+        assertThat(cursor1.poll(), is(1));
+        assertThat(cursor1.poll(), is(2));
+        assertThat(cursor2.poll(), is(2));
+        assertThat(cursor2.poll(), is(nullValue()));
+    }
+
+    @Test
+    public void testMissed() {
+        BroadcastRingBuffer<Integer>.Cursor cursor = buffer.newCursor();
+        for (int i = 0; i < 10; i++) {
+            buffer.publish(i);
+        }
+        assertThat(cursor.poll(), is(6));
+        assertThat(cursor.getMissed(), is(6L));
+        assertThat(cursor.getLag(), is(3L));
+    }
+
+}
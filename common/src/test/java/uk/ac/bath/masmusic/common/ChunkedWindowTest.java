@@ -0,0 +1,70 @@
+package uk.ac.bath.masmusic.common;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChunkedWindowTest {
+
+    /** Test window. */
+    private ChunkedWindow<Integer> window;
+
+    @Before
+    public void setUp() {
+        window = new ChunkedWindow<>();
+    }
+
+    @Test
+    public void testAddRemove() {
+        for (int i = 0; i < 100; i++) {
+            window.add(i);
+        }
+        window.removeFirst(70);
+        assertThat(window.size(), is(30));
+        assertThat(window.get(0), is(70));
+        assertThat(window.get(29), is(99));
+        window.add(100);
+        assertThat(window.get(30), is(100));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRemoveFail() {
+        window.add(0);
+        window.removeFirst(2);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testGetFail() {
+        window.add(0);
+        window.get(1);
+    }
+
+    @Test
+    public void testSnapshot() {
+        for (int i = 0; i < 40; i++) {
+            window.add(i);
+        }
+        List<Integer> snapshot = window.snapshot();
+        window.removeFirst(35);
+        window.add(40);
+        window.clear();
+        window.add(-1);
+        assertThat(snapshot.size(), is(40));
+        assertThat(snapshot.get(0), is(0));
+        assertThat(snapshot.get(39), is(39));
+        List<Integer> other = window.snapshot();
+        assertThat(other.size(), is(1));
+        assertThat(other.get(0), is(-1));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSnapshotImmutable() {
+        window.add(0);
+        window.snapshot().set(0, 1);
+    }
+
+}
@@ -0,0 +1,88 @@
+package uk.ac.bath.masmusic.common;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ConsistentHashRingTest {
+
+    private static final int NUM_KEYS = 10000;
+
+    private static ConsistentHashRing ring(String... nodes) {
+        ConsistentHashRing ring = new ConsistentHashRing();
+        for (String node : nodes) {
+            ring.add(node);
+        }
+        return ring;
+    }
+
+    @Test
+    public void testEmpty() {
+        ConsistentHashRing ring = new ConsistentHashRing();
+        assertThat(ring.isEmpty(), is(true));
+        assertThat(ring.getNode("session"), is(nullValue()));
+    }
+
+    @Test
+    public void testSameNodesSameAssignment() {
+        ConsistentHashRing ring1 = ring("node-a", "node-b", "node-c");
+        ConsistentHashRing ring2 = ring("node-c", "node-a", "node-b");
+        for (int i = 0; i < NUM_KEYS; i++) {
+            assertThat(ring1.getNode("session-" + i), is(ring2.getNode("session-" + i)));
+        }
+    }
+
+    @Test
+    public void testBalance() {
+        ConsistentHashRing ring = ring("node-a", "node-b", "node-c", "node-d");
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < NUM_KEYS; i++) {
+            counts.merge(ring.getNode("session-" + i), 1, Integer::sum);
+        }
+        assertThat(counts.size(), is(4));
+        for (int count : counts.values()) {
+            assertTrue(count > NUM_KEYS / 8);
+        }
+    }
+
+    @Test
+    public void testAddMovesFewKeys() {
+        ConsistentHashRing ring = ring("node-a", "node-b", "node-c");
+        Map<String, String> before = new HashMap<>();
+        for (int i = 0; i < NUM_KEYS; i++) {
+            before.put("session-" + i, ring.getNode("session-" + i));
+        }
+        assertThat(ring.add("node-d"), is(true));
+        assertThat(ring.add("node-d"), is(false));
+        int moved = 0;
+        for (Map.Entry<String, String> entry : before.entrySet()) {
+            String node = ring.getNode(entry.getKey());
+            if (!node.equals(entry.getValue())) {
+                // Keys only move to the new node
+                assertThat(node, is("node-d"));
+                moved++;
+            }
+        }
+        assertTrue(moved > 0);
+        assertTrue(moved < NUM_KEYS / 2);
+    }
+
+    @Test
+    public void testRemove() {
+        ConsistentHashRing ring = ring("node-a", "node-b");
+        assertThat(ring.remove("node-a"), is(true));
+        assertThat(ring.remove("node-a"), is(false));
+        assertThat(ring.contains("node-a"), is(false));
+        for (int i = 0; i < 100; i++) {
+            assertThat(ring.getNode("session-" + i), is("node-b"));
+        }
+        assertTrue(ConsistentHashRing.hash("node-a") != ConsistentHashRing.hash("node-b"));
+    }
+
+}
@@ -134,6 +134,18 @@ public class EvictingCircularBufferTest {
         assertThat(buffer.get(1), is(3));
     }
 
+    @Test
+    public void testRemoveObjectWrapped() {
+        for (int i = 0; i < 2 * CAPACITY; i++) {
+            buffer.add(i);
+        }
+        assertThat(buffer.remove(new Integer(CAPACITY + 1)), is(true));
+        assertThat(buffer.size(), is(CAPACITY - 1));
+        assertThat(buffer.get(0), is(CAPACITY));
+        assertThat(buffer.get(1), is(CAPACITY + 2));
+        assertThat(buffer.get(3), is(CAPACITY + 4));
+    }
+
     @Test
     public void testRemoveAll() {
         buffer.add(1);
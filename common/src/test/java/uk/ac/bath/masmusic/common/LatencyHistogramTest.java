@@ -0,0 +1,65 @@
+package uk.ac.bath.masmusic.common;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    /** Test histogram. */
+    private LatencyHistogram histogram;
+
+    @Before
+    public void setUp() {
+        histogram = new LatencyHistogram();
+    }
+
+    @Test
+    public void testEmpty() {
+        assertThat(histogram.getCount(), is(0L));
+        assertThat(histogram.getMean(), is(0.0));
+        assertThat(histogram.getMax(), is(0L));
+        assertThat(histogram.getPercentile(50), is(0L));
+    }
+
+    @Test
+    public void testRecord() {
+        histogram.record(0);
+        histogram.record(1);
+        histogram.record(5);
+        histogram.record(-3);
+        assertThat(histogram.getCount(), is(4L));
+        assertThat(histogram.getMean(), is(1.5));
+        assertThat(histogram.getMax(), is(5L));
+        long[] buckets = histogram.getBucketCounts();
+        assertThat(buckets[0], is(2L));
+        assertThat(buckets[1], is(1L));
+        assertThat(buckets[3], is(1L));
+    }
+
+    @Test
+    public void testPercentile() {
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        assertThat(histogram.getPercentile(0), is(1L));
+        assertThat(histogram.getPercentile(50), is(63L));
+        assertThat(histogram.getPercentile(100), is(100L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPercentileFail() {
+        histogram.getPercentile(101);
+    }
+
+    @Test
+    public void testReset() {
+        histogram.record(10);
+        histogram.reset();
+        assertThat(histogram.getCount(), is(0L));
+        assertThat(histogram.getMax(), is(0L));
+    }
+
+}
@@ -0,0 +1,73 @@
+package uk.ac.bath.masmusic.common;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class LongCountMapTest {
+
+    @Test
+    public void testIncrement() {
+        LongCountMap map = new LongCountMap();
+        assertThat(map.isEmpty(), is(true));
+        map.increment(5);
+        map.increment(-3);
+        map.increment(5);
+        map.add(Long.MAX_VALUE, 10);
+        assertThat(map.size(), is(3));
+        assertThat(map.get(5), is(2L));
+        assertThat(map.get(-3), is(1L));
+        assertThat(map.get(Long.MAX_VALUE), is(10L));
+        assertThat(map.get(4), is(0L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCount() {
+        new LongCountMap().add(1, 0);
+    }
+
+    @Test
+    public void testGrow() {
+        LongCountMap map = new LongCountMap(2);
+        for (long key = 0; key < 10000; key++) {
+            map.add(key << 20, key + 1);
+        }
+        assertThat(map.size(), is(10000));
+        for (long key = 0; key < 10000; key++) {
+            assertThat(map.get(key << 20), is(key + 1));
+        }
+    }
+
+    @Test
+    public void testAddAll() {
+        LongCountMap map1 = new LongCountMap();
+        map1.add(1, 2);
+        map1.add(3, 4);
+        LongCountMap map2 = new LongCountMap();
+        map2.add(3, 1);
+        map2.add(7, 1);
+        map1.addAll(map2);
+        assertThat(map1.size(), is(3));
+        assertThat(map1.get(3), is(5L));
+        assertThat(map1.get(7), is(1L));
+        assertThat(map2.size(), is(2));
+    }
+
+    @Test
+    public void testSortedKeys() {
+        LongCountMap map = new LongCountMap();
+        map.increment(9);
+        map.increment(-1);
+        map.increment(4);
+        assertThat(map.sortedKeys().length, is(3));
+        assertThat(map.sortedKeys()[0], is(-1L));
+        assertThat(map.sortedKeys()[1], is(4L));
+        assertThat(map.sortedKeys()[2], is(9L));
+        map.clear();
+        assertThat(map.isEmpty(), is(true));
+        assertThat(map.get(9), is(0L));
+        assertThat(map.sortedKeys().length, is(0));
+    }
+
+}
@@ -0,0 +1,274 @@
+package uk.ac.bath.masmusic.common;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+import java.util.NoSuchElementException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class LongRingBufferTest {
+
+    /** Capacity of the test buffer. */
+    private static final int CAPACITY = 5;
+
+    /** Test buffer. */
+    private LongRingBuffer buffer;
+
+    @Before
+    public void setUp() {
+        buffer = new LongRingBuffer(CAPACITY);
+    }
+
+    @Test
+    public void testSize() {
+        assertThat(buffer.size(), is(0));
+        for (int i = 0; i < CAPACITY; i++) {
+            buffer.add(0);
+            assertThat(buffer.size(), is(i + 1));
+        }
+        buffer.add(0);
+        assertThat(buffer.size(), is(CAPACITY));
+    }
+
+    @Test
+    public void testIsEmpty() {
+        assertThat(buffer.isEmpty(), is(true));
+        for (int i = 0; i < CAPACITY + 1; i++) {
+            buffer.add(0);
+            assertThat(buffer.isEmpty(), is(false));
+        }
+    }
+
+    @Test
+    public void testClear() {
+        for (int i = 0; i < CAPACITY + 1; i++) {
+            for (int j = 0; j < i; j++) {
+                buffer.add(0);
+            }
+            buffer.clear();
+            assertThat(buffer.isEmpty(), is(true));
+        }
+    }
+
+    @Test
+    public void testAddAll() {
+        long[] values = new long[CAPACITY + 1];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i;
+        }
+        buffer.addAll(values);
+        assertThat(buffer.size(), is(CAPACITY));
+        for (int i = 0; i < buffer.size(); i++) {
+            assertThat(buffer.get(i), is(values[i + 1]));
+        }
+    }
+
+    @Test
+    public void testContains() {
+        buffer.add(1);
+        buffer.add(2);
+        buffer.add(3);
+        assertThat(buffer.contains(1), is(true));
+        assertThat(buffer.contains(2), is(true));
+        assertThat(buffer.contains(3), is(true));
+        assertThat(buffer.contains(4), is(false));
+    }
+
+    @Test
+    public void testContainsAll() {
+        buffer.add(1);
+        buffer.add(2);
+        buffer.add(3);
+        assertThat(buffer.containsAll(1, 2), is(true));
+        assertThat(buffer.containsAll(1, 2, 3), is(true));
+        assertThat(buffer.containsAll(1, 3, 1), is(true));
+        assertThat(buffer.containsAll(1, 4), is(false));
+        assertThat(buffer.containsAll(4, 1), is(false));
+    }
+
+    @Test
+    public void testIsFull() {
+        for (int i = 0; i < CAPACITY; i++) {
+            assertThat(buffer.isFull(), is(false));
+            buffer.add(0);
+        }
+        assertThat(buffer.isFull(), is(true));
+        buffer.add(0);
+        assertThat(buffer.isFull(), is(true));
+        buffer.removeFirst();
+        assertThat(buffer.isFull(), is(false));
+    }
+
+    @Test
+    public void testRemoveValue() {
+        buffer.add(1);
+        buffer.add(2);
+        buffer.add(3);
+        assertThat(buffer.remove(2), is(true));
+        assertThat(buffer.remove(4), is(false));
+        assertThat(buffer.size(), is(2));
+        assertThat(buffer.get(0), is(1L));
+        assertThat(buffer.get(1), is(3L));
+    }
+
+    @Test
+    public void testRemoveValueWrapped() {
+        for (int i = 0; i < 2 * CAPACITY; i++) {
+            buffer.add(i);
+        }
+        assertThat(buffer.remove(CAPACITY + 1), is(true));
+        assertThat(buffer.size(), is(CAPACITY - 1));
+        assertArrayEquals(new long[] { 5, 7, 8, 9 }, buffer.toArray());
+    }
+
+    @Test
+    public void testRemoveAll() {
+        buffer.add(1);
+        buffer.add(2);
+        buffer.add(3);
+        assertThat(buffer.removeAll(1, 3), is(true));
+        assertThat(buffer.size(), is(1));
+        assertThat(buffer.get(0), is(2L));
+    }
+
+    @Test
+    public void testRetainAll() {
+        buffer.add(1);
+        buffer.add(2);
+        buffer.add(3);
+        assertThat(buffer.retainAll(1, 3), is(true));
+        assertThat(buffer.size(), is(2));
+        assertThat(buffer.get(0), is(1L));
+        assertThat(buffer.get(1), is(3L));
+    }
+
+    @Test
+    public void testCapacity() {
+        assertThat(buffer.capacity(), is(CAPACITY));
+        for (int i = 0; i < CAPACITY + 1; i++) {
+            buffer.add(0);
+            assertThat(buffer.capacity(), is(CAPACITY));
+        }
+        buffer.clear();
+        assertThat(buffer.capacity(), is(CAPACITY));
+    }
+
+    @Test
+    public void testToArray() {
+        buffer.add(1);
+        buffer.add(2);
+        buffer.add(3);
+        long[] arr = buffer.toArray();
+        assertThat(arr.length, is(buffer.size()));
+        for (int i = 0; i < arr.length; i++) {
+            assertThat(arr[i], is(buffer.get(i)));
+        }
+    }
+
+    @Test
+    public void testCopyTo() {
+        for (int i = 0; i < CAPACITY + 3; i++) {
+            buffer.add(i);
+        }
+        long[] arr = new long[CAPACITY + 1];
+        arr[0] = -1;
+        assertThat(buffer.copyTo(arr, 1), is(CAPACITY));
+        assertArrayEquals(new long[] { -1, 3, 4, 5, 6, 7 }, arr);
+    }
+
+    @Test
+    public void testAdd() {
+        for (int i = 0; i < CAPACITY; i++) {
+            buffer.add(i);
+            assertThat(buffer.get(i), is((long) i));
+        }
+        buffer.add(CAPACITY);
+        assertThat(buffer.get(CAPACITY - 1), is((long) CAPACITY));
+    }
+
+    @Test
+    public void testFirstElement() {
+        buffer.add(1);
+        buffer.add(2);
+        buffer.add(3);
+        assertThat(buffer.firstElement(), is(1L));
+        assertThat(buffer.size(), is(3));
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testFirstElementFail() {
+        buffer.add(1);
+        buffer.clear();
+        buffer.firstElement();
+    }
+
+    @Test
+    public void testLastElement() {
+        buffer.add(1);
+        buffer.add(2);
+        buffer.add(3);
+        assertThat(buffer.lastElement(), is(3L));
+        assertThat(buffer.size(), is(3));
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testLastElementFail() {
+        buffer.add(1);
+        buffer.clear();
+        buffer.lastElement();
+    }
+
+    @Test
+    public void testRemoveFirst() {
+        buffer.add(1);
+        buffer.add(2);
+        buffer.add(3);
+        assertThat(buffer.removeFirst(), is(1L));
+        assertThat(buffer.size(), is(2));
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testRemoveFirstFail() {
+        buffer.add(1);
+        buffer.clear();
+        buffer.removeFirst();
+    }
+
+    @Test
+    public void testGet() {
+        for (int i = 0; i < CAPACITY; i++) {
+            buffer.add(i);
+            assertThat(buffer.get(i), is((long) i));
+        }
+        buffer.add(CAPACITY);
+        assertThat(buffer.get(CAPACITY - 1), is((long) CAPACITY));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testGetFail() {
+        buffer.add(1);
+        buffer.add(2);
+        buffer.add(3);
+        buffer.get(3);
+    }
+
+    @Test
+    public void testPackedKey() {
+        buffer.add(1);
+        buffer.add(-2);
+        buffer.add(3);
+        assertThat(buffer.packedKey(2, 8), is((0xFEL << 8) | 0x03L));
+        assertThat(buffer.packedKey(4, 8), is(LongRingBuffer.NO_KEY));
+        buffer.add(200L);
+        assertThat(buffer.packedKey(2, 8), is(LongRingBuffer.NO_KEY));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPackedKeyFail() {
+        buffer.packedKey(4, 16);
+    }
+
+}
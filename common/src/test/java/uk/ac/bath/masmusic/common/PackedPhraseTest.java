@@ -0,0 +1,110 @@
+package uk.ac.bath.masmusic.common;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class PackedPhraseTest {
+
+    /**
+     * @return A phrase with single notes, a chord and a triplet
+     */
+    private static Phrase samplePhrase() {
+        Phrase phrase = new Phrase();
+        phrase.addElement(new ScoreElement(1, Collections.singleton(60)), 0);
+        phrase.addElement(new ScoreElement(.5, Arrays.asList(67, 64, 60)), 1);
+        phrase.addElement(new ScoreElement(1. / 3, Collections.singleton(62)), 1.5);
+        phrase.addElement(new ScoreElement(1. / 3, Collections.singleton(64)), 1.5 + 1. / 3);
+        phrase.addElement(new ScoreElement(1. / 3, Collections.singleton(65)), 1.5 + 2. / 3);
+        phrase.addElement(new ScoreElement(2, Collections.singleton(72)), 2.5);
+        return phrase;
+    }
+
+    @Test
+    public void testFromPhrase() {
+        PackedPhrase packed = PackedPhrase.fromPhrase(samplePhrase());
+        assertThat(packed.size(), is(6));
+        assertThat(packed.getDuration(), is(4.5));
+        assertThat(packed.getDurationTicks(), is(216));
+        assertThat(packed.getPositionTicks(3), is(88));
+        assertThat(packed.getElementDurationTicks(3), is(16));
+        assertThat(packed.getPitchCount(1), is(3));
+        assertThat(packed.getPitch(1, 0), is(60));
+        assertThat(packed.getPitch(1, 2), is(67));
+        assertThat(packed.getLowestPitch(), is(60));
+        assertThat(packed.getHighestPitch(), is(72));
+    }
+
+    @Test
+    public void testToPhrase() {
+        Phrase phrase = new Phrase();
+        phrase.addElement(new ScoreElement(.75, Collections.singleton(60)), 0);
+        phrase.addElement(new ScoreElement(.25, Arrays.asList(64, 67)), .75);
+        phrase.addElement(new ScoreElement(2, Collections.singleton(62)), 1);
+        PackedPhrase packed = PackedPhrase.fromPhrase(phrase);
+        assertThat(packed.toPhrase(), is(phrase));
+        assertThat(packed.toPhrase().getDuration(), is(phrase.getDuration()));
+    }
+
+    @Test
+    public void testTransposed() {
+        PackedPhrase packed = PackedPhrase.fromPhrase(samplePhrase());
+        PackedPhrase up = packed.transposed(5);
+        assertThat(up.getPitch(0, 0), is(65));
+        assertThat(up.getPitch(1, 2), is(72));
+        assertThat(up.getHighestPitch(), is(77));
+        assertThat(up.getDuration(), is(packed.getDuration()));
+        assertThat(up.transposed(-5), is(packed));
+        assertThat(up.transposed(-5).hashCode(), is(packed.hashCode()));
+        assertThat(up.equals(packed), is(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTransposedOutOfRange() {
+        PackedPhrase.fromPhrase(samplePhrase()).transposed(60);
+    }
+
+    @Test
+    public void testSerialization() {
+        PackedPhrase packed = PackedPhrase.fromPhrase(samplePhrase()).transposed(-3);
+        byte[] bytes = packed.toBytes();
+        assertThat(bytes.length, is(4 + 6 * 9 + 8));
+        assertThat(PackedPhrase.fromBytes(bytes), is(packed));
+        assertThat(PackedPhrase.fromBytes(PackedPhrase.EMPTY.toBytes()), is(PackedPhrase.EMPTY));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSerialization() {
+        byte[] bytes = PackedPhrase.fromPhrase(samplePhrase()).toBytes();
+        PackedPhrase.fromBytes(Arrays.copyOf(bytes, bytes.length - 1));
+    }
+
+    @Test
+    public void testBuilderSortsElements() {
+        PackedPhrase packed = new PackedPhrase.Builder()
+                .add(1, 1, 64)
+                .add(0, 1, 60)
+                .add(1, .5, 67)
+                .build();
+        assertThat(packed.getPitch(0, 0), is(60));
+        assertThat(packed.getPitch(1, 0), is(64));
+        assertThat(packed.getPitch(2, 0), is(67));
+        assertThat(packed.getDuration(), is(2.0));
+    }
+
+    @Test
+    public void testPhraseDuration() {
+        Phrase phrase = new Phrase();
+        assertThat(phrase.getDuration(), is(0.0));
+        phrase.addElement(new ScoreElement(3, Collections.singleton(60)), 1);
+        phrase.addElement(new ScoreElement(1, Collections.singleton(62)), 2);
+        assertThat(phrase.getDuration(), is(4.0));
+        phrase.addElement(new ScoreElement(1, Collections.singleton(64)), 4);
+        assertThat(phrase.getDuration(), is(5.0));
+    }
+
+}
@@ -0,0 +1,86 @@
+package uk.ac.bath.masmusic.common;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class PitchClassSetTest {
+
+    @Test
+    public void testOf() {
+        assertThat(PitchClassSet.of(0, 4, 7), is(0b000010010001));
+        assertThat(PitchClassSet.of(60, 64, 67), is(0b000010010001));
+        assertThat(PitchClassSet.of(-1), is(0b100000000000));
+        assertThat(PitchClassSet.of(Note.A), is(1 << 9));
+        assertThat(PitchClassSet.of(new int[0]), is(PitchClassSet.EMPTY));
+    }
+
+    @Test
+    public void testContains() {
+        int set = PitchClassSet.of(Scale.MAJOR_SCALE);
+        assertThat(PitchClassSet.contains(set, 62), is(true));
+        assertThat(PitchClassSet.contains(set, 61), is(false));
+        assertThat(PitchClassSet.contains(set, Note.B), is(true));
+        assertThat(PitchClassSet.contains(set, Note.A_SHARP), is(false));
+        assertThat(PitchClassSet.containsAll(set, PitchClassSet.of(0, 4, 7)), is(true));
+        assertThat(PitchClassSet.containsAll(set, PitchClassSet.of(0, 3, 7)), is(false));
+    }
+
+    @Test
+    public void testRotate() {
+        int set = PitchClassSet.of(0, 4, 7);
+        assertThat(PitchClassSet.rotate(set, 0), is(set));
+        assertThat(PitchClassSet.rotate(set, 12), is(set));
+        assertThat(PitchClassSet.rotate(set, 7), is(PitchClassSet.of(7, 11, 2)));
+        assertThat(PitchClassSet.rotate(set, -1), is(PitchClassSet.of(11, 3, 6)));
+        for (int n = -24; n <= 24; n++) {
+            assertThat(PitchClassSet.rotate(PitchClassSet.rotate(set, n), -n), is(set));
+        }
+    }
+
+    @Test
+    public void testSetOperations() {
+        int a = PitchClassSet.of(0, 2, 4);
+        int b = PitchClassSet.of(2, 4, 6);
+        assertThat(PitchClassSet.intersection(a, b), is(PitchClassSet.of(2, 4)));
+        assertThat(PitchClassSet.union(a, b), is(PitchClassSet.of(0, 2, 4, 6)));
+        assertThat(PitchClassSet.complement(PitchClassSet.ALL), is(PitchClassSet.EMPTY));
+        assertThat(PitchClassSet.size(PitchClassSet.complement(a)), is(9));
+        assertThat(PitchClassSet.size(PitchClassSet.of(Scale.MAJOR_SCALE)), is(7));
+    }
+
+    @Test
+    public void testRankAndToArray() {
+        int set = PitchClassSet.of(Scale.MINOR_SCALE);
+        assertArrayEquals(Scale.MINOR_SCALE, PitchClassSet.toArray(set));
+        for (int i = 0; i < Scale.MINOR_SCALE.length; i++) {
+            assertThat(PitchClassSet.rank(set, Scale.MINOR_SCALE[i]), is(i));
+        }
+    }
+
+    @Test
+    public void testScaleAndChord() {
+        Scale scale = new Scale(Note.D, "major");
+        assertThat(scale.getPitchClassSet(), is(PitchClassSet.rotate(PitchClassSet.of(Scale.MAJOR_SCALE), 2)));
+        for (Note note : Note.values()) {
+            int degree = -1;
+            for (int i = 1; i <= scale.size(); i++) {
+                if (scale.getNote(i) == note) {
+                    degree = i;
+                }
+            }
+            assertThat(scale.degreeOf(note), is(degree));
+            assertThat(scale.contains(note), is(degree > 0));
+        }
+        Chord chord = new Chord(Note.A, new int[] { 0, 4, 7, 10, 14 });
+        assertThat(chord.getPitchClassSet(), is(PitchClassSet.of(9, 1, 4, 7, 11)));
+        assertThat(chord.contains(Note.G), is(true));
+        assertThat(chord.contains(Note.C), is(false));
+        assertThat(PitchClassSet.containsAll(scale.getPitchClassSet(), chord.getPitchClassSet()), is(true));
+        Chord minor = new Chord(Note.F, new int[] { 0, 3, 7 });
+        assertThat(PitchClassSet.containsAll(scale.getPitchClassSet(), minor.getPitchClassSet()), is(false));
+    }
+
+}
@@ -0,0 +1,74 @@
+package uk.ac.bath.masmusic.common;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class QuantizationGridTest {
+
+    @Test
+    public void testClosestSubbeat() {
+        Beat beat = new Beat(500, 120);
+        for (int binary = 0; binary <= 3; binary++) {
+            for (int ternary = 0; ternary <= 2; ternary++) {
+                QuantizationGrid grid = new QuantizationGrid(beat, binary, ternary);
+                for (long timestamp = 1000; timestamp < 3000; timestamp += 7) {
+                    assertThat(grid.closestSubbeat(timestamp),
+                            is(beat.closestSubbeat(timestamp, binary, ternary)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSnap() {
+        Beat beat = new Beat(480, 35);
+        QuantizationGrid grid = new QuantizationGrid(beat, 2, 1);
+        List<Onset> onsets = Arrays.asList(new Onset(1000, 230, 60, 100), new Onset(1290, 410, 64, 90));
+        List<Onset> output = new ArrayList<>();
+        output.add(new Onset(0, 1, 0, 0));
+        grid.snapAll(onsets, output);
+        assertThat(output.size(), is(2));
+        for (int i = 0; i < onsets.size(); i++) {
+            assertThat(output.get(i), is(beat.snap(onsets.get(i), 2, 1)));
+        }
+    }
+
+    @Test
+    public void testSnapDurationQuantum() {
+        Beat beat = new Beat(480, 35);
+        QuantizationGrid grid = new QuantizationGrid(beat, 2, 0, 240);
+        Onset onset = new Onset(1000, 230, 60, 100);
+        assertThat(grid.snap(onset), is(beat.snap(onset, 2)));
+    }
+
+    @Test
+    public void testSnapTimestamps() {
+        Beat beat = new Beat(400);
+        QuantizationGrid grid = new QuantizationGrid(beat, 1, 0);
+        long[] timestamps = { 90, 110, 390 };
+        grid.snapAll(timestamps, timestamps, timestamps.length);
+        assertThat(timestamps[0], is(0L));
+        assertThat(timestamps[1], is(200L));
+        assertThat(timestamps[2], is(400L));
+    }
+
+    @Test
+    public void testMatches() {
+        QuantizationGrid grid = new QuantizationGrid(new Beat(500, 20), 2, 1);
+        assertThat(grid.matches(new Beat(500, 20), 2, 1), is(true));
+        assertThat(grid.matches(new Beat(500, 20), 2, 0), is(false));
+        assertThat(grid.matches(new Beat(500, 30), 2, 1), is(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeSubdivisionFail() {
+        new QuantizationGrid(new Beat(500), -1, 0);
+    }
+
+}
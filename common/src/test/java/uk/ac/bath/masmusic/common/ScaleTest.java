@@ -0,0 +1,60 @@
+package uk.ac.bath.masmusic.common;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class ScaleTest {
+
+    @Test
+    public void testDegreeOfRoundTrip() {
+        int[][] intervalLists = { Scale.MAJOR_SCALE, Scale.MINOR_SCALE, Scale.PENTATONIC_SCALE,
+                Scale.CHROMATIC_SCALE, { 2, 5, 11 } };
+        for (int[] intervals : intervalLists) {
+            for (Note fundamental : Note.values()) {
+                Scale scale = new Scale(fundamental, "test", intervals);
+                for (int degree = 1; degree <= scale.size(); degree++) {
+                    assertThat(scale.degreeOf(scale.getNote(degree)), is(degree));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testDegreeOfOutside() {
+        Scale scale = new Scale(Note.D, "major");
+        assertThat(scale.degreeOf(Note.C), is(-1));
+        assertThat(scale.degreeOf(Note.C_SHARP), is(7));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicateIntervals() {
+        new Scale(Note.C, "indian", Scale.INDIAN_SCALE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsortedIntervals() {
+        new Scale(Note.C, "test", new int[] { 0, 4, 2 });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIntervalOutOfRange() {
+        new Scale(Note.C, "test", new int[] { 0, 4, 12 });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeInterval() {
+        new Scale(Note.C, "test", new int[] { -1, 4, 7 });
+    }
+
+    @Test
+    public void testIntervalsCopied() {
+        int[] intervals = { 0, 4, 7 };
+        Scale scale = new Scale(Note.C, "test", intervals);
+        intervals[1] = 3;
+        assertThat(scale.getNote(2), is(Note.E));
+        assertThat(scale.degreeOf(Note.E), is(2));
+    }
+
+}
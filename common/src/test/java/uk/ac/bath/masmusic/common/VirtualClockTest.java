@@ -0,0 +1,56 @@
+package uk.ac.bath.masmusic.common;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class VirtualClockTest {
+
+    /** Test clock. */
+    private VirtualClock clock;
+
+    @Before
+    public void setUp() {
+        clock = new VirtualClock(1000, 10);
+    }
+
+    @Test
+    public void testAdvance() {
+        assertThat(clock.currentTimeMillis(), is(1000L));
+        assertThat(clock.getRate(), is(10.0));
+        clock.advance(250);
+        assertThat(clock.currentTimeMillis(), is(1250L));
+        clock.advanceTo(2000);
+        assertThat(clock.currentTimeMillis(), is(2000L));
+        clock.advanceTo(1500);
+        assertThat(clock.currentTimeMillis(), is(2000L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAdvanceFail() {
+        clock.advance(-1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRateFail() {
+        new VirtualClock(0, 0);
+    }
+
+    @Test
+    public void testListeners() {
+        List<Long> times = new ArrayList<>();
+        clock.addListener(times::add);
+        clock.advance(100);
+        clock.advanceTo(1050);
+        clock.advanceTo(1200);
+        assertThat(times.size(), is(2));
+        assertThat(times.get(0), is(1100L));
+        assertThat(times.get(1), is(1200L));
+    }
+
+}
@@ -22,11 +22,18 @@ public class ChordBigramModel {
     /** Model data. */
     private final Map<ScaleRelativeChord, Entry> model;
 
+    /**
+     * Distinct chords in the model, so equal chords share their resolved
+     * {@link Chord} instances.
+     */
+    private final Map<ScaleRelativeChord, ScaleRelativeChord> chordPool;
+
     /**
      * Constructor.
      */
     public ChordBigramModel() {
         this.model = new HashMap<>();
+        this.chordPool = new HashMap<>();
     }
 
     /**
@@ -45,14 +52,26 @@ public class ChordBigramModel {
         List<Double> entryProbabilities = new ArrayList<>(nextChords.size());
         double totalWeight = .0;
         for (Map.Entry<ScaleRelativeChord, Double> chord : nextChords.entrySet()) {
-            entryChords.add(chord.getKey());
+            entryChords.add(internChord(chord.getKey()));
             entryProbabilities.add(chord.getValue());
             totalWeight += chord.getValue();
         }
         for (int i = 0; i < entryProbabilities.size(); i++) {
             entryProbabilities.set(i, entryProbabilities.get(i) / totalWeight);
         }
-        model.put(prevChord, new Entry(entryChords, entryProbabilities));
+        model.put(internChord(prevChord), new Entry(entryChords, entryProbabilities));
+    }
+
+    /**
+     * Get the pooled instance of a chord.
+     *
+     * @param chord
+     *            A chord
+     * @return The instance of the chord in the pool
+     */
+    private ScaleRelativeChord internChord(ScaleRelativeChord chord) {
+        ScaleRelativeChord pooled = chordPool.putIfAbsent(chord, chord);
+        return pooled != null ? pooled : chord;
     }
 
     /**
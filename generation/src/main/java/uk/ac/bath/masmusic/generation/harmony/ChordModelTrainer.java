@@ -0,0 +1,459 @@
+package uk.ac.bath.masmusic.generation.harmony;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.ac.bath.masmusic.analysis.scale.ScaleInducer;
+import uk.ac.bath.masmusic.common.LongCountMap;
+import uk.ac.bath.masmusic.common.MidiCorpus;
+import uk.ac.bath.masmusic.common.MidiScore;
+import uk.ac.bath.masmusic.common.Onset;
+import uk.ac.bath.masmusic.common.PitchClassSet;
+import uk.ac.bath.masmusic.common.Scale;
+
+/**
+ * Trainer of {@link ChordBigramModel} and {@link PitchClassChordModel} models
+ * from a corpus of MIDI files.
+ *
+ * The scale of each file is found with a {@link ScaleInducer}, and each file
+ * is divided in measure divisions like the {@link Harmonizer} does. The chord
+ * of a division is made of the pitch classes sounding for a significant part
+ * of it, with the lowest sounding pitch as root, and it is expressed as a
+ * {@link ScaleRelativeChord}. Chord changes are counted for the bigram model,
+ * and the time each pitch class sounds over each chord is counted for the
+ * pitch class model. Files are processed in parallel in a
+ * {@link ForkJoinPool}, and each task counts into its own primitive maps that
+ * are merged when the tasks are joined.
+ *
+ * @author Javier Dehesa
+ */
+public class ChordModelTrainer {
+
+    /** Logger */
+    private static Logger LOG = LoggerFactory.getLogger(ChordModelTrainer.class);
+
+    /** Number of time units per beat in pitch class counts. */
+    private static final int UNITS_PER_BEAT = 48;
+
+    /**
+     * Minimum fraction of a division that a pitch class must sound to be part
+     * of the division chord.
+     */
+    private static final double MIN_CHORD_FRACTION = .25;
+
+    /** Minimum number of pitch classes in a chord. */
+    private static final int MIN_CHORD_SIZE = 2;
+
+    /** Number of bits of a chord in packed keys. */
+    private static final int CHORD_BITS = 16;
+
+    /** Mask of a chord in packed keys. */
+    private static final long CHORD_MASK = (1L << CHORD_BITS) - 1;
+
+    /** Chord bigram counts per scale type. */
+    private final Map<String, LongCountMap> bigramCounts;
+
+    /** Pitch class chord time counts per scale type. */
+    private final Map<String, LongCountMap> pitchClassCounts;
+
+    /** Number of files used for training. */
+    private int fileCount;
+
+    /** Number of files that could not be used for training. */
+    private int skippedFileCount;
+
+    /**
+     * Constructor.
+     */
+    public ChordModelTrainer() {
+        this.bigramCounts = new HashMap<>();
+        this.pitchClassCounts = new HashMap<>();
+        this.fileCount = 0;
+        this.skippedFileCount = 0;
+    }
+
+    /**
+     * @return The number of files used for training
+     */
+    public int getFileCount() {
+        return fileCount;
+    }
+
+    /**
+     * @return The number of files that could not be used for training
+     */
+    public int getSkippedFileCount() {
+        return skippedFileCount;
+    }
+
+    /**
+     * @return The scale types with trained models, in lower case
+     */
+    public Set<String> getScaleTypes() {
+        Set<String> scaleTypes = new TreeSet<>(bigramCounts.keySet());
+        scaleTypes.addAll(pitchClassCounts.keySet());
+        return scaleTypes;
+    }
+
+    /**
+     * Train with every MIDI file in a directory (recursively).
+     *
+     * @param directory
+     *            The directory containing the MIDI files
+     * @param pool
+     *            Pool where the files are processed
+     * @throws IOException
+     *             If the directory cannot be read
+     */
+    public void trainDirectory(File directory, ForkJoinPool pool) throws IOException {
+        train(MidiCorpus.listFiles(directory), pool);
+    }
+
+    /**
+     * Train with a collection of MIDI files.
+     *
+     * Files that cannot be read are skipped.
+     *
+     * @param files
+     *            The MIDI files
+     * @param pool
+     *            Pool where the files are processed
+     */
+    public void train(List<File> files, ForkJoinPool pool) {
+        merge(MidiCorpus.process(files, pool, Counts::new));
+    }
+
+    /**
+     * Train with a single score.
+     *
+     * @param score
+     *            The score
+     */
+    public void train(MidiScore score) {
+        Counts counts = new Counts();
+        counts.add(score);
+        merge(counts);
+    }
+
+    /**
+     * Write the chord bigram model of a scale type.
+     *
+     * The weights of the chords following each chord are written as relative
+     * frequencies.
+     *
+     * @param scaleType
+     *            The scale type
+     * @param output
+     *            Where the model is written
+     * @throws IOException
+     *             If an I/O error occurs
+     */
+    public void writeChordBigramModel(String scaleType, Writer output) throws IOException {
+        LongCountMap counts = bigramCounts.get(scaleType);
+        if (counts == null) {
+            return;
+        }
+        long[] keys = counts.sortedKeys();
+        StringBuilder line = new StringBuilder();
+        int i = 0;
+        while (i < keys.length) {
+            long prevChord = keys[i] >>> CHORD_BITS;
+            int end = i;
+            long total = 0;
+            while (end < keys.length && (keys[end] >>> CHORD_BITS) == prevChord) {
+                total += counts.get(keys[end]);
+                end++;
+            }
+            line.setLength(0);
+            line.append('(');
+            appendChord(line, prevChord);
+            line.append("):");
+            for (int j = i; j < end; j++) {
+                if (j > i) {
+                    line.append(',');
+                }
+                line.append('(');
+                appendChord(line, keys[j] & CHORD_MASK);
+                line.append(':').append(formatWeight(counts.get(keys[j]) / (double) total)).append(')');
+            }
+            line.append('\n');
+            output.write(line.toString());
+            i = end;
+        }
+    }
+
+    /**
+     * Write the pitch class chord model of a scale type.
+     *
+     * The weight of each chord for each pitch class is written as the number
+     * of beats that the pitch class sounded over the chord.
+     *
+     * @param scaleType
+     *            The scale type
+     * @param output
+     *            Where the model is written
+     * @throws IOException
+     *             If an I/O error occurs
+     */
+    public void writePitchClassChordModel(String scaleType, Writer output) throws IOException {
+        LongCountMap counts = pitchClassCounts.get(scaleType);
+        if (counts == null) {
+            return;
+        }
+        long[] keys = counts.sortedKeys();
+        StringBuilder line = new StringBuilder();
+        int i = 0;
+        while (i < keys.length) {
+            long pitchClass = keys[i] >>> CHORD_BITS;
+            line.setLength(0);
+            line.append(pitchClass).append(':');
+            boolean first = true;
+            while (i < keys.length && (keys[i] >>> CHORD_BITS) == pitchClass) {
+                if (!first) {
+                    line.append(',');
+                }
+                line.append('(');
+                appendChord(line, keys[i] & CHORD_MASK);
+                line.append(':').append(formatWeight(counts.get(keys[i]) / (double) UNITS_PER_BEAT)).append(')');
+                first = false;
+                i++;
+            }
+            line.append('\n');
+            output.write(line.toString());
+        }
+    }
+
+    /**
+     * Append a packed chord to a model line.
+     *
+     * @param line
+     *            The model line
+     * @param chord
+     *            The packed chord
+     */
+    private static void appendChord(StringBuilder line, long chord) {
+        line.append(chord >>> PitchClassSet.SIZE).append(";[");
+        int[] structure = PitchClassSet.toArray((int) (chord & PitchClassSet.ALL));
+        for (int i = 0; i < structure.length; i++) {
+            if (i > 0) {
+                line.append(';');
+            }
+            line.append(structure[i]);
+        }
+        line.append(']');
+    }
+
+    /**
+     * @param weight
+     *            A model weight
+     * @return The weight formatted for a model file
+     */
+    private static String formatWeight(double weight) {
+        return String.format(Locale.ROOT, "%.6f", weight);
+    }
+
+    /**
+     * Add trained counts.
+     *
+     * @param counts
+     *            The counts to add
+     */
+    private void merge(Counts counts) {
+        counts.addTo(bigramCounts, pitchClassCounts);
+        fileCount += counts.fileCount;
+        skippedFileCount += counts.skippedFileCount;
+    }
+
+    /**
+     * Chord counts of a part of the corpus.
+     */
+    private static class Counts implements MidiCorpus.Accumulator<Counts> {
+
+        /** Chord bigram counts per scale type. */
+        private final Map<String, LongCountMap> bigramCounts;
+
+        /** Pitch class chord time counts per scale type. */
+        private final Map<String, LongCountMap> pitchClassCounts;
+
+        /** Scale inducer. */
+        private final ScaleInducer scaleInducer;
+
+        /** Number of files counted. */
+        private int fileCount;
+
+        /** Number of files skipped. */
+        private int skippedFileCount;
+
+        /**
+         * Constructor.
+         */
+        Counts() {
+            this.bigramCounts = new HashMap<>();
+            this.pitchClassCounts = new HashMap<>();
+            this.scaleInducer = new ScaleInducer();
+            this.fileCount = 0;
+            this.skippedFileCount = 0;
+        }
+
+        @Override
+        public void skip(File file, IOException e) {
+            LOG.debug("Could not read {}: {}", file, e.getMessage());
+            skippedFileCount++;
+        }
+
+        @Override
+        public void add(MidiScore score) {
+            List<Onset> onsets = score.getOnsets();
+            Scale scale = scaleInducer.induceScale(onsets);
+            if (scale == null) {
+                skippedFileCount++;
+                return;
+            }
+            int divisions = Harmonizer.getMeasureDivisions(score.getTimeSignature());
+            double divisionDuration = score.getBarDuration() / (double) divisions;
+            // Time each pitch class sounds in each division and lowest pitches
+            long end = 0;
+            for (Onset onset : onsets) {
+                end = Math.max(end, onset.getTimestamp() + onset.getDuration());
+            }
+            int divisionCount = (int) Math.ceil(end / divisionDuration);
+            long[] pitchClassTime = new long[divisionCount * PitchClassSet.SIZE];
+            int[] lowestPitch = new int[divisionCount];
+            for (Onset onset : onsets) {
+                long onsetStart = onset.getTimestamp();
+                long onsetEnd = onsetStart + onset.getDuration();
+                int pitchClass = PitchClassSet.pitchClass(onset.getPitch());
+                for (int division = (int) (onsetStart / divisionDuration); division < divisionCount; division++) {
+                    long divisionStart = Math.round(division * divisionDuration);
+                    long divisionEnd = Math.round((division + 1) * divisionDuration);
+                    if (divisionStart >= onsetEnd) {
+                        break;
+                    }
+                    long time = Math.min(onsetEnd, divisionEnd) - Math.max(onsetStart, divisionStart);
+                    if (time > 0) {
+                        pitchClassTime[division * PitchClassSet.SIZE + pitchClass] += time;
+                        if (lowestPitch[division] == 0 || onset.getPitch() + 1 < lowestPitch[division]) {
+                            lowestPitch[division] = onset.getPitch() + 1;
+                        }
+                    }
+                }
+            }
+            // Count chords of each division (model files use lower case types)
+            String scaleType = scale.getType().trim().toLowerCase();
+            LongCountMap bigrams = bigramCounts.computeIfAbsent(scaleType, t -> new LongCountMap());
+            LongCountMap pitchClasses = pitchClassCounts.computeIfAbsent(scaleType, t -> new LongCountMap());
+            int fundamental = scale.getFundamental().value();
+            long minChordTime = Math.round(divisionDuration * MIN_CHORD_FRACTION);
+            long previousChord = -1;
+            for (int division = 0; division < divisionCount; division++) {
+                int offset = division * PitchClassSet.SIZE;
+                int chordSet = PitchClassSet.EMPTY;
+                for (int pitchClass = 0; pitchClass < PitchClassSet.SIZE; pitchClass++) {
+                    if (pitchClassTime[offset + pitchClass] >= minChordTime) {
+                        chordSet |= PitchClassSet.of(pitchClass);
+                    }
+                }
+                if (PitchClassSet.size(chordSet) < MIN_CHORD_SIZE) {
+                    previousChord = -1;
+                    continue;
+                }
+                // The lowest pitch is stored plus one so zero means none
+                int root = PitchClassSet.pitchClass(lowestPitch[division] - 1);
+                if (!PitchClassSet.contains(chordSet, root)) {
+                    // Lowest note too short, take the lowest chord pitch class
+                    root = Integer.numberOfTrailingZeros(chordSet);
+                }
+                long chord = ((long) PitchClassSet.pitchClass(root - fundamental) << PitchClassSet.SIZE)
+                        | PitchClassSet.rotate(chordSet, -root);
+                if (previousChord >= 0 && previousChord != chord) {
+                    bigrams.increment((previousChord << CHORD_BITS) | chord);
+                }
+                previousChord = chord;
+                for (int pitchClass = 0; pitchClass < PitchClassSet.SIZE; pitchClass++) {
+                    long units = pitchClassTime[offset + pitchClass] * UNITS_PER_BEAT / score.getResolution();
+                    if (units > 0) {
+                        long relPitchClass = PitchClassSet.pitchClass(pitchClass - fundamental);
+                        pitchClasses.add((relPitchClass << CHORD_BITS) | chord, units);
+                    }
+                }
+            }
+            fileCount++;
+        }
+
+        /**
+         * Add these counts to the given maps.
+         *
+         * @param allBigramCounts
+         *            Chord bigram counts per scale type
+         * @param allPitchClassCounts
+         *            Pitch class chord time counts per scale type
+         */
+        void addTo(Map<String, LongCountMap> allBigramCounts, Map<String, LongCountMap> allPitchClassCounts) {
+            for (Map.Entry<String, LongCountMap> entry : bigramCounts.entrySet()) {
+                allBigramCounts.computeIfAbsent(entry.getKey(), t -> new LongCountMap()).addAll(entry.getValue());
+            }
+            for (Map.Entry<String, LongCountMap> entry : pitchClassCounts.entrySet()) {
+                allPitchClassCounts.computeIfAbsent(entry.getKey(), t -> new LongCountMap())
+                        .addAll(entry.getValue());
+            }
+        }
+
+        @Override
+        public void addAll(Counts other) {
+            other.addTo(bigramCounts, pitchClassCounts);
+            fileCount += other.fileCount;
+            skippedFileCount += other.skippedFileCount;
+        }
+
+    }
+
+    /**
+     * Train models from a directory of MIDI files.
+     *
+     * Usage: {@code ChordModelTrainer <midi dir> <output dir>}. For each scale
+     * type, the files {@code <type>.cbm} and {@code <type>.pcm} are written to
+     * the output directory.
+     *
+     * @param args
+     *            Command line arguments
+     * @throws IOException
+     *             If an I/O error occurs
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: ChordModelTrainer <midi dir> <output dir>");
+            System.exit(1);
+        }
+        ChordModelTrainer trainer = new ChordModelTrainer();
+        long start = System.currentTimeMillis();
+        trainer.trainDirectory(new File(args[0]), ForkJoinPool.commonPool());
+        File outputDir = new File(args[1]);
+        outputDir.mkdirs();
+        for (String scaleType : trainer.getScaleTypes()) {
+            try (Writer writer = Files.newBufferedWriter(
+                    new File(outputDir, scaleType + ".cbm").toPath(), StandardCharsets.UTF_8)) {
+                trainer.writeChordBigramModel(scaleType, writer);
+            }
+            try (Writer writer = Files.newBufferedWriter(
+                    new File(outputDir, scaleType + ".pcm").toPath(), StandardCharsets.UTF_8)) {
+                trainer.writePitchClassChordModel(scaleType, writer);
+            }
+        }
+        LOG.info("Trained {} files ({} skipped) in {} ms: {}", trainer.getFileCount(),
+                trainer.getSkippedFileCount(), System.currentTimeMillis() - start, trainer.getScaleTypes());
+    }
+
+}
@@ -16,10 +16,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import uk.ac.bath.masmusic.common.Chord;
+import uk.ac.bath.masmusic.common.Clock;
 import uk.ac.bath.masmusic.common.Note;
 import uk.ac.bath.masmusic.common.Onset;
+import uk.ac.bath.masmusic.common.QuantizationGrid;
 import uk.ac.bath.masmusic.common.Rhythm;
 import uk.ac.bath.masmusic.common.Scale;
+import uk.ac.bath.masmusic.common.SystemClock;
 import uk.ac.bath.masmusic.common.TimeSignature;
 
 /**
@@ -43,6 +46,9 @@ public class Harmonizer {
     /** Weight of chord bigram model in interpolation. */
     private final double CHORD_BIGRAM_WEIGHT = 0.9;
 
+    /** Binary subdivision level for snapping onsets. */
+    private static final int SNAP_SUBDIVISION = 2;
+
     /** Number of measures in one harmonization period. */
     private final int harmonizationMeasuresPeriod;
 
@@ -52,6 +58,9 @@ public class Harmonizer {
     /** Pitch class chord model. */
     private final PitchClassChordModel pitchClassChordModel;
 
+    /** Clock. */
+    private final Clock clock;
+
     /** The rhythm used in the current harmonization. */
     private Rhythm rhythm;
 
@@ -61,6 +70,12 @@ public class Harmonizer {
     /** Last produced harmonization. */
     private final List<Chord> harmonization;
 
+    /** Quantization grid of the last harmonized rhythm. */
+    private QuantizationGrid grid;
+
+    /** Buffer for snapped onsets. */
+    private final List<Onset> snapBuffer;
+
     /**
      * Constructor.
      *
@@ -73,15 +88,35 @@ public class Harmonizer {
      */
     public Harmonizer(int harmonizationMeasuresPeriod, ChordBigramModel chordBigramModel,
             PitchClassChordModel pitchClassChordModel) {
+        this(harmonizationMeasuresPeriod, chordBigramModel, pitchClassChordModel, SystemClock.INSTANCE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param harmonizationMeasuresPeriod
+     *            The number of measures in one harmonization period
+     * @param chordBigramModel
+     *            The chord bigram model
+     * @param pitchClassChordModel
+     *            The pitch class chord model
+     * @param clock
+     *            The clock used to know the current time
+     */
+    public Harmonizer(int harmonizationMeasuresPeriod, ChordBigramModel chordBigramModel,
+            PitchClassChordModel pitchClassChordModel, Clock clock) {
         if (harmonizationMeasuresPeriod < 1) {
             throw new IllegalArgumentException("The harmonization period must be positive");
         }
         this.harmonizationMeasuresPeriod = harmonizationMeasuresPeriod;
         this.chordBigramModel = chordBigramModel;
         this.pitchClassChordModel = pitchClassChordModel;
+        this.clock = Objects.requireNonNull(clock);
         this.rhythm = null;
         this.baseIndex = -1;
         this.harmonization = new ArrayList<>();
+        this.grid = null;
+        this.snapBuffer = new ArrayList<>();
     }
 
     /**
@@ -98,6 +133,57 @@ public class Harmonizer {
         harmonization.clear();
     }
 
+    /**
+     * Get the current harmonization.
+     *
+     * The chords are given in order of division, starting from the division
+     * at the first bar offset of the rhythm of the harmonization, so they can
+     * be restored with {@link #setHarmonization(Rhythm, List)}.
+     *
+     * @return The chords of the current harmonization, or an empty list if
+     *         there is no harmonization
+     */
+    public List<Chord> getHarmonization() {
+        int size = harmonization.size();
+        List<Chord> chords = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            chords.add(harmonization.get((i + baseIndex) % size));
+        }
+        return chords;
+    }
+
+    /**
+     * @return The rhythm used in the current harmonization, or null if no
+     *         rhythm has been set
+     */
+    public Rhythm getRhythm() {
+        return rhythm;
+    }
+
+    /**
+     * Set a previously computed harmonization.
+     *
+     * @param rhythm
+     *            Rhythm of the harmonization
+     * @param chords
+     *            Chords of the harmonization, as returned by
+     *            {@link #getHarmonization()}
+     */
+    public void setHarmonization(Rhythm rhythm, List<Chord> chords) {
+        Objects.requireNonNull(rhythm);
+        int totalDivisions = getMeasureDivisions(rhythm.getTimeSignature()) * harmonizationMeasuresPeriod;
+        if (chords.size() != totalDivisions) {
+            throw new IllegalArgumentException("The harmonization must have " + totalDivisions + " chords");
+        }
+        if (chords.contains(null)) {
+            throw new IllegalArgumentException("The harmonization cannot contain null chords");
+        }
+        this.harmonization.clear();
+        this.harmonization.addAll(chords);
+        this.rhythm = rhythm;
+        this.baseIndex = 0;
+    }
+
     /**
      * Set the rhythm used by the harmonizer.
      *
@@ -117,7 +203,7 @@ public class Harmonizer {
                 throw new IllegalArgumentException(
                         "The time signature of the new rhythm must match the one used for hamornization");
             }
-            long currentTime = System.currentTimeMillis();
+            long currentTime = clock.currentTimeMillis();
             long currentReferenceBeat = this.rhythm.getBeat().closestBeat(currentTime);
             int currentDivisionId = getDivisionId(currentReferenceBeat, this.rhythm);
             long newReferenceBeat = rhythm.getBeat().closestBeat(currentReferenceBeat);
@@ -161,8 +247,8 @@ public class Harmonizer {
             for (int iDivision = 0; iDivision < measureDivisions; iDivision++) {
                 int divisionId = getDivisionId(timestamp, rhythm);
                 Chord chord = harmonization.get(divisionId);
-                for (int pitch : chord.getPitches(octave)) {
-                    harmony.add(new Onset(timestamp, divisionLength, pitch, velocity));
+                for (int i = 0; i < chord.size(); i++) {
+                    harmony.add(new Onset(timestamp, divisionLength, chord.getPitch(octave, i), velocity));
                 }
                 timestamp += divisionLength;
             }
@@ -197,9 +283,12 @@ public class Harmonizer {
         LOG.debug("Harmonizing {} onsets in {}", onsets.size(), scale);
 
         // Snap onsets
-        List<Onset> snapOnsets = onsets.stream()
-                .map(o -> rhythm.getBeat().snap(o, 2))
-                .collect(Collectors.toList());
+        if (grid == null || !grid.matches(rhythm.getBeat(), SNAP_SUBDIVISION, 0)) {
+            // Durations are rounded like in Beat#snap(Onset, int)
+            int durationQuantum = Math.round(rhythm.getBeat().getDuration() / (float) SNAP_SUBDIVISION);
+            grid = new QuantizationGrid(rhythm.getBeat(), SNAP_SUBDIVISION, 0, durationQuantum);
+        }
+        List<Onset> snapOnsets = grid.snapAll(onsets, snapBuffer);
 
         // Collect onsets in the same subdivision
         Map<Integer, List<Onset>> groupedMap = IntStream.range(0, snapOnsets.size()).boxed()
@@ -321,7 +410,7 @@ public class Harmonizer {
      * @return The number of measure divisions that should be considered for the
      *         given time signature
      */
-    private static int getMeasureDivisions(TimeSignature timeSignature) {
+    static int getMeasureDivisions(TimeSignature timeSignature) {
         int measureDivisions = timeSignature.getBeats();
         if (measureDivisions % 3 == 0) {
             return measureDivisions / 3;
@@ -13,6 +13,7 @@ import java.util.stream.IntStream;
 import uk.ac.bath.masmusic.common.Chord;
 import uk.ac.bath.masmusic.common.Note;
 import uk.ac.bath.masmusic.common.Onset;
+import uk.ac.bath.masmusic.common.PitchClassSet;
 
 /**
  * A model representing the probability of a chord given some pitch class.
@@ -24,11 +25,18 @@ public class PitchClassChordModel {
     /** Model data. */
     private final Map<Integer, Entry> model;
 
+    /**
+     * Distinct chords in the model, so equal chords share their resolved
+     * {@link Chord} instances.
+     */
+    private final Map<ScaleRelativeChord, ScaleRelativeChord> chordPool;
+
     /**
      * Constructor.
      */
     public PitchClassChordModel() {
         this.model = new HashMap<>();
+        this.chordPool = new HashMap<>();
     }
 
     /**
@@ -48,7 +56,7 @@ public class PitchClassChordModel {
         List<Double> entryProbabilities = new ArrayList<>(chords.size());
         double totalWeight = .0;
         for (Map.Entry<ScaleRelativeChord, Double> chord : chords.entrySet()) {
-            entryChords.add(chord.getKey());
+            entryChords.add(internChord(chord.getKey()));
             entryProbabilities.add(chord.getValue());
             totalWeight += chord.getValue();
         }
@@ -58,6 +66,18 @@ public class PitchClassChordModel {
         model.put(pitchClass, new Entry(entryChords, entryProbabilities));
     }
 
+    /**
+     * Get the pooled instance of a chord.
+     *
+     * @param chord
+     *            A chord
+     * @return The instance of the chord in the pool
+     */
+    private ScaleRelativeChord internChord(ScaleRelativeChord chord) {
+        ScaleRelativeChord pooled = chordPool.putIfAbsent(chord, chord);
+        return pooled != null ? pooled : chord;
+    }
+
     /**
      * Estimate the possible chords for a collection of onsets.
      *
@@ -103,7 +123,7 @@ public class PitchClassChordModel {
         // Collect chord probabilities of first onset
         Map<ScaleRelativeChord, Double> chordProbabilitiesMap = new HashMap<>();
         Onset onset = relevantOnsets.next();
-        Entry entry = model.get(fundamental.ascendingDistanceTo(Note.fromValue(onset.getPitch())));
+        Entry entry = model.get(PitchClassSet.pitchClass(onset.getPitch() - fundamental.value()));
         double onsetContribution = onset.getDuration() / totalDuration;
         for (int i = 0; i < entry.size(); i++) {
             ScaleRelativeChord chord = entry.chords.get(i);
@@ -113,7 +133,7 @@ public class PitchClassChordModel {
         // Compose probabilities
         while (relevantOnsets.hasNext()) {
             onset = relevantOnsets.next();
-            entry = model.get(fundamental.ascendingDistanceTo(Note.fromValue(onset.getPitch())));
+            entry = model.get(PitchClassSet.pitchClass(onset.getPitch() - fundamental.value()));
             onsetContribution = onset.getDuration() / totalDuration;
             Iterator<Map.Entry<ScaleRelativeChord, Double>> it = chordProbabilitiesMap.entrySet().iterator();
             while (it.hasNext()) {
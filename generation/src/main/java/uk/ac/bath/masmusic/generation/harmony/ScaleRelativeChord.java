@@ -5,7 +5,6 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
-import java.util.stream.Collectors;
 
 import uk.ac.bath.masmusic.common.Chord;
 import uk.ac.bath.masmusic.common.Note;
@@ -15,6 +14,9 @@ import uk.ac.bath.masmusic.common.Scale;
  * A chord, expressed as a root relative to the scale fundamental and a
  * collection of pitches relative to the root.
  *
+ * The {@link Chord} resolved for each fundamental is cached, so resolving the
+ * same relative chord repeatedly always returns the same instance.
+ *
  * @author Javier Dehesa
  */
 public class ScaleRelativeChord {
@@ -25,6 +27,12 @@ public class ScaleRelativeChord {
     /** Chord structure in half-steps with respect to the root. */
     private final List<Integer> structure;
 
+    /** Chord structure as an array. */
+    private final int[] structureArray;
+
+    /** Resolved chords indexed by fundamental value. */
+    private final Chord[] resolvedChords;
+
     /**
      * Constructor.
      *
@@ -38,12 +46,25 @@ public class ScaleRelativeChord {
         List<Integer> structureList = new ArrayList<>(new HashSet<>(structure));
         Collections.sort(structureList);
         this.structure = Collections.unmodifiableList(structureList);
+        this.structureArray = structureList.stream().mapToInt(i -> i).toArray();
+        this.resolvedChords = new Chord[12];
     }
 
+    /**
+     * Create a relative chord from a chord.
+     *
+     * @param fundamental
+     *            The scale fundamental
+     * @param chord
+     *            The chord
+     * @return The chord relative to the given fundamental
+     */
     public static ScaleRelativeChord fromChord(Note fundamental, Chord chord) {
         int relativeRoot = fundamental.ascendingDistanceTo(chord.getRoot());
-        List<Integer> structure = chord.getPitches(4).stream()
-                .map(pitch -> pitch - chord.getRootPitch(4)).collect(Collectors.toList());
+        List<Integer> structure = new ArrayList<>(chord.size());
+        for (int i = 0; i < chord.size(); i++) {
+            structure.add(chord.getInterval(i));
+        }
         return new ScaleRelativeChord(relativeRoot, structure);
     }
 
@@ -63,7 +84,13 @@ public class ScaleRelativeChord {
      * @return A chord for the given fundamental
      */
     public Chord getChord(Note fundamental) {
-        return new Chord(fundamental.increasedBy(root), structure);
+        // Chords are immutable, so a race here can only create a duplicate
+        Chord chord = resolvedChords[fundamental.value()];
+        if (chord == null) {
+            chord = new Chord(fundamental.increasedBy(root), structureArray);
+            resolvedChords[fundamental.value()] = chord;
+        }
+        return chord;
     }
 
     /**
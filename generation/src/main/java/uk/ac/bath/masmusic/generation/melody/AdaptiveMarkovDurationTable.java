@@ -0,0 +1,157 @@
+package uk.ac.bath.masmusic.generation.melody;
+
+import java.util.Objects;
+
+import uk.ac.bath.masmusic.common.DoubleRingBuffer;
+
+/**
+ * A Markov duration model blending a static table with live transition
+ * counts.
+ *
+ * Durations are picked from a mixture of the static table and the live counts
+ * of the status, where the live counts weigh {@code w / (w + prior)}, with
+ * {@code w} the decayed number of times the status has been heard. Live
+ * durations are kept as multiples of a small beat fraction.
+ *
+ * Transitions must be added from a single thread at a time, but durations can
+ * be picked concurrently without locking.
+ *
+ * @author Javier Dehesa
+ */
+public class AdaptiveMarkovDurationTable implements MarkovDurationModel {
+
+    /** Number of bits of each duration in packed keys. */
+    private static final int DURATION_BITS = 12;
+
+    /** Duration unit in packed keys (beats). */
+    private static final double DURATION_RESOLUTION = 1.0 / 48;
+
+    /** Number of bits of the relative pitch in packed keys. */
+    private static final int REL_PITCH_BITS = 4;
+
+    /** Static table. */
+    private final MarkovDurationGeneratorTable baseTable;
+
+    /** Live transition counts, with durations in resolution units. */
+    private final LiveTransitionCounts liveCounts;
+
+    /** Weight of the static table in the mixture. */
+    private final double prior;
+
+    /**
+     * Constructor.
+     *
+     * @param baseTable
+     *            Static table
+     * @param halfLife
+     *            Number of added transitions after which live counts are
+     *            halved
+     * @param prior
+     *            Weight of the static table in the mixture
+     */
+    public AdaptiveMarkovDurationTable(MarkovDurationGeneratorTable baseTable, int halfLife, double prior) {
+        if (!(prior > 0)) {
+            throw new IllegalArgumentException("The prior weight must be positive");
+        }
+        this.baseTable = Objects.requireNonNull(baseTable);
+        this.liveCounts = new LiveTransitionCounts(halfLife, AdaptiveMelodyModel.LIVE_STATUS_CAPACITY);
+        this.prior = prior;
+    }
+
+    /**
+     * @return The static table
+     */
+    public MarkovDurationGeneratorTable getBaseTable() {
+        return baseTable;
+    }
+
+    @Override
+    public int getOrder() {
+        return baseTable.getOrder();
+    }
+
+    /**
+     * Add a heard transition.
+     *
+     * @param relPitch
+     *            Pitch class of the note relative to the scale tonic
+     * @param ngram
+     *            Sequence of last durations
+     * @param duration
+     *            The next duration
+     * @return true if the transition was added, false if it was ignored
+     */
+    public boolean addTransition(int relPitch, DoubleRingBuffer ngram, double duration) {
+        long units = Math.round(duration / DURATION_RESOLUTION);
+        if (units <= 0 || units >= (1L << (DURATION_BITS - 1))) {
+            return false;
+        }
+        long key = packedKey(relPitch, ngram);
+        if (key == DoubleRingBuffer.NO_KEY) {
+            return false;
+        }
+        liveCounts.add(key, (int) units);
+        return true;
+    }
+
+    @Override
+    public Double pickDuration(int relPitch, DoubleRingBuffer ngram, double value) {
+        if (ngram.size() < getOrder()) {
+            return null;
+        }
+        long key = packedKey(relPitch, ngram);
+        LiveTransitionCounts.Transitions live = key != DoubleRingBuffer.NO_KEY ? liveCounts.get(key) : null;
+        if (live == null) {
+            return baseTable.pickDuration(relPitch, ngram, value);
+        }
+        double liveWeight = liveCounts.weight(live);
+        double mix = liveWeight / (liveWeight + prior);
+        if (value < mix) {
+            return live.pick(value / mix) * DURATION_RESOLUTION;
+        }
+        Double duration = baseTable.pickDuration(relPitch, ngram, Math.min((value - mix) / (1 - mix), 1.0));
+        return duration != null ? duration : live.pick(value) * DURATION_RESOLUTION;
+    }
+
+    /**
+     * @return The number of statuses with live counts
+     */
+    public int getLiveStatusCount() {
+        return liveCounts.size();
+    }
+
+    /**
+     * Forget every live count.
+     */
+    public void clear() {
+        liveCounts.clear();
+    }
+
+    /**
+     * Compute the packed key of a status.
+     *
+     * @param relPitch
+     *            Pitch class of the note relative to the scale tonic
+     * @param ngram
+     *            Sequence of last durations
+     * @return The packed key of the status, or {@link DoubleRingBuffer#NO_KEY}
+     *         if it cannot be packed
+     */
+    private long packedKey(int relPitch, DoubleRingBuffer ngram) {
+        int order = getOrder();
+        if (order * DURATION_BITS + REL_PITCH_BITS > 63 || ngram.size() < order) {
+            return DoubleRingBuffer.NO_KEY;
+        }
+        long key = ngram.packedKey(order, DURATION_BITS, DURATION_RESOLUTION);
+        if (key == DoubleRingBuffer.NO_KEY) {
+            return DoubleRingBuffer.NO_KEY;
+        }
+        return ((long) relPitch << (order * DURATION_BITS)) | key;
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptiveMarkovDurationTable [order=" + getOrder() + ", liveStatuses=" + liveCounts.size() + "]";
+    }
+
+}
@@ -0,0 +1,160 @@
+package uk.ac.bath.masmusic.generation.melody;
+
+import java.util.Objects;
+
+import uk.ac.bath.masmusic.common.IntRingBuffer;
+
+/**
+ * A Markov pitch model blending a static table with live transition counts.
+ *
+ * Steps are picked from a mixture of the static table and the live counts of
+ * the status, where the live counts weigh {@code w / (w + prior)}, with
+ * {@code w} the decayed number of times the status has been heard. The more a
+ * status is heard the more the live counts dominate, and statuses not heard
+ * for a while progressively fall back to the static table.
+ *
+ * Transitions must be added from a single thread at a time, but steps can be
+ * picked concurrently without locking.
+ *
+ * @author Javier Dehesa
+ */
+public class AdaptiveMarkovPitchTable implements MarkovPitchModel {
+
+    /** Number of bits of each step in packed keys. */
+    private static final int STEP_BITS = 8;
+
+    /** Number of bits of the relative pitch in packed keys. */
+    private static final int REL_PITCH_BITS = 4;
+
+    /** Static table. */
+    private final MarkovPitchGeneratorTable baseTable;
+
+    /** Live transition counts. */
+    private final LiveTransitionCounts liveCounts;
+
+    /** Weight of the static table in the mixture. */
+    private final double prior;
+
+    /** Whether transitions with a step of zero should be ignored. */
+    private final boolean ignoreZeroStep;
+
+    /**
+     * Constructor.
+     *
+     * @param baseTable
+     *            Static table
+     * @param halfLife
+     *            Number of added transitions after which live counts are
+     *            halved
+     * @param prior
+     *            Weight of the static table in the mixture
+     * @param ignoreZeroStep
+     *            Whether transitions with a step of zero should be ignored
+     */
+    public AdaptiveMarkovPitchTable(MarkovPitchGeneratorTable baseTable, int halfLife, double prior,
+            boolean ignoreZeroStep) {
+        if (!(prior > 0)) {
+            throw new IllegalArgumentException("The prior weight must be positive");
+        }
+        this.baseTable = Objects.requireNonNull(baseTable);
+        this.liveCounts = new LiveTransitionCounts(halfLife, AdaptiveMelodyModel.LIVE_STATUS_CAPACITY);
+        this.prior = prior;
+        this.ignoreZeroStep = ignoreZeroStep;
+    }
+
+    /**
+     * @return The static table
+     */
+    public MarkovPitchGeneratorTable getBaseTable() {
+        return baseTable;
+    }
+
+    @Override
+    public int getOrder() {
+        return baseTable.getOrder();
+    }
+
+    /**
+     * Add a heard transition.
+     *
+     * @param relPitch
+     *            Pitch class of the note relative to the scale tonic
+     * @param ngram
+     *            Sequence of last intervals
+     * @param step
+     *            Step to the next note
+     * @return true if the transition was added, false if it was ignored
+     */
+    public boolean addTransition(int relPitch, IntRingBuffer ngram, int step) {
+        if (ignoreZeroStep && step == 0) {
+            return false;
+        }
+        long key = packedKey(relPitch, ngram);
+        if (key == IntRingBuffer.NO_KEY) {
+            return false;
+        }
+        liveCounts.add(key, step);
+        return true;
+    }
+
+    @Override
+    public Integer pickStep(int relPitch, IntRingBuffer ngram, double value) {
+        if (ngram.size() < getOrder()) {
+            return null;
+        }
+        long key = packedKey(relPitch, ngram);
+        LiveTransitionCounts.Transitions live = key != IntRingBuffer.NO_KEY ? liveCounts.get(key) : null;
+        if (live == null) {
+            return baseTable.pickStep(relPitch, ngram, value);
+        }
+        double liveWeight = liveCounts.weight(live);
+        double mix = liveWeight / (liveWeight + prior);
+        if (value < mix) {
+            return live.pick(value / mix);
+        }
+        Integer step = baseTable.pickStep(relPitch, ngram, Math.min((value - mix) / (1 - mix), 1.0));
+        return step != null ? step : live.pick(value);
+    }
+
+    /**
+     * @return The number of statuses with live counts
+     */
+    public int getLiveStatusCount() {
+        return liveCounts.size();
+    }
+
+    /**
+     * Forget every live count.
+     */
+    public void clear() {
+        liveCounts.clear();
+    }
+
+    /**
+     * Compute the packed key of a status.
+     *
+     * @param relPitch
+     *            Pitch class of the note relative to the scale tonic
+     * @param ngram
+     *            Sequence of last intervals
+     * @return The packed key of the status, or {@link IntRingBuffer#NO_KEY}
+     *         if it cannot be packed
+     */
+    private long packedKey(int relPitch, IntRingBuffer ngram) {
+        int order = getOrder();
+        if (order * STEP_BITS + REL_PITCH_BITS > 63 || ngram.size() < order) {
+            return IntRingBuffer.NO_KEY;
+        }
+        long key = ngram.packedKey(order, STEP_BITS);
+        if (key == IntRingBuffer.NO_KEY) {
+            return IntRingBuffer.NO_KEY;
+        }
+        return ((long) relPitch << (order * STEP_BITS)) | key;
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptiveMarkovPitchTable [order=" + getOrder() + ", liveStatuses=" + liveCounts.size() + "]";
+    }
+
+}
@@ -0,0 +1,221 @@
+package uk.ac.bath.masmusic.generation.melody;
+
+import java.util.List;
+
+import uk.ac.bath.masmusic.common.Beat;
+import uk.ac.bath.masmusic.common.DoubleRingBuffer;
+import uk.ac.bath.masmusic.common.IntRingBuffer;
+import uk.ac.bath.masmusic.common.Onset;
+import uk.ac.bath.masmusic.common.Scale;
+
+/**
+ * Markov melody model of a scale type adapted online to the heard music.
+ *
+ * Heard melodies are added note by note to adaptive pitch and duration tables
+ * built on top of static tables, so the generated melodies progressively
+ * follow the style of the music being played. Each note is learned in
+ * constant time, and the models can be used by generators concurrently with
+ * learning.
+ *
+ * @author Javier Dehesa
+ */
+public class AdaptiveMelodyModel {
+
+    /** Default number of learned notes after which live counts are halved. */
+    public static final int DEFAULT_HALF_LIFE = 512;
+
+    /** Default weight of the static tables in the mixture. */
+    public static final double DEFAULT_PRIOR = 16;
+
+    /** Number of live statuses above which forgotten statuses are removed. */
+    static final int LIVE_STATUS_CAPACITY = 4096;
+
+    /** Duration units per beat of learned durations. */
+    private static final int UNITS_PER_BEAT = 12;
+
+    /** Maximum duration in units. */
+    private static final int MAX_DURATION_UNITS = 4 * UNITS_PER_BEAT;
+
+    /** Maximum gap between notes of the same melody (beats). */
+    private static final int MAX_GAP_BEATS = 4;
+
+    /** Adaptive pitch table. */
+    private final AdaptiveMarkovPitchTable pitchTable;
+
+    /** Adaptive duration table. */
+    private final AdaptiveMarkovDurationTable durationTable;
+
+    /** Last steps of the current melody. */
+    private final IntRingBuffer steps;
+
+    /** Last durations of the current melody. */
+    private final DoubleRingBuffer durations;
+
+    /** Fundamental of the current melody, or -1 if there is none. */
+    private int fundamental;
+
+    /** Last learned note, or null if there is none. */
+    private Onset previous;
+
+    /** Pitch of the note before the last learned one, or -1 if unknown. */
+    private int secondPreviousPitch;
+
+    /**
+     * Constructor.
+     *
+     * @param basePitchTable
+     *            Static pitch table
+     * @param baseDurationTable
+     *            Static duration table
+     */
+    public AdaptiveMelodyModel(MarkovPitchGeneratorTable basePitchTable,
+            MarkovDurationGeneratorTable baseDurationTable) {
+        this(basePitchTable, baseDurationTable, DEFAULT_HALF_LIFE, DEFAULT_PRIOR);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param basePitchTable
+     *            Static pitch table
+     * @param baseDurationTable
+     *            Static duration table
+     * @param halfLife
+     *            Number of learned notes after which live counts are halved
+     * @param prior
+     *            Weight of the static tables in the mixture
+     */
+    public AdaptiveMelodyModel(MarkovPitchGeneratorTable basePitchTable,
+            MarkovDurationGeneratorTable baseDurationTable, int halfLife, double prior) {
+        this.pitchTable = new AdaptiveMarkovPitchTable(basePitchTable, halfLife, prior, true);
+        this.durationTable = new AdaptiveMarkovDurationTable(baseDurationTable, halfLife, prior);
+        this.steps = new IntRingBuffer(Math.max(basePitchTable.getOrder(), 1));
+        this.durations = new DoubleRingBuffer(Math.max(baseDurationTable.getOrder(), 1));
+        this.fundamental = -1;
+        this.previous = null;
+        this.secondPreviousPitch = -1;
+    }
+
+    /**
+     * @return The adaptive pitch model
+     */
+    public AdaptiveMarkovPitchTable getPitchModel() {
+        return pitchTable;
+    }
+
+    /**
+     * @return The adaptive duration model
+     */
+    public AdaptiveMarkovDurationTable getDurationModel() {
+        return durationTable;
+    }
+
+    /**
+     * Learn from a heard melody.
+     *
+     * The melody is taken as the continuation of the previously learned one,
+     * unless there is a long gap between them or the scale fundamental has
+     * changed.
+     *
+     * @param scale
+     *            Scale of the melody
+     * @param beat
+     *            Beat of the melody
+     * @param melody
+     *            Notes of the melody sorted by timestamp
+     */
+    public synchronized void learn(Scale scale, Beat beat, List<Onset> melody) {
+        int melodyFundamental = scale.getFundamental().value();
+        if (melodyFundamental != fundamental) {
+            reset();
+            fundamental = melodyFundamental;
+        }
+        // Keep the highest note played at each time
+        Onset pending = null;
+        for (Onset onset : melody) {
+            if (pending != null && onset.getTimestamp() == pending.getTimestamp()) {
+                if (onset.getPitch() > pending.getPitch()) {
+                    pending = onset;
+                }
+            } else {
+                if (pending != null) {
+                    addNote(pending, beat);
+                }
+                pending = onset;
+            }
+        }
+        if (pending != null) {
+            addNote(pending, beat);
+        }
+    }
+
+    /**
+     * Forget the current melody, so the next learned one is not taken as its
+     * continuation.
+     */
+    public synchronized void reset() {
+        steps.clear();
+        durations.clear();
+        previous = null;
+        secondPreviousPitch = -1;
+    }
+
+    /**
+     * Forget everything learned.
+     */
+    public synchronized void clear() {
+        reset();
+        fundamental = -1;
+        pitchTable.clear();
+        durationTable.clear();
+    }
+
+    /**
+     * Learn the transitions leading to a new note.
+     *
+     * @param onset
+     *            The new note
+     * @param beat
+     *            Beat of the melody
+     */
+    private void addNote(Onset onset, Beat beat) {
+        if (previous != null) {
+            long gap = onset.getTimestamp() - previous.getTimestamp();
+            if (gap <= 0) {
+                return;
+            }
+            if (gap > (long) MAX_GAP_BEATS * beat.getDuration()) {
+                reset();
+            } else {
+                // Duration of the previous note
+                int units = (int) Math.round(gap * UNITS_PER_BEAT / (double) beat.getDuration());
+                double duration = Math.max(1, Math.min(units, MAX_DURATION_UNITS)) / (double) UNITS_PER_BEAT;
+                if (secondPreviousPitch >= 0) {
+                    durationTable.addTransition(relativePitch(secondPreviousPitch), durations, duration);
+                }
+                durations.add(duration);
+                // Step to the new note
+                int step = onset.getPitch() - previous.getPitch();
+                pitchTable.addTransition(relativePitch(previous.getPitch()), steps, step);
+                steps.add(step);
+                secondPreviousPitch = previous.getPitch();
+            }
+        }
+        previous = onset;
+    }
+
+    /**
+     * @param pitch
+     *            A pitch MIDI value
+     * @return The pitch class of the pitch relative to the current fundamental
+     */
+    private int relativePitch(int pitch) {
+        return Math.floorMod(pitch - fundamental, 12);
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptiveMelodyModel [pitchModel=" + pitchTable + ", durationModel=" + durationTable + "]";
+    }
+
+}
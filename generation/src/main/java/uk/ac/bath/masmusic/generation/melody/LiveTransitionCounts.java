@@ -0,0 +1,242 @@
+package uk.ac.bath.masmusic.generation.melody;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decaying transition counts of a Markov model learned from live input.
+ *
+ * Statuses are identified by packed keys and transitions by integer values.
+ * Every added transition advances a global tick, and the counts of a status
+ * decay exponentially with the ticks since it was last updated. The decay is
+ * applied lazily when a status is updated, so adding a transition only costs
+ * time proportional to the (bounded) number of transitions of its status.
+ *
+ * Transitions must be added from a single thread at a time, but they can be
+ * read concurrently without locking: the transitions of a status are
+ * immutable, and updating them publishes a new copy.
+ *
+ * @author Javier Dehesa
+ */
+class LiveTransitionCounts {
+
+    /** Maximum number of transitions kept for each status. */
+    private static final int MAX_TRANSITIONS = 16;
+
+    /** Weight below which a status is considered forgotten. */
+    private static final double MIN_WEIGHT = .01;
+
+    /** Counts of each status. */
+    private final Map<Long, Transitions> statuses;
+
+    /** Decay factor applied on each tick. */
+    private final double decay;
+
+    /** Number of statuses above which forgotten statuses are removed. */
+    private final int capacity;
+
+    /** Number of added transitions. */
+    private volatile long tick;
+
+    /** Number of statuses added since forgotten statuses were last removed. */
+    private int addedStatuses;
+
+    /**
+     * Constructor.
+     *
+     * @param halfLife
+     *            Number of added transitions after which a count is halved
+     * @param capacity
+     *            Number of statuses above which forgotten statuses are removed
+     */
+    LiveTransitionCounts(int halfLife, int capacity) {
+        if (halfLife < 1) {
+            throw new IllegalArgumentException("The half-life must be positive");
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity must be positive");
+        }
+        this.statuses = new ConcurrentHashMap<>();
+        this.decay = Math.pow(.5, 1.0 / halfLife);
+        this.capacity = capacity;
+        this.tick = 0;
+        this.addedStatuses = 0;
+    }
+
+    /**
+     * Add one occurrence of a transition.
+     *
+     * @param key
+     *            Packed key of the status
+     * @param value
+     *            The transition value
+     */
+    void add(long key, int value) {
+        long now = tick + 1;
+        Transitions current = statuses.get(key);
+        Transitions updated;
+        if (current == null) {
+            updated = new Transitions(new int[] { value }, new float[] { 1f }, 1f, now);
+            addedStatuses++;
+        } else {
+            float scale = (float) Math.pow(decay, now - current.tick);
+            int n = current.values.length;
+            int index = -1;
+            for (int i = 0; i < n; i++) {
+                if (current.values[i] == value) {
+                    index = i;
+                    break;
+                }
+            }
+            int[] values;
+            float[] weights;
+            if (index >= 0) {
+                values = current.values;
+                weights = new float[n];
+            } else if (n < MAX_TRANSITIONS) {
+                values = Arrays.copyOf(current.values, n + 1);
+                weights = new float[n + 1];
+            } else {
+                values = current.values.clone();
+                weights = new float[n];
+            }
+            for (int i = 0; i < n; i++) {
+                weights[i] = current.weights[i] * scale;
+            }
+            if (index < 0) {
+                if (n < MAX_TRANSITIONS) {
+                    index = n;
+                } else {
+                    // Replace the least frequent transition
+                    index = 0;
+                    for (int i = 1; i < n; i++) {
+                        if (weights[i] < weights[index]) {
+                            index = i;
+                        }
+                    }
+                    weights[index] = 0f;
+                }
+                values[index] = value;
+            }
+            weights[index] += 1f;
+            float total = 0f;
+            for (float weight : weights) {
+                total += weight;
+            }
+            updated = new Transitions(values, weights, total, now);
+        }
+        statuses.put(key, updated);
+        tick = now;
+        if (addedStatuses > capacity) {
+            removeForgotten();
+        }
+    }
+
+    /**
+     * @param key
+     *            Packed key of a status
+     * @return The transitions of the status, or null if there are not any
+     */
+    Transitions get(long key) {
+        return statuses.get(key);
+    }
+
+    /**
+     * @param transitions
+     *            Transitions of a status
+     * @return The current total weight of the transitions
+     */
+    double weight(Transitions transitions) {
+        return transitions.total * Math.pow(decay, tick - transitions.tick);
+    }
+
+    /**
+     * @return The number of statuses with counts
+     */
+    int size() {
+        return statuses.size();
+    }
+
+    /**
+     * @return The number of added transitions
+     */
+    long getTick() {
+        return tick;
+    }
+
+    /**
+     * Remove every count.
+     */
+    void clear() {
+        statuses.clear();
+        addedStatuses = 0;
+    }
+
+    /**
+     * Remove the statuses whose weight has decayed below the minimum.
+     */
+    private void removeForgotten() {
+        statuses.values().removeIf(t -> weight(t) < MIN_WEIGHT);
+        addedStatuses = 0;
+    }
+
+    /** Immutable transitions of a status. */
+    static class Transitions {
+
+        /** Transition values. */
+        private final int[] values;
+
+        /** Transition weights at the tick of the last update. */
+        private final float[] weights;
+
+        /** Total weight at the tick of the last update. */
+        private final float total;
+
+        /** Tick of the last update. */
+        private final long tick;
+
+        /**
+         * Constructor.
+         *
+         * @param values
+         *            Transition values
+         * @param weights
+         *            Transition weights
+         * @param total
+         *            Total weight
+         * @param tick
+         *            Tick of the last update
+         */
+        Transitions(int[] values, float[] weights, float total, long tick) {
+            this.values = values;
+            this.weights = weights;
+            this.total = total;
+            this.tick = tick;
+        }
+
+        /**
+         * @param value
+         *            A value in the range [0, 1]
+         * @return The transition corresponding to the given value
+         */
+        int pick(double value) {
+            double threshold = value * total;
+            float cumWeight = 0f;
+            for (int i = 0; i < values.length; i++) {
+                cumWeight += weights[i];
+                if (cumWeight > threshold) {
+                    return values[i];
+                }
+            }
+            return values[values.length - 1];
+        }
+
+        @Override
+        public String toString() {
+            return "Transitions [values=" + Arrays.toString(values) + ", weights=" + Arrays.toString(weights) + "]";
+        }
+
+    }
+
+}
@@ -1,8 +1,9 @@
 package uk.ac.bath.masmusic.generation.melody;
 
-import java.util.Random;
+import java.util.Objects;
+import java.util.SplittableRandom;
 
-import uk.ac.bath.masmusic.common.EvictingCircularBuffer;
+import uk.ac.bath.masmusic.common.DoubleRingBuffer;
 import uk.ac.bath.masmusic.common.Note;
 import uk.ac.bath.masmusic.common.Scale;
 
@@ -17,16 +18,16 @@ import uk.ac.bath.masmusic.common.Scale;
 public class MarkovDurationGenerator {
 
     /** RNG. */
-    private final static Random RNG = new Random();
+    private SplittableRandom rng;
 
     /** Markov table. */
-    private final MarkovDurationGeneratorTable table;
+    private final MarkovDurationModel table;
 
     /** Scale. */
     private final Scale scale;
 
     /** Last ngram. */
-    private final EvictingCircularBuffer<Double> ngram;
+    private final DoubleRingBuffer ngram;
 
     /**
      * Constructor.
@@ -36,7 +37,7 @@ public class MarkovDurationGenerator {
      * @param scale
      *            The scale used to generate the melody
      */
-    public MarkovDurationGenerator(MarkovDurationGeneratorTable table,
+    public MarkovDurationGenerator(MarkovDurationModel table,
             Scale scale) {
         this(table, scale, 0f);
     }
@@ -51,14 +52,42 @@ public class MarkovDurationGenerator {
      * @param initialDuration
      *            First generated duration
      */
-    public MarkovDurationGenerator(MarkovDurationGeneratorTable table,
+    public MarkovDurationGenerator(MarkovDurationModel table,
             Scale scale, double initialDuration) {
+        this(table, scale, initialDuration, new SplittableRandom());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param table
+     *            The Markov table used by the generator
+     * @param scale
+     *            The scale used to generate the melody
+     * @param initialDuration
+     *            First generated duration
+     * @param rng
+     *            Random number generator used by this generator only
+     */
+    public MarkovDurationGenerator(MarkovDurationModel table,
+            Scale scale, double initialDuration, SplittableRandom rng) {
+        this.rng = Objects.requireNonNull(rng);
         this.table = table;
         this.scale = scale;
-        this.ngram = new EvictingCircularBuffer<>(table.getOrder());
+        this.ngram = new DoubleRingBuffer(Math.max(table.getOrder(), 1));
         this.ngram.add(initialDuration);
     }
 
+    /**
+     * Replace the random number generator, keeping the generator state.
+     *
+     * @param rng
+     *            Random number generator used by this generator only
+     */
+    public void setRandom(SplittableRandom rng) {
+        this.rng = Objects.requireNonNull(rng);
+    }
+
     /**
      * @return The last generated duration value, or the initial one if none has
      *         been generated yet.
@@ -78,11 +107,11 @@ public class MarkovDurationGenerator {
     public double generateDuration(int pitch) {
         Note currentNote = Note.fromValue(pitch);
         int relPitch = scale.getFundamental().ascendingDistanceTo(currentNote);
-        double r = RNG.nextDouble();
+        double r = rng.nextDouble();
         Double duration = table.pickDuration(relPitch, ngram, r);
         if (duration == null) {
             // Random walk
-            switch (RNG.nextInt(3)) {
+            switch (rng.nextInt(3)) {
             case 0:
                 duration = ngram.lastElement();
                 break;
@@ -10,12 +10,27 @@ import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
+import uk.ac.bath.masmusic.common.DoubleRingBuffer;
+
 /**
  * A Markov table for duration generation.
  *
+ * Besides the regular table, statuses whose durations are multiples of a
+ * small beat fraction are indexed by a packed key, so they can be looked up
+ * from a {@link DoubleRingBuffer} without creating a status object.
+ *
  * @author Javier Dehesa
  */
-public class MarkovDurationGeneratorTable {
+public class MarkovDurationGeneratorTable implements MarkovDurationModel {
+
+    /** Number of bits of each duration in packed keys. */
+    private static final int DURATION_BITS = 12;
+
+    /** Duration unit in packed keys (beats). */
+    private static final double DURATION_RESOLUTION = 1.0 / 48;
+
+    /** Number of bits of the relative pitch in packed keys. */
+    private static final int REL_PITCH_BITS = 4;
 
     /** Table order. */
     private final int order;
@@ -23,6 +38,9 @@ public class MarkovDurationGeneratorTable {
     /** Status table. */
     private final Map<Status, Transitions> table;
 
+    /** Status table indexed by packed keys. */
+    private final Map<Long, Transitions> packedTable;
+
     /**
      * Constructor.
      *
@@ -32,6 +50,7 @@ public class MarkovDurationGeneratorTable {
     MarkovDurationGeneratorTable(int order) {
         this.order = order;
         this.table = new HashMap<>();
+        this.packedTable = new HashMap<>();
     }
 
     /**
@@ -75,6 +94,14 @@ public class MarkovDurationGeneratorTable {
         Transitions trans = new Transitions(durations, probabilities);
         // Save to table
         table.put(status, trans);
+        DoubleRingBuffer ngramBuffer = new DoubleRingBuffer(Math.max(order, 1));
+        for (Double duration : ngram) {
+            ngramBuffer.add(duration);
+        }
+        long key = packedKey(relPitch, ngramBuffer);
+        if (key != DoubleRingBuffer.NO_KEY) {
+            packedTable.put(key, trans);
+        }
     }
 
     /**
@@ -93,6 +120,34 @@ public class MarkovDurationGeneratorTable {
         return pickDuration(relPitch, Arrays.stream(ngram).boxed().collect(Collectors.toList()), value);
     }
 
+    /**
+     * Pick a duration from a status in the table.
+     *
+     * @param relPitch
+     *            Pitch class of the note relative to the scale tonic
+     * @param ngram
+     *            Sequence of last durations
+     * @param value
+     *            A value in the range [0, 1]
+     * @return The duration corresponding to the given status and value, or null
+     *         if the status does not exist in the table.
+     */
+    @Override
+    public Double pickDuration(int relPitch, DoubleRingBuffer ngram, double value) {
+        if (ngram.size() < order) {
+            return null;
+        }
+        long key = packedKey(relPitch, ngram);
+        if (key == DoubleRingBuffer.NO_KEY) {
+            return pickDuration(relPitch, ngram.toArray(), value);
+        }
+        Transitions trans = packedTable.get(key);
+        if (trans == null) {
+            return null;
+        }
+        return trans.pickDuration(value);
+    }
+
     /**
      * Pick a duration from a status in the table.
      *
@@ -120,9 +175,31 @@ public class MarkovDurationGeneratorTable {
         return trans.pickDuration(value);
     }
 
+    /**
+     * Compute the packed key of a status.
+     *
+     * @param relPitch
+     *            Pitch class of the note relative to the scale tonic
+     * @param ngram
+     *            Sequence of last durations
+     * @return The packed key of the status, or {@link DoubleRingBuffer#NO_KEY}
+     *         if it cannot be packed
+     */
+    private long packedKey(int relPitch, DoubleRingBuffer ngram) {
+        if (order * DURATION_BITS + REL_PITCH_BITS > 63) {
+            return DoubleRingBuffer.NO_KEY;
+        }
+        long key = ngram.packedKey(order, DURATION_BITS, DURATION_RESOLUTION);
+        if (key == DoubleRingBuffer.NO_KEY) {
+            return DoubleRingBuffer.NO_KEY;
+        }
+        return ((long) relPitch << (order * DURATION_BITS)) | key;
+    }
+
     /**
      * @return The table order
      */
+    @Override
     public int getOrder() {
         return order;
     }
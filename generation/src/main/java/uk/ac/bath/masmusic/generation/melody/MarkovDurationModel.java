@@ -0,0 +1,34 @@
+package uk.ac.bath.masmusic.generation.melody;
+
+import uk.ac.bath.masmusic.common.DoubleRingBuffer;
+
+/**
+ * A Markov model from which note durations can be picked.
+ *
+ * Implementations must allow picking durations concurrently from several
+ * threads.
+ *
+ * @author Javier Dehesa
+ */
+public interface MarkovDurationModel {
+
+    /**
+     * @return The model order
+     */
+    int getOrder();
+
+    /**
+     * Pick a duration from a status in the model.
+     *
+     * @param relPitch
+     *            Pitch class of the note relative to the scale tonic
+     * @param ngram
+     *            Sequence of last durations
+     * @param value
+     *            A value in the range [0, 1]
+     * @return The duration corresponding to the given status and value, or null
+     *         if the status does not exist in the model.
+     */
+    Double pickDuration(int relPitch, DoubleRingBuffer ngram, double value);
+
+}
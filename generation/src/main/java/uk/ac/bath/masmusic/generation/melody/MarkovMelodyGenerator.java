@@ -2,6 +2,7 @@ package uk.ac.bath.masmusic.generation.melody;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.SplittableRandom;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,24 +39,42 @@ public class MarkovMelodyGenerator {
      * Constructor.
      *
      * @param pitchTable
-     *            The Markov pitch table used by the generator
+     *            The Markov pitch table or model used by the generator
      * @param durationTable
-     *            The Markov duration table used by the generator
+     *            The Markov duration table or model used by the generator
      * @param scale
      *            The scale used to generate the melody
      */
-    public MarkovMelodyGenerator(MarkovPitchGeneratorTable pitchTable, MarkovDurationGeneratorTable durationTable,
+    public MarkovMelodyGenerator(MarkovPitchModel pitchTable, MarkovDurationModel durationTable,
             Scale scale) {
-        this(pitchTable, durationTable, scale, 60 + scale.getFundamental().value(), 1f);
+        this(pitchTable, durationTable, scale, new SplittableRandom());
     }
 
     /**
      * Constructor.
      *
      * @param pitchTable
-     *            The Markov pitch table used by the generator
+     *            The Markov pitch table or model used by the generator
      * @param durationTable
-     *            The Markov duration table used by the generator
+     *            The Markov duration table or model used by the generator
+     * @param scale
+     *            The scale used to generate the melody
+     * @param rng
+     *            Random number generator from which the streams of the pitch
+     *            and duration generators are split
+     */
+    public MarkovMelodyGenerator(MarkovPitchModel pitchTable, MarkovDurationModel durationTable,
+            Scale scale, SplittableRandom rng) {
+        this(pitchTable, durationTable, scale, 60 + scale.getFundamental().value(), 1f, rng);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param pitchTable
+     *            The Markov pitch table or model used by the generator
+     * @param durationTable
+     *            The Markov duration table or model used by the generator
      * @param scale
      *            The scale used to generate the melody
      * @param initialPitch
@@ -63,10 +82,32 @@ public class MarkovMelodyGenerator {
      * @param initialDuration
      *            Initial duration of the generated melody
      */
-    public MarkovMelodyGenerator(MarkovPitchGeneratorTable pitchTable, MarkovDurationGeneratorTable durationTable,
+    public MarkovMelodyGenerator(MarkovPitchModel pitchTable, MarkovDurationModel durationTable,
             Scale scale, int initialPitch, float initialDuration) {
-        this.pitchGenerator = new MarkovPitchGenerator(pitchTable, scale, initialPitch);
-        this.durationGenerator = new MarkovDurationGenerator(durationTable, scale, initialDuration);
+        this(pitchTable, durationTable, scale, initialPitch, initialDuration, new SplittableRandom());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param pitchTable
+     *            The Markov pitch table or model used by the generator
+     * @param durationTable
+     *            The Markov duration table or model used by the generator
+     * @param scale
+     *            The scale used to generate the melody
+     * @param initialPitch
+     *            Initial pitch of the generated melody
+     * @param initialDuration
+     *            Initial duration of the generated melody
+     * @param rng
+     *            Random number generator from which the streams of the pitch
+     *            and duration generators are split
+     */
+    public MarkovMelodyGenerator(MarkovPitchModel pitchTable, MarkovDurationModel durationTable,
+            Scale scale, int initialPitch, float initialDuration, SplittableRandom rng) {
+        this.pitchGenerator = new MarkovPitchGenerator(pitchTable, scale, initialPitch, rng.split());
+        this.durationGenerator = new MarkovDurationGenerator(durationTable, scale, initialDuration, rng.split());
         this.scale = scale;
         this.currentElement = new ScoreElement(initialDuration, Collections.singleton(initialPitch));
     }
@@ -90,6 +131,22 @@ public class MarkovMelodyGenerator {
         pitchGenerator.setPitchBounds(low, high);
     }
 
+    /**
+     * Replace the random number generator, keeping the generator state.
+     *
+     * Reseeding the generator at fixed points, like the start of every bar,
+     * makes the elements generated after each point depend only on the
+     * generator state and the new random number generator.
+     *
+     * @param rng
+     *            Random number generator from which the streams of the pitch
+     *            and duration generators are split
+     */
+    public void setRandom(SplittableRandom rng) {
+        pitchGenerator.setRandom(rng.split());
+        durationGenerator.setRandom(rng.split());
+    }
+
     /**
      * @return The last generated melody element, or the initial one if none has
      *         been generated yet.
@@ -1,8 +1,9 @@
 package uk.ac.bath.masmusic.generation.melody;
 
-import java.util.Random;
+import java.util.Objects;
+import java.util.SplittableRandom;
 
-import uk.ac.bath.masmusic.common.EvictingCircularBuffer;
+import uk.ac.bath.masmusic.common.IntRingBuffer;
 import uk.ac.bath.masmusic.common.Note;
 import uk.ac.bath.masmusic.common.Scale;
 
@@ -17,10 +18,10 @@ import uk.ac.bath.masmusic.common.Scale;
 public class MarkovPitchGenerator {
 
     /** RNG. */
-    private final static Random RNG = new Random();
+    private SplittableRandom rng;
 
     /** Markov table. */
-    private final MarkovPitchGeneratorTable table;
+    private final MarkovPitchModel table;
 
     /** Scale. */
     private final Scale scale;
@@ -29,7 +30,7 @@ public class MarkovPitchGenerator {
     private int currentPitch;
 
     /** Last ngram. */
-    private final EvictingCircularBuffer<Integer> ngram;
+    private final IntRingBuffer ngram;
 
     /** Low bound for pitch values. */
     private int pitchBoundLow = Integer.MIN_VALUE;
@@ -45,7 +46,7 @@ public class MarkovPitchGenerator {
      * @param scale
      *            The scale used to generate the melody
      */
-    public MarkovPitchGenerator(MarkovPitchGeneratorTable table, Scale scale) {
+    public MarkovPitchGenerator(MarkovPitchModel table, Scale scale) {
         this(table, scale, 60 + scale.getFundamental().value());
     }
 
@@ -59,12 +60,30 @@ public class MarkovPitchGenerator {
      * @param initialPitch
      *            Initial pitch of the generated melody
      */
-    public MarkovPitchGenerator(MarkovPitchGeneratorTable table, Scale scale,
+    public MarkovPitchGenerator(MarkovPitchModel table, Scale scale,
             int initialPitch) {
+        this(table, scale, initialPitch, new SplittableRandom());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param table
+     *            The Markov table used by the generator
+     * @param scale
+     *            The scale used to generate the melody
+     * @param initialPitch
+     *            Initial pitch of the generated melody
+     * @param rng
+     *            Random number generator used by this generator only
+     */
+    public MarkovPitchGenerator(MarkovPitchModel table, Scale scale,
+            int initialPitch, SplittableRandom rng) {
+        this.rng = Objects.requireNonNull(rng);
         this.table = table;
         this.scale = scale;
         this.currentPitch = initialPitch;
-        this.ngram = new EvictingCircularBuffer<>(table.getOrder());
+        this.ngram = new IntRingBuffer(Math.max(table.getOrder(), 1));
     }
 
     /**
@@ -83,6 +102,16 @@ public class MarkovPitchGenerator {
         pitchBoundHigh = high;
     }
 
+    /**
+     * Replace the random number generator, keeping the generator state.
+     *
+     * @param rng
+     *            Random number generator used by this generator only
+     */
+    public void setRandom(SplittableRandom rng) {
+        this.rng = Objects.requireNonNull(rng);
+    }
+
     /**
      * @return The last generated pitch MIDI value, or the initial one if none
      *         has been generated yet.
@@ -99,13 +128,13 @@ public class MarkovPitchGenerator {
     public int generatePitch() {
         Note currentNote = Note.fromValue(currentPitch);
         int relPitch = scale.getFundamental().ascendingDistanceTo(currentNote);
-        double r = RNG.nextDouble();
+        double r = rng.nextDouble();
         Integer step = table.pickStep(relPitch, ngram, r);
         if (step == null) {
             // Random walk
             int degree = scale.degreeWithAlterationOf(currentNote);
             int nextDegree = Math.floorMod(
-                    ((degree - 1) + (RNG.nextBoolean() ? -1 : +1)),
+                    ((degree - 1) + (rng.nextBoolean() ? -1 : +1)),
                     scale.size()) + 1;
             Note nextNote = scale.getNote(nextDegree);
             step = currentNote.distanceTo(nextNote);
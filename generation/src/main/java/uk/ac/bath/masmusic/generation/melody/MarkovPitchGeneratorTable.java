@@ -10,12 +10,24 @@ import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
+import uk.ac.bath.masmusic.common.IntRingBuffer;
+
 /**
  * A Markov table for pitch generation.
  *
+ * Besides the regular table, statuses whose steps fit in a small number of
+ * bits are indexed by a packed key, so they can be looked up from an
+ * {@link IntRingBuffer} without creating a status object.
+ *
  * @author Javier Dehesa
  */
-public class MarkovPitchGeneratorTable {
+public class MarkovPitchGeneratorTable implements MarkovPitchModel {
+
+    /** Number of bits of each step in packed keys. */
+    private static final int STEP_BITS = 8;
+
+    /** Number of bits of the relative pitch in packed keys. */
+    private static final int REL_PITCH_BITS = 4;
 
     /** Table order. */
     private final int order;
@@ -23,6 +35,9 @@ public class MarkovPitchGeneratorTable {
     /** Status table. */
     private final Map<Status, Transitions> table;
 
+    /** Status table indexed by packed keys. */
+    private final Map<Long, Transitions> packedTable;
+
     /**
      * Constructor.
      *
@@ -32,6 +47,7 @@ public class MarkovPitchGeneratorTable {
     MarkovPitchGeneratorTable(int order) {
         this.order = order;
         this.table = new HashMap<>();
+        this.packedTable = new HashMap<>();
     }
 
     /**
@@ -75,6 +91,14 @@ public class MarkovPitchGeneratorTable {
         Transitions trans = new Transitions(steps, probabilities);
         // Save to table
         table.put(status, trans);
+        IntRingBuffer ngramBuffer = new IntRingBuffer(Math.max(order, 1));
+        for (Integer step : ngram) {
+            ngramBuffer.add(step);
+        }
+        long key = packedKey(relPitch, ngramBuffer);
+        if (key != IntRingBuffer.NO_KEY) {
+            packedTable.put(key, trans);
+        }
     }
 
     /**
@@ -93,6 +117,34 @@ public class MarkovPitchGeneratorTable {
         return pickStep(relPitch, Arrays.stream(ngram).boxed().collect(Collectors.toList()), value);
     }
 
+    /**
+     * Pick a step from a status in the table.
+     *
+     * @param relPitch
+     *            Pitch class of the note relative to the scale tonic
+     * @param ngram
+     *            Sequence of last intervals
+     * @param value
+     *            A value in the range [0, 1]
+     * @return The step corresponding to the given status and value, or null if
+     *         the status does not exist in the table.
+     */
+    @Override
+    public Integer pickStep(int relPitch, IntRingBuffer ngram, double value) {
+        if (ngram.size() < order) {
+            return null;
+        }
+        long key = packedKey(relPitch, ngram);
+        if (key == IntRingBuffer.NO_KEY) {
+            return pickStep(relPitch, ngram.toArray(), value);
+        }
+        Transitions trans = packedTable.get(key);
+        if (trans == null) {
+            return null;
+        }
+        return trans.pickStep(value);
+    }
+
     /**
      * Pick a step from a status in the table.
      *
@@ -120,9 +172,31 @@ public class MarkovPitchGeneratorTable {
         return trans.pickStep(value);
     }
 
+    /**
+     * Compute the packed key of a status.
+     *
+     * @param relPitch
+     *            Pitch class of the note relative to the scale tonic
+     * @param ngram
+     *            Sequence of last intervals
+     * @return The packed key of the status, or {@link IntRingBuffer#NO_KEY}
+     *         if it cannot be packed
+     */
+    private long packedKey(int relPitch, IntRingBuffer ngram) {
+        if (order * STEP_BITS + REL_PITCH_BITS > 63) {
+            return IntRingBuffer.NO_KEY;
+        }
+        long key = ngram.packedKey(order, STEP_BITS);
+        if (key == IntRingBuffer.NO_KEY) {
+            return IntRingBuffer.NO_KEY;
+        }
+        return ((long) relPitch << (order * STEP_BITS)) | key;
+    }
+
     /**
      * @return The table order
      */
+    @Override
     public int getOrder() {
         return order;
     }
@@ -0,0 +1,33 @@
+package uk.ac.bath.masmusic.generation.melody;
+
+import uk.ac.bath.masmusic.common.IntRingBuffer;
+
+/**
+ * A Markov model from which pitch steps can be picked.
+ *
+ * Implementations must allow picking steps concurrently from several threads.
+ *
+ * @author Javier Dehesa
+ */
+public interface MarkovPitchModel {
+
+    /**
+     * @return The model order
+     */
+    int getOrder();
+
+    /**
+     * Pick a step from a status in the model.
+     *
+     * @param relPitch
+     *            Pitch class of the note relative to the scale tonic
+     * @param ngram
+     *            Sequence of last intervals
+     * @param value
+     *            A value in the range [0, 1]
+     * @return The step corresponding to the given status and value, or null if
+     *         the status does not exist in the model.
+     */
+    Integer pickStep(int relPitch, IntRingBuffer ngram, double value);
+
+}
@@ -0,0 +1,558 @@
+package uk.ac.bath.masmusic.generation.melody;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.ac.bath.masmusic.common.LongCountMap;
+import uk.ac.bath.masmusic.common.MidiCorpus;
+import uk.ac.bath.masmusic.common.MidiScore;
+import uk.ac.bath.masmusic.common.Onset;
+import uk.ac.bath.masmusic.common.PitchClassSet;
+import uk.ac.bath.masmusic.common.Scale;
+
+/**
+ * Trainer of Markov pitch and duration tables from a corpus of MIDI files.
+ *
+ * The melody of each file is extracted with a {@link TrebleBassSplitter},
+ * keeping the highest treble note at each time, and relative pitch n-grams are
+ * counted separately for each scale type. Files are processed in parallel in a
+ * {@link ForkJoinPool}, where each task counts into its own primitive maps
+ * that are merged when the tasks are joined. The resulting tables are written
+ * in the format read by {@link MarkovPitchGeneratorTableReader} and
+ * {@link MarkovDurationGeneratorTableReader}.
+ *
+ * @author Javier Dehesa
+ */
+public class MarkovTableTrainer {
+
+    /** Logger */
+    private static Logger LOG = LoggerFactory.getLogger(MarkovTableTrainer.class);
+
+    /** Maximum table order. */
+    public static final int MAX_ORDER = 6;
+
+    /** Number of duration units per beat. */
+    private static final int UNITS_PER_BEAT = 12;
+
+    /** Maximum duration in units. */
+    private static final int MAX_DURATION_UNITS = 4 * UNITS_PER_BEAT;
+
+    /** Maximum time between notes of the same melody in beats. */
+    private static final int MAX_GAP_BEATS = 4;
+
+    /** Maximum absolute step. */
+    private static final int MAX_STEP = 127;
+
+    /** Number of bits of each step in packed keys. */
+    private static final int STEP_BITS = 8;
+
+    /** Number of bits of each duration in packed keys. */
+    private static final int DURATION_BITS = 6;
+
+    /** Table order. */
+    private final int order;
+
+    /** Pitch transition counts per scale type. */
+    private final Map<String, LongCountMap> pitchCounts;
+
+    /** Duration transition counts per scale type. */
+    private final Map<String, LongCountMap> durationCounts;
+
+    /** Number of files used for training. */
+    private int fileCount;
+
+    /** Number of files that could not be used for training. */
+    private int skippedFileCount;
+
+    /**
+     * Constructor.
+     *
+     * @param order
+     *            Order of the trained tables
+     */
+    public MarkovTableTrainer(int order) {
+        if (order < 1 || order > MAX_ORDER) {
+            throw new IllegalArgumentException("The order must be between 1 and " + MAX_ORDER);
+        }
+        this.order = order;
+        this.pitchCounts = new HashMap<>();
+        this.durationCounts = new HashMap<>();
+        this.fileCount = 0;
+        this.skippedFileCount = 0;
+    }
+
+    /**
+     * @return The order of the trained tables
+     */
+    public int getOrder() {
+        return order;
+    }
+
+    /**
+     * @return The number of files used for training
+     */
+    public int getFileCount() {
+        return fileCount;
+    }
+
+    /**
+     * @return The number of files that could not be used for training
+     */
+    public int getSkippedFileCount() {
+        return skippedFileCount;
+    }
+
+    /**
+     * @return The scale types with trained tables, in lower case
+     */
+    public Set<String> getScaleTypes() {
+        Set<String> scaleTypes = new TreeSet<>(pitchCounts.keySet());
+        scaleTypes.addAll(durationCounts.keySet());
+        return scaleTypes;
+    }
+
+    /**
+     * Train with every MIDI file in a directory (recursively).
+     *
+     * @param directory
+     *            The directory containing the MIDI files
+     * @param pool
+     *            Pool where the files are processed
+     * @throws IOException
+     *             If the directory cannot be read
+     */
+    public void trainDirectory(File directory, ForkJoinPool pool) throws IOException {
+        train(MidiCorpus.listFiles(directory), pool);
+    }
+
+    /**
+     * Train with a collection of MIDI files.
+     *
+     * Files that cannot be read are skipped.
+     *
+     * @param files
+     *            The MIDI files
+     * @param pool
+     *            Pool where the files are processed
+     */
+    public void train(List<File> files, ForkJoinPool pool) {
+        merge(MidiCorpus.process(files, pool, Counts::new));
+    }
+
+    /**
+     * Train with a single score.
+     *
+     * @param score
+     *            The score
+     */
+    public void train(MidiScore score) {
+        Counts counts = new Counts();
+        counts.add(score);
+        merge(counts);
+    }
+
+    /**
+     * Write the pitch table of a scale type.
+     *
+     * @param scaleType
+     *            The scale type
+     * @param output
+     *            Where the table is written
+     * @throws IOException
+     *             If an I/O error occurs
+     */
+    public void writePitchTable(String scaleType, Writer output) throws IOException {
+        output.write("order:" + order + "\n");
+        LongCountMap counts = pitchCounts.get(scaleType);
+        if (counts == null) {
+            return;
+        }
+        writeEntries(counts, STEP_BITS, output);
+    }
+
+    /**
+     * Write the duration table of a scale type.
+     *
+     * @param scaleType
+     *            The scale type
+     * @param output
+     *            Where the table is written
+     * @throws IOException
+     *             If an I/O error occurs
+     */
+    public void writeDurationTable(String scaleType, Writer output) throws IOException {
+        output.write("order:" + order + "\n");
+        LongCountMap counts = durationCounts.get(scaleType);
+        if (counts == null) {
+            return;
+        }
+        writeEntries(counts, DURATION_BITS, output);
+    }
+
+    /**
+     * Write the entries of a table, one line for each status.
+     *
+     * @param counts
+     *            Transition counts of the table
+     * @param bits
+     *            Number of bits of each n-gram element in the keys
+     * @param output
+     *            Where the entries are written
+     * @throws IOException
+     *             If an I/O error occurs
+     */
+    private void writeEntries(LongCountMap counts, int bits, Writer output) throws IOException {
+        long[] keys = counts.sortedKeys();
+        StringBuilder line = new StringBuilder();
+        int i = 0;
+        while (i < keys.length) {
+            long status = keys[i] >>> bits;
+            line.setLength(0);
+            line.append('(').append(status >>> (bits * order)).append(",[");
+            for (int j = order - 1; j >= 0; j--) {
+                appendElement(line, (int) ((status >>> (bits * j)) & ((1 << bits) - 1)), bits);
+                if (j > 0) {
+                    line.append(',');
+                }
+            }
+            line.append("]):");
+            boolean first = true;
+            while (i < keys.length && (keys[i] >>> bits) == status) {
+                if (!first) {
+                    line.append(',');
+                }
+                line.append('(');
+                appendElement(line, (int) (keys[i] & ((1 << bits) - 1)), bits);
+                line.append(':').append(Math.min(counts.get(keys[i]), Integer.MAX_VALUE)).append(')');
+                first = false;
+                i++;
+            }
+            line.append('\n');
+            output.write(line.toString());
+        }
+    }
+
+    /**
+     * Append a packed n-gram element to a table line.
+     *
+     * @param line
+     *            The table line
+     * @param element
+     *            The packed element
+     * @param bits
+     *            Number of bits of the element
+     */
+    private static void appendElement(StringBuilder line, int element, int bits) {
+        if (bits == STEP_BITS) {
+            line.append(element - MAX_STEP - 1);
+        } else {
+            line.append(Math.round(element * 10000.0 / UNITS_PER_BEAT) / 10000.0);
+        }
+    }
+
+    /**
+     * Add trained counts.
+     *
+     * @param counts
+     *            The counts to add
+     */
+    private void merge(Counts counts) {
+        counts.addTo(pitchCounts, durationCounts);
+        fileCount += counts.fileCount;
+        skippedFileCount += counts.skippedFileCount;
+    }
+
+    /**
+     * Transition counts of a part of the corpus.
+     */
+    private class Counts implements MidiCorpus.Accumulator<Counts> {
+
+        /** Pitch transition counts per scale type. */
+        private final Map<String, LongCountMap> pitchCounts;
+
+        /** Duration transition counts per scale type. */
+        private final Map<String, LongCountMap> durationCounts;
+
+        /** Splitter used to extract melodies. */
+        private final TrebleBassSplitter splitter;
+
+        /** Steps of the current melody segment. */
+        private final int[] steps;
+
+        /** Durations of the current melody segment in units. */
+        private final int[] durations;
+
+        /** Number of files counted. */
+        private int fileCount;
+
+        /** Number of files skipped. */
+        private int skippedFileCount;
+
+        /**
+         * Constructor.
+         */
+        Counts() {
+            this.pitchCounts = new HashMap<>();
+            this.durationCounts = new HashMap<>();
+            this.splitter = new TrebleBassSplitter();
+            this.steps = new int[order];
+            this.durations = new int[order + 1];
+            this.fileCount = 0;
+            this.skippedFileCount = 0;
+        }
+
+        @Override
+        public void skip(File file, IOException e) {
+            LOG.debug("Could not read {}: {}", file, e.getMessage());
+            skippedFileCount++;
+        }
+
+        @Override
+        public void add(MidiScore score) {
+            Scale scale = score.getScale();
+            if (scale == null) {
+                skippedFileCount++;
+                return;
+            }
+            List<Onset> bass = new ArrayList<>();
+            List<Onset> treble = new ArrayList<>();
+            splitter.split(score.getOnsets(), bass, treble);
+            List<Onset> melody = highestNotes(treble);
+            if (melody.size() < 2) {
+                skippedFileCount++;
+                return;
+            }
+            // Table files use lower case types
+            String scaleType = scale.getType().trim().toLowerCase();
+            LongCountMap pitchMap = pitchCounts.computeIfAbsent(scaleType, t -> new LongCountMap());
+            LongCountMap durationMap = durationCounts.computeIfAbsent(scaleType, t -> new LongCountMap());
+            int fundamental = scale.getFundamental().value();
+            long maxGap = (long) MAX_GAP_BEATS * score.getResolution();
+            // Number of known steps and durations in the current segment
+            int stepCount = 0;
+            int durationCount = 0;
+            // Pitch of the note before the previous one, if it is in the segment
+            int secondPreviousPitch = 0;
+            Onset previous = null;
+            for (Onset onset : melody) {
+                if (previous != null) {
+                    long gap = onset.getTimestamp() - previous.getTimestamp();
+                    int step = onset.getPitch() - previous.getPitch();
+                    if (gap > maxGap) {
+                        // Close segment with the duration of the last note
+                        pushDuration(durationCount++, toUnits(previous.getDuration(), score.getResolution()));
+                        countDuration(durationMap, secondPreviousPitch - fundamental, durationCount);
+                        stepCount = 0;
+                        durationCount = 0;
+                    } else {
+                        pushDuration(durationCount++, toUnits(gap, score.getResolution()));
+                        countDuration(durationMap, secondPreviousPitch - fundamental, durationCount);
+                        if (Math.abs(step) > MAX_STEP) {
+                            stepCount = 0;
+                        } else {
+                            countStep(pitchMap, previous.getPitch() - fundamental, step, stepCount);
+                            pushStep(stepCount++, step);
+                        }
+                    }
+                    secondPreviousPitch = previous.getPitch();
+                }
+                previous = onset;
+            }
+            pushDuration(durationCount++, toUnits(previous.getDuration(), score.getResolution()));
+            countDuration(durationMap, secondPreviousPitch - fundamental, durationCount);
+            fileCount++;
+        }
+
+        /**
+         * Count a pitch transition if there are enough previous steps.
+         *
+         * @param counts
+         *            Pitch transition counts
+         * @param relPitch
+         *            Pitch of the current note relative to the fundamental
+         * @param step
+         *            Step to the next note
+         * @param stepCount
+         *            Number of previous steps in the segment
+         */
+        private void countStep(LongCountMap counts, int relPitch, int step, int stepCount) {
+            if (stepCount < order) {
+                return;
+            }
+            long key = PitchClassSet.pitchClass(relPitch);
+            for (int i = 0; i < order; i++) {
+                key = (key << STEP_BITS) | (steps[i] + MAX_STEP + 1);
+            }
+            key = (key << STEP_BITS) | (step + MAX_STEP + 1);
+            counts.increment(key);
+        }
+
+        /**
+         * Count a duration transition if there are enough previous durations.
+         *
+         * @param counts
+         *            Duration transition counts
+         * @param relPitch
+         *            Pitch of the note with the last duration of the n-gram
+         *            relative to the fundamental (as the duration of a note
+         *            is generated from the pitch of the note before it)
+         * @param durationCount
+         *            Number of durations in the segment, including the next
+         *            one
+         */
+        private void countDuration(LongCountMap counts, int relPitch, int durationCount) {
+            if (durationCount <= order) {
+                return;
+            }
+            long key = PitchClassSet.pitchClass(relPitch);
+            for (int i = 0; i <= order; i++) {
+                key = (key << DURATION_BITS) | durations[i];
+            }
+            counts.increment(key);
+        }
+
+        /**
+         * Add a step to the current n-gram.
+         *
+         * @param stepCount
+         *            Number of previous steps in the segment
+         * @param step
+         *            The new step
+         */
+        private void pushStep(int stepCount, int step) {
+            if (stepCount < order) {
+                steps[stepCount] = step;
+            } else {
+                System.arraycopy(steps, 1, steps, 0, order - 1);
+                steps[order - 1] = step;
+            }
+        }
+
+        /**
+         * Add a duration to the current n-gram and its transition.
+         *
+         * @param durationCount
+         *            Number of previous durations in the segment
+         * @param duration
+         *            The new duration in units
+         */
+        private void pushDuration(int durationCount, int duration) {
+            if (durationCount <= order) {
+                durations[durationCount] = duration;
+            } else {
+                System.arraycopy(durations, 1, durations, 0, order);
+                durations[order] = duration;
+            }
+        }
+
+        /**
+         * Add these counts to the given maps.
+         *
+         * @param allPitchCounts
+         *            Pitch transition counts per scale type
+         * @param allDurationCounts
+         *            Duration transition counts per scale type
+         */
+        void addTo(Map<String, LongCountMap> allPitchCounts, Map<String, LongCountMap> allDurationCounts) {
+            for (Map.Entry<String, LongCountMap> entry : pitchCounts.entrySet()) {
+                allPitchCounts.computeIfAbsent(entry.getKey(), t -> new LongCountMap()).addAll(entry.getValue());
+            }
+            for (Map.Entry<String, LongCountMap> entry : durationCounts.entrySet()) {
+                allDurationCounts.computeIfAbsent(entry.getKey(), t -> new LongCountMap()).addAll(entry.getValue());
+            }
+        }
+
+        @Override
+        public void addAll(Counts other) {
+            other.addTo(pitchCounts, durationCounts);
+            fileCount += other.fileCount;
+            skippedFileCount += other.skippedFileCount;
+        }
+
+    }
+
+    /**
+     * Keep only the highest note played at each time.
+     *
+     * @param onsets
+     *            Sorted notes
+     * @return The highest notes
+     */
+    private static List<Onset> highestNotes(List<Onset> onsets) {
+        List<Onset> melody = new ArrayList<>();
+        for (Onset onset : onsets) {
+            int last = melody.size() - 1;
+            if (last >= 0 && melody.get(last).getTimestamp() == onset.getTimestamp()) {
+                if (onset.getPitch() > melody.get(last).getPitch()) {
+                    melody.set(last, onset);
+                }
+            } else {
+                melody.add(onset);
+            }
+        }
+        return melody;
+    }
+
+    /**
+     * @param ticks
+     *            A duration in ticks
+     * @param resolution
+     *            Number of ticks per beat
+     * @return The duration quantized in units
+     */
+    private static int toUnits(long ticks, int resolution) {
+        long units = Math.round(ticks * (double) UNITS_PER_BEAT / resolution);
+        return (int) Math.max(1, Math.min(units, MAX_DURATION_UNITS));
+    }
+
+    /**
+     * Train tables from a directory of MIDI files.
+     *
+     * Usage: {@code MarkovTableTrainer <midi dir> <output dir> [order]}. For
+     * each scale type, the files {@code <type>.pit} and {@code <type>.dur} are
+     * written to the output directory.
+     *
+     * @param args
+     *            Command line arguments
+     * @throws IOException
+     *             If an I/O error occurs
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: MarkovTableTrainer <midi dir> <output dir> [order]");
+            System.exit(1);
+        }
+        int order = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        MarkovTableTrainer trainer = new MarkovTableTrainer(order);
+        long start = System.currentTimeMillis();
+        trainer.trainDirectory(new File(args[0]), ForkJoinPool.commonPool());
+        File outputDir = new File(args[1]);
+        outputDir.mkdirs();
+        for (String scaleType : trainer.getScaleTypes()) {
+            try (Writer writer = Files.newBufferedWriter(
+                    new File(outputDir, scaleType + ".pit").toPath(), StandardCharsets.UTF_8)) {
+                trainer.writePitchTable(scaleType, writer);
+            }
+            try (Writer writer = Files.newBufferedWriter(
+                    new File(outputDir, scaleType + ".dur").toPath(), StandardCharsets.UTF_8)) {
+                trainer.writeDurationTable(scaleType, writer);
+            }
+        }
+        LOG.info("Trained {} files ({} skipped) in {} ms: {}", trainer.getFileCount(),
+                trainer.getSkippedFileCount(), System.currentTimeMillis() - start, trainer.getScaleTypes());
+    }
+
+}
@@ -4,21 +4,26 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
-import java.util.Random;
+import java.util.SplittableRandom;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import uk.ac.bath.masmusic.common.Clock;
 import uk.ac.bath.masmusic.common.EvictingCircularBuffer;
 import uk.ac.bath.masmusic.common.Onset;
-import uk.ac.bath.masmusic.common.Phrase;
+import uk.ac.bath.masmusic.common.PackedPhrase;
+import uk.ac.bath.masmusic.common.QuantizationGrid;
 import uk.ac.bath.masmusic.common.Rhythm;
-import uk.ac.bath.masmusic.common.ScoreElement;
+import uk.ac.bath.masmusic.common.SystemClock;
 
 /**
  * Melody learner.
  *
+ * The learned music can be saved with {@link #getSnapshot()} and restored
+ * later, possibly in another learner, with {@link #restore(Snapshot)}.
+ *
  * @author Javier Dehesa
  */
 public class MelodyLearner {
@@ -26,8 +31,32 @@ public class MelodyLearner {
     /** Logger */
     private static Logger LOG = LoggerFactory.getLogger(MelodyLearner.class);
 
+    /** Binary subdivision level for snapping onsets. */
+    private static final int SNAP_BINARY_SUBDIVISION = 2;
+
+    /** Ternary subdivision level for snapping onsets. */
+    private static final int SNAP_TERNARY_SUBDIVISION = 1;
+
+    /** Number of recently heard notes used to look for similar bars. */
+    private static final int RECENT_NOTES = 8;
+
+    /** Number of similar bars considered for continuation. */
+    private static final int SIMILAR_CANDIDATES = 3;
+
+    /** Maximum number of bars in the similarity index. */
+    private static final int INDEX_CAPACITY = 1024;
+
     /** Musical phrases stored by bar class */
-    private final List<EvictingCircularBuffer<Phrase>> phrases;
+    private final List<EvictingCircularBuffer<PackedPhrase>> phrases;
+
+    /** Index of learned bars in learning order. */
+    private final PhraseIndex index;
+
+    /** Bar class of each indexed bar, by slot ({@code id % INDEX_CAPACITY}). */
+    private final int[] indexedBarClasses;
+
+    /** Most recently learned treble notes. */
+    private final EvictingCircularBuffer<Onset> recentNotes;
 
     /** Base index for the phrase bar classes. */
     private int baseIndex;
@@ -35,12 +64,128 @@ public class MelodyLearner {
     /** The currently used rhythm. */
     private Rhythm rhythm;
 
-    /** Treble/bass splitter. */
-    private final TrebleBassSplitter splitter;
+    /** Treble/bass voice separator. */
+    private final VoiceSeparator separator;
+
+    /** Quantization grid of the current rhythm. */
+    private QuantizationGrid grid;
+
+    /** Buffer for snapped onsets. */
+    private final List<Onset> snapBuffer;
 
     /** Timestamp of the last learned music. */
     private long lastLearned;
 
+    /** Clock. */
+    private final Clock clock;
+
+    /**
+     * Snapshot of the music learned by a melody learner.
+     *
+     * Bar phrases are given by bar class, starting from the class of the bar
+     * at the first bar offset of the rhythm. Snapshots are immutable.
+     */
+    public static final class Snapshot {
+
+        /** Rhythm of the learned music. */
+        private final Rhythm rhythm;
+
+        /** Phrases of each bar class. */
+        private final List<List<PackedPhrase>> barPhrases;
+
+        /** Indexed bars, from the oldest to the newest. */
+        private final List<PackedPhrase> indexedBars;
+
+        /** Bar class of each indexed bar (empty if unknown). */
+        private final List<Integer> indexedBarClasses;
+
+        /** Most recently learned treble notes. */
+        private final List<Onset> recentNotes;
+
+        /** Timestamp of the last learned music, or -1 if nothing was learned. */
+        private final long lastLearned;
+
+        /**
+         * Constructor.
+         *
+         * @param rhythm
+         *            Rhythm of the learned music
+         * @param barPhrases
+         *            Phrases of each bar class
+         * @param indexedBars
+         *            Indexed bars, from the oldest to the newest
+         * @param indexedBarClasses
+         *            Bar class of each indexed bar, or an empty list if they
+         *            are unknown
+         * @param recentNotes
+         *            Most recently learned treble notes
+         * @param lastLearned
+         *            Timestamp of the last learned music, or -1 if nothing
+         *            was learned
+         */
+        public Snapshot(Rhythm rhythm, List<List<PackedPhrase>> barPhrases, List<PackedPhrase> indexedBars,
+                List<Integer> indexedBarClasses, List<Onset> recentNotes, long lastLearned) {
+            if (!indexedBarClasses.isEmpty() && indexedBarClasses.size() != indexedBars.size()) {
+                throw new IllegalArgumentException("There must be a bar class for each indexed bar");
+            }
+            this.rhythm = Objects.requireNonNull(rhythm);
+            List<List<PackedPhrase>> barPhrasesCopy = new ArrayList<>(barPhrases.size());
+            for (List<PackedPhrase> classPhrases : barPhrases) {
+                barPhrasesCopy.add(Collections.unmodifiableList(new ArrayList<>(classPhrases)));
+            }
+            this.barPhrases = Collections.unmodifiableList(barPhrasesCopy);
+            this.indexedBars = Collections.unmodifiableList(new ArrayList<>(indexedBars));
+            this.indexedBarClasses = Collections.unmodifiableList(new ArrayList<>(indexedBarClasses));
+            this.recentNotes = Collections.unmodifiableList(new ArrayList<>(recentNotes));
+            this.lastLearned = lastLearned;
+        }
+
+        /**
+         * @return The rhythm of the learned music
+         */
+        public Rhythm getRhythm() {
+            return rhythm;
+        }
+
+        /**
+         * @return The phrases of each bar class
+         */
+        public List<List<PackedPhrase>> getBarPhrases() {
+            return barPhrases;
+        }
+
+        /**
+         * @return The indexed bars, from the oldest to the newest
+         */
+        public List<PackedPhrase> getIndexedBars() {
+            return indexedBars;
+        }
+
+        /**
+         * @return The bar class of each indexed bar, or an empty list if they
+         *         are unknown
+         */
+        public List<Integer> getIndexedBarClasses() {
+            return indexedBarClasses;
+        }
+
+        /**
+         * @return The most recently learned treble notes
+         */
+        public List<Onset> getRecentNotes() {
+            return recentNotes;
+        }
+
+        /**
+         * @return The timestamp of the last learned music, or -1 if nothing
+         *         was learned
+         */
+        public long getLastLearned() {
+            return lastLearned;
+        }
+
+    }
+
     /**
      * Constructor.
      *
@@ -52,14 +197,36 @@ public class MelodyLearner {
      *            the more memory about played music)
      */
     public MelodyLearner(int numBars, int numBarPhrases) {
+        this(numBars, numBarPhrases, SystemClock.INSTANCE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param numBars
+     *            Number of bar classes considered (a power of 2 value is
+     *            advised)
+     * @param numBarPhrases
+     *            Number of phrases remembered for each bar class (the bigger
+     *            the more memory about played music)
+     * @param clock
+     *            The clock used to know the current time
+     */
+    public MelodyLearner(int numBars, int numBarPhrases, Clock clock) {
         phrases = new ArrayList<>(numBars);
         for (int i = 0; i < numBars; i++) {
             phrases.add(new EvictingCircularBuffer<>(numBarPhrases));
         }
+        index = new PhraseIndex(INDEX_CAPACITY);
+        indexedBarClasses = new int[INDEX_CAPACITY];
+        recentNotes = new EvictingCircularBuffer<>(RECENT_NOTES);
         baseIndex = 0;
         rhythm = null;
-        splitter = new TrebleBassSplitter();
+        separator = new VoiceSeparator();
+        grid = null;
+        snapBuffer = new ArrayList<>();
         lastLearned = -1;
+        this.clock = Objects.requireNonNull(clock);
     }
 
     /**
@@ -71,7 +238,7 @@ public class MelodyLearner {
     public void setRhythm(Rhythm rhythm) {
         Objects.requireNonNull(rhythm);
         if (this.rhythm != null) {
-            long currentTime = System.currentTimeMillis();
+            long currentTime = clock.currentTimeMillis();
             long currentReferenceBeat = this.rhythm.getBeat().closestBeat(currentTime);
             int currentBarClass = getBarClass(currentReferenceBeat, this.rhythm);
             long newReferenceBeat = rhythm.getBeat().closestBeat(currentReferenceBeat);
@@ -84,21 +251,74 @@ public class MelodyLearner {
         this.rhythm = rhythm;
     }
 
+    /**
+     * @return A snapshot of the learned music, or null if no rhythm has been
+     *         set
+     */
+    public Snapshot getSnapshot() {
+        if (rhythm == null) {
+            return null;
+        }
+        int numBars = phrases.size();
+        List<List<PackedPhrase>> barPhrases = new ArrayList<>(numBars);
+        for (int i = 0; i < numBars; i++) {
+            barPhrases.add(phrases.get((i + baseIndex) % numBars));
+        }
+        List<Integer> barClasses = new ArrayList<>(index.size());
+        for (int id = index.getNextId() - index.size(); id < index.getNextId(); id++) {
+            int barClass = indexedBarClasses[id % INDEX_CAPACITY];
+            barClasses.add(barClass >= 0 ? Math.floorMod(barClass - baseIndex, numBars) : -1);
+        }
+        return new Snapshot(rhythm, barPhrases, index.getAll(), barClasses, recentNotes, lastLearned);
+    }
+
+    /**
+     * Restore the music learned by a melody learner, discarding the currently
+     * learned music.
+     *
+     * @param snapshot
+     *            Snapshot of the learned music
+     */
+    public void restore(Snapshot snapshot) {
+        if (snapshot.getBarPhrases().size() != phrases.size()) {
+            throw new IllegalArgumentException("The snapshot must have " + phrases.size() + " bar classes");
+        }
+        for (int i = 0; i < phrases.size(); i++) {
+            phrases.get(i).clear();
+            phrases.get(i).addAll(snapshot.getBarPhrases().get(i));
+        }
+        index.clear();
+        List<PackedPhrase> indexedBars = snapshot.getIndexedBars();
+        List<Integer> barClasses = snapshot.getIndexedBarClasses();
+        for (int i = 0; i < indexedBars.size(); i++) {
+            indexBar(indexedBars.get(i), barClasses.isEmpty() ? -1 : barClasses.get(i));
+        }
+        recentNotes.clear();
+        recentNotes.addAll(snapshot.getRecentNotes());
+        baseIndex = 0;
+        rhythm = snapshot.getRhythm();
+        grid = null;
+        lastLearned = snapshot.getLastLearned();
+    }
+
     /**
      * Learn patterns from the given music.
      *
      * @param onsets
      *            Sequence of played notes
+     * @return The learned treble notes, snapped to the rhythm
      */
-    public void learn(List<Onset> onsets) {
+    public List<Onset> learn(List<Onset> onsets) {
         if (onsets.isEmpty() || rhythm == null) {
-            return;
+            return Collections.emptyList();
         }
         // Snap to beat and discard first and last bars
         long firstBar = rhythm.nextBar(onsets.get(0).getTimestamp());
         long lastBar = rhythm.currentBar(onsets.get(onsets.size() - 1).getTimestamp());
-        List<Onset> snapOnsets = onsets.stream()
-                .map(o -> rhythm.getBeat().snap(o, 2, 1))
+        if (grid == null || !grid.matches(rhythm.getBeat(), SNAP_BINARY_SUBDIVISION, SNAP_TERNARY_SUBDIVISION)) {
+            grid = new QuantizationGrid(rhythm.getBeat(), SNAP_BINARY_SUBDIVISION, SNAP_TERNARY_SUBDIVISION);
+        }
+        List<Onset> snapOnsets = grid.snapAll(onsets, snapBuffer).stream()
                 .filter(o -> o.getTimestamp() >= lastLearned
                         && o.getTimestamp() >= firstBar
                         && o.getTimestamp() < lastBar
@@ -109,10 +329,10 @@ public class MelodyLearner {
         // Split
         List<Onset> bass = new ArrayList<>();
         List<Onset> treble = new ArrayList<>();
-        splitter.split(snapOnsets, bass, treble);
+        separator.split(snapOnsets, bass, treble);
 
         long currentBar = -1L;
-        Phrase currentPhrase = null;
+        PackedPhrase.Builder currentPhrase = null;
         double beatDuration = rhythm.getBeat().getDuration();
         for (Onset onset : treble) {
             long bar = rhythm.currentBar(onset.getTimestamp());
@@ -120,24 +340,29 @@ public class MelodyLearner {
                 if (currentPhrase != null) {
                     int barClass = getBarClass(currentBar, rhythm);
                     // Check phrase has a significant amount of melody
-                    if (currentPhrase.getDuration() >= .5 * rhythm.getTimeSignature().getBeats()) {
+                    PackedPhrase phrase = currentPhrase.build();
+                    if (phrase.getDuration() >= .5 * rhythm.getTimeSignature().getBeats()) {
                         LOG.debug("Learning a bar in class {}", barClass);
-                        phrases.get(barClass).add(currentPhrase);
+                        phrases.get(barClass).add(phrase);
+                        indexBar(phrase, barClass);
                     }
                 }
-                currentPhrase = new Phrase();
+                currentPhrase = new PackedPhrase.Builder();
             }
             currentBar = bar;
             double position = (onset.getTimestamp() - currentBar) / beatDuration;
             double duration = (onset.getDuration()) / beatDuration;
-            ScoreElement scoreElement = new ScoreElement(duration, Collections.singleton(onset.getPitch()));
-            currentPhrase.addElement(scoreElement, position);
+            currentPhrase.add(position, duration, onset.getPitch());
+            recentNotes.add(onset);
         }
         if (currentPhrase != null) {
             int barClass = getBarClass(currentBar, rhythm);
             LOG.debug("Learning a bar in class {}", barClass);
-            phrases.get(barClass).add(currentPhrase);
+            PackedPhrase phrase = currentPhrase.build();
+            phrases.get(barClass).add(phrase);
+            indexBar(phrase, barClass);
         }
+        return treble;
     }
 
     /**
@@ -155,7 +380,7 @@ public class MelodyLearner {
      *            RNG
      * @return The list of notes
      */
-    public List<Onset> getRandomBars(long timestamp, int bars, int velocity, Random random) {
+    public List<Onset> getRandomBars(long timestamp, int bars, int velocity, SplittableRandom random) {
         if (bars < 0) {
             throw new IllegalArgumentException("The number of bars cannot be negative");
         }
@@ -164,19 +389,72 @@ public class MelodyLearner {
         }
         timestamp = rhythm.nextBar(timestamp - 1);
         List<Onset> notes = new ArrayList<>();
-        double beatDuration = rhythm.getBeat().getDuration();
         for (int i = 0; i < bars; i++) {
             int barClass = getBarClass(timestamp, rhythm);
-            List<Phrase> barPhrases = phrases.get(barClass);
+            List<PackedPhrase> barPhrases = phrases.get(barClass);
             if (!barPhrases.isEmpty()) {
-                Phrase phrase = barPhrases.get(random.nextInt(barPhrases.size()));
-                for (Phrase.Element phraseElement : phrase) {
-                    long position = Math.round(timestamp + phraseElement.getPosition() * beatDuration);
-                    int duration = Math.toIntExact(
-                            Math.round(phraseElement.getScoreElement().getDuration() * beatDuration));
-                    for (int pitch : phraseElement.getScoreElement().getPitches()) {
-                        notes.add(new Onset(position, duration, pitch, velocity));
-                    }
+                PackedPhrase phrase = barPhrases.get(random.nextInt(barPhrases.size()));
+                addBar(notes, phrase, timestamp, velocity);
+            }
+            timestamp = rhythm.nextBar(timestamp);
+        }
+        return notes;
+    }
+
+    /**
+     * Get a number of bars continuing the most recently learned notes.
+     *
+     * The learned bars most similar to the last learned notes are looked up
+     * in the bar index, leaving out the bars containing those notes, and the
+     * bars learned after one of them, selected randomly, are used. Learned
+     * bars are only used in bars of their same class. If no similar bar is
+     * found, or the bars learned after it do not fit, the remaining bars are
+     * selected randomly as in
+     * {@link #getRandomBars(long, int, int, SplittableRandom)}.
+     *
+     * @param timestamp
+     *            Timestamp of the first melody bar; if the timestamp does not
+     *            match exactly the beginning of a bar, then the next closest
+     *            bar will be the first one
+     * @param bars
+     *            The number of bars
+     * @param velocity
+     *            The velocity of the generated notes
+     * @param random
+     *            RNG
+     * @return The list of notes
+     */
+    public List<Onset> getSimilarBars(long timestamp, int bars, int velocity, SplittableRandom random) {
+        if (bars < 0) {
+            throw new IllegalArgumentException("The number of bars cannot be negative");
+        }
+        if (rhythm == null) {
+            throw new IllegalStateException("No rhythm has been set");
+        }
+        // The newest bars contain the recent notes, so they would always be
+        // the most similar ones
+        int recentId = index.getNextId() - countBars(recentNotes);
+        int[] similar = index.findSimilar(recentNotes, rhythm.getBeat(), SIMILAR_CANDIDATES, recentId);
+        timestamp = rhythm.nextBar(timestamp - 1);
+        int firstBarClass = getBarClass(timestamp, rhythm);
+        int numContinued = 0;
+        for (int id : similar) {
+            if (continues(id + 1, firstBarClass)) {
+                similar[numContinued++] = id;
+            }
+        }
+        int nextId = numContinued > 0 ? similar[random.nextInt(numContinued)] + 1 : -1;
+        List<Onset> notes = new ArrayList<>();
+        for (int i = 0; i < bars; i++) {
+            int barClass = getBarClass(timestamp, rhythm);
+            if (continues(nextId, barClass)) {
+                addBar(notes, index.get(nextId), timestamp, velocity);
+                nextId++;
+            } else {
+                nextId = -1;
+                List<PackedPhrase> barPhrases = phrases.get(barClass);
+                if (!barPhrases.isEmpty()) {
+                    addBar(notes, barPhrases.get(random.nextInt(barPhrases.size())), timestamp, velocity);
                 }
             }
             timestamp = rhythm.nextBar(timestamp);
@@ -184,6 +462,71 @@ public class MelodyLearner {
         return notes;
     }
 
+    /**
+     * Add a learned bar to the index.
+     *
+     * @param phrase
+     *            The bar phrase
+     * @param barClass
+     *            Class of the bar, or -1 if unknown
+     */
+    private void indexBar(PackedPhrase phrase, int barClass) {
+        int id = index.add(phrase);
+        indexedBarClasses[id % INDEX_CAPACITY] = barClass;
+    }
+
+    /**
+     * @param id
+     *            Id of an indexed bar, or -1
+     * @param barClass
+     *            A bar class
+     * @return true if the indexed bar exists and has the given class
+     */
+    private boolean continues(int id, int barClass) {
+        return id >= 0 && index.get(id) != null && indexedBarClasses[id % INDEX_CAPACITY] == barClass;
+    }
+
+    /**
+     * @param onsets
+     *            Sorted sequence of onsets
+     * @return The number of bars of the current rhythm spanned by the onsets
+     */
+    private int countBars(List<Onset> onsets) {
+        int count = 0;
+        long lastBar = Long.MIN_VALUE;
+        for (Onset onset : onsets) {
+            long bar = rhythm.currentBar(onset.getTimestamp());
+            if (bar != lastBar) {
+                count++;
+                lastBar = bar;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Add the notes of a bar phrase.
+     *
+     * @param notes
+     *            List where the notes are added
+     * @param phrase
+     *            The bar phrase
+     * @param timestamp
+     *            Timestamp of the beginning of the bar
+     * @param velocity
+     *            The velocity of the notes
+     */
+    private void addBar(List<Onset> notes, PackedPhrase phrase, long timestamp, int velocity) {
+        double beatDuration = rhythm.getBeat().getDuration();
+        for (int i = 0; i < phrase.size(); i++) {
+            long position = Math.round(timestamp + phrase.getPosition(i) * beatDuration);
+            int duration = Math.toIntExact(Math.round(phrase.getElementDuration(i) * beatDuration));
+            for (int j = 0; j < phrase.getPitchCount(i); j++) {
+                notes.add(new Onset(position, duration, phrase.getPitch(i, j), velocity));
+            }
+        }
+    }
+
     /**
      * @param timestamp
      *            The timestamp
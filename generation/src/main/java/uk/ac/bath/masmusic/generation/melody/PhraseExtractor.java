@@ -1,9 +1,11 @@
 package uk.ac.bath.masmusic.generation.melody;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.PriorityQueue;
@@ -13,12 +15,21 @@ import java.util.stream.Collectors;
 import uk.ac.bath.masmusic.common.Beat;
 import uk.ac.bath.masmusic.common.Onset;
 import uk.ac.bath.masmusic.common.Phrase;
+import uk.ac.bath.masmusic.common.QuantizationGrid;
 import uk.ac.bath.masmusic.common.Rhythm;
 import uk.ac.bath.masmusic.common.ScoreElement;
 
 /**
  * Extracts {@link Phrase}s from sequences of {@link Onset}s.
  *
+ * Phrases can be extracted from a complete sequence of onsets with
+ * {@link #extractPhrases(List, Rhythm)}, or incrementally with
+ * {@link #update(Collection, Rhythm, long)}. In the latter case, the extractor
+ * keeps the phrases still open between calls, so each update only processes
+ * newly received onsets and returns the phrases that have been closed. The
+ * state of an incremental extraction can be saved with {@link #getSnapshot()}
+ * and restored later with {@link #restore(Snapshot)}.
+ *
  * @author Javier Dehesa
  *
  */
@@ -41,12 +52,139 @@ public class PhraseExtractor {
     /** Allowed error for position matching. */
     private static final float POSITION_EPS = 1f / (1 << (SUBDIVISIONS + 2));
 
-    /** Treble/bass splitter. */
-    private final TrebleBassSplitter splitter = new TrebleBassSplitter();
+    /** Treble/bass voice separator. */
+    private final VoiceSeparator separator = new VoiceSeparator();
+
+    /** Quantization grid of the last used beat. */
+    private QuantizationGrid grid;
+
+    /** Received onsets not processed yet. */
+    private final List<Onset> pendingOnsets;
+
+    /** Trackers of the open phrases. */
+    private final PriorityQueue<PhraseExtractorTracker> trackers;
+
+    /** Timestamp of position zero of the open phrases. */
+    private long baseTimestamp;
+
+    /** Current watermark (no onsets before it are accepted). */
+    private long watermark;
+
+    /** Number of onsets discarded for being received after the watermark. */
+    private long lateOnsets;
+
+    /**
+     * Snapshot of the state of an incremental extraction.
+     *
+     * Snapshots are immutable.
+     */
+    public static final class Snapshot {
+
+        /** Timestamp of position zero of the open phrases. */
+        private final long baseTimestamp;
+
+        /** Watermark of the extraction. */
+        private final long watermark;
+
+        /** Received onsets not processed yet. */
+        private final List<Onset> pendingOnsets;
+
+        /** Open phrases. */
+        private final List<Phrase> openPhrases;
+
+        /** Initial position of each open phrase in beats. */
+        private final double[] openPhrasePositions;
+
+        /**
+         * Constructor.
+         *
+         * @param baseTimestamp
+         *            Timestamp of position zero of the open phrases
+         * @param watermark
+         *            Watermark of the extraction
+         * @param pendingOnsets
+         *            Received onsets not processed yet
+         * @param openPhrases
+         *            Open phrases
+         * @param openPhrasePositions
+         *            Initial position of each open phrase in beats
+         */
+        public Snapshot(long baseTimestamp, long watermark, List<Onset> pendingOnsets, List<Phrase> openPhrases,
+                double[] openPhrasePositions) {
+            if (openPhrases.size() != openPhrasePositions.length) {
+                throw new IllegalArgumentException("Every open phrase must have a position");
+            }
+            this.baseTimestamp = baseTimestamp;
+            this.watermark = watermark;
+            this.pendingOnsets = Collections.unmodifiableList(new ArrayList<>(pendingOnsets));
+            List<Phrase> openPhrasesCopy = new ArrayList<>(openPhrases.size());
+            for (Phrase phrase : openPhrases) {
+                Phrase copy = new Phrase();
+                for (Phrase.Element element : phrase) {
+                    copy.addElement(element.getScoreElement(), element.getPosition());
+                }
+                openPhrasesCopy.add(copy);
+            }
+            this.openPhrases = Collections.unmodifiableList(openPhrasesCopy);
+            this.openPhrasePositions = openPhrasePositions.clone();
+        }
+
+        /**
+         * @return The timestamp of position zero of the open phrases
+         */
+        public long getBaseTimestamp() {
+            return baseTimestamp;
+        }
+
+        /**
+         * @return The watermark of the extraction
+         */
+        public long getWatermark() {
+            return watermark;
+        }
+
+        /**
+         * @return The received onsets not processed yet
+         */
+        public List<Onset> getPendingOnsets() {
+            return pendingOnsets;
+        }
+
+        /**
+         * @return The open phrases (they must not be modified)
+         */
+        public List<Phrase> getOpenPhrases() {
+            return openPhrases;
+        }
+
+        /**
+         * @param index
+         *            Index of an open phrase
+         * @return The initial position of the open phrase in beats
+         */
+        public double getOpenPhrasePosition(int index) {
+            return openPhrasePositions[index];
+        }
+
+    }
+
+    /**
+     * Constructor.
+     */
+    public PhraseExtractor() {
+        grid = null;
+        pendingOnsets = new ArrayList<>();
+        trackers = new PriorityQueue<>();
+        baseTimestamp = 0;
+        watermark = Long.MIN_VALUE;
+        lateOnsets = 0;
+    }
 
     /**
      * Extract phrases from a sequence of onsets.
      *
+     * This discards any state from previous incremental updates.
+     *
      * @param onsets
      *            A sequence of onsets
      * @param rhythm
@@ -54,37 +192,178 @@ public class PhraseExtractor {
      * @return Extracted phrases
      */
     public List<Phrase> extractPhrases(List<Onset> onsets, Rhythm rhythm) {
-        // Snap onsets to the detected rhythm and sort
-        List<Onset> onsetsSnap = new ArrayList<>(onsets.size());
+        reset();
+        List<Phrase> phrases = update(onsets, rhythm, Long.MAX_VALUE);
+        reset();
+        return phrases;
+    }
+
+    /**
+     * Extract phrases incrementally.
+     *
+     * The given onsets are added to the ones received in previous calls. The
+     * watermark indicates that no onset with an earlier timestamp will be
+     * received afterwards; onsets received with a timestamp before the
+     * previous watermark are discarded. Only onsets before the watermark are
+     * processed, and only phrases that cannot be continued by any later onset
+     * are returned.
+     *
+     * If the beat of the rhythm changes, every open phrase is closed.
+     *
+     * @param onsets
+     *            Newly received onsets, in any order
+     * @param rhythm
+     *            Rhythm at which the onsets were played
+     * @param watermark
+     *            Timestamp before which every onset has been received
+     * @return Phrases closed since the previous update
+     */
+    public List<Phrase> update(Collection<Onset> onsets, Rhythm rhythm, long watermark) {
+        List<Phrase> extractedPhrases = new ArrayList<>();
+        Beat beat = rhythm.getBeat();
+        if (grid != null && !grid.matches(beat, SUBDIVISIONS, 0)) {
+            // Positions are not comparable anymore
+            while (!trackers.isEmpty()) {
+                extractedPhrases.add(trackers.poll().getPhrase());
+            }
+        }
+        QuantizationGrid grid = getGrid(beat);
         for (Onset onset : onsets) {
-            Onset snapped = snapOnsetToBeat(onset, rhythm.getBeat(), SUBDIVISIONS);
-            if (snapped.getDuration() > 0) {
-                onsetsSnap.add(snapped);
+            if (onset.getTimestamp() < this.watermark) {
+                lateOnsets++;
+            } else {
+                pendingOnsets.add(onset);
+            }
+        }
+        if (watermark > this.watermark) {
+            this.watermark = watermark;
+        }
+
+        // Snap onsets before the watermark (snapping keeps the order, so later
+        // onsets cannot be snapped before these ones)
+        boolean unbounded = this.watermark == Long.MAX_VALUE;
+        long snapWatermark = unbounded ? Long.MAX_VALUE : grid.closestSubbeat(this.watermark);
+        List<Onset> onsetsSnap = new ArrayList<>();
+        Iterator<Onset> pendingIt = pendingOnsets.iterator();
+        while (pendingIt.hasNext()) {
+            Onset onset = pendingIt.next();
+            Onset snapped = grid.snap(onset);
+            if (snapped.getTimestamp() < snapWatermark) {
+                if (snapped.getDuration() > 0) {
+                    onsetsSnap.add(snapped);
+                }
+                pendingIt.remove();
             }
         }
         onsetsSnap.sort(Comparator.naturalOrder());
         List<Onset> bass = new ArrayList<>();
         List<Onset> treble = new ArrayList<>();
-        splitter.split(onsetsSnap, bass, treble);
+        separator.split(onsetsSnap, bass, treble);
 
         // TODO Check whether this is okay
         // List<Onset> phrasesSource = onsetsSnap;
         List<Onset> phrasesSource = treble;
 
-        if (phrasesSource.isEmpty()) {
-            return Collections.emptyList();
+        if (!phrasesSource.isEmpty()) {
+            if (trackers.isEmpty()) {
+                baseTimestamp = phrasesSource.get(0).getTimestamp();
+            }
+            track(phrasesSource, beat, extractedPhrases);
         }
 
-        // Do tracking
-        List<Phrase> extractedPhrases = new ArrayList<>();
-        Beat beat = rhythm.getBeat();
-        long baseTimestamp = phrasesSource.get(0).getTimestamp();
+        // Finalize trackers that no later onset can continue
+        double watermarkPosition = unbounded ? Double.POSITIVE_INFINITY
+                : (snapWatermark - baseTimestamp) / ((double) beat.getDuration());
+        closeTrackers(watermarkPosition, extractedPhrases);
+
+        // Return only phrases of at least one bar
+        double barBeats = rhythm.getTimeSignature().getBeats() - POSITION_EPS;
+        return extractedPhrases.stream().filter(p -> p.getDuration() > barBeats).collect(Collectors.toList());
+    }
+
+    /**
+     * Discard every open phrase, pending onset and active voice.
+     */
+    public void reset() {
+        pendingOnsets.clear();
+        trackers.clear();
+        separator.reset();
+        baseTimestamp = 0;
+        watermark = Long.MIN_VALUE;
+    }
+
+    /**
+     * @return A snapshot of the state of the incremental extraction
+     */
+    public Snapshot getSnapshot() {
+        List<PhraseExtractorTracker> openTrackers = new ArrayList<>(trackers);
+        openTrackers.sort(Comparator.naturalOrder());
+        List<Phrase> openPhrases = new ArrayList<>(openTrackers.size());
+        double[] openPhrasePositions = new double[openTrackers.size()];
+        for (int i = 0; i < openTrackers.size(); i++) {
+            openPhrases.add(openTrackers.get(i).getPhrase());
+            openPhrasePositions[i] = openTrackers.get(i).getInitialPosition();
+        }
+        return new Snapshot(baseTimestamp, watermark, pendingOnsets, openPhrases, openPhrasePositions);
+    }
+
+    /**
+     * Restore the state of an incremental extraction, discarding the current
+     * one.
+     *
+     * The active voices are not part of the state, so they are separated
+     * again from the onsets received after restoring.
+     *
+     * @param snapshot
+     *            Snapshot of the state of the extraction
+     */
+    public void restore(Snapshot snapshot) {
+        reset();
+        grid = null;
+        pendingOnsets.addAll(snapshot.getPendingOnsets());
+        List<Phrase> openPhrases = snapshot.getOpenPhrases();
+        for (int i = 0; i < openPhrases.size(); i++) {
+            double initialPosition = snapshot.getOpenPhrasePosition(i);
+            PhraseExtractorTracker tracker = new PhraseExtractorTracker(initialPosition);
+            for (Phrase.Element element : openPhrases.get(i)) {
+                tracker.addElement(element.getScoreElement(), initialPosition + element.getPosition());
+            }
+            trackers.add(tracker);
+        }
+        baseTimestamp = snapshot.getBaseTimestamp();
+        watermark = snapshot.getWatermark();
+    }
+
+    /**
+     * @return The number of phrases currently open
+     */
+    public int getOpenPhraseCount() {
+        return trackers.size();
+    }
+
+    /**
+     * @return The number of onsets discarded for being received too late
+     */
+    public long getLateOnsetCount() {
+        return lateOnsets;
+    }
+
+    /**
+     * Add a sorted sequence of onsets to the open phrases.
+     *
+     * @param phrasesSource
+     *            Sorted sequence of snapped onsets
+     * @param beat
+     *            Beat to which the onsets were snapped
+     * @param extractedPhrases
+     *            List where closed phrases are added
+     */
+    private void track(List<Onset> phrasesSource, Beat beat, List<Phrase> extractedPhrases) {
         Set<Integer> pitches = new HashSet<>();
         ListIterator<Onset> it = phrasesSource.listIterator();
-        PriorityQueue<PhraseExtractorTracker> trackers = new PriorityQueue<>();
         List<PhraseExtractorTracker> reintroduceTrackers = new ArrayList<>();
         Onset onset = it.next();
-        do {
+        while (onset != null) {
             // Aggregate similar onsets in one score element
             long timestamp = onset.getTimestamp();
             int duration = onset.getDuration();
@@ -102,12 +381,8 @@ public class PhraseExtractor {
             ScoreElement scoreElement = new ScoreElement(elementDuration, pitches);
             pitches.clear();
             // Finalize trackers further than 1 beat behind
+            closeTrackers(elementPosition, extractedPhrases);
             PhraseExtractorTracker tracker = trackers.poll();
-            while ((tracker != null)
-                    && ((elementPosition - tracker.getPosition()) > (PHRASE_POSITION_DISTANCE + POSITION_EPS))) {
-                extractedPhrases.add(tracker.getPhrase());
-                tracker = trackers.poll();
-            }
             // Skip trackers that are behind but do not match the pitch
             while ((tracker != null)
                     && (tracker.getPosition() <= (elementPosition + POSITION_EPS))
@@ -127,16 +402,40 @@ public class PhraseExtractor {
             tracker.addElement(scoreElement, elementPosition);
             trackers.addAll(reintroduceTrackers);
             reintroduceTrackers.clear();
-        } while (it.hasNext());
+        }
+    }
 
-        // Add remaining phrases
-        while (!trackers.isEmpty()) {
+    /**
+     * Finalize the trackers further than the phrase distance behind a
+     * position.
+     *
+     * @param position
+     *            Position in beats
+     * @param extractedPhrases
+     *            List where closed phrases are added
+     */
+    private void closeTrackers(double position, List<Phrase> extractedPhrases) {
+        while (!trackers.isEmpty()
+                && ((position - trackers.peek().getPosition()) > (PHRASE_POSITION_DISTANCE + POSITION_EPS))) {
             extractedPhrases.add(trackers.poll().getPhrase());
         }
+    }
 
-        // Return only phrases of at least one bar
-        double barBeats = rhythm.getTimeSignature().getBeats() - POSITION_EPS;
-        return extractedPhrases.stream().filter(p -> p.getDuration() > barBeats).collect(Collectors.toList());
+    /**
+     * Get the quantization grid for the given beat.
+     *
+     * The grid is only rebuilt when the beat changes.
+     *
+     * @param beat
+     *            Beat to which onsets are snapped
+     * @return The quantization grid for the beat
+     */
+    private QuantizationGrid getGrid(Beat beat) {
+        if (grid == null || !grid.matches(beat, SUBDIVISIONS, 0)) {
+            int subbeatDuration = Math.round(beat.getDuration() / (float) (1 << SUBDIVISIONS));
+            grid = new QuantizationGrid(beat, SUBDIVISIONS, 0, subbeatDuration);
+        }
+        return grid;
     }
 
     /**
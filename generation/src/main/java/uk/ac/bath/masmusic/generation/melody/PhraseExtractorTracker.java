@@ -58,6 +58,13 @@ public class PhraseExtractorTracker implements Comparable<PhraseExtractorTracker
         return phrase;
     }
 
+    /**
+     * @return The initial position of the tracker in beats
+     */
+    public double getInitialPosition() {
+        return initialPosition;
+    }
+
     /**
      * @return The position of the tracker in beats
      */
@@ -0,0 +1,516 @@
+package uk.ac.bath.masmusic.generation.melody;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import uk.ac.bath.masmusic.common.Beat;
+import uk.ac.bath.masmusic.common.Onset;
+import uk.ac.bath.masmusic.common.PackedPhrase;
+import uk.ac.bath.masmusic.common.Phrase;
+import uk.ac.bath.masmusic.common.ScoreElement;
+
+/**
+ * Index of phrases for similarity retrieval.
+ *
+ * The melodic line of each phrase (the highest pitch of each element) is
+ * converted into a sequence of tokens made of the interval from the previous
+ * note and the duration of the note, and every n-gram of tokens is stored in
+ * an inverted list. Queries count the n-grams shared with each stored phrase
+ * through the inverted lists, so only phrases with some common n-gram are
+ * visited.
+ *
+ * The index has a fixed capacity, evicting the oldest phrases when it is full.
+ * Each phrase receives a sequential id when added, so phrases added
+ * consecutively have consecutive ids. The implementation is not thread-safe.
+ *
+ * @author Javier Dehesa
+ */
+public class PhraseIndex {
+
+    /** Default length of the indexed n-grams. */
+    public static final int DEFAULT_NGRAM_LENGTH = 3;
+
+    /** Number of bits of the interval in a token. */
+    private static final int INTERVAL_BITS = 6;
+
+    /** Number of bits of the duration in a token. */
+    private static final int DURATION_BITS = 6;
+
+    /** Number of bits of a token. */
+    private static final int TOKEN_BITS = INTERVAL_BITS + DURATION_BITS;
+
+    /** Maximum n-gram length. */
+    private static final int MAX_NGRAM_LENGTH = Long.SIZE / TOKEN_BITS;
+
+    /** Maximum absolute interval (larger intervals are clamped). */
+    private static final int MAX_INTERVAL = (1 << (INTERVAL_BITS - 1)) - 1;
+
+    /** Maximum quantized duration (larger durations are clamped). */
+    private static final int MAX_DURATION = (1 << DURATION_BITS) - 1;
+
+    /** Duration quantization steps per beat. */
+    private static final int DURATION_STEPS = 4;
+
+    /** Ids of the phrases with a given n-gram, in increasing order. */
+    private static class Postings {
+        int[] ids = new int[4];
+        int start = 0;
+        int end = 0;
+
+        /**
+         * @param id
+         *            Added id, greater than every id in the list
+         * @param oldestId
+         *            Oldest id still stored in the index
+         */
+        void add(int id, int oldestId) {
+            if (end > start && ids[end - 1] == id) {
+                return;
+            }
+            trim(oldestId);
+            if (end == ids.length) {
+                if (start > 0) {
+                    System.arraycopy(ids, start, ids, 0, end - start);
+                    end -= start;
+                    start = 0;
+                } else {
+                    ids = Arrays.copyOf(ids, ids.length * 2);
+                }
+            }
+            ids[end++] = id;
+        }
+
+        /**
+         * @param oldestId
+         *            Oldest id still stored in the index
+         */
+        void trim(int oldestId) {
+            while (start < end && ids[start] < oldestId) {
+                start++;
+            }
+        }
+
+        boolean isEmpty() {
+            return start == end;
+        }
+    }
+
+    /** Maximum number of stored phrases. */
+    private final int capacity;
+
+    /** Length of the indexed n-grams. */
+    private final int ngramLength;
+
+    /** Stored phrases by slot ({@code id % capacity}). */
+    private final PackedPhrase[] phrases;
+
+    /** Inverted lists by n-gram. */
+    private final Map<Long, Postings> postings;
+
+    /** Id of the next added phrase. */
+    private int nextId;
+
+    /** Scores of the phrases by slot. */
+    private final int[] scores;
+
+    /** Slots with a non-zero score. */
+    private final int[] scoredSlots;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity
+     *            Maximum number of stored phrases
+     */
+    public PhraseIndex(int capacity) {
+        this(capacity, DEFAULT_NGRAM_LENGTH);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param capacity
+     *            Maximum number of stored phrases
+     * @param ngramLength
+     *            Length of the indexed n-grams
+     */
+    public PhraseIndex(int capacity, int ngramLength) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity must be positive");
+        }
+        if (ngramLength < 1 || ngramLength > MAX_NGRAM_LENGTH) {
+            throw new IllegalArgumentException("The n-gram length must be between 1 and " + MAX_NGRAM_LENGTH);
+        }
+        this.capacity = capacity;
+        this.ngramLength = ngramLength;
+        this.phrases = new PackedPhrase[capacity];
+        this.postings = new HashMap<>();
+        this.nextId = 0;
+        this.scores = new int[capacity];
+        this.scoredSlots = new int[capacity];
+    }
+
+    /**
+     * @return The number of stored phrases
+     */
+    public int size() {
+        return Math.min(nextId, capacity);
+    }
+
+    /**
+     * @return The capacity of the index
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return The id that the next added phrase will receive
+     */
+    public int getNextId() {
+        return nextId;
+    }
+
+    /**
+     * Add a phrase to the index, evicting the oldest one if it is full.
+     *
+     * @param phrase
+     *            The added phrase
+     * @return The id of the phrase
+     */
+    public int add(Phrase phrase) {
+        return add(PackedPhrase.fromPhrase(phrase));
+    }
+
+    /**
+     * Add a phrase to the index, evicting the oldest one if it is full.
+     *
+     * @param phrase
+     *            The added phrase
+     * @return The id of the phrase
+     */
+    public int add(PackedPhrase phrase) {
+        int id = nextId++;
+        phrases[id % capacity] = phrase;
+        int oldestId = oldestId();
+        for (long ngram : ngrams(phrase)) {
+            postings.computeIfAbsent(ngram, k -> new Postings()).add(id, oldestId);
+        }
+        if (nextId % capacity == 0) {
+            // Remove inverted lists of evicted phrases only
+            Iterator<Postings> it = postings.values().iterator();
+            while (it.hasNext()) {
+                Postings ngramPostings = it.next();
+                ngramPostings.trim(oldestId);
+                if (ngramPostings.isEmpty()) {
+                    it.remove();
+                }
+            }
+        }
+        return id;
+    }
+
+    /**
+     * @param id
+     *            A phrase id
+     * @return The phrase with the given id, or null if it is not stored
+     */
+    public PackedPhrase get(int id) {
+        if (id < oldestId() || id >= nextId) {
+            return null;
+        }
+        return phrases[id % capacity];
+    }
+
+    /**
+     * Get the phrases with the given ids.
+     *
+     * @param ids
+     *            Phrase ids
+     * @return The stored phrases with the given ids
+     */
+    public List<PackedPhrase> getAll(int[] ids) {
+        List<PackedPhrase> result = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            PackedPhrase phrase = get(id);
+            if (phrase != null) {
+                result.add(phrase);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return Every stored phrase, from the oldest to the newest
+     */
+    public List<PackedPhrase> getAll() {
+        List<PackedPhrase> result = new ArrayList<>(size());
+        for (int id = oldestId(); id < nextId; id++) {
+            result.add(phrases[id % capacity]);
+        }
+        return result;
+    }
+
+    /**
+     * Remove every phrase from the index.
+     */
+    public void clear() {
+        Arrays.fill(phrases, null);
+        postings.clear();
+        nextId = 0;
+    }
+
+    /**
+     * Find the stored phrases most similar to a given phrase.
+     *
+     * @param query
+     *            Query phrase
+     * @param k
+     *            Maximum number of results
+     * @return The ids of the stored phrases sharing most n-grams with the
+     *         query, from most to least similar (most recent first in case of
+     *         tie)
+     */
+    public int[] findSimilar(Phrase query, int k) {
+        int[] pitches = new int[query.size()];
+        double[] durations = new double[query.size()];
+        int length = melodicLine(query, pitches, durations);
+        return findSimilar(pitches, durations, length, k, nextId);
+    }
+
+    /**
+     * Find the stored phrases most similar to a sequence of onsets.
+     *
+     * Onsets starting at the same time are considered a single note with the
+     * highest pitch.
+     *
+     * @param onsets
+     *            Sorted sequence of onsets
+     * @param beat
+     *            Beat at which the onsets were played
+     * @param k
+     *            Maximum number of results
+     * @return The ids of the stored phrases sharing most n-grams with the
+     *         query, from most to least similar (most recent first in case of
+     *         tie)
+     */
+    public int[] findSimilar(List<Onset> onsets, Beat beat, int k) {
+        return findSimilar(onsets, beat, k, nextId);
+    }
+
+    /**
+     * Find the stored phrases older than a given one most similar to a
+     * sequence of onsets.
+     *
+     * Onsets starting at the same time are considered a single note with the
+     * highest pitch.
+     *
+     * @param onsets
+     *            Sorted sequence of onsets
+     * @param beat
+     *            Beat at which the onsets were played
+     * @param k
+     *            Maximum number of results
+     * @param beforeId
+     *            Only phrases with a lower id are considered
+     * @return The ids of the stored phrases sharing most n-grams with the
+     *         query, from most to least similar (most recent first in case of
+     *         tie)
+     */
+    public int[] findSimilar(List<Onset> onsets, Beat beat, int k, int beforeId) {
+        int[] pitches = new int[onsets.size()];
+        double[] durations = new double[onsets.size()];
+        int length = 0;
+        long lastTimestamp = Long.MIN_VALUE;
+        for (Onset onset : onsets) {
+            if (length > 0 && onset.getTimestamp() == lastTimestamp) {
+                pitches[length - 1] = Math.max(pitches[length - 1], onset.getPitch());
+            } else {
+                pitches[length] = onset.getPitch();
+                durations[length] = onset.getDuration() / (double) beat.getDuration();
+                length++;
+            }
+            lastTimestamp = onset.getTimestamp();
+        }
+        return findSimilar(pitches, durations, length, k, beforeId);
+    }
+
+    /**
+     * Find the stored phrases most similar to a melodic line.
+     *
+     * @param pitches
+     *            Pitches of the line
+     * @param durations
+     *            Durations of the notes of the line in beats
+     * @param length
+     *            Number of notes in the line
+     * @param k
+     *            Maximum number of results
+     * @param beforeId
+     *            Only phrases with a lower id are considered
+     * @return The ids of the most similar stored phrases
+     */
+    private int[] findSimilar(int[] pitches, double[] durations, int length, int k, int beforeId) {
+        if (k < 0) {
+            throw new IllegalArgumentException("The number of results cannot be negative");
+        }
+        int oldestId = oldestId();
+        int numScored = 0;
+        for (int end = ngramLength + 1; end <= length; end++) {
+            Postings ngramPostings = postings.get(ngram(pitches, durations, end - ngramLength - 1));
+            if (ngramPostings == null) {
+                continue;
+            }
+            for (int j = ngramPostings.start; j < ngramPostings.end; j++) {
+                int id = ngramPostings.ids[j];
+                if (id < oldestId) {
+                    continue;
+                }
+                if (id >= beforeId) {
+                    // Ids are sorted
+                    break;
+                }
+                int slot = id % capacity;
+                if (scores[slot] == 0) {
+                    scoredSlots[numScored++] = slot;
+                }
+                scores[slot]++;
+            }
+        }
+        // Select best results
+        int numResults = Math.min(k, numScored);
+        int[] results = new int[numResults];
+        for (int r = 0; r < numResults; r++) {
+            int best = r;
+            for (int j = r + 1; j < numScored; j++) {
+                if (isBetter(scoredSlots[j], scoredSlots[best])) {
+                    best = j;
+                }
+            }
+            int bestSlot = scoredSlots[best];
+            scoredSlots[best] = scoredSlots[r];
+            scoredSlots[r] = bestSlot;
+            results[r] = idOf(bestSlot);
+        }
+        for (int j = 0; j < numScored; j++) {
+            scores[scoredSlots[j]] = 0;
+        }
+        return results;
+    }
+
+    /**
+     * @param slot
+     *            A scored slot
+     * @param other
+     *            Another scored slot
+     * @return true if the first slot has a higher score, or the same score and
+     *         a more recent phrase
+     */
+    private boolean isBetter(int slot, int other) {
+        if (scores[slot] != scores[other]) {
+            return scores[slot] > scores[other];
+        }
+        return idOf(slot) > idOf(other);
+    }
+
+    /**
+     * @param slot
+     *            A slot with a stored phrase
+     * @return The id of the phrase stored in the slot
+     */
+    private int idOf(int slot) {
+        int lastSlot = (nextId - 1) % capacity;
+        return nextId - 1 - Math.floorMod(lastSlot - slot, capacity);
+    }
+
+    /**
+     * @return The id of the oldest stored phrase
+     */
+    private int oldestId() {
+        return Math.max(nextId - capacity, 0);
+    }
+
+    /**
+     * @param phrase
+     *            A phrase
+     * @return Every n-gram in the melodic line of the phrase
+     */
+    private long[] ngrams(PackedPhrase phrase) {
+        int[] pitches = new int[phrase.size()];
+        double[] durations = new double[phrase.size()];
+        int length = 0;
+        for (int i = 0; i < phrase.size(); i++) {
+            int pitchCount = phrase.getPitchCount(i);
+            if (pitchCount > 0) {
+                pitches[length] = phrase.getPitch(i, pitchCount - 1);
+                durations[length] = phrase.getElementDuration(i);
+                length++;
+            }
+        }
+        int numNgrams = Math.max(length - ngramLength, 0);
+        long[] ngrams = new long[numNgrams];
+        for (int start = 0; start < numNgrams; start++) {
+            ngrams[start] = ngram(pitches, durations, start);
+        }
+        return ngrams;
+    }
+
+    /**
+     * Extract the melodic line of a phrase.
+     *
+     * The line is made of the highest pitch of each element, skipping
+     * elements without pitches.
+     *
+     * @param phrase
+     *            A phrase
+     * @param pitches
+     *            Array where the pitches of the line are written
+     * @param durations
+     *            Array where the durations of the notes are written
+     * @return The number of notes in the line
+     */
+    private static int melodicLine(Phrase phrase, int[] pitches, double[] durations) {
+        int length = 0;
+        for (Phrase.Element element : phrase) {
+            ScoreElement scoreElement = element.getScoreElement();
+            if (scoreElement.getPitches().isEmpty()) {
+                continue;
+            }
+            int highest = Integer.MIN_VALUE;
+            for (int pitch : scoreElement.getPitches()) {
+                highest = Math.max(highest, pitch);
+            }
+            pitches[length] = highest;
+            durations[length] = scoreElement.getDuration();
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * Pack the n-gram of tokens following a note.
+     *
+     * @param pitches
+     *            Pitches of the melodic line
+     * @param durations
+     *            Durations of the notes in beats
+     * @param start
+     *            Index of the note preceding the first token
+     * @return The packed n-gram
+     */
+    private long ngram(int[] pitches, double[] durations, int start) {
+        long ngram = 0;
+        for (int i = start + 1; i <= start + ngramLength; i++) {
+            int interval = Math.max(Math.min(pitches[i] - pitches[i - 1], MAX_INTERVAL), -MAX_INTERVAL);
+            int duration = (int) Math.min(Math.round(durations[i] * DURATION_STEPS), MAX_DURATION);
+            int token = ((interval & ((1 << INTERVAL_BITS) - 1)) << DURATION_BITS) | duration;
+            ngram = (ngram << TOKEN_BITS) | token;
+        }
+        return ngram;
+    }
+
+}
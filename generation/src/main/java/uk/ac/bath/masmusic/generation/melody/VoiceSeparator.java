@@ -0,0 +1,257 @@
+package uk.ac.bath.masmusic.generation.melody;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.TreeSet;
+
+import uk.ac.bath.masmusic.common.Onset;
+
+/**
+ * Online treble/bass voice separator.
+ *
+ * This is a streaming alternative to {@link TrebleBassSplitter}. Onsets are
+ * assigned one by one to the active voice with the closest last pitch, or to a
+ * new voice if none is close enough. The number of active voices is bounded,
+ * retiring the least recently used one when necessary. Each onset is
+ * classified as treble or bass when it is added, using exponentially weighted
+ * pitch means of the voices, so voices that move to another register are
+ * classified by where they are now. The separator state persists between
+ * calls and no onset is processed twice.
+ *
+ * Voices are indexed by last pitch, by mean pitch and by use, so adding an
+ * onset takes logarithmic time in the number of active voices. The
+ * implementation is not thread-safe.
+ *
+ * @author Javier Dehesa
+ */
+public class VoiceSeparator {
+
+    /** Default maximum number of active voices. */
+    public static final int DEFAULT_MAX_VOICES = 8;
+
+    /** Maximum pitch distance to continue a voice. */
+    private static final int VOICE_PITCH_DISTANCE = 7;
+
+    /** Pitch distance between voice means to separate treble and bass. */
+    private static final int SEPARATION_PITCH_DISTANCE = 12;
+
+    /** Lowest average pitch of a treble-only melody. */
+    private static final int TREBLE_PITCH = 60;
+
+    /** Weight of each new pitch in the mean pitch of its voice. */
+    private static final double MEAN_PITCH_WEIGHT = .25;
+
+    /** Voice order by last pitch, then by creation. */
+    private static final Comparator<Voice> VOICE_ORDER = Comparator.<Voice> comparingInt(v -> v.lastPitch)
+            .thenComparingInt(v -> v.id);
+
+    /** Voice order by mean pitch, then by creation. */
+    private static final Comparator<Voice> MEAN_ORDER = Comparator.<Voice> comparingDouble(v -> v.meanPitch)
+            .thenComparingInt(v -> v.id);
+
+    /**
+     * An active voice.
+     */
+    private static class Voice {
+        int id;
+        int lastPitch;
+        double meanPitch;
+    }
+
+    /** Maximum number of active voices. */
+    private final int maxVoices;
+
+    /** Active voices sorted by last pitch. */
+    private final TreeSet<Voice> voices;
+
+    /** Active voices sorted by mean pitch. */
+    private final TreeSet<Voice> voicesByMean;
+
+    /** Active voices from least to most recently used. */
+    private final LinkedHashSet<Voice> voicesByUse;
+
+    /** Voice used to look up the active voices. */
+    private final Voice probe;
+
+    /** Sum of the mean pitches of every active voice. */
+    private double meanPitchSum;
+
+    /** Id of the next created voice. */
+    private int nextId;
+
+    /**
+     * Constructor.
+     */
+    public VoiceSeparator() {
+        this(DEFAULT_MAX_VOICES);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maxVoices
+     *            Maximum number of active voices
+     */
+    public VoiceSeparator(int maxVoices) {
+        if (maxVoices < 1) {
+            throw new IllegalArgumentException("The maximum number of voices must be positive");
+        }
+        this.maxVoices = maxVoices;
+        this.voices = new TreeSet<>(VOICE_ORDER);
+        this.voicesByMean = new TreeSet<>(MEAN_ORDER);
+        this.voicesByUse = new LinkedHashSet<>();
+        this.probe = new Voice();
+        this.meanPitchSum = 0;
+        this.nextId = 0;
+    }
+
+    /**
+     * Splits the bass and treble parts of a sequence of onsets.
+     *
+     * The onsets are added to the separator in order, so they should be
+     * sorted and follow the previously added ones. The order of the onsets is
+     * kept in the output parts.
+     *
+     * @param onsets
+     *            Sequence of onsets to split
+     * @param bass
+     *            The split bass part
+     * @param treble
+     *            The split treble part
+     */
+    public void split(List<Onset> onsets, List<Onset> bass, List<Onset> treble) {
+        bass.clear();
+        treble.clear();
+        for (Onset onset : onsets) {
+            if (add(onset)) {
+                treble.add(onset);
+            } else {
+                bass.add(onset);
+            }
+        }
+    }
+
+    /**
+     * Add an onset to the separator.
+     *
+     * @param onset
+     *            The added onset
+     * @return true if the onset belongs to the treble part, false if it
+     *         belongs to the bass part
+     */
+    public boolean add(Onset onset) {
+        int pitch = onset.getPitch();
+        Voice voice = closestVoice(pitch);
+        if (voice == null || Math.abs(voice.lastPitch - pitch) > VOICE_PITCH_DISTANCE) {
+            if (voices.size() >= maxVoices) {
+                retireVoice();
+            }
+            voice = new Voice();
+            voice.id = nextId++;
+            voice.meanPitch = pitch;
+        } else {
+            removeVoice(voice);
+            voice.meanPitch += MEAN_PITCH_WEIGHT * (pitch - voice.meanPitch);
+        }
+        voice.lastPitch = pitch;
+        voices.add(voice);
+        voicesByMean.add(voice);
+        voicesByUse.add(voice);
+        meanPitchSum += voice.meanPitch;
+        return isTreble(voice);
+    }
+
+    /**
+     * @return The number of active voices
+     */
+    public int getVoiceCount() {
+        return voices.size();
+    }
+
+    /**
+     * Remove every active voice.
+     */
+    public void reset() {
+        voices.clear();
+        voicesByMean.clear();
+        voicesByUse.clear();
+        meanPitchSum = 0;
+    }
+
+    /**
+     * Find the active voice with the closest last pitch.
+     *
+     * Ties are resolved in favor of the oldest voice.
+     *
+     * @param pitch
+     *            A pitch
+     * @return The closest voice, or null if there are no active voices
+     */
+    private Voice closestVoice(int pitch) {
+        probe.lastPitch = pitch;
+        probe.id = Integer.MIN_VALUE;
+        Voice above = voices.ceiling(probe);
+        Voice below = voices.lower(probe);
+        if (below != null) {
+            // Oldest voice with the same last pitch
+            probe.lastPitch = below.lastPitch;
+            below = voices.ceiling(probe);
+        }
+        if (above == null) {
+            return below;
+        }
+        if (below == null) {
+            return above;
+        }
+        int aboveDistance = above.lastPitch - pitch;
+        int belowDistance = pitch - below.lastPitch;
+        if (aboveDistance != belowDistance) {
+            return aboveDistance < belowDistance ? above : below;
+        }
+        return above.id < below.id ? above : below;
+    }
+
+    /**
+     * Retire the least recently used voice.
+     */
+    private void retireVoice() {
+        Iterator<Voice> it = voicesByUse.iterator();
+        Voice oldest = it.next();
+        it.remove();
+        voices.remove(oldest);
+        voicesByMean.remove(oldest);
+        meanPitchSum -= oldest.meanPitch;
+    }
+
+    /**
+     * Remove an active voice before updating it.
+     *
+     * @param voice
+     *            An active voice
+     */
+    private void removeVoice(Voice voice) {
+        voices.remove(voice);
+        voicesByMean.remove(voice);
+        voicesByUse.remove(voice);
+        meanPitchSum -= voice.meanPitch;
+    }
+
+    /**
+     * @param voice
+     *            An active voice
+     * @return Whether the voice currently belongs to the treble part
+     */
+    private boolean isTreble(Voice voice) {
+        double averageMeanPitch = meanPitchSum / voices.size();
+        double minMeanPitch = voicesByMean.first().meanPitch;
+        double maxMeanPitch = voicesByMean.last().meanPitch;
+        if (maxMeanPitch - minMeanPitch > SEPARATION_PITCH_DISTANCE) {
+            return voice.meanPitch >= averageMeanPitch;
+        } else {
+            return averageMeanPitch >= TREBLE_PITCH;
+        }
+    }
+
+}
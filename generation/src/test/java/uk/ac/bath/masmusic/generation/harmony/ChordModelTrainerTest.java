@@ -0,0 +1,123 @@
+package uk.ac.bath.masmusic.generation.harmony;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+import org.junit.Test;
+
+import uk.ac.bath.masmusic.common.Chord;
+import uk.ac.bath.masmusic.common.MidiScore;
+import uk.ac.bath.masmusic.common.Note;
+import uk.ac.bath.masmusic.common.Onset;
+
+public class ChordModelTrainerTest {
+
+    /** Ticks per beat of the test scores. */
+    private static final int RESOLUTION = 480;
+
+    /**
+     * @return A score with a I-IV-V-I progression in C major played twice,
+     *         with two chord notes in the melody of each half bar
+     */
+    private static MidiScore score() {
+        int[][] chords = { { 48, 52, 55 }, { 53, 57, 60 }, { 55, 59, 62 }, { 48, 52, 55 } };
+        int[][] melodies = { { 72, 76 }, { 77, 81 }, { 79, 83 }, { 72, 76 } };
+        List<Onset> onsets = new ArrayList<>();
+        long tick = 0;
+        for (int i = 0; i < 2 * chords.length; i++) {
+            for (int pitch : chords[i % chords.length]) {
+                onsets.add(new Onset(tick, 2 * RESOLUTION, pitch, 80));
+            }
+            int[] melody = melodies[i % melodies.length];
+            for (int j = 0; j < melody.length; j++) {
+                onsets.add(new Onset(tick + j * RESOLUTION, RESOLUTION, melody[j], 100));
+            }
+            tick += 2 * RESOLUTION;
+        }
+        return new MidiScore(onsets, RESOLUTION, null);
+    }
+
+    /**
+     * @param score
+     *            A score
+     * @return A MIDI sequence with the notes of the score
+     */
+    private static Sequence sequence(MidiScore score) throws Exception {
+        Sequence sequence = new Sequence(Sequence.PPQ, score.getResolution());
+        Track track = sequence.createTrack();
+        for (Onset onset : score.getOnsets()) {
+            track.add(new MidiEvent(new ShortMessage(
+                    ShortMessage.NOTE_ON, 0, onset.getPitch(), onset.getVelocity()),
+                    onset.getTimestamp()));
+            track.add(new MidiEvent(new ShortMessage(
+                    ShortMessage.NOTE_OFF, 0, onset.getPitch(), 0),
+                    onset.getTimestamp() + onset.getDuration()));
+        }
+        return sequence;
+    }
+
+    @Test
+    public void testChordBigramModel() throws Exception {
+        ChordModelTrainer trainer = new ChordModelTrainer();
+        trainer.train(score());
+        assertThat(trainer.getFileCount(), is(1));
+        assertThat(trainer.getScaleTypes().size(), is(1));
+        StringWriter output = new StringWriter();
+        trainer.writeChordBigramModel("major", output);
+        assertThat(output.toString(), is("(0;[0;4;7]):(5;[0;4;7]:1.000000)\n"
+                + "(5;[0;4;7]):(7;[0;4;7]:1.000000)\n"
+                + "(7;[0;4;7]):(0;[0;4;7]:1.000000)\n"));
+        ChordBigramModel model = new ChordBigramModelReader(new StringReader(output.toString())).readModel();
+        List<Chord> chords = model.estimateChords(Note.D, new Chord(Note.G, new int[] { 0, 4, 7 }));
+        assertThat(chords.size(), is(1));
+        assertThat(chords.get(0).getRoot(), is(Note.A));
+    }
+
+    @Test
+    public void testPitchClassChordModel() throws Exception {
+        ChordModelTrainer trainer = new ChordModelTrainer();
+        trainer.train(score());
+        StringWriter output = new StringWriter();
+        trainer.writePitchClassChordModel("major", output);
+        String[] lines = output.toString().split("\n");
+        assertThat(lines.length, is(7));
+        assertThat(lines[0], is("0:(0;[0;4;7]:12.000000),(5;[0;4;7]:4.000000)"));
+        assertThat(lines[6], is("11:(7;[0;4;7]:6.000000)"));
+        PitchClassChordModel model = new PitchClassChordModelReader(new StringReader(output.toString()))
+                .readModel();
+        List<Chord> chords = model.estimateChords(Note.C,
+                Arrays.asList(new Onset(0, 500, 59, 100), new Onset(0, 500, 62, 100)));
+        assertThat(chords.get(0).getRoot(), is(Note.G));
+    }
+
+    @Test
+    public void testTrainFiles() throws Exception {
+        File file = File.createTempFile("progression", ".mid");
+        File invalid = File.createTempFile("invalid", ".mid");
+        file.deleteOnExit();
+        invalid.deleteOnExit();
+        MidiSystem.write(sequence(score()), 0, file);
+        ChordModelTrainer trainer = new ChordModelTrainer();
+        trainer.train(Arrays.asList(file, invalid, file), new ForkJoinPool(2));
+        assertThat(trainer.getFileCount(), is(2));
+        assertThat(trainer.getSkippedFileCount(), is(1));
+        StringWriter output = new StringWriter();
+        trainer.writePitchClassChordModel("major", output);
+        assertThat(output.toString().split("\n")[0], is("0:(0;[0;4;7]:24.000000),(5;[0;4;7]:8.000000)"));
+    }
+
+}
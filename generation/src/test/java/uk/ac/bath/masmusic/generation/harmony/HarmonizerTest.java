@@ -0,0 +1,63 @@
+package uk.ac.bath.masmusic.generation.harmony;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import uk.ac.bath.masmusic.common.Beat;
+import uk.ac.bath.masmusic.common.Chord;
+import uk.ac.bath.masmusic.common.Note;
+import uk.ac.bath.masmusic.common.Rhythm;
+import uk.ac.bath.masmusic.common.TimeSignature;
+import uk.ac.bath.masmusic.common.VirtualClock;
+
+public class HarmonizerTest {
+
+    private static final Rhythm RHYTHM = new Rhythm(new Beat(500, 0), new TimeSignature(4, 4));
+
+    /**
+     * @return Eight different major chords (two per bar in four bars of 4/4)
+     */
+    private static List<Chord> chords() {
+        List<Chord> chords = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            chords.add(new Chord(Note.fromValue(i), new int[] { 0, 4, 7 }));
+        }
+        return chords;
+    }
+
+    @Test
+    public void testSetHarmonization() {
+        Harmonizer harmonizer = new Harmonizer(4, null, null, new VirtualClock(0));
+        assertThat(harmonizer.getHarmonization().isEmpty(), is(true));
+        harmonizer.setHarmonization(RHYTHM, chords());
+        assertThat(harmonizer.hasHarmonization(), is(true));
+        assertThat(harmonizer.getHarmonization(), is(chords()));
+        assertThat(harmonizer.getHarmony(8000, 1, 4, 100).get(0).getPitch(), is(60));
+        assertThat(harmonizer.getHarmony(10000, 1, 4, 100).get(0).getPitch(), is(62));
+    }
+
+    @Test
+    public void testRestoreShiftedHarmonization() {
+        VirtualClock clock = new VirtualClock(10000);
+        Harmonizer harmonizer = new Harmonizer(4, null, null, clock);
+        harmonizer.setHarmonization(RHYTHM, chords());
+        // Move the bar start half a bar
+        Rhythm shifted = new Rhythm(RHYTHM.getBeat(), RHYTHM.getTimeSignature(), 2);
+        harmonizer.setRhythm(shifted);
+        Harmonizer restored = new Harmonizer(4, null, null, clock);
+        restored.setHarmonization(harmonizer.getRhythm(), harmonizer.getHarmonization());
+        assertThat(restored.getHarmony(20000, 4, 4, 100), is(harmonizer.getHarmony(20000, 4, 4, 100)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidHarmonization() {
+        new Harmonizer(4, null, null).setHarmonization(RHYTHM, Collections.nCopies(3, chords().get(0)));
+    }
+
+}
@@ -0,0 +1,37 @@
+package uk.ac.bath.masmusic.generation.harmony;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import uk.ac.bath.masmusic.common.Chord;
+import uk.ac.bath.masmusic.common.Note;
+
+public class ScaleRelativeChordTest {
+
+    @Test
+    public void testGetChord() {
+        ScaleRelativeChord relativeChord = new ScaleRelativeChord(7, Arrays.asList(0, 4, 7));
+        Chord chord = relativeChord.getChord(Note.D);
+        assertThat(chord.getRoot(), is(Note.A));
+        assertThat(relativeChord.getChord(Note.D), is(sameInstance(chord)));
+        List<Integer> pitches = chord.getPitches(4);
+        assertThat(chord.size(), is(pitches.size()));
+        for (int i = 0; i < chord.size(); i++) {
+            assertThat(chord.getPitch(4, i), is(pitches.get(i)));
+        }
+    }
+
+    @Test
+    public void testFromChord() {
+        ScaleRelativeChord relativeChord = new ScaleRelativeChord(2, Arrays.asList(0, 3, 7));
+        Chord chord = relativeChord.getChord(Note.G);
+        assertThat(ScaleRelativeChord.fromChord(Note.G, chord), is(relativeChord));
+    }
+
+}
@@ -0,0 +1,116 @@
+package uk.ac.bath.masmusic.generation.melody;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import uk.ac.bath.masmusic.common.Beat;
+import uk.ac.bath.masmusic.common.DoubleRingBuffer;
+import uk.ac.bath.masmusic.common.IntRingBuffer;
+import uk.ac.bath.masmusic.common.Note;
+import uk.ac.bath.masmusic.common.Onset;
+import uk.ac.bath.masmusic.common.Scale;
+
+public class AdaptiveMelodyModelTest {
+
+    /** Beat of the test melodies. */
+    private static final Beat BEAT = new Beat(500);
+
+    /** Scale of the test melodies. */
+    private static final Scale SCALE = new Scale(Note.C, "major");
+
+    /**
+     * @param start
+     *            Timestamp of the first note
+     * @param pitches
+     *            Pitches of the notes
+     * @param iois
+     *            Inter-onset intervals cycled through the notes (beats)
+     * @return A melody with the given pitches and inter-onset intervals
+     */
+    private static List<Onset> melody(long start, int[] pitches, double... iois) {
+        List<Onset> melody = new ArrayList<>();
+        long timestamp = start;
+        for (int i = 0; i < pitches.length; i++) {
+            int duration = (int) Math.round(iois[i % iois.length] * BEAT.getDuration());
+            melody.add(new Onset(timestamp, duration, pitches[i], 100));
+            timestamp += duration;
+        }
+        return melody;
+    }
+
+    private static IntRingBuffer steps(int... steps) {
+        IntRingBuffer buffer = new IntRingBuffer(steps.length);
+        buffer.addAll(steps);
+        return buffer;
+    }
+
+    private static DoubleRingBuffer durations(double... durations) {
+        DoubleRingBuffer buffer = new DoubleRingBuffer(durations.length);
+        buffer.addAll(durations);
+        return buffer;
+    }
+
+    @Test
+    public void testLearnPitch() {
+        AdaptiveMelodyModel model = new AdaptiveMelodyModel(new MarkovPitchGeneratorTable(1),
+                new MarkovDurationGeneratorTable(1));
+        int[] pitches = { 60, 62, 64, 60, 62, 64 };
+        model.learn(SCALE, BEAT, melody(0, pitches, 1));
+        // Continues the previously learned melody
+        model.learn(SCALE, BEAT, melody(6 * BEAT.getDuration(), pitches, 1));
+        AdaptiveMarkovPitchTable pitchModel = model.getPitchModel();
+        assertThat(pitchModel.getLiveStatusCount(), is(3));
+        assertThat(pitchModel.pickStep(4, steps(2), .99), is(-4));
+        assertThat(pitchModel.pickStep(0, steps(-4), 0), is(2));
+        assertThat(pitchModel.pickStep(0, steps(5), .5), is(nullValue()));
+    }
+
+    @Test
+    public void testLearnDuration() {
+        AdaptiveMelodyModel model = new AdaptiveMelodyModel(new MarkovPitchGeneratorTable(1),
+                new MarkovDurationGeneratorTable(1));
+        int[] pitches = { 60, 60, 60, 60, 60, 60, 60 };
+        model.learn(SCALE, BEAT, melody(0, pitches, 1, .5));
+        AdaptiveMarkovDurationTable durationModel = model.getDurationModel();
+        assertThat(durationModel.pickDuration(0, durations(1), .5), is(.5));
+        assertThat(durationModel.pickDuration(0, durations(.5), .5), is(1.0));
+        // Repeated notes are not learned as pitch transitions
+        assertThat(model.getPitchModel().getLiveStatusCount(), is(0));
+    }
+
+    @Test
+    public void testMixture() {
+        MarkovPitchGeneratorTable base = new MarkovPitchGeneratorTable(1);
+        base.setEntry(0, Arrays.asList(2), Collections.singletonMap(2, 1));
+        AdaptiveMelodyModel model = new AdaptiveMelodyModel(base, new MarkovDurationGeneratorTable(1), 512, 1);
+        model.learn(SCALE, BEAT, melody(0, new int[] { 58, 60, 56, 58, 60, 56, 58, 60, 56 }, 1));
+        // Three learned transitions against a prior of one
+        assertThat(model.getPitchModel().pickStep(0, steps(2), .1), is(-4));
+        assertThat(model.getPitchModel().pickStep(0, steps(2), .9), is(2));
+        model.clear();
+        assertThat(model.getPitchModel().pickStep(0, steps(2), .1), is(2));
+    }
+
+    @Test
+    public void testGapsAndScaleChanges() {
+        AdaptiveMelodyModel model = new AdaptiveMelodyModel(new MarkovPitchGeneratorTable(1),
+                new MarkovDurationGeneratorTable(1));
+        // Notes too far apart
+        model.learn(SCALE, BEAT, melody(0, new int[] { 60, 62, 64, 65 }, 5));
+        assertThat(model.getPitchModel().getLiveStatusCount(), is(0));
+        assertThat(model.getDurationModel().getLiveStatusCount(), is(0));
+        // Melodies in different keys are not joined
+        model.learn(SCALE, BEAT, melody(0, new int[] { 60, 62 }, 1));
+        model.learn(new Scale(Note.D, "major"), BEAT, melody(BEAT.getDuration() * 2, new int[] { 64, 66 }, 1));
+        assertThat(model.getPitchModel().getLiveStatusCount(), is(0));
+    }
+
+}
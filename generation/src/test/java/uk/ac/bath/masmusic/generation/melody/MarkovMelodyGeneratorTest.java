@@ -0,0 +1,104 @@
+package uk.ac.bath.masmusic.generation.melody;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+import uk.ac.bath.masmusic.common.Note;
+import uk.ac.bath.masmusic.common.Scale;
+import uk.ac.bath.masmusic.common.ScoreElement;
+
+public class MarkovMelodyGeneratorTest {
+
+    /** Number of generated elements. */
+    private static final int NUM_ELEMENTS = 64;
+
+    /** Scale of the generated melodies. */
+    private static final Scale SCALE = new Scale(Note.C, "major");
+
+    /** Relative pitches of the scale. */
+    private static final int[] SCALE_PITCHES = { 0, 2, 4, 5, 7, 9, 11 };
+
+    /** Durations of the tables. */
+    private static final double[] DURATIONS = { .5, 1., 2. };
+
+    /**
+     * @return A first order pitch table moving up or down the scale
+     */
+    private static MarkovPitchGeneratorTable pitchTable() throws IOException {
+        StringBuilder table = new StringBuilder("order:1\n");
+        for (int i = 0; i < SCALE_PITCHES.length; i++) {
+            int up = (i + 1 < SCALE_PITCHES.length ? SCALE_PITCHES[i + 1] : 12) - SCALE_PITCHES[i];
+            int down = SCALE_PITCHES[i] - (i > 0 ? SCALE_PITCHES[i - 1] : -1);
+            for (int previous = -2; previous <= 2; previous++) {
+                table.append(String.format("(%d,[%d]):(%d:3),(%d:2),(0:1)%n", SCALE_PITCHES[i], previous, up, -down));
+            }
+        }
+        return new MarkovPitchGeneratorTableReader(new StringReader(table.toString())).readTable();
+    }
+
+    /**
+     * @return A first order duration table
+     */
+    private static MarkovDurationGeneratorTable durationTable() throws IOException {
+        StringBuilder table = new StringBuilder("order:1\n");
+        for (int pitch : SCALE_PITCHES) {
+            for (double previous : DURATIONS) {
+                table.append(String.format("(%d,[%s]):(0.5:1),(1.0:2),(2.0:1)%n", pitch, previous));
+            }
+        }
+        return new MarkovDurationGeneratorTableReader(new StringReader(table.toString())).readTable();
+    }
+
+    @Test
+    public void testSeedReproducible() throws IOException {
+        MarkovMelodyGenerator generator = generator(1234L);
+        List<ScoreElement> first = generate(generator);
+        List<ScoreElement> second = generate(generator(1234L));
+        assertThat(second, is(first));
+        for (ScoreElement element : first) {
+            int pitch = element.getPitches().iterator().next();
+            assertTrue(SCALE.contains(Note.fromValue(pitch)));
+        }
+    }
+
+    @Test
+    public void testSetRandom() throws IOException {
+        // Reseeded generators only depend on their state and the new seed
+        MarkovMelodyGenerator generator = generator(1L);
+        MarkovMelodyGenerator other = generator(2L);
+        generate(generator);
+        generate(other);
+        ScoreElement element = new ScoreElement(1., Collections.singleton(64));
+        // Twice, so the last pitch step is the same too
+        for (int i = 0; i < 2; i++) {
+            generator.provideElement(element);
+            other.provideElement(element);
+        }
+        generator.setRandom(new SplittableRandom(3L));
+        other.setRandom(new SplittableRandom(3L));
+        assertThat(generate(other), is(generate(generator)));
+    }
+
+    private static MarkovMelodyGenerator generator(long seed) throws IOException {
+        return new MarkovMelodyGenerator(pitchTable(), durationTable(), SCALE, 60, 1f, new SplittableRandom(seed));
+    }
+
+    private static List<ScoreElement> generate(MarkovMelodyGenerator generator) {
+        List<ScoreElement> elements = new ArrayList<>();
+        for (int i = 0; i < NUM_ELEMENTS; i++) {
+            elements.add(generator.generateElement());
+        }
+        return elements;
+    }
+
+}
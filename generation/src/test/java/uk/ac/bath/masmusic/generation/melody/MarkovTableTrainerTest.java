@@ -0,0 +1,138 @@
+package uk.ac.bath.masmusic.generation.melody;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+import org.junit.Test;
+
+import uk.ac.bath.masmusic.common.MidiScore;
+import uk.ac.bath.masmusic.common.Note;
+import uk.ac.bath.masmusic.common.Scale;
+
+public class MarkovTableTrainerTest {
+
+    /** Ticks per beat of the test sequences. */
+    private static final int RESOLUTION = 480;
+
+    /**
+     * @param sharps
+     *            Number of sharps (or flats, if negative) of the key signature
+     * @param minor
+     *            Whether the key is minor
+     * @return A one-track sequence with a melody and a drum note
+     */
+    private static Sequence sequence(int sharps, boolean minor) throws InvalidMidiDataException {
+        Sequence sequence = new Sequence(Sequence.PPQ, RESOLUTION);
+        Track track = sequence.createTrack();
+        track.add(new MidiEvent(new MetaMessage(0x59, new byte[] { (byte) sharps, (byte) (minor ? 1 : 0) }, 2), 0));
+        int[] pitches = { 60, 62, 64, 65, 67, 72 };
+        int[] beats = { 1, 1, 1, 1, 1, 2 };
+        long tick = 0;
+        for (int i = 0; i < pitches.length; i++) {
+            long end = tick + beats[i] * RESOLUTION;
+            track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, 0, pitches[i], 100), tick));
+            track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_OFF, 0, pitches[i], 0), end));
+            tick = end;
+        }
+        track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, 9, 36, 100), 0));
+        track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, 9, 36, 0), RESOLUTION / 2));
+        return sequence;
+    }
+
+    @Test
+    public void testMidiScore() throws Exception {
+        MidiScore score = MidiScore.fromSequence(sequence(0, false));
+        assertThat(score.getOnsets().size(), is(6));
+        assertThat(score.getOnsets().get(5).getDuration(), is(2 * RESOLUTION));
+        assertThat(score.getScale(), is(new Scale(Note.C, "major")));
+        assertThat(MidiScore.fromSequence(sequence(-3, true)).getScale(), is(new Scale(Note.C, "minor")));
+        assertThat(MidiScore.fromSequence(sequence(2, false)).getScale(), is(new Scale(Note.D, "major")));
+    }
+
+    @Test
+    public void testTrain() throws Exception {
+        MarkovTableTrainer trainer = new MarkovTableTrainer(1);
+        trainer.train(MidiScore.fromSequence(sequence(0, false)));
+        assertThat(trainer.getScaleTypes().size(), is(1));
+        assertThat(trainer.getFileCount(), is(1));
+
+        StringWriter pitchOutput = new StringWriter();
+        trainer.writePitchTable("major", pitchOutput);
+        assertThat(pitchOutput.toString(),
+                is("order:1\n(2,[2]):(2:1)\n(4,[2]):(1:1)\n(5,[1]):(2:1)\n(7,[2]):(5:1)\n"));
+        MarkovPitchGeneratorTable pitchTable = new MarkovPitchGeneratorTableReader(
+                new StringReader(pitchOutput.toString())).readTable();
+        assertThat(pitchTable.pickStep(4, new int[] { 2 }, .5), is(1));
+        assertThat(pitchTable.pickStep(7, new int[] { 2 }, .5), is(5));
+
+        StringWriter durationOutput = new StringWriter();
+        trainer.writeDurationTable("major", durationOutput);
+        MarkovDurationGeneratorTable durationTable = new MarkovDurationGeneratorTableReader(
+                new StringReader(durationOutput.toString())).readTable();
+        assertThat(durationTable.pickDuration(0, new double[] { 1 }, .5), is(1.0));
+        assertThat(durationTable.pickDuration(7, new double[] { 1 }, .5), is(2.0));
+    }
+
+    @Test
+    public void testScaleTypeLowerCase() throws Exception {
+        MidiScore score = MidiScore.fromSequence(sequence(0, false));
+        MarkovTableTrainer trainer = new MarkovTableTrainer(1);
+        trainer.train(new MidiScore(score.getOnsets(), score.getResolution(), new Scale(Note.C, "Major")));
+        assertThat(trainer.getScaleTypes(), is(Collections.singleton("major")));
+    }
+
+    @Test
+    public void testTrainFiles() throws Exception {
+        File major = File.createTempFile("major", ".mid");
+        File minor = File.createTempFile("minor", ".mid");
+        File invalid = File.createTempFile("invalid", ".mid");
+        major.deleteOnExit();
+        minor.deleteOnExit();
+        invalid.deleteOnExit();
+        MidiSystem.write(sequence(0, false), 0, major);
+        MidiSystem.write(sequence(-3, true), 0, minor);
+        MarkovTableTrainer trainer = new MarkovTableTrainer(2);
+        trainer.train(Arrays.asList(major, minor, major, invalid), new ForkJoinPool(2));
+        assertThat(trainer.getFileCount(), is(3));
+        assertThat(trainer.getSkippedFileCount(), is(1));
+        assertThat(trainer.getScaleTypes().size(), is(2));
+
+        StringWriter pitchOutput = new StringWriter();
+        trainer.writePitchTable("major", pitchOutput);
+        assertThat(pitchOutput.toString(),
+                is("order:2\n(4,[2,2]):(1:2)\n(5,[2,1]):(2:2)\n(7,[1,2]):(5:2)\n"));
+        StringWriter durationOutput = new StringWriter();
+        trainer.writeDurationTable("minor", durationOutput);
+        assertThat(durationOutput.toString(), is("order:2\n(2,[1.0,1.0]):(1.0:1)\n(4,[1.0,1.0]):(1.0:1)\n"
+                + "(5,[1.0,1.0]):(1.0:1)\n(7,[1.0,1.0]):(2.0:1)\n"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidOrder() {
+        new MarkovTableTrainer(0);
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidFile() throws Exception {
+        File invalid = File.createTempFile("invalid", ".mid");
+        invalid.deleteOnExit();
+        MidiScore.read(invalid);
+    }
+
+}
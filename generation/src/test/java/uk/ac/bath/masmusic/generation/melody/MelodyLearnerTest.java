@@ -0,0 +1,93 @@
+package uk.ac.bath.masmusic.generation.melody;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+import uk.ac.bath.masmusic.common.Beat;
+import uk.ac.bath.masmusic.common.Onset;
+import uk.ac.bath.masmusic.common.Rhythm;
+import uk.ac.bath.masmusic.common.TimeSignature;
+import uk.ac.bath.masmusic.common.VirtualClock;
+
+public class MelodyLearnerTest {
+
+    private static final Rhythm RHYTHM = new Rhythm(new Beat(500, 0), new TimeSignature(4, 4));
+
+    /**
+     * @return Six bars of a scale in quavers
+     */
+    private static List<Onset> melody() {
+        List<Onset> onsets = new ArrayList<>();
+        for (int i = 0; i < 48; i++) {
+            onsets.add(new Onset(i * 250, 250, 72 + i % 8, 100));
+        }
+        return onsets;
+    }
+
+    @Test
+    public void testSnapshotRestore() {
+        VirtualClock clock = new VirtualClock(0);
+        MelodyLearner learner = new MelodyLearner(4, 5, clock);
+        assertThat(learner.getSnapshot(), is(nullValue()));
+        learner.setRhythm(RHYTHM);
+        learner.learn(melody());
+        // Move the bar start so the bar classes are rotated
+        clock.advanceTo(20000);
+        learner.setRhythm(new Rhythm(RHYTHM.getBeat(), RHYTHM.getTimeSignature(), 3));
+        MelodyLearner.Snapshot snapshot = learner.getSnapshot();
+        assertThat(snapshot.getBarPhrases().size(), is(4));
+        assertThat(snapshot.getIndexedBars().size(), is(4));
+        assertThat(snapshot.getRecentNotes().size(), is(8));
+        MelodyLearner restored = new MelodyLearner(4, 5, clock);
+        restored.restore(snapshot);
+        assertThat(restored.getSimilarBars(30000, 4, 100, new SplittableRandom(1)),
+                is(learner.getSimilarBars(30000, 4, 100, new SplittableRandom(1))));
+        assertThat(restored.getRandomBars(30000, 4, 100, new SplittableRandom(2)),
+                is(learner.getRandomBars(30000, 4, 100, new SplittableRandom(2))));
+    }
+
+    @Test
+    public void testSimilarBarsContinueOlderBar() {
+        // Bars: padding, X, Y, Z1, Z2, X, padding
+        int[][] bars = {
+                { 84, 84, 84, 84, 84, 84, 84, 84 },
+                { 72, 73, 74, 75, 76, 77, 78, 79 },
+                { 90, 88, 86, 84, 82, 80, 78, 76 },
+                { 80, 83, 80, 83, 80, 83, 80, 83 },
+                { 80, 80, 80, 80, 80, 80, 80, 80 },
+                { 72, 73, 74, 75, 76, 77, 78, 79 },
+                { 84, 84, 84, 84, 84, 84, 84, 84 } };
+        List<Onset> onsets = new ArrayList<>();
+        for (int bar = 0; bar < bars.length; bar++) {
+            for (int i = 0; i < bars[bar].length; i++) {
+                onsets.add(new Onset(bar * 2000 + i * 250, 250, bars[bar][i], 100));
+            }
+        }
+        MelodyLearner learner = new MelodyLearner(2, 5, new VirtualClock(0));
+        learner.setRhythm(RHYTHM);
+        learner.learn(onsets);
+        // The last X bar holds the recent notes, so the first one is continued
+        List<Onset> expected = new ArrayList<>();
+        for (int i = 0; i < bars[2].length; i++) {
+            expected.add(new Onset(12000 + i * 250, 250, bars[2][i], 100));
+        }
+        for (int seed = 0; seed < 20; seed++) {
+            assertThat(learner.getSimilarBars(12000, 1, 100, new SplittableRandom(seed)), is(expected));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRestoreDifferentBarClasses() {
+        MelodyLearner learner = new MelodyLearner(4, 5, new VirtualClock(0));
+        learner.setRhythm(RHYTHM);
+        new MelodyLearner(2, 5).restore(learner.getSnapshot());
+    }
+
+}
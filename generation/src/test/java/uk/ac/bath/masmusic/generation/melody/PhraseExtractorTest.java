@@ -0,0 +1,99 @@
+package uk.ac.bath.masmusic.generation.melody;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import uk.ac.bath.masmusic.common.Beat;
+import uk.ac.bath.masmusic.common.Onset;
+import uk.ac.bath.masmusic.common.Phrase;
+import uk.ac.bath.masmusic.common.Rhythm;
+import uk.ac.bath.masmusic.common.TimeSignature;
+
+public class PhraseExtractorTest {
+
+    private static final Rhythm RHYTHM = new Rhythm(new Beat(500, 0), new TimeSignature(4, 4));
+
+    /**
+     * @return Two phrases of eighth notes separated by a two beats rest
+     */
+    private static List<Onset> twoPhrases() {
+        List<Onset> onsets = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            onsets.add(new Onset(1000 + i * 250, 250, 64 + i, 100));
+        }
+        for (int i = 0; i < 10; i++) {
+            onsets.add(new Onset(4000 + i * 250, 250, 72 - i, 100));
+        }
+        return onsets;
+    }
+
+    @Test
+    public void testExtractPhrases() {
+        List<Phrase> phrases = new PhraseExtractor().extractPhrases(twoPhrases(), RHYTHM);
+        assertThat(phrases.size(), is(2));
+        assertThat(phrases.get(0).size(), is(8));
+        assertThat(phrases.get(0).getDuration(), is(4.0));
+        assertThat(phrases.get(1).size(), is(10));
+        assertThat(phrases.get(1).getDuration(), is(5.0));
+    }
+
+    @Test
+    public void testIncrementalMatchesBatch() {
+        List<Onset> onsets = twoPhrases();
+        List<Phrase> batch = new PhraseExtractor().extractPhrases(onsets, RHYTHM);
+        PhraseExtractor extractor = new PhraseExtractor();
+        List<Phrase> incremental = new ArrayList<>();
+        for (int i = 0; i < onsets.size(); i += 3) {
+            List<Onset> chunk = onsets.subList(i, Math.min(i + 3, onsets.size()));
+            long watermark = chunk.get(chunk.size() - 1).getTimestamp() + 1;
+            incremental.addAll(extractor.update(chunk, RHYTHM, watermark));
+        }
+        assertThat(extractor.getOpenPhraseCount(), is(1));
+        incremental.addAll(extractor.update(Collections.emptyList(), RHYTHM, Long.MAX_VALUE));
+        assertThat(incremental, is(batch));
+    }
+
+    @Test
+    public void testSnapshotRestore() {
+        List<Onset> onsets = twoPhrases();
+        List<Phrase> batch = new PhraseExtractor().extractPhrases(onsets, RHYTHM);
+        PhraseExtractor extractor = new PhraseExtractor();
+        List<Phrase> incremental = new ArrayList<>();
+        incremental.addAll(extractor.update(onsets.subList(0, 12), RHYTHM, 4500));
+        PhraseExtractor.Snapshot snapshot = extractor.getSnapshot();
+        assertThat(snapshot.getOpenPhrases().size(), is(1));
+        assertThat(snapshot.getPendingOnsets().size(), is(2));
+        PhraseExtractor restored = new PhraseExtractor();
+        restored.restore(snapshot);
+        assertThat(restored.getOpenPhraseCount(), is(1));
+        incremental.addAll(restored.update(onsets.subList(12, onsets.size()), RHYTHM, Long.MAX_VALUE));
+        assertThat(incremental, is(batch));
+    }
+
+    @Test
+    public void testPhraseClosedByWatermark() {
+        PhraseExtractor extractor = new PhraseExtractor();
+        List<Onset> onsets = twoPhrases().subList(0, 8);
+        assertThat(extractor.update(onsets, RHYTHM, 3000).size(), is(0));
+        assertThat(extractor.getOpenPhraseCount(), is(1));
+        List<Phrase> phrases = extractor.update(Collections.emptyList(), RHYTHM, 3600);
+        assertThat(phrases.size(), is(1));
+        assertThat(phrases.get(0).size(), is(8));
+        assertThat(extractor.getOpenPhraseCount(), is(0));
+    }
+
+    @Test
+    public void testLateOnsetsDiscarded() {
+        PhraseExtractor extractor = new PhraseExtractor();
+        extractor.update(twoPhrases().subList(0, 4), RHYTHM, 2000);
+        extractor.update(Collections.singletonList(new Onset(1500, 250, 60, 100)), RHYTHM, 2000);
+        assertThat(extractor.getLateOnsetCount(), is(1L));
+    }
+
+}
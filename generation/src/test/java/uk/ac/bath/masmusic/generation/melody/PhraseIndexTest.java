@@ -0,0 +1,108 @@
+package uk.ac.bath.masmusic.generation.melody;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+import uk.ac.bath.masmusic.common.Beat;
+import uk.ac.bath.masmusic.common.Onset;
+import uk.ac.bath.masmusic.common.Phrase;
+import uk.ac.bath.masmusic.common.ScoreElement;
+
+public class PhraseIndexTest {
+
+    /**
+     * @param pitches
+     *            Pitches of the phrase notes
+     * @return A phrase of half-beat notes with the given pitches
+     */
+    private static Phrase phrase(int... pitches) {
+        Phrase phrase = new Phrase();
+        for (int i = 0; i < pitches.length; i++) {
+            phrase.addElement(new ScoreElement(.5, Collections.singleton(pitches[i])), i * .5);
+        }
+        return phrase;
+    }
+
+    @Test
+    public void testFindSimilar() {
+        PhraseIndex index = new PhraseIndex(16);
+        int scale = index.add(phrase(60, 62, 64, 65, 67, 69, 71, 72));
+        int arpeggio = index.add(phrase(60, 64, 67, 72, 67, 64, 60));
+        int other = index.add(phrase(70, 68, 66, 64, 62));
+        // Transposed fragment of the scale
+        assertArrayEquals(new int[] { scale }, index.findSimilar(phrase(65, 67, 69, 70, 72), 3));
+        assertArrayEquals(new int[] { arpeggio }, index.findSimilar(phrase(55, 59, 62, 67), 3));
+        assertArrayEquals(new int[] { other }, index.findSimilar(phrase(72, 70, 68, 66), 3));
+        assertThat(index.findSimilar(phrase(60, 61, 60, 61), 3).length, is(0));
+        assertThat(index.findSimilar(phrase(60, 62), 3).length, is(0));
+    }
+
+    @Test
+    public void testRanking() {
+        PhraseIndex index = new PhraseIndex(16);
+        int partial = index.add(phrase(60, 62, 64, 65, 60, 60));
+        int full = index.add(phrase(60, 62, 64, 65, 67, 69));
+        int partialRecent = index.add(phrase(48, 50, 52, 53, 48, 48));
+        int[] result = index.findSimilar(phrase(62, 64, 66, 67, 69, 71), 3);
+        assertArrayEquals(new int[] { full, partialRecent, partial }, result);
+        assertArrayEquals(new int[] { full }, index.findSimilar(phrase(62, 64, 66, 67, 69, 71), 1));
+    }
+
+    @Test
+    public void testOnsetQuery() {
+        PhraseIndex index = new PhraseIndex(16);
+        index.add(phrase(60, 62, 64, 65, 67));
+        int target = index.add(phrase(67, 65, 64, 62, 60));
+        Beat beat = new Beat(500, 0);
+        List<Onset> onsets = new ArrayList<>();
+        int[] pitches = { 72, 70, 69, 67 };
+        for (int i = 0; i < pitches.length; i++) {
+            onsets.add(new Onset(i * 250, 250, pitches[i], 100));
+            // Lower notes played at the same time are ignored
+            onsets.add(new Onset(i * 250, 250, pitches[i] - 12, 100));
+        }
+        assertArrayEquals(new int[] { target }, index.findSimilar(onsets, beat, 2));
+    }
+
+    @Test
+    public void testEviction() {
+        PhraseIndex index = new PhraseIndex(3);
+        int first = index.add(phrase(60, 62, 64, 65));
+        for (int i = 1; i <= 7; i++) {
+            index.add(phrase(60 + i, 60, 60 + i, 60, 60 + i));
+        }
+        assertThat(index.size(), is(3));
+        assertThat(index.get(first), is(nullValue()));
+        assertThat(index.findSimilar(phrase(60, 62, 64, 65), 3).length, is(0));
+        int last = index.add(phrase(60, 62, 64, 65));
+        assertThat(index.get(last).toPhrase(), is(phrase(60, 62, 64, 65)));
+        assertArrayEquals(new int[] { last }, index.findSimilar(phrase(60, 62, 64, 65), 3));
+    }
+
+    @Test
+    public void testManyPhrases() {
+        PhraseIndex index = new PhraseIndex(20000);
+        SplittableRandom random = new SplittableRandom(1);
+        for (int i = 0; i < 30000; i++) {
+            int[] pitches = new int[8];
+            for (int j = 0; j < pitches.length; j++) {
+                pitches[j] = 60 + random.nextInt(12);
+            }
+            index.add(phrase(pitches));
+        }
+        assertThat(index.size(), is(20000));
+        int last = index.add(phrase(60, 71, 60, 71, 60, 71, 60, 71));
+        int[] result = index.findSimilar(phrase(50, 61, 50, 61, 50, 61), 5);
+        assertThat(result[0], is(last));
+    }
+
+}
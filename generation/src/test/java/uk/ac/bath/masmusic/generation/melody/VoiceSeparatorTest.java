@@ -0,0 +1,98 @@
+package uk.ac.bath.masmusic.generation.melody;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import uk.ac.bath.masmusic.common.Onset;
+
+public class VoiceSeparatorTest {
+
+    @Test
+    public void testSeparateVoices() {
+        List<Onset> onsets = new ArrayList<>();
+        List<Onset> expectedBass = new ArrayList<>();
+        List<Onset> expectedTreble = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            Onset bass = new Onset(i * 250, 250, 36 + (i % 5), 100);
+            Onset treble = new Onset(i * 250, 250, 72 + (i % 7), 100);
+            onsets.add(bass);
+            onsets.add(treble);
+            expectedBass.add(bass);
+            expectedTreble.add(treble);
+        }
+        VoiceSeparator separator = new VoiceSeparator();
+        List<Onset> bass = new ArrayList<>();
+        List<Onset> treble = new ArrayList<>();
+        separator.split(onsets, bass, treble);
+        assertThat(bass, is(expectedBass));
+        assertThat(treble, is(expectedTreble));
+        assertThat(separator.getVoiceCount(), is(2));
+    }
+
+    @Test
+    public void testSingleVoice() {
+        VoiceSeparator separator = new VoiceSeparator();
+        for (int i = 0; i < 8; i++) {
+            assertThat(separator.add(new Onset(i * 250, 250, 64 + (i % 3), 100)), is(true));
+        }
+        separator.reset();
+        for (int i = 0; i < 8; i++) {
+            assertThat(separator.add(new Onset(i * 250, 250, 40 + (i % 3), 100)), is(false));
+        }
+        assertThat(separator.getVoiceCount(), is(1));
+    }
+
+    @Test
+    public void testStatePersistsBetweenCalls() {
+        VoiceSeparator separator = new VoiceSeparator();
+        separator.add(new Onset(0, 250, 36, 100));
+        separator.add(new Onset(0, 250, 76, 100));
+        // A later onset close to the bass voice is still bass
+        assertThat(separator.add(new Onset(250, 250, 40, 100)), is(false));
+        assertThat(separator.add(new Onset(250, 250, 74, 100)), is(true));
+    }
+
+    @Test
+    public void testVoiceChangesRegister() {
+        VoiceSeparator separator = new VoiceSeparator();
+        long timestamp = 0;
+        for (int i = 0; i < 64; i++) {
+            separator.add(new Onset(timestamp, 250, 36, 100));
+            timestamp += 250;
+        }
+        // The voice climbs to the treble register and stays there
+        for (int pitch = 42; pitch < 66; pitch += 6) {
+            separator.add(new Onset(timestamp, 250, pitch, 100));
+            timestamp += 250;
+        }
+        for (int i = 0; i < 7; i++) {
+            separator.add(new Onset(timestamp, 250, 66, 100));
+            timestamp += 250;
+        }
+        assertThat(separator.add(new Onset(timestamp, 250, 66, 100)), is(true));
+        assertThat(separator.getVoiceCount(), is(1));
+    }
+
+    @Test
+    public void testMaxVoices() {
+        VoiceSeparator separator = new VoiceSeparator(3);
+        for (int i = 0; i < 6; i++) {
+            separator.add(new Onset(i * 250, 250, 30 + i * 10, 100));
+        }
+        assertThat(separator.getVoiceCount(), is(3));
+        // The most recent voices are kept
+        separator.add(new Onset(2000, 250, 82, 100));
+        assertThat(separator.getVoiceCount(), is(3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxVoices() {
+        new VoiceSeparator(0);
+    }
+
+}